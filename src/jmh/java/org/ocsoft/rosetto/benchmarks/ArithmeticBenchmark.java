@@ -0,0 +1,86 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package org.ocsoft.rosetto.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.ocsoft.rosetto.compiler.ScenarioCompiler;
+import org.ocsoft.rosetto.contexts.base.Rosetto;
+import org.ocsoft.rosetto.models.base.elements.RosettoValue;
+import org.ocsoft.rosetto.models.base.elements.values.ActionCall;
+import org.ocsoft.rosetto.models.system.Scope;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * ArithmeticFunctionsの可変長引数の計算を計測する.
+ * @author tohhy
+ */
+@State(org.openjdk.jmh.annotations.Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ArithmeticBenchmark {
+    
+    @Param({"2", "16", "256"})
+    public int operands;
+    
+    private ActionCall plusLong;
+    private ActionCall plusDouble;
+    private ActionCall multiple;
+    private ActionCall nested;
+    private Scope scope;
+    
+    @Setup
+    public void setUp() {
+        Rosetto.dispose();
+        Rosetto.initialize();
+        scope = new Scope();
+        plusLong = parse("+", "1");
+        plusDouble = parse("+", "1.5");
+        multiple = parse("*", "1");
+        StringBuilder sb = new StringBuilder();
+        for(int i=0; i<operands; i++) sb.append("[- ");
+        sb.append(operands);
+        for(int i=0; i<operands; i++) sb.append(" 1]");
+        nested = ScenarioCompiler.compile((ActionCall)Rosetto.getParser().parseElement(sb.toString()));
+    }
+    
+    private ActionCall parse(String op, String operand) {
+        StringBuilder sb = new StringBuilder("[").append(op);
+        for(int i=0; i<operands; i++) sb.append(' ').append(operand);
+        sb.append(']');
+        return ScenarioCompiler.compile((ActionCall)Rosetto.getParser().parseElement(sb.toString()));
+    }
+    
+    @TearDown
+    public void tearDown() {
+        Rosetto.dispose();
+    }
+    
+    @Benchmark
+    public RosettoValue plusLong() {
+        return plusLong.evaluate(scope);
+    }
+    
+    @Benchmark
+    public RosettoValue plusDouble() {
+        return plusDouble.evaluate(scope);
+    }
+    
+    @Benchmark
+    public RosettoValue multiple() {
+        return multiple.evaluate(scope);
+    }
+    
+    @Benchmark
+    public RosettoValue nested() {
+        return nested.evaluate(scope);
+    }
+}
@@ -0,0 +1,74 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package org.ocsoft.rosetto.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.ocsoft.rosetto.compiler.BinaryScenarioLoader;
+import org.ocsoft.rosetto.compiler.BinaryScenarioWriter;
+import org.ocsoft.rosetto.compiler.ScenarioCompiler;
+import org.ocsoft.rosetto.contexts.base.Rosetto;
+import org.ocsoft.rosetto.models.base.scenario.Scenario;
+import org.ocsoft.rosetto.models.base.scenario.Unit;
+import org.ocsoft.rosetto.parsers.rosetto.RosettoParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * テキストからのパースとコンパイルと、バイナリ形式からの読み込みを比較する.
+ * @author tohhy
+ */
+@State(org.openjdk.jmh.annotations.Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BinaryScenarioBenchmark {
+    
+    @Param({"small", "medium", "huge"})
+    public String size;
+    
+    private String script;
+    private File file;
+    
+    @Setup
+    public void setUp() throws IOException {
+        Rosetto.dispose();
+        Rosetto.initialize();
+        script = Scripts.scenario(Scripts.lines(size), "tag");
+        file = File.createTempFile("rosetto-bench", ".rsb");
+        BinaryScenarioWriter.write(new RosettoParser().parseScript(script), file);
+    }
+    
+    @TearDown
+    public void tearDown() {
+        Rosetto.dispose();
+        file.delete();
+    }
+    
+    @Benchmark
+    public Scenario parseAndCompile() {
+        return ScenarioCompiler.compile(new RosettoParser().parseScript(script));
+    }
+    
+    @Benchmark
+    public Scenario load() throws IOException {
+        return BinaryScenarioLoader.load(file);
+    }
+    
+    /**
+     * 読み込み後に全てのユニットを参照するまでの時間.
+     */
+    @Benchmark
+    public void loadAll(Blackhole bh) throws IOException {
+        for(Unit u : BinaryScenarioLoader.load(file).getUnits()) bh.consume(u);
+    }
+}
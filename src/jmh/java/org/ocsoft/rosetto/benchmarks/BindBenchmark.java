@@ -0,0 +1,79 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package org.ocsoft.rosetto.benchmarks;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.ocsoft.rosetto.contexts.base.Rosetto;
+import org.ocsoft.rosetto.functions.base.ArithmeticFunctions;
+import org.ocsoft.rosetto.models.base.elements.RosettoValue;
+import org.ocsoft.rosetto.models.base.elements.values.ListValue;
+import org.ocsoft.rosetto.models.base.elements.values.RosettoFunction;
+import org.ocsoft.rosetto.models.system.Scope;
+import org.ocsoft.rosetto.utils.base.Values;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * ListValue.bindによる引数の束縛を計測する.
+ * @author tohhy
+ */
+@State(org.openjdk.jmh.annotations.Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BindBenchmark {
+    
+    /**
+     * 必須引数・デフォルト値つき引数をもつ関数.
+     */
+    @SuppressWarnings("serial")
+    private final RosettoFunction mixed = new RosettoFunction("mixed", 
+            "a", "b", "c=1", "d=foo", "e=2.5") {
+        @Override
+        protected RosettoValue run(Scope scope, ListValue rawArgs) {
+            return Values.VOID;
+        }
+    };
+    
+    private ListValue positional;
+    private ListValue keywords;
+    private ListValue rest;
+    private Scope scope;
+    
+    @Setup
+    public void setUp() {
+        Rosetto.dispose();
+        Rosetto.initialize();
+        positional = ListValue.createFromString("1 2 3 bar 4.5");
+        keywords = ListValue.createFromString("1 2 d=baz e=0.5");
+        rest = ListValue.createFromString("1 2 3 4 5 6 7 8 9 10 11 12 13 14 15 16");
+        scope = new Scope();
+    }
+    
+    @TearDown
+    public void tearDown() {
+        Rosetto.dispose();
+    }
+    
+    @Benchmark
+    public Map<String, RosettoValue> positional() {
+        return positional.bind(mixed, scope);
+    }
+    
+    @Benchmark
+    public Map<String, RosettoValue> keywords() {
+        return keywords.bind(mixed, scope);
+    }
+    
+    @Benchmark
+    public Map<String, RosettoValue> restArgs() {
+        return rest.bind(ArithmeticFunctions.plus, scope);
+    }
+}
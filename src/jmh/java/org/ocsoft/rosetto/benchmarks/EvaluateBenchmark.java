@@ -0,0 +1,67 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package org.ocsoft.rosetto.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.ocsoft.rosetto.compiler.ScenarioCompiler;
+import org.ocsoft.rosetto.contexts.base.Rosetto;
+import org.ocsoft.rosetto.functions.base.BaseFunctions;
+import org.ocsoft.rosetto.models.base.elements.RosettoValue;
+import org.ocsoft.rosetto.models.base.elements.values.ActionCall;
+import org.ocsoft.rosetto.models.system.Scope;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * ActionCall.evaluateによる関数呼び出しの連鎖を計測する.<br>
+ * f0からf(depth-1)までの関数を、それぞれが1つ前の関数を呼び出すように定義して最後の関数を呼び出す.
+ * @author tohhy
+ */
+@State(org.openjdk.jmh.annotations.Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EvaluateBenchmark {
+    
+    @Param({"1", "16", "64"})
+    public int depth;
+    
+    private ActionCall call;
+    private ActionCall linked;
+    private Scope scope;
+    
+    @Setup
+    public void setUp() {
+        Rosetto.dispose();
+        Rosetto.initialize();
+        scope = new Scope();
+        BaseFunctions.defn.execute("f0 (x) [+ @x 1]", scope);
+        for(int i=1; i<depth; i++) {
+            BaseFunctions.defn.execute("f" + i + " (x) [f" + (i - 1) + " [+ @x 1]]", scope);
+        }
+        call = (ActionCall)Rosetto.getParser().parseElement("[f" + (depth - 1) + " 0]");
+        linked = ScenarioCompiler.compile(call);
+    }
+    
+    @TearDown
+    public void tearDown() {
+        Rosetto.dispose();
+    }
+    
+    @Benchmark
+    public RosettoValue evaluate() {
+        return call.evaluate(scope);
+    }
+    
+    @Benchmark
+    public RosettoValue evaluateLinked() {
+        return linked.evaluate(scope);
+    }
+}
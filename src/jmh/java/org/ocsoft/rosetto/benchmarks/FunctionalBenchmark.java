@@ -0,0 +1,79 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package org.ocsoft.rosetto.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.ocsoft.rosetto.compiler.ScenarioCompiler;
+import org.ocsoft.rosetto.contexts.base.Rosetto;
+import org.ocsoft.rosetto.models.base.elements.RosettoValue;
+import org.ocsoft.rosetto.models.base.elements.values.ActionCall;
+import org.ocsoft.rosetto.models.system.Scope;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * FunctionalFunctionsのリスト操作を計測する.
+ * @author tohhy
+ */
+@State(org.openjdk.jmh.annotations.Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FunctionalBenchmark {
+    
+    @Param({"16", "1000"})
+    public int length;
+    
+    private ActionCall map;
+    private ActionCall filter;
+    private ActionCall reduce;
+    private Scope scope;
+    
+    @Setup
+    public void setUp() {
+        Rosetto.dispose();
+        Rosetto.initialize();
+        Rosetto.usePackage("functional");
+        scope = new Scope();
+        StringBuilder sb = new StringBuilder("(");
+        for(int i=0; i<length; i++) {
+            if(i > 0) sb.append(' ');
+            sb.append(i);
+        }
+        String list = sb.append(')').toString();
+        map = parse("[map [fn (x) [+ @x 1]] " + list + "]");
+        filter = parse("[filter [fn (x) [< @x 8]] " + list + "]");
+        reduce = parse("[reduce + " + list + "]");
+    }
+    
+    private ActionCall parse(String script) {
+        return ScenarioCompiler.compile((ActionCall)Rosetto.getParser().parseElement(script));
+    }
+    
+    @TearDown
+    public void tearDown() {
+        Rosetto.dispose();
+    }
+    
+    @Benchmark
+    public RosettoValue map() {
+        return map.evaluate(scope);
+    }
+    
+    @Benchmark
+    public RosettoValue filter() {
+        return filter.evaluate(scope);
+    }
+    
+    @Benchmark
+    public RosettoValue reduce() {
+        return reduce.evaluate(scope);
+    }
+}
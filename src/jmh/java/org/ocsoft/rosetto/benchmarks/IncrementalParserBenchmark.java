@@ -0,0 +1,69 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package org.ocsoft.rosetto.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.ocsoft.rosetto.contexts.base.Rosetto;
+import org.ocsoft.rosetto.models.base.scenario.Scenario;
+import org.ocsoft.rosetto.parsers.IncrementalParser;
+import org.ocsoft.rosetto.parsers.rosetto.RosettoParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * 一行を編集したシナリオの再読み込みを、全体のパースと差分パースで比較する.<br>
+ * 差分パースは編集前と編集後のスクリプトを交互に与え、毎回一行分の差分を処理させる.
+ * @author tohhy
+ */
+@State(org.openjdk.jmh.annotations.Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class IncrementalParserBenchmark {
+    
+    @Param({"medium", "huge"})
+    public String size;
+    
+    @Param({"text", "tag"})
+    public String style;
+    
+    private String original;
+    private String edited;
+    private IncrementalParser incremental;
+    private boolean toggle;
+    
+    @Setup
+    public void setUp() {
+        Rosetto.dispose();
+        Rosetto.initialize();
+        original = Scripts.scenario(Scripts.lines(size), style);
+        //中央付近の行末に文字を追加する
+        int middle = original.indexOf('\n', original.length() / 2);
+        edited = original.substring(0, middle) + "追記" + original.substring(middle);
+        incremental = new IncrementalParser();
+        incremental.parseScript(original);
+    }
+    
+    @TearDown
+    public void tearDown() {
+        Rosetto.dispose();
+    }
+    
+    @Benchmark
+    public Scenario fullReload() {
+        return new RosettoParser().parseScript(edited);
+    }
+    
+    @Benchmark
+    public Scenario incrementalReload() {
+        toggle = !toggle;
+        return incremental.parseScript(toggle ? edited : original);
+    }
+}
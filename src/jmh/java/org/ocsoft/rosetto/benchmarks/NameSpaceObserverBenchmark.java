@@ -0,0 +1,101 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package org.ocsoft.rosetto.benchmarks;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.ocsoft.rosetto.models.base.elements.RosettoValue;
+import org.ocsoft.rosetto.observers.NameSpaceObservatory;
+import org.ocsoft.rosetto.observers.RosettoObservatories;
+import org.ocsoft.rosetto.observers.VariableObserver;
+import org.ocsoft.rosetto.utils.base.Values;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * 名前空間ごとのオブザーバへの通知を計測する.<br>
+ * trieはNameSpaceObservatory、scanは登録された全ての名前空間をstartsWithで調べる従来の方式.
+ * 書き込みはactor0.status.hp(オブザーバが一つ反応する)とweather.rain(どれも反応しない)の二通り.
+ * @author tohhy
+ */
+@State(org.openjdk.jmh.annotations.Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class NameSpaceObserverBenchmark {
+    
+    @Param({"10", "100", "10000"})
+    public int subscriptions;
+    
+    private NameSpaceObservatory trie;
+    private Map<String, Set<VariableObserver>> scan;
+    private final RosettoValue value = Values.create(1);
+    
+    /**
+     * 通知を受け取った回数を数えるだけのオブザーバ.
+     */
+    private static final class Counting implements VariableObserver {
+        int count;
+        
+        @Override
+        public void valueChanged(String nameSpace, String variableName, RosettoValue newValue) {
+            count++;
+        }
+    }
+    
+    @Setup
+    public void setUp() {
+        trie = new RosettoObservatories().getNameSpaceObservatory();
+        scan = new LinkedHashMap<String, Set<VariableObserver>>();
+        String[] roots = {"actor", "settings", "flags"};
+        for(int i=0; i<subscriptions; i++) {
+            String key = roots[i % roots.length] + (i / roots.length);
+            VariableObserver o = new Counting();
+            trie.addObserver(key, o);
+            Set<VariableObserver> set = scan.get(key);
+            if(set == null) scan.put(key, set = new HashSet<VariableObserver>());
+            set.add(o);
+        }
+    }
+    
+    @Benchmark
+    public void trieHit() {
+        trie.valueChanged("actor0.status", "hp", value);
+    }
+    
+    @Benchmark
+    public void trieMiss() {
+        trie.valueChanged("weather", "rain", value);
+    }
+    
+    @Benchmark
+    public void scanHit(Blackhole bh) {
+        scan("actor0.status", "hp", bh);
+    }
+    
+    @Benchmark
+    public void scanMiss(Blackhole bh) {
+        scan("weather", "rain", bh);
+    }
+    
+    private void scan(String nameSpace, String variableName, Blackhole bh) {
+        for(Entry<String, Set<VariableObserver>> os : scan.entrySet()) {
+            if(nameSpace.startsWith(os.getKey()))
+                for(VariableObserver o : os.getValue()) {
+                    o.valueChanged(nameSpace, variableName, value);
+                }
+        }
+        bh.consume(nameSpace);
+    }
+}
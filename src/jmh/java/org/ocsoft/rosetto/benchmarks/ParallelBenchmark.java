@@ -0,0 +1,98 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package org.ocsoft.rosetto.benchmarks;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.ocsoft.rosetto.compiler.ScenarioCompiler;
+import org.ocsoft.rosetto.contexts.base.Rosetto;
+import org.ocsoft.rosetto.models.base.elements.RosettoValue;
+import org.ocsoft.rosetto.models.base.elements.values.ActionCall;
+import org.ocsoft.rosetto.models.system.Scope;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * ParallelFunctionsのスレッド数ごとの処理時間を、順に実行するmap、reduceと比較して計測する.
+ * @author tohhy
+ */
+@State(org.openjdk.jmh.annotations.Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ParallelBenchmark {
+    
+    @Param({"1", "2", "4", "8"})
+    public int parallelism;
+    
+    @Param({"10000"})
+    public int length;
+    
+    private ForkJoinPool pool;
+    private ActionCall map;
+    private ActionCall pmap;
+    private ActionCall reduce;
+    private ActionCall preduce;
+    private Scope scope;
+    
+    @Setup
+    public void setUp() {
+        Rosetto.dispose();
+        Rosetto.initialize();
+        Rosetto.usePackage("functional");
+        Rosetto.usePackage("parallel");
+        pool = new ForkJoinPool(parallelism);
+        Rosetto.setForkJoinPool(pool);
+        scope = new Scope();
+        StringBuilder sb = new StringBuilder("(");
+        for(int i=0; i<length; i++) {
+            if(i > 0) sb.append(' ');
+            sb.append(i);
+        }
+        String list = sb.append(')').toString();
+        //要素ごとに一定の計算量を持つ関数
+        String work = "[fn (x) [fold [fn (a b) [mod [+ [* @a 31] @b] 1000003]] @x [range 0 200]]]";
+        map = parse("[map " + work + " " + list + "]");
+        pmap = parse("[pmap " + work + " " + list + "]");
+        //軽い関数での分割と結合のオーバーヘッド
+        reduce = parse("[reduce + " + list + "]");
+        preduce = parse("[preduce + " + list + "]");
+    }
+    
+    private ActionCall parse(String script) {
+        return ScenarioCompiler.compile((ActionCall)Rosetto.getParser().parseElement(script));
+    }
+    
+    @TearDown
+    public void tearDown() {
+        Rosetto.dispose();
+        pool.shutdown();
+    }
+    
+    @Benchmark
+    public RosettoValue map() {
+        return map.evaluate(scope);
+    }
+    
+    @Benchmark
+    public RosettoValue pmap() {
+        return pmap.evaluate(scope);
+    }
+    
+    @Benchmark
+    public RosettoValue reduce() {
+        return reduce.evaluate(scope);
+    }
+    
+    @Benchmark
+    public RosettoValue preduce() {
+        return preduce.evaluate(scope);
+    }
+}
@@ -0,0 +1,64 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package org.ocsoft.rosetto.benchmarks;
+
+import java.io.StringReader;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import org.ocsoft.rosetto.contexts.base.Rosetto;
+import org.ocsoft.rosetto.models.base.scenario.Scenario;
+import org.ocsoft.rosetto.models.base.scenario.ScenarioToken;
+import org.ocsoft.rosetto.parsers.rosetto.RosettoParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * RosettoParserによるシナリオ全体のパースを計測する.
+ * @author tohhy
+ */
+@State(org.openjdk.jmh.annotations.Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ParserBenchmark {
+    
+    @Param({"small", "medium", "huge"})
+    public String size;
+    
+    @Param({"text", "tag"})
+    public String style;
+    
+    private String script;
+    
+    @Setup
+    public void setUp() {
+        Rosetto.dispose();
+        Rosetto.initialize();
+        script = Scripts.scenario(Scripts.lines(size), style);
+    }
+    
+    @TearDown
+    public void tearDown() {
+        Rosetto.dispose();
+    }
+    
+    @Benchmark
+    public Scenario parseScript() {
+        //パーサーの生成も含めて計測する
+        return new RosettoParser().parseScript(script);
+    }
+    
+    @Benchmark
+    public void streamScript(Blackhole bh) {
+        Iterator<ScenarioToken> it = new RosettoParser().streamScript(new StringReader(script));
+        while(it.hasNext()) bh.consume(it.next());
+    }
+}
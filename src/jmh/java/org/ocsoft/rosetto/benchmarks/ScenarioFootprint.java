@@ -0,0 +1,53 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package org.ocsoft.rosetto.benchmarks;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+
+import org.ocsoft.rosetto.contexts.base.Rosetto;
+import org.ocsoft.rosetto.models.base.scenario.Scenario;
+import org.ocsoft.rosetto.parsers.rosetto.RosettoParser;
+
+/**
+ * 大きなシナリオをパースした結果が保持するヒープの量を、文字列のリテラルを共有する場合としない場合で比較する.<br>
+ * JMHでは保持されるメモリを計測できないため、GC後のヒープ使用量の差で計測する.
+ * 引数で行数を指定できる(デフォルトは100000行).
+ * @author tohhy
+ */
+public class ScenarioFootprint {
+    
+    public static void main(String[] args) {
+        int lines = (args.length > 0) ? Integer.parseInt(args[0]) : Scripts.lines("huge");
+        String script = Scripts.scenario(lines, "tag");
+        Rosetto.initialize();
+        //一度目は読み込まれるクラスの分が混ざるので捨てる
+        measure(script, false);
+        long plain = measure(script, false);
+        long interned = measure(script, true);
+        System.out.printf("lines=%d plain=%,d bytes interned=%,d bytes (%.1f%%)%n", 
+                lines, plain, interned, 100.0 * interned / plain);
+        Rosetto.dispose();
+    }
+    
+    /**
+     * スクリプトをパースし、結果が保持しているヒープの量を返す.
+     */
+    private static long measure(String script, boolean intern) {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        //タグの引数はシステムのパーサーで解釈されるので、システムのパーサーとして設定する
+        RosettoParser parser = new RosettoParser(intern);
+        Rosetto.setParser(parser);
+        long before = usedAfterGc(memory);
+        Scenario scenario = parser.parseScript(script);
+        long after = usedAfterGc(memory);
+        if(scenario.getLength() == 0) throw new IllegalStateException();
+        return after - before;
+    }
+    
+    private static long usedAfterGc(MemoryMXBean memory) {
+        for(int i=0; i<3; i++) System.gc();
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
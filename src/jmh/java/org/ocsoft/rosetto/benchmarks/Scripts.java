@@ -0,0 +1,95 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package org.ocsoft.rosetto.benchmarks;
+
+import java.util.Random;
+
+/**
+ * ベンチマークで用いる合成スクリプトを生成する.<br>
+ * 同じ引数に対しては常に同じスクリプトを返す.
+ * @author tohhy
+ */
+final class Scripts {
+    
+    /**
+     * 生成は不可.
+     */
+    private Scripts() {}
+    
+    /**
+     * 指定した大きさの名前に対応する行数を返す.
+     * @param size small, medium, hugeのいずれか
+     * @return 生成する行数
+     */
+    static int lines(String size) {
+        switch(size) {
+        case "small": return 100;
+        case "medium": return 5000;
+        case "huge": return 100000;
+        default: throw new IllegalArgumentException("unknown size: " + size);
+        }
+    }
+    
+    /**
+     * 指定した行数と性質の合成シナリオを生成する.<br>
+     * textは地の文が中心で行末の自動改行やページ送りを含む.
+     * tagはタグのみの行と複数の引数をもつタグが中心で、ラベルや複数行にまたがるタグを含む.
+     * @param lines 生成する行数
+     * @param style textまたはtag
+     * @return 生成したシナリオ
+     */
+    static String scenario(int lines, String style) {
+        boolean tagHeavy;
+        switch(style) {
+        case "text": tagHeavy = false; break;
+        case "tag": tagHeavy = true; break;
+        default: throw new IllegalArgumentException("unknown style: " + style);
+        }
+        Random rand = new Random(lines);
+        StringBuilder sb = new StringBuilder(lines * 40);
+        for(int i=0; i<lines; i++) {
+            int r = rand.nextInt(20);
+            if(i % 200 == 0) {
+                sb.append("[label l").append(i).append(" title=\"section ").append(i).append("\"]\n");
+            } else if(tagHeavy ? r < 12 : r < 2) {
+                sb.append("[image.show name=bg").append(r)
+                  .append(" x=").append(rand.nextInt(800))
+                  .append(" y=").append(rand.nextInt(600))
+                  .append(" fade=").append(rand.nextDouble()).append("]\n");
+            } else if(tagHeavy ? r < 15 : r < 3) {
+                sb.append("[if exp=\"(eq? @flag ").append(r).append(")\"\n")
+                  .append("  ]shown only when flag is ").append(r).append("[end]\n");
+            } else if(r < 17) {
+                sb.append("これはベンチマーク用の地の文です。").append(i)
+                  .append("番目の行には[wait time=10]短いタグが含まれる。\n");
+            } else if(r < 19) {
+                sb.append("これはベンチマーク用の地の文です。").append(i).append("\n");
+            } else {
+                sb.append("[p]\n\n");
+            }
+        }
+        return sb.toString();
+    }
+    
+    /**
+     * 指定した数の要素からなるスペース区切りの引数列を生成する.<br>
+     * 通常の値・キーワード引数・クオートされた文字列・入れ子のリストとタグを含む.
+     * @param count 要素数
+     * @return 生成した引数列
+     */
+    static String elements(int count) {
+        StringBuilder sb = new StringBuilder();
+        for(int i=0; i<count; i++) {
+            if(i > 0) sb.append(' ');
+            switch(i % 5) {
+            case 0: sb.append(i); break;
+            case 1: sb.append("key").append(i).append('=').append(i * 0.5); break;
+            case 2: sb.append("\"quoted string ").append(i).append('"'); break;
+            case 3: sb.append("(1 2 (3 4) ").append(i).append(')'); break;
+            default: sb.append("[+ ").append(i).append(" 1]"); break;
+            }
+        }
+        return sb.toString();
+    }
+}
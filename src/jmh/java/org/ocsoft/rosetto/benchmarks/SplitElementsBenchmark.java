@@ -0,0 +1,43 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package org.ocsoft.rosetto.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.ocsoft.rosetto.parsers.rosetto.RosettoElementParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * RosettoElementParser.splitElementsによる引数列の分割を計測する.
+ * @author tohhy
+ */
+@State(org.openjdk.jmh.annotations.Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SplitElementsBenchmark {
+    
+    @Param({"4", "32", "512"})
+    public int count;
+    
+    private final RosettoElementParser parser = new RosettoElementParser();
+    
+    private String elements;
+    
+    @Setup
+    public void setUp() {
+        elements = Scripts.elements(count);
+    }
+    
+    @Benchmark
+    public List<String> splitElements() {
+        return parser.splitElements(elements);
+    }
+}
@@ -0,0 +1,83 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package org.ocsoft.rosetto.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.ocsoft.rosetto.contexts.base.GlobalVariables;
+import org.ocsoft.rosetto.contexts.base.Rosetto;
+import org.ocsoft.rosetto.models.base.elements.RosettoValue;
+import org.ocsoft.rosetto.utils.base.Values;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * グローバル変数を書き換えるスレッドがある状態での読み出しのスループットを計測する.<br>
+ * readOnlyは書き込みのない状態、contendedは読み出し7スレッドと書き込み1スレッドの組で計測する.
+ * @author tohhy
+ */
+@State(org.openjdk.jmh.annotations.Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class VariableContentionBenchmark {
+    
+    private static final int KEYS = 64;
+    
+    private GlobalVariables globals;
+    private String[] keys;
+    
+    /**
+     * スレッドごとに読み書きするキーの位置.
+     */
+    @State(org.openjdk.jmh.annotations.Scope.Thread)
+    public static class Cursor {
+        int index;
+    }
+    
+    @Setup
+    public void setUp() {
+        Rosetto.dispose();
+        Rosetto.initialize();
+        globals = Rosetto.getVariableContext();
+        keys = new String[KEYS];
+        for(int i=0; i<KEYS; i++) {
+            keys[i] = "settings.key" + i;
+            globals.define(keys[i], Values.create(i));
+        }
+    }
+    
+    @TearDown
+    public void tearDown() {
+        Rosetto.dispose();
+    }
+    
+    @Benchmark
+    @Group("readOnly")
+    @GroupThreads(8)
+    public RosettoValue readOnly(Cursor c) {
+        return globals.get(keys[(c.index++) & (KEYS - 1)]);
+    }
+    
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(7)
+    public RosettoValue read(Cursor c) {
+        return globals.get(keys[(c.index++) & (KEYS - 1)]);
+    }
+    
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(1)
+    public void write(Cursor c) {
+        int i = c.index++;
+        globals.define(keys[i & (KEYS - 1)], Values.create(i));
+    }
+}
@@ -0,0 +1,77 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package org.ocsoft.rosetto.compiler;
+
+/**
+ * コンパイル済みシナリオのバイナリ形式の定数.<br>
+ * 全ての値はビッグエンディアンで、ファイルは以下の順に並ぶ.
+ * <ul>
+ * <li>ヘッダ : マジックナンバー、バージョン、文字列数、ユニット数、ラベル数(各int)</li>
+ * <li>文字列表 : 各文字列の位置(int)</li>
+ * <li>ユニット表 : テキストの文字列番号とアクションの位置(各int)</li>
+ * <li>ラベル表 : 名前の文字列番号、ユニット位置、タイトルの文字列番号(各int)</li>
+ * <li>文字列 : バイト長(int)とUTF-8のバイト列</li>
+ * <li>アクション : タグ(byte)に続けて値ごとの内容を書いた木</li>
+ * </ul>
+ * 位置は全てファイル先頭からのバイト数で表す.
+ * @author tohhy
+ */
+final class BinaryScenarioFormat {
+    
+    /**
+     * ファイル先頭のマジックナンバー."RSTB".
+     */
+    static final int MAGIC = 0x52535442;
+    
+    /**
+     * 形式のバージョン.互換性のない変更を加えた場合に上げる.
+     */
+    static final int VERSION = 1;
+    
+    /**
+     * ヘッダのバイト数.
+     */
+    static final int HEADER_SIZE = 20;
+    
+    /**
+     * ユニット表の一要素のバイト数.
+     */
+    static final int UNIT_ENTRY_SIZE = 8;
+    
+    /**
+     * ラベル表の一要素のバイト数.
+     */
+    static final int LABEL_ENTRY_SIZE = 12;
+    
+    static final byte TAG_VOID = 0;
+    static final byte TAG_NULL = 1;
+    static final byte TAG_TRUE = 2;
+    static final byte TAG_FALSE = 3;
+    /**
+     * long値が続く.
+     */
+    static final byte TAG_INTEGER = 4;
+    /**
+     * double値が続く.
+     */
+    static final byte TAG_DOUBLE = 5;
+    /**
+     * 文字列番号が続く.
+     */
+    static final byte TAG_STRING = 6;
+    /**
+     * スクリプトの文字列番号が続く.
+     */
+    static final byte TAG_SCRIPT = 7;
+    /**
+     * 関数名の文字列番号と引数のリストが続く.
+     */
+    static final byte TAG_ACTION_CALL = 8;
+    /**
+     * 要素数と各要素、キーワード数と各キーワードの文字列番号と値が続く.
+     */
+    static final byte TAG_LIST = 9;
+    
+    private BinaryScenarioFormat() {}
+}
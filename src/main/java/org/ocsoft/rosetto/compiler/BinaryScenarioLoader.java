@@ -0,0 +1,251 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package org.ocsoft.rosetto.compiler;
+
+import static org.ocsoft.rosetto.compiler.BinaryScenarioFormat.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.ocsoft.rosetto.models.base.elements.RosettoValue;
+import org.ocsoft.rosetto.models.base.elements.values.ActionCall;
+import org.ocsoft.rosetto.models.base.elements.values.ListValue;
+import org.ocsoft.rosetto.models.base.elements.values.ScriptValue;
+import org.ocsoft.rosetto.models.base.elements.values.StringValue;
+import org.ocsoft.rosetto.models.base.scenario.Label;
+import org.ocsoft.rosetto.models.base.scenario.Scenario;
+import org.ocsoft.rosetto.models.base.scenario.Unit;
+import org.ocsoft.rosetto.utils.base.Values;
+
+/**
+ * BinaryScenarioWriterで書き出したシナリオを読み込む.<br>
+ * ファイルはメモリにマップされ、ユニットは最初に参照された時点で読み込まれる.
+ * 読み込んだアクションはScenarioCompilerでリンクしたものと同じLinkedActionCallになるため、
+ * 読み込み後にパースやコンパイルを行う必要はない.<br>
+ * ヘッダと各表の大きさは読み込み時に検査し、形式が正しくなければIOExceptionをスローする.
+ * ユニットの内容が壊れていた場合は、そのユニットを参照した時点でIllegalStateExceptionがスローされる.
+ * @author tohhy
+ */
+public class BinaryScenarioLoader {
+    
+    private BinaryScenarioLoader() {}
+    
+    /**
+     * 指定したファイルをメモリにマップしてシナリオを読み込む.<br>
+     * マップはシナリオから参照されなくなるまで保持される.
+     * @param file 読み込むファイル
+     * @return 読み込んだシナリオ
+     * @throws IOException ファイルが読めないか、形式が正しくない場合
+     */
+    public static Scenario load(File file) throws IOException {
+        if(file == null)
+            throw new IllegalArgumentException("file must not be null");
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            return load(channel.map(MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            channel.close();
+        }
+    }
+    
+    /**
+     * 指定したバッファの位置0から書き出されたシナリオを読み込む.<br>
+     * バッファの内容は読み込み後も参照されるため、変更してはならない.
+     * @param buffer 読み込むバッファ
+     * @return 読み込んだシナリオ
+     * @throws IOException 形式が正しくない場合
+     */
+    public static Scenario load(ByteBuffer buffer) throws IOException {
+        if(buffer == null)
+            throw new IllegalArgumentException("buffer must not be null");
+        //位置やバイト順を共有しないように複製する
+        ByteBuffer image = buffer.duplicate();
+        image.clear();
+        if(image.capacity() < HEADER_SIZE || image.getInt(0) != MAGIC)
+            throw new IOException("not a binary scenario");
+        int version = image.getInt(4);
+        if(version != VERSION)
+            throw new IOException("unsupported binary scenario version : " + version);
+        int stringCount = image.getInt(8);
+        int unitCount = image.getInt(12);
+        int labelCount = image.getInt(16);
+        long tablesEnd = HEADER_SIZE + 4L * stringCount 
+                + (long) UNIT_ENTRY_SIZE * unitCount + (long) LABEL_ENTRY_SIZE * labelCount;
+        if(stringCount < 0 || unitCount < 0 || labelCount < 0 || tablesEnd > image.capacity())
+            throw new IOException("broken binary scenario header");
+        
+        Image img = new Image(image, stringCount, unitCount);
+        int labelTable = img.unitTable + UNIT_ENTRY_SIZE * unitCount;
+        List<Label> labels = new ArrayList<Label>(labelCount);
+        try {
+            for(int i=0; i<labelCount; i++) {
+                int entry = labelTable + LABEL_ENTRY_SIZE * i;
+                labels.add(new Label(img.string(image.getInt(entry)), 
+                        image.getInt(entry + 4), img.string(image.getInt(entry + 8))));
+            }
+        } catch (RuntimeException e) {
+            throw new IOException("broken binary scenario labels", e);
+        }
+        return new Scenario(new LazyUnitList(img, unitCount), labels);
+    }
+    
+    /**
+     * 読み込んだバッファと、そこから取り出した文字列を保持する.
+     */
+    private static final class Image {
+        private final ByteBuffer buffer;
+        
+        /**
+         * 取り出し済みの文字列.
+         */
+        private final AtomicReferenceArray<String> strings;
+        
+        /**
+         * ユニット表の位置.
+         */
+        private final int unitTable;
+        
+        private Image(ByteBuffer buffer, int stringCount, int unitCount) {
+            this.buffer = buffer;
+            this.strings = new AtomicReferenceArray<String>(stringCount);
+            this.unitTable = HEADER_SIZE + 4 * stringCount;
+        }
+        
+        /**
+         * 指定した番号の文字列を返す.
+         */
+        private String string(int index) {
+            String s = strings.get(index);
+            if(s != null) return s;
+            int offset = buffer.getInt(HEADER_SIZE + 4 * index);
+            byte[] bytes = new byte[buffer.getInt(offset)];
+            ByteBuffer in = buffer.duplicate();
+            in.position(offset + 4);
+            in.get(bytes);
+            strings.compareAndSet(index, null, new String(bytes, StandardCharsets.UTF_8));
+            return strings.get(index);
+        }
+        
+        /**
+         * 指定した位置のユニットを読み込む.
+         */
+        private Unit unit(int index) {
+            int entry = unitTable + UNIT_ENTRY_SIZE * index;
+            try {
+                String text = string(buffer.getInt(entry));
+                ByteBuffer in = buffer.duplicate();
+                in.position(buffer.getInt(entry + 4));
+                RosettoValue action = readValue(in);
+                if(!(action instanceof ActionCall))
+                    throw new IllegalStateException("unit " + index + " does not hold an action");
+                return new Unit(text, (ActionCall) action);
+            } catch (IndexOutOfBoundsException | BufferUnderflowException | IllegalArgumentException e) {
+                throw new IllegalStateException("broken binary scenario unit : " + index, e);
+            }
+        }
+        
+        /**
+         * 現在位置からタグ付きの値を読み込む.
+         */
+        private RosettoValue readValue(ByteBuffer in) {
+            byte tag = in.get();
+            switch(tag) {
+            case TAG_VOID:
+                return Values.VOID;
+            case TAG_NULL:
+                return Values.NULL;
+            case TAG_TRUE:
+                return Values.create(true);
+            case TAG_FALSE:
+                return Values.create(false);
+            case TAG_INTEGER:
+                return Values.create(in.getLong());
+            case TAG_DOUBLE:
+                return Values.create(in.getDouble());
+            case TAG_STRING:
+                return new StringValue(string(in.getInt()));
+            case TAG_SCRIPT:
+                return new ScriptValue(string(in.getInt()));
+            case TAG_ACTION_CALL:
+                String name = string(in.getInt());
+                return ScenarioCompiler.link(name, readList(in));
+            case TAG_LIST:
+                return readList(in);
+            default:
+                throw new IllegalStateException("unknown value tag : " + tag);
+            }
+        }
+        
+        /**
+         * 現在位置からリストの要素とキーワード引数を読み込む.
+         */
+        private ListValue readList(ByteBuffer in) {
+            RosettoValue[] values = new RosettoValue[in.getInt()];
+            for(int i=0; i<values.length; i++) {
+                values[i] = readValue(in);
+            }
+            int mapSize = in.getInt();
+            if(mapSize == 0) {
+                return (values.length == 0) ? ListValue.EMPTY : new ListValue(values);
+            }
+            Map<String, RosettoValue> map = new LinkedHashMap<String, RosettoValue>();
+            for(int i=0; i<mapSize; i++) {
+                String key = string(in.getInt());
+                map.put(key, readValue(in));
+            }
+            return ListValue.createFromValue(Arrays.asList(values), map);
+        }
+    }
+    
+    /**
+     * 参照された時点でユニットを読み込むリスト.読み込んだユニットは保持される.
+     * シリアライズ時には全てのユニットを読み込んだ通常のリストに置き換わる.
+     */
+    private static final class LazyUnitList extends AbstractList<Unit> 
+            implements RandomAccess, Serializable {
+        private static final long serialVersionUID = -3914542315616587020L;
+        
+        private final transient Image image;
+        
+        private final transient AtomicReferenceArray<Unit> units;
+        
+        private LazyUnitList(Image image, int size) {
+            this.image = image;
+            this.units = new AtomicReferenceArray<Unit>(size);
+        }
+        
+        @Override
+        public Unit get(int index) {
+            Unit u = units.get(index);
+            if(u != null) return u;
+            units.compareAndSet(index, null, image.unit(index));
+            return units.get(index);
+        }
+        
+        @Override
+        public int size() {
+            return units.length();
+        }
+        
+        private Object writeReplace() throws ObjectStreamException {
+            return new ArrayList<Unit>(this);
+        }
+    }
+}
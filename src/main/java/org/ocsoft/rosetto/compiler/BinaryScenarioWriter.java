@@ -0,0 +1,242 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package org.ocsoft.rosetto.compiler;
+
+import static org.ocsoft.rosetto.compiler.BinaryScenarioFormat.*;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.ocsoft.rosetto.models.base.elements.RosettoValue;
+import org.ocsoft.rosetto.models.base.elements.values.ActionCall;
+import org.ocsoft.rosetto.models.base.elements.values.ListValue;
+import org.ocsoft.rosetto.models.base.elements.values.ScriptValue;
+import org.ocsoft.rosetto.models.base.scenario.Label;
+import org.ocsoft.rosetto.models.base.scenario.Scenario;
+import org.ocsoft.rosetto.models.base.scenario.Unit;
+
+/**
+ * パース済みのシナリオをBinaryScenarioLoaderで読み込めるバイナリ形式で書き出す.<br>
+ * 同じ文字列は一つにまとめて書き出される.
+ * 書き出せるのはパーサーが生成する値(文字列、数値、真偽値、スクリプト、リスト、アクション呼び出し)のみで、
+ * 関数やシーケンスなどの実行時の値を含むシナリオは書き出せない.
+ * @author tohhy
+ */
+public class BinaryScenarioWriter {
+    
+    /**
+     * 文字列とその番号の表.登場順に番号を振る.
+     */
+    private final Map<String, Integer> strings = new LinkedHashMap<String, Integer>();
+    
+    /**
+     * アクションの木を書き出すバッファ.
+     */
+    private final ByteArrayOutputStream actionBytes = new ByteArrayOutputStream();
+    
+    private final DataOutputStream actions = new DataOutputStream(actionBytes);
+    
+    private BinaryScenarioWriter() {}
+    
+    /**
+     * 指定したシナリオを指定したファイルに書き出す.
+     * @param scenario 書き出すシナリオ
+     * @param file 書き出し先のファイル
+     * @throws IOException 書き出しに失敗した場合
+     */
+    public static void write(Scenario scenario, File file) throws IOException {
+        if(file == null)
+            throw new IllegalArgumentException("file must not be null");
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+        try {
+            write(scenario, out);
+        } finally {
+            out.close();
+        }
+    }
+    
+    /**
+     * 指定したシナリオを指定したストリームに書き出す.ストリームは閉じない.
+     * @param scenario 書き出すシナリオ
+     * @param out 書き出し先のストリーム
+     * @throws IOException 書き出しに失敗した場合
+     */
+    public static void write(Scenario scenario, OutputStream out) throws IOException {
+        if(scenario == null)
+            throw new IllegalArgumentException("scenario must not be null");
+        if(out == null)
+            throw new IllegalArgumentException("out must not be null");
+        new BinaryScenarioWriter().writeScenario(scenario, out);
+    }
+    
+    /**
+     * 指定したシナリオをバイト列に変換する.
+     * @param scenario 変換するシナリオ
+     * @return 変換したバイト列
+     */
+    public static byte[] toBytes(Scenario scenario) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            write(scenario, out);
+        } catch (IOException e) {
+            //メモリ上への書き出しは失敗しない
+            throw new IllegalStateException(e);
+        }
+        return out.toByteArray();
+    }
+    
+    /**
+     * 本体を書き出す.文字列とアクションを先に集めてから、各表の位置を決めて書き出す.
+     */
+    private void writeScenario(Scenario scenario, OutputStream out) throws IOException {
+        List<Unit> units = scenario.getUnits();
+        int[] texts = new int[units.size()];
+        int[] actionOffsets = new int[units.size()];
+        for(int i=0; i<units.size(); i++) {
+            Unit u = units.get(i);
+            texts[i] = string(u.getText());
+            actionOffsets[i] = actions.size();
+            writeValue(u.getAction());
+        }
+        List<Label> labels = sortedLabels(scenario);
+        int[][] labelEntries = new int[labels.size()][];
+        for(int i=0; i<labels.size(); i++) {
+            Label l = labels.get(i);
+            labelEntries[i] = new int[]{string(l.getName()), l.getIndex(), string(l.getTitle())};
+        }
+        
+        int stringData = HEADER_SIZE + strings.size() * 4
+                + units.size() * UNIT_ENTRY_SIZE + labels.size() * LABEL_ENTRY_SIZE;
+        ByteArrayOutputStream stringBytes = new ByteArrayOutputStream();
+        DataOutputStream stringOut = new DataOutputStream(stringBytes);
+        int[] stringOffsets = new int[strings.size()];
+        int index = 0;
+        for(String s : strings.keySet()) {
+            stringOffsets[index++] = stringData + stringOut.size();
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            stringOut.writeInt(bytes.length);
+            stringOut.write(bytes);
+        }
+        int actionData = stringData + stringOut.size();
+        
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(strings.size());
+        data.writeInt(units.size());
+        data.writeInt(labels.size());
+        for(int offset : stringOffsets) data.writeInt(offset);
+        for(int i=0; i<units.size(); i++) {
+            data.writeInt(texts[i]);
+            data.writeInt(actionData + actionOffsets[i]);
+        }
+        for(int[] entry : labelEntries) {
+            for(int v : entry) data.writeInt(v);
+        }
+        stringBytes.writeTo(data);
+        actionBytes.writeTo(data);
+        data.flush();
+    }
+    
+    /**
+     * 出力が毎回同じになるように、ラベルを位置と名前の順に並べて返す.
+     */
+    private static List<Label> sortedLabels(Scenario scenario) {
+        List<Label> labels = new ArrayList<Label>(scenario.getLabels().values());
+        Collections.sort(labels, new Comparator<Label>() {
+            @Override
+            public int compare(Label o1, Label o2) {
+                int c = Integer.compare(o1.getIndex(), o2.getIndex());
+                return (c != 0) ? c : o1.getName().compareTo(o2.getName());
+            }
+        });
+        return labels;
+    }
+    
+    /**
+     * 指定した文字列の番号を返す.初めて登場した文字列には新しい番号を振る.
+     */
+    private int string(String s) {
+        Integer index = strings.get(s);
+        if(index == null) {
+            index = strings.size();
+            strings.put(s, index);
+        }
+        return index;
+    }
+    
+    /**
+     * 指定した値をタグ付きで書き出す.
+     */
+    private void writeValue(RosettoValue value) throws IOException {
+        switch(value.getType()) {
+        case VOID:
+            actions.writeByte(TAG_VOID);
+            break;
+        case NULL:
+            actions.writeByte(TAG_NULL);
+            break;
+        case BOOLEAN:
+            actions.writeByte(value.asBool() ? TAG_TRUE : TAG_FALSE);
+            break;
+        case INTEGER:
+            actions.writeByte(TAG_INTEGER);
+            actions.writeLong(value.asLong());
+            break;
+        case DOUBLE:
+            actions.writeByte(TAG_DOUBLE);
+            actions.writeDouble(value.asDouble());
+            break;
+        case STRING:
+            actions.writeByte(TAG_STRING);
+            actions.writeInt(string(value.asString()));
+            break;
+        case SCRIPT:
+            actions.writeByte(TAG_SCRIPT);
+            actions.writeInt(string(((ScriptValue) value).getScript()));
+            break;
+        case ACTION_CALL:
+            ActionCall call = (ActionCall) value;
+            actions.writeByte(TAG_ACTION_CALL);
+            actions.writeInt(string(call.getActionName()));
+            writeList(call.getArgs());
+            break;
+        case LIST:
+            actions.writeByte(TAG_LIST);
+            writeList((ListValue) value);
+            break;
+        default:
+            throw new IllegalArgumentException(
+                    "value of type " + value.getType() + " cannot be written : " + value);
+        }
+    }
+    
+    /**
+     * リストの要素とキーワード引数を書き出す.
+     */
+    private void writeList(ListValue list) throws IOException {
+        List<RosettoValue> values = list.getList();
+        actions.writeInt(values.size());
+        for(RosettoValue v : values) writeValue(v);
+        Map<String, RosettoValue> map = list.getMap();
+        actions.writeInt(map.size());
+        for(Entry<String, RosettoValue> e : map.entrySet()) {
+            actions.writeInt(string(e.getKey()));
+            writeValue(e.getValue());
+        }
+    }
+}
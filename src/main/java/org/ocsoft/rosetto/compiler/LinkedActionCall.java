@@ -0,0 +1,89 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package org.ocsoft.rosetto.compiler;
+
+import org.ocsoft.rosetto.contexts.base.ActionContext;
+import org.ocsoft.rosetto.contexts.base.Rosetto;
+import org.ocsoft.rosetto.models.base.elements.RosettoAction;
+import org.ocsoft.rosetto.models.base.elements.RosettoValue;
+import org.ocsoft.rosetto.models.base.elements.values.ActionCall;
+import org.ocsoft.rosetto.models.base.elements.values.ListValue;
+import org.ocsoft.rosetto.models.system.Scope;
+
+/**
+ * 呼び出し先のアクションを解決済みの状態で保持するActionCall.<br>
+ * 初回の評価時に関数名からアクションを解決してキャッシュし、以降は名前解決を省略して実行する.<br>
+ * アクションコンテキストの定義が変更された場合(defnによる再定義やuseなど)はキャッシュを破棄し、
+ * 次回の評価時に改めて解決する.
+ * 文字列表現や等価性は元のActionCallと同じになる.
+ * @author tohhy
+ */
+public class LinkedActionCall extends ActionCall {
+    private static final long serialVersionUID = -1593460297836052155L;
+    
+    /**
+     * 最後に解決した結果.解決前あるいはデシリアライズ直後はnull.
+     */
+    private transient volatile Link link;
+    
+    /**
+     * 指定引数で指定関数を呼び出すLinkedActionCallを生成する.<br>
+     * 引数に含まれるActionCallはそのまま保持されるため、
+     * 通常はScenarioCompiler経由で引数ごとリンクしたものを生成する.
+     * @param functionName 呼び出す関数名
+     * @param args 適用する引数
+     */
+    public LinkedActionCall(String functionName, ListValue args) {
+        super(functionName, args);
+    }
+    
+    @Override
+    public RosettoValue evaluate(Scope parentScope) {
+        return invoke(resolve(), parentScope);
+    }
+    
+    /**
+     * 呼び出し先のアクションを返す.<br>
+     * キャッシュが有効であればキャッシュを、そうでなければ改めて解決した結果を返す.
+     * @return 呼び出し先のアクション
+     */
+    protected RosettoAction resolve() {
+        ActionContext context = Rosetto.getActionContext();
+        int modCount = context.getModCount();
+        Link l = link;
+        if(l != null && l.context == context && l.modCount == modCount) {
+            return l.action;
+        }
+        //定義が変更されているので解決しなおす
+        RosettoAction action = context.get(getActionName());
+        link = new Link(context, modCount, action);
+        return action;
+    }
+    
+    /**
+     * このActionCallが現在リンク済みかどうかを返す.
+     * @return リンク済みでキャッシュが有効かどうか
+     */
+    public boolean isLinked() {
+        Link l = link;
+        if(l == null || !Rosetto.isInitialized()) return false;
+        ActionContext context = Rosetto.getActionContext();
+        return l.context == context && l.modCount == context.getModCount();
+    }
+    
+    /**
+     * 名前解決の結果と、その結果が有効なコンテキストの状態の組.
+     */
+    private static final class Link {
+        private final ActionContext context;
+        private final int modCount;
+        private final RosettoAction action;
+        
+        private Link(ActionContext context, int modCount, RosettoAction action) {
+            this.context = context;
+            this.modCount = modCount;
+            this.action = action;
+        }
+    }
+}
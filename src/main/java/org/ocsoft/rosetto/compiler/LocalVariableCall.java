@@ -0,0 +1,74 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package org.ocsoft.rosetto.compiler;
+
+import java.util.logging.Level;
+
+import org.ocsoft.rosetto.functions.base.BaseFunctions;
+import org.ocsoft.rosetto.models.base.elements.RosettoAction;
+import org.ocsoft.rosetto.models.base.elements.RosettoValue;
+import org.ocsoft.rosetto.models.base.elements.values.ListValue;
+import org.ocsoft.rosetto.models.system.LocalReference;
+import org.ocsoft.rosetto.models.system.Scope;
+import org.ocsoft.rosetto.observers.RosettoObservatories;
+import org.ocsoft.rosetto.system.RosettoLogger;
+
+/**
+ * 変数名が定数の[getlocal name](@name)をリンクしたActionCall.<br>
+ * 呼び出し先が組み込みのgetlocalのままであれば、関数を実行せずにLocalReferenceで直接変数を読む.
+ * 実行を観測するオブザーバが登録されている場合やFINERのログが有効な場合は通常通り関数を実行する.
+ * @author tohhy
+ */
+public class LocalVariableCall extends LinkedActionCall {
+    private static final long serialVersionUID = 8271559160394402710L;
+    
+    /**
+     * 変数への参照.デシリアライズ直後はnull.
+     */
+    private transient volatile LocalReference reference;
+    
+    /**
+     * 指定した変数名を参照するgetlocal呼び出しを生成する.
+     * @param args 変数名一つだけからなる引数
+     */
+    LocalVariableCall(ListValue args) {
+        super(BaseFunctions.getlocal.getName(), args);
+    }
+    
+    @Override
+    public RosettoValue evaluate(Scope parentScope) {
+        RosettoAction action = resolve();
+        if(action != BaseFunctions.getlocal || RosettoObservatories.getAction().hasObservers() 
+                || RosettoLogger.isLoggable(Level.FINER)) {
+            return invoke(action, parentScope);
+        }
+        RosettoValue name = getArgs().getAt(0);
+        LocalReference ref = reference;
+        if(ref == null) {
+            ref = new LocalReference(name.asString());
+            reference = ref;
+        }
+        //getlocal自身の引数名と同じ名前は、getlocalのスコープに束縛された引数そのものになる
+        if(ref.getName().equals("name")) return name;
+        return ref.get(parentScope);
+    }
+    
+    /**
+     * 指定したActionCallの引数が定数の変数名一つだけであるかどうかを返す.
+     * @param args 判定する引数
+     * @return LocalVariableCallにできる引数かどうか
+     */
+    static boolean isConstantName(ListValue args) {
+        if(args.size() != 1 || !args.getMap().isEmpty()) return false;
+        switch(args.getAt(0).getType()) {
+        case STRING:
+        case INTEGER:
+        case DOUBLE:
+        case BOOLEAN:
+            return true;
+        default:
+            return false;
+        }
+    }
+}
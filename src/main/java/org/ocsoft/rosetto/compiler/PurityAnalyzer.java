@@ -0,0 +1,124 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package org.ocsoft.rosetto.compiler;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import org.ocsoft.rosetto.contexts.base.Rosetto;
+import org.ocsoft.rosetto.functions.base.BaseFunctions;
+import org.ocsoft.rosetto.functions.base.FunctionalFunctions;
+import org.ocsoft.rosetto.functions.base.ParallelFunctions;
+import org.ocsoft.rosetto.models.base.elements.RosettoAction;
+import org.ocsoft.rosetto.models.base.elements.RosettoValue;
+import org.ocsoft.rosetto.models.base.elements.ValueType;
+import org.ocsoft.rosetto.models.base.elements.values.ActionCall;
+import org.ocsoft.rosetto.models.base.elements.values.ListValue;
+import org.ocsoft.rosetto.models.base.elements.values.RosettoFunction;
+
+/**
+ * 関数が並列に実行してよいものかどうかを判定する.<br>
+ * 本体の式を持つ関数は、式に含まれる全ての呼び出し先が純粋であれば純粋とみなす.
+ * 呼び出し先は現在のアクションコンテキストで名前解決し、見つからない名前やマクロの呼び出しを含む場合は純粋とみなさない.
+ * 本体の式を持たない関数はRosettoFunction.isPureの結果に従う.<br>
+ * mapなど引数fnに渡した関数を呼び出す組み込み関数はそれ自体では純粋とみなさず、
+ * fnが関数名か関数リテラルの定数で、それが純粋な関数の場合のみ純粋とみなす.
+ * eachは副作用のためだけにあるので常に純粋とみなさない.
+ * @author tohhy
+ */
+public final class PurityAnalyzer {
+    
+    /**
+     * 引数fnに渡された関数を呼び出す組み込み関数.
+     */
+    private static final Set<RosettoFunction> HIGHER_ORDER;
+    static {
+        Set<RosettoFunction> set = Collections.newSetFromMap(new IdentityHashMap<RosettoFunction, Boolean>());
+        set.addAll(Arrays.asList(FunctionalFunctions.map, FunctionalFunctions.filter,
+                FunctionalFunctions.reduce, FunctionalFunctions.fold, FunctionalFunctions.count,
+                ParallelFunctions.pmap, ParallelFunctions.preduce));
+        HIGHER_ORDER = Collections.unmodifiableSet(set);
+    }
+
+    private PurityAnalyzer() {}
+
+    /**
+     * 指定した関数が大域的な状態を変更しないかどうかを返す.
+     * @param function 判定する関数
+     * @return 並列に実行してよい関数かどうか
+     */
+    public static boolean isPure(RosettoFunction function) {
+        if(function == null) throw new IllegalArgumentException("function must not be null");
+        Set<RosettoFunction> visiting =
+                Collections.newSetFromMap(new IdentityHashMap<RosettoFunction, Boolean>());
+        return isPure(function, visiting);
+    }
+
+    /**
+     * 判定中の関数を覚えながら関数の純粋性を判定する.
+     */
+    private static boolean isPure(RosettoFunction function, Set<RosettoFunction> visiting) {
+        RosettoValue body = function.getBody();
+        if(body == null) return function.isPure();
+        //再帰呼び出しは判定中の結果に従う
+        if(!visiting.add(function)) return true;
+        return isPureExpression(body, visiting);
+    }
+
+    /**
+     * 式に含まれる全ての呼び出しが純粋な関数の呼び出しかどうかを判定する.
+     */
+    private static boolean isPureExpression(RosettoValue value, Set<RosettoFunction> visiting) {
+        if(value instanceof ActionCall) {
+            ActionCall call = (ActionCall) value;
+            RosettoAction action = Rosetto.getAction(call.getActionName());
+            if(!(action instanceof RosettoFunction)) return false;
+            if(HIGHER_ORDER.contains(action)) {
+                if(!isPureFunctionArgument(functionArgument(call.getArgs()), visiting)) return false;
+            } else if(!isPure((RosettoFunction) action, visiting)) {
+                return false;
+            }
+            return isPureExpression(call.getArgs(), visiting);
+        }
+        if(value instanceof ListValue) {
+            ListValue list = (ListValue) value;
+            for(RosettoValue v : list.getList()) {
+                if(!isPureExpression(v, visiting)) return false;
+            }
+            for(RosettoValue v : list.getMap().values()) {
+                if(!isPureExpression(v, visiting)) return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * 高階関数の呼び出しの引数から、fnに渡される値を取り出す.なければnullを返す.
+     */
+    private static RosettoValue functionArgument(ListValue args) {
+        if(args.containsKey("fn")) return args.get("fn");
+        return (args.size() > 0) ? args.getAt(0) : null;
+    }
+    
+    /**
+     * 高階関数のfnに渡される値が、純粋な関数を表す定数かどうかを判定する.<br>
+     * 関数名の文字列と関数リテラルのみを定数とみなし、変数の参照などそれ以外の式は純粋とみなさない.
+     */
+    private static boolean isPureFunctionArgument(RosettoValue fn, Set<RosettoFunction> visiting) {
+        if(fn instanceof RosettoFunction) return isPure((RosettoFunction) fn, visiting);
+        if(fn instanceof ActionCall) {
+            //関数リテラルは本体の式を含めて判定する
+            ActionCall call = (ActionCall) fn;
+            if(Rosetto.getAction(call.getActionName()) != BaseFunctions.fn) return false;
+            return isPureExpression(call, visiting);
+        }
+        if(fn != null && fn.getType() == ValueType.STRING) {
+            RosettoAction action = Rosetto.getAction(fn.asString());
+            return action instanceof RosettoFunction && isPure((RosettoFunction) action, visiting);
+        }
+        return false;
+    }
+}
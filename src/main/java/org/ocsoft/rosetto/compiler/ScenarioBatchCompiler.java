@@ -0,0 +1,537 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package org.ocsoft.rosetto.compiler;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import org.ocsoft.rosetto.contexts.base.ActionContext;
+import org.ocsoft.rosetto.contexts.base.RosettoRuntime;
+import org.ocsoft.rosetto.functions.base.BaseFunctions;
+import org.ocsoft.rosetto.models.base.elements.RosettoValue;
+import org.ocsoft.rosetto.models.base.elements.values.ActionCall;
+import org.ocsoft.rosetto.models.base.elements.values.ListValue;
+import org.ocsoft.rosetto.models.base.scenario.Scenario;
+import org.ocsoft.rosetto.models.base.scenario.Unit;
+import org.ocsoft.rosetto.parsers.rosetto.RosettoParser;
+import org.ocsoft.rosetto.utils.base.HashUtils;
+import org.ocsoft.rosetto.utils.base.Values;
+
+/**
+ * ディレクトリ内のスクリプトをまとめてパースし、BinaryScenarioLoaderで読み込める形式で書き出すコンパイラ.<br>
+ * スクリプトはRosettoParserで並列にパースされ、含まれる全てのアクション呼び出しの名前が
+ * 標準のActionContextのいずれかのパッケージか、いずれかのスクリプトのdefn、defmacroで定義されているかを検査する.
+ * ノーマライザが挿入する改行や改ページのタグなど、シナリオを再生するアプリケーションが定義するアクションは
+ * addKnownNamesで既知の名前として追加する.
+ * マクロの本体のスクリプトは実行時にパースされるため検査しない.<br>
+ * 出力先には各スクリプトの内容のハッシュを記録したマニフェストを書き出し、
+ * 次回以降は内容が変わっていないスクリプトのパースを省略する.
+ * 省略したスクリプトもマニフェストに記録した呼び出し名で検査するため、
+ * 他のスクリプトから定義が削除された場合は全体をコンパイルした場合と同じエラーになる.
+ * ソースが削除されたスクリプトの出力は削除される.<br>
+ * コマンドラインからは以下のように実行する.
+ * <pre>
+ * ScenarioBatchCompiler [-ext 拡張子] [-known 名前,名前...] [-lenient] ソースディレクトリ 出力ディレクトリ
+ * </pre>
+ * -knownには既知の名前をカンマ区切りで指定する.
+ * -lenientを指定すると、解決できない名前はエラーではなく警告として扱う.
+ * @author tohhy
+ */
+public class ScenarioBatchCompiler {
+
+    /**
+     * デフォルトのスクリプトの拡張子.
+     */
+    public static final String DEFAULT_EXTENSION = ".rosetto";
+
+    /**
+     * 出力するファイルの拡張子.
+     */
+    public static final String OUTPUT_EXTENSION = ".rsb";
+
+    /**
+     * 出力先に書き出すマニフェストのファイル名.
+     */
+    public static final String MANIFEST_NAME = "manifest.properties";
+
+    /**
+     * RosettoNormalizerがスクリプトに挿入するタグの名前.
+     */
+    private static final String[] NORMALIZER_TAGS = {"p", "lf", "br"};
+
+    private static final String FORMAT_KEY = "format.version";
+    private static final String HASH_PREFIX = "hash.";
+    private static final String DEFINES_PREFIX = "defines.";
+    private static final String REFERENCES_PREFIX = "references.";
+
+    /**
+     * スクリプトを探すディレクトリ.
+     */
+    private final File sourceDir;
+
+    /**
+     * 出力先のディレクトリ.
+     */
+    private final File outputDir;
+
+    /**
+     * コンパイルするスクリプトの拡張子.
+     */
+    private String extension = DEFAULT_EXTENSION;
+
+    /**
+     * 解決できない名前を警告として扱うかどうか.
+     */
+    private boolean lenient = false;
+
+    /**
+     * パッケージやスクリプトで定義されていなくても解決できるものとする名前.
+     */
+    private final Set<String> knownNames = new HashSet<String>(Arrays.asList(NORMALIZER_TAGS));
+
+    /**
+     * 指定したディレクトリのスクリプトを指定したディレクトリに出力するコンパイラを生成する.
+     * @param sourceDir スクリプトを探すディレクトリ
+     * @param outputDir 出力先のディレクトリ
+     */
+    public ScenarioBatchCompiler(File sourceDir, File outputDir) {
+        if(sourceDir == null)
+            throw new IllegalArgumentException("sourceDir must not be null");
+        if(outputDir == null)
+            throw new IllegalArgumentException("outputDir must not be null");
+        this.sourceDir = sourceDir;
+        this.outputDir = outputDir;
+    }
+
+    /**
+     * コマンドラインから実行する.エラーがあれば終了コード1で、引数が正しくなければ2で終了する.
+     * @param args オプション、ソースディレクトリ、出力ディレクトリ
+     */
+    public static void main(String[] args) {
+        String extension = DEFAULT_EXTENSION;
+        boolean lenient = false;
+        List<String> known = new ArrayList<String>();
+        int i = 0;
+        for(; i<args.length && args[i].startsWith("-"); i++) {
+            if(args[i].equals("-lenient")) {
+                lenient = true;
+            } else if(args[i].equals("-ext") && i + 1 < args.length) {
+                extension = args[++i];
+            } else if(args[i].equals("-known") && i + 1 < args.length) {
+                known.addAll(Arrays.asList(args[++i].split(",")));
+            } else {
+                usage();
+            }
+        }
+        if(args.length - i != 2) usage();
+        ScenarioBatchCompiler compiler =
+                new ScenarioBatchCompiler(new File(args[i]), new File(args[i + 1]));
+        compiler.setExtension(extension);
+        compiler.setLenient(lenient);
+        compiler.addKnownNames(known.toArray(new String[known.size()]));
+        try {
+            Result result = compiler.compile();
+            for(String w : result.getWarnings()) System.err.println("warning: " + w);
+            for(String e : result.getErrors()) System.err.println("error: " + e);
+            System.out.println(result);
+            if(!result.isSuccessful()) System.exit(1);
+        } catch (IOException e) {
+            System.err.println("error: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private static void usage() {
+        System.err.println("usage: ScenarioBatchCompiler [-ext extension] [-known name,name...] [-lenient] sourceDir outputDir");
+        System.exit(2);
+    }
+
+    /**
+     * ソースディレクトリのスクリプトをコンパイルし、マニフェストを更新する.
+     * @return コンパイルの結果
+     * @throws IOException ディレクトリやファイルの読み書きに失敗した場合
+     */
+    public Result compile() throws IOException {
+        if(!sourceDir.isDirectory())
+            throw new IOException("source directory not found : " + sourceDir);
+        if(!outputDir.isDirectory() && !outputDir.mkdirs())
+            throw new IOException("cannot create output directory : " + outputDir);
+        Properties previous = loadManifest();
+        boolean formatChanged = !String.valueOf(BinaryScenarioFormat.VERSION)
+                .equals(previous.getProperty(FORMAT_KEY));
+
+        Result result = new Result();
+        Properties manifest = new Properties();
+        manifest.setProperty(FORMAT_KEY, String.valueOf(BinaryScenarioFormat.VERSION));
+        Set<String> defined = new HashSet<String>(knownNames);
+        List<Source> changed = new ArrayList<Source>();
+        List<String> unchanged = new ArrayList<String>();
+        Map<String, File> sources = listSources();
+        for(Entry<String, File> e : sources.entrySet()) {
+            String path = e.getKey();
+            byte[] bytes = Files.readAllBytes(e.getValue().toPath());
+            String hash = HashUtils.sha256(bytes);
+            String defines = previous.getProperty(DEFINES_PREFIX + path);
+            if(!formatChanged && hash.equals(previous.getProperty(HASH_PREFIX + path))
+                    && defines != null && previous.getProperty(REFERENCES_PREFIX + path) != null
+                    && output(path).isFile()) {
+                defined.addAll(split(defines));
+                unchanged.add(path);
+            } else {
+                changed.add(new Source(path, new String(bytes, StandardCharsets.UTF_8), hash));
+            }
+        }
+
+        RosettoRuntime runtime = new RosettoRuntime();
+        runtime.initialize();
+        try {
+            List<Scenario> parsed = parse(runtime, changed, result);
+            for(Scenario s : parsed) {
+                if(s != null) defined.addAll(definedNames(s));
+            }
+            //パースを省略したスクリプトも、他のスクリプトの定義の変更に合わせて検査し直す
+            for(String path : unchanged) {
+                String references = previous.getProperty(REFERENCES_PREFIX + path);
+                if(!check(path, split(references), runtime.getActionContext(), defined, result)) {
+                    output(path).delete();
+                    continue;
+                }
+                manifest.setProperty(HASH_PREFIX + path, previous.getProperty(HASH_PREFIX + path));
+                manifest.setProperty(DEFINES_PREFIX + path, previous.getProperty(DEFINES_PREFIX + path));
+                manifest.setProperty(REFERENCES_PREFIX + path, references);
+                result.skipped++;
+            }
+            for(int i=0; i<changed.size(); i++) {
+                Source source = changed.get(i);
+                Scenario scenario = parsed.get(i);
+                File output = output(source.path);
+                if(scenario == null) {
+                    output.delete();
+                    continue;
+                }
+                Set<String> references = referencedNames(scenario);
+                if(!check(source.path, references, runtime.getActionContext(), defined, result)) {
+                    output.delete();
+                    continue;
+                }
+                File parent = output.getParentFile();
+                if(!parent.isDirectory() && !parent.mkdirs())
+                    throw new IOException("cannot create output directory : " + parent);
+                BinaryScenarioWriter.write(scenario, output);
+                manifest.setProperty(HASH_PREFIX + source.path, source.hash);
+                manifest.setProperty(DEFINES_PREFIX + source.path, join(definedNames(scenario)));
+                manifest.setProperty(REFERENCES_PREFIX + source.path, join(references));
+                result.compiled++;
+            }
+        } finally {
+            runtime.dispose();
+        }
+
+        //ソースが削除されたスクリプトの出力を削除する
+        for(String key : previous.stringPropertyNames()) {
+            if(!key.startsWith(HASH_PREFIX)) continue;
+            String path = key.substring(HASH_PREFIX.length());
+            if(sources.containsKey(path)) continue;
+            if(output(path).delete()) result.removed++;
+        }
+        saveManifest(manifest);
+        return result;
+    }
+
+    /**
+     * 指定したスクリプトを並列にパースする.パースに失敗したものはnullになり、エラーに追加される.
+     */
+    private List<Scenario> parse(final RosettoRuntime runtime, List<Source> sources,
+            Result result) throws IOException {
+        final RosettoParser parser = new RosettoParser();
+        List<Callable<Scenario>> tasks = new ArrayList<Callable<Scenario>>(sources.size());
+        for(final Source source : sources) {
+            tasks.add(new Callable<Scenario>() {
+                @Override
+                public Scenario call() throws Exception {
+                    //タグの引数はランタイムのパーサーで解釈されるので、ランタイムを結びつけて実行する
+                    return runtime.call(new Callable<Scenario>() {
+                        @Override
+                        public Scenario call() throws Exception {
+                            //パーサーは複数のスレッドから同時に使えるので、全てのスクリプトで共有する
+                            return parser.parseScript(source.script);
+                        }
+                    });
+                }
+            });
+        }
+        List<Scenario> parsed = new ArrayList<Scenario>(sources.size());
+        try {
+            List<Future<Scenario>> futures = runtime.getForkJoinPool().invokeAll(tasks);
+            for(int i=0; i<futures.size(); i++) {
+                try {
+                    parsed.add(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    result.errors.add(sources.get(i).path + ": " + e.getCause());
+                    parsed.add(null);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("compilation interrupted");
+        }
+        return parsed;
+    }
+
+    /**
+     * スクリプトが呼び出す名前が全て解決できるかを検査し、解決できない名前をエラーか警告に追加する.
+     * @return 出力してよければtrue
+     */
+    private boolean check(String path, Collection<String> references, ActionContext context,
+            Set<String> defined, Result result) {
+        Set<String> unknown = new LinkedHashSet<String>();
+        for(String name : references) {
+            if(!defined.contains(name) && !isResolvable(name, context)) unknown.add(name);
+        }
+        for(String name : unknown) {
+            String message = path + ": unknown action '" + name + "'";
+            if(lenient) result.warnings.add(message);
+            else result.errors.add(message);
+        }
+        return unknown.isEmpty() || lenient;
+    }
+
+    /**
+     * シナリオ中のアクション呼び出しの名前を返す.
+     */
+    private static Set<String> referencedNames(Scenario scenario) {
+        Set<String> names = new LinkedHashSet<String>();
+        for(Unit u : scenario.getUnits()) collectCalls(u.getAction(), names);
+        return names;
+    }
+
+    /**
+     * 指定した名前がいずれかのパッケージで定義されているかどうかを返す.
+     */
+    private static boolean isResolvable(String name, ActionContext context) {
+        if(context.get(name) != Values.NULL) return true;
+        for(String ns : context.getNameSpaceNames()) {
+            if(context.get(ns, name) != Values.NULL) return true;
+        }
+        return false;
+    }
+
+    /**
+     * 値に含まれるアクション呼び出しの名前を集める.
+     */
+    private static void collectCalls(RosettoValue value, Set<String> names) {
+        if(value instanceof ActionCall) {
+            ActionCall call = (ActionCall) value;
+            names.add(call.getActionName());
+            collectCalls(call.getArgs(), names);
+        } else if(value instanceof ListValue) {
+            ListValue list = (ListValue) value;
+            for(RosettoValue v : list.getList()) collectCalls(v, names);
+            for(RosettoValue v : list.getMap().values()) collectCalls(v, names);
+        }
+    }
+
+    /**
+     * シナリオ中のdefn、defmacroで定義される名前を返す.
+     */
+    private static Set<String> definedNames(Scenario scenario) {
+        Set<String> result = new LinkedHashSet<String>();
+        for(Unit u : scenario.getUnits()) {
+            ActionCall call = u.getAction();
+            String name = call.getActionName();
+            if((name.equals(BaseFunctions.defn.getName()) || name.equals(BaseFunctions.defmacro.getName()))
+                    && call.getArgs().size() > 0) {
+                result.add(call.getArgs().getAt(0).asString(""));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * ソースディレクトリ以下のスクリプトを、ディレクトリからの相対パスの順に返す.
+     */
+    private Map<String, File> listSources() throws IOException {
+        final Path root = sourceDir.toPath();
+        final Map<String, File> result = new TreeMap<String, File>();
+        try(Stream<Path> paths = Files.walk(root)) {
+            paths.filter(p -> Files.isRegularFile(p) && p.getFileName().toString().endsWith(extension))
+                 .forEach(p -> result.put(root.relativize(p).toString().replace(File.separatorChar, '/'),
+                         p.toFile()));
+        }
+        return result;
+    }
+
+    /**
+     * 指定した相対パスのスクリプトの出力先を返す.
+     */
+    private File output(String path) {
+        String base = path.substring(0, path.length() - extension.length());
+        return new File(outputDir, base + OUTPUT_EXTENSION);
+    }
+
+    private Properties loadManifest() throws IOException {
+        Properties manifest = new Properties();
+        File file = new File(outputDir, MANIFEST_NAME);
+        if(!file.isFile()) return manifest;
+        try(InputStream in = new FileInputStream(file)) {
+            manifest.load(in);
+        }
+        return manifest;
+    }
+
+    private void saveManifest(Properties manifest) throws IOException {
+        try(OutputStream out = new FileOutputStream(new File(outputDir, MANIFEST_NAME))) {
+            manifest.store(out, "rosetto compiled scenarios");
+        }
+    }
+
+    private static String join(Set<String> names) {
+        return String.join(" ", names);
+    }
+
+    private static List<String> split(String names) {
+        List<String> result = new ArrayList<String>();
+        for(String s : names.split(" ")) {
+            if(!s.isEmpty()) result.add(s);
+        }
+        return result;
+    }
+
+    /**
+     * 拡張子を指定する.デフォルトはDEFAULT_EXTENSION.
+     * @param extension コンパイルするスクリプトの拡張子
+     */
+    public void setExtension(String extension) {
+        if(extension == null || extension.isEmpty())
+            throw new IllegalArgumentException("extension must not be empty");
+        this.extension = extension;
+    }
+
+    /**
+     * パッケージやスクリプトで定義されていなくても解決できるものとする名前を追加する.<br>
+     * ノーマライザが挿入するタグの名前は最初から追加されている.
+     * @param names 追加する名前
+     */
+    public void addKnownNames(String...names) {
+        for(String name : names) {
+            if(name == null || name.isEmpty())
+                throw new IllegalArgumentException("name must not be empty");
+            knownNames.add(name);
+        }
+    }
+
+    /**
+     * 解決できない名前を警告として扱うかどうかを指定する.デフォルトはfalse.
+     * @param lenient 解決できない名前を警告として扱うかどうか
+     */
+    public void setLenient(boolean lenient) {
+        this.lenient = lenient;
+    }
+
+    /**
+     * 読み込んだスクリプト.
+     */
+    private static final class Source {
+        private final String path;
+        private final String script;
+        private final String hash;
+
+        private Source(String path, String script, String hash) {
+            this.path = path;
+            this.script = script;
+            this.hash = hash;
+        }
+    }
+
+    /**
+     * コンパイルの結果.
+     */
+    public static final class Result {
+        private int compiled = 0;
+        private int skipped = 0;
+        private int removed = 0;
+        private final List<String> errors = new ArrayList<String>();
+        private final List<String> warnings = new ArrayList<String>();
+
+        private Result() {}
+
+        /**
+         * コンパイルして書き出したスクリプトの数を返す.
+         * @return 書き出したスクリプトの数
+         */
+        public int getCompiled() {
+            return compiled;
+        }
+
+        /**
+         * 内容が変わっていないため省略したスクリプトの数を返す.
+         * @return 省略したスクリプトの数
+         */
+        public int getSkipped() {
+            return skipped;
+        }
+
+        /**
+         * ソースが削除されたため削除した出力の数を返す.
+         * @return 削除した出力の数
+         */
+        public int getRemoved() {
+            return removed;
+        }
+
+        /**
+         * エラーの一覧を返す.読み取り専用.
+         * @return エラーの一覧
+         */
+        public List<String> getErrors() {
+            return Collections.unmodifiableList(errors);
+        }
+
+        /**
+         * 警告の一覧を返す.読み取り専用.
+         * @return 警告の一覧
+         */
+        public List<String> getWarnings() {
+            return Collections.unmodifiableList(warnings);
+        }
+
+        /**
+         * エラーなく終了したかどうかを返す.
+         * @return エラーがなければtrue
+         */
+        public boolean isSuccessful() {
+            return errors.isEmpty();
+        }
+
+        @Override
+        public String toString() {
+            return "compiled " + compiled + ", skipped " + skipped + ", removed " + removed
+                    + ", errors " + errors.size() + ", warnings " + warnings.size();
+        }
+    }
+}
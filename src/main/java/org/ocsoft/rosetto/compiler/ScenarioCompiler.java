@@ -0,0 +1,101 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package org.ocsoft.rosetto.compiler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+import org.ocsoft.rosetto.functions.base.BaseFunctions;
+import org.ocsoft.rosetto.models.base.elements.RosettoValue;
+import org.ocsoft.rosetto.models.base.elements.values.ActionCall;
+import org.ocsoft.rosetto.models.base.elements.values.ListValue;
+import org.ocsoft.rosetto.models.base.scenario.Label;
+import org.ocsoft.rosetto.models.base.scenario.Scenario;
+import org.ocsoft.rosetto.models.base.scenario.Unit;
+
+/**
+ * パース済みのシナリオや値に含まれるActionCallを、
+ * 呼び出し先を解決済みで保持するLinkedActionCallに変換するコンパイラ.<br>
+ * 変換後の木は元の木と同じ文字列表現を持ち、同じように評価できる.
+ * ActionCallを含まないリストは変換されずにそのまま共有される.
+ * @author tohhy
+ */
+public class ScenarioCompiler {
+    
+    /**
+     * 指定したシナリオの全ユニットのアクションをリンクした新しいシナリオを返す.<br>
+     * テキストとラベルは元のシナリオと共有される.
+     * @param scenario コンパイルするシナリオ
+     * @return アクションをリンクしたシナリオ
+     */
+    public static Scenario compile(Scenario scenario) {
+        if(scenario == null)
+            throw new IllegalArgumentException("scenario must not be null");
+        List<Unit> units = new ArrayList<Unit>(scenario.getLength());
+        for(Unit u : scenario.getUnits()) {
+            units.add(new Unit(u.getText(), compile(u.getAction())));
+        }
+        return new Scenario(units, new ArrayList<Label>(scenario.getLabels().values()));
+    }
+    
+    /**
+     * 指定したActionCallを引数に含まれるActionCallごとリンクして返す.<br>
+     * 変数名が定数のgetlocal呼び出しは変数を直接参照するLocalVariableCallになる.
+     * @param call コンパイルするActionCall
+     * @return リンクしたActionCall
+     */
+    public static LinkedActionCall compile(ActionCall call) {
+        if(call instanceof LinkedActionCall) return (LinkedActionCall) call;
+        return link(call.getActionName(), compile(call.getArgs()));
+    }
+    
+    /**
+     * 指定した関数名とリンク済みの引数からLinkedActionCallを生成する.
+     */
+    static LinkedActionCall link(String actionName, ListValue args) {
+        if(actionName.equals(BaseFunctions.getlocal.getName()) 
+                && LocalVariableCall.isConstantName(args)) {
+            return new LocalVariableCall(args);
+        }
+        return new LinkedActionCall(actionName, args);
+    }
+    
+    /**
+     * 指定したリストに含まれるActionCallをリンクしたリストを返す.<br>
+     * ActionCallを含まない場合は元のリストをそのまま返す.
+     * @param list コンパイルするリスト
+     * @return リンクしたリスト
+     */
+    public static ListValue compile(ListValue list) {
+        boolean changed = false;
+        List<RosettoValue> values = new ArrayList<RosettoValue>(list.size());
+        for(RosettoValue v : list.getList()) {
+            RosettoValue compiled = compile(v);
+            changed |= (compiled != v);
+            values.add(compiled);
+        }
+        Map<String, RosettoValue> map = new TreeMap<String, RosettoValue>();
+        for(Entry<String, RosettoValue> e : list.getMap().entrySet()) {
+            RosettoValue compiled = compile(e.getValue());
+            changed |= (compiled != e.getValue());
+            map.put(e.getKey(), compiled);
+        }
+        return changed ? ListValue.createFromValue(values, map) : list;
+    }
+    
+    /**
+     * 指定した値がActionCallあるいはActionCallを含むリストであればリンクして返す.<br>
+     * それ以外の値はそのまま返す.
+     * @param value コンパイルする値
+     * @return リンクした値
+     */
+    public static RosettoValue compile(RosettoValue value) {
+        if(value instanceof ActionCall) return compile((ActionCall) value);
+        if(value instanceof ListValue) return compile((ListValue) value);
+        return value;
+    }
+}
@@ -4,13 +4,17 @@
 package org.ocsoft.rosetto.contexts.base;
 
 import java.io.Serializable;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 import org.ocsoft.rosetto.functions.base.ArithmeticFunctions;
 import org.ocsoft.rosetto.functions.base.BaseFunctions;
 import org.ocsoft.rosetto.functions.base.FunctionalFunctions;
 import org.ocsoft.rosetto.functions.base.MathFunctions;
+import org.ocsoft.rosetto.functions.base.ParallelFunctions;
 import org.ocsoft.rosetto.models.base.elements.RosettoAction;
 import org.ocsoft.rosetto.models.base.elements.RosettoValue;
 import org.ocsoft.rosetto.models.base.elements.values.RosettoFunction;
@@ -29,13 +33,25 @@ public class ActionContext implements Serializable {
     /**
      * コンテキストが保有する全ての名前空間の一覧.
      */
-    private final Map<String, NameSpace> nameSpaces = new HashMap<String, NameSpace>();
+    private final Map<String, NameSpace> nameSpaces = new ConcurrentHashMap<String, NameSpace>();
     
     /**
      * 現在ロードされている関数を表す名前空間.
      */
     private final NameSpace current = new NameSpace("functions-current");
     
+    /**
+     * アクションの定義が変更された回数.<br>
+     * 名前解決の結果をキャッシュする側がキャッシュの有効性を確認するために用いる.
+     */
+    private volatile int modCount = 0;
+    
+    /**
+     * 複数スレッドから同時に定義を変更しても回数が失われないようにmodCountを更新する.
+     */
+    private static final AtomicIntegerFieldUpdater<ActionContext> MOD_COUNT = 
+            AtomicIntegerFieldUpdater.newUpdater(ActionContext.class, "modCount");
+    
     /**
      * パッケージ内でのみ生成.<br>
      * 生成時に基本関数パッケージがimportされ、useされる.
@@ -45,6 +61,7 @@ public class ActionContext implements Serializable {
         importPackage(ArithmeticFunctions.getInstance(), "arithmetic");
         importPackage(FunctionalFunctions.getInstance(), "functional");
         importPackage(MathFunctions.getInstance(), "math");
+        importPackage(ParallelFunctions.getInstance(), "parallel");
         usePackage("base");
         usePackage("arithmetic");
     }
@@ -70,8 +87,8 @@ public class ActionContext implements Serializable {
      * @return 取得した値
      */
     public RosettoAction get(String nameSpace, String varName) {
-        if(!nameSpaces.containsKey(nameSpace)) return Values.NULL;
-        NameSpace ns = nameSpaces.get(nameSpace);
+        NameSpace ns = (nameSpace != null) ? nameSpaces.get(nameSpace) : null;
+        if(ns == null) return Values.NULL;
         return (RosettoAction)ns.get(varName);
     }
     
@@ -81,6 +98,7 @@ public class ActionContext implements Serializable {
      */
     public void defineAction(String key, RosettoAction action) {
         current.define(key, action);
+        MOD_COUNT.incrementAndGet(this);
     }
     
     /**
@@ -90,6 +108,7 @@ public class ActionContext implements Serializable {
      */
     public void defineAction(String key, RosettoAction action, String packageName) {
         getNameSpace(packageName).define(key, action);
+        MOD_COUNT.incrementAndGet(this);
     }
     
     /**
@@ -101,6 +120,7 @@ public class ActionContext implements Serializable {
         for(RosettoFunction f : p.getFunctions()) {
             space.define(f.getName(), f);
         }
+        MOD_COUNT.incrementAndGet(this);
     }
     
     /**
@@ -110,6 +130,17 @@ public class ActionContext implements Serializable {
     public void usePackage(String packageName) {
         NameSpace pkg = getNameSpace(packageName);
         current.include(pkg);
+        MOD_COUNT.incrementAndGet(this);
+    }
+    
+    /**
+     * このコンテキストでアクションの定義が変更された回数を返す.<br>
+     * 関数の再定義やパッケージの読み込みのたびに増加する.
+     * 値が変化していなければ、以前に解決したアクションはそのまま使用できる.
+     * @return アクションの定義が変更された回数
+     */
+    public int getModCount() {
+        return modCount;
     }
     
     /**
@@ -118,25 +149,25 @@ public class ActionContext implements Serializable {
      * @return 指定名のパッケージが含まれているかどうか
      */
     public boolean containsNameSpace(String name) {
-        return nameSpaces.containsKey(name);
+        return name != null && nameSpaces.containsKey(name);
     }
     
     /**
-     * 指定名の名前空間を取得する.存在しなければ生成する.
-     * @param name 取得する名前空間の完全名
-     * @return 取得した、あるいは生成した名前空間
+     * このコンテキストが保有する名前空間の名前の一覧を返す.読み取り専用.
+     * @return 名前空間の名前の一覧
      */
-    private NameSpace getNameSpace(String name) {
-        if(!nameSpaces.containsKey(name))
-            putNameSpace(new NameSpace(name));
-        return nameSpaces.get(name);
+    public Set<String> getNameSpaceNames() {
+        return Collections.unmodifiableSet(nameSpaces.keySet());
     }
     
     /**
-     * 指定した名前空間を追加する.
-     * @param ns 追加する名前空間
+     * 指定名の名前空間を取得する.存在しなければ生成する.
+     * @param name 取得する名前空間の完全名
+     * @return 取得した、あるいは生成した名前空間
      */
-    private void putNameSpace(NameSpace ns) {
-        nameSpaces.put(ns.getName(), ns);
+    private NameSpace getNameSpace(String name) {
+        if(name == null)
+            throw new IllegalArgumentException("name must not be empty");
+        return nameSpaces.computeIfAbsent(name, NameSpace::new);
     }
 }
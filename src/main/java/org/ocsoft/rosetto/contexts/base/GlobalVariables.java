@@ -4,8 +4,8 @@
 package org.ocsoft.rosetto.contexts.base;
 
 import java.io.Serializable;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.ocsoft.rosetto.models.base.elements.RosettoValue;
 import org.ocsoft.rosetto.models.system.NameSpace;
@@ -13,7 +13,8 @@ import org.ocsoft.rosetto.utils.base.Values;
 
 /**
  * Rosetto中の全てのグローバル変数を格納するコンテキスト.<br>
- * シリアライズすることでゲーム上の状態が完全に保存できるように実装する.
+ * シリアライズすることでゲーム上の状態が完全に保存できるように実装する.<br>
+ * 複数スレッドから同時に読み書きできる.
  * @author tohhy
  */
 public class GlobalVariables implements Serializable {
@@ -22,17 +23,38 @@ public class GlobalVariables implements Serializable {
     /**
      * このインスタンスが保有する全ての名前空間の一覧.
      */
-    private final Map<String, NameSpace> nameSpaces = new HashMap<String, NameSpace>();
+    private final Map<String, NameSpace> nameSpaces;
     
     /**
      * ルートの名前空間.
      */
-    private final NameSpace rootSpace = NameSpace.createRootSpace();
+    private final NameSpace rootSpace;
     
     /**
      * パッケージ内でのみ生成.
      */
-    GlobalVariables() {}
+    GlobalVariables() {
+        this(new ConcurrentHashMap<String, NameSpace>(), NameSpace.createRootSpace());
+    }
+    
+    /**
+     * 指定した名前空間の一覧とルートの名前空間で初期化する.
+     * @param nameSpaces 名前空間の一覧
+     * @param rootSpace ルートの名前空間
+     */
+    private GlobalVariables(Map<String, NameSpace> nameSpaces, NameSpace rootSpace) {
+        this.nameSpaces = nameSpaces;
+        this.rootSpace = rootSpace;
+    }
+    
+    /**
+     * 以前の形式で直列化された、並行マップを持たないインスタンスを置き換える.
+     * @return 並行マップで名前空間を保持するインスタンス
+     */
+    private Object readResolve() {
+        if(nameSpaces instanceof ConcurrentHashMap) return this;
+        return new GlobalVariables(new ConcurrentHashMap<String, NameSpace>(nameSpaces), rootSpace);
+    }
     
     /**
      * 指定したキーに存在する値を取得する.
@@ -60,8 +82,8 @@ public class GlobalVariables implements Serializable {
             throw new IllegalArgumentException("nameSpace must not be empty");
         if(varName == null || varName.length() == 0)
             throw new IllegalArgumentException("varName must not be empty");
-        if(!nameSpaces.containsKey(nameSpace)) return Values.NULL;
-        return nameSpaces.get(nameSpace).get(varName);
+        NameSpace ns = nameSpaces.get(nameSpace);
+        return (ns != null) ? ns.get(varName) : Values.NULL;
     }
     
     /**
@@ -89,9 +111,10 @@ public class GlobalVariables implements Serializable {
      * @return 取得した、あるいは生成した名前空間
      */
     public NameSpace getNameSpace(String name) {
-        if(!nameSpaces.containsKey(name))
-            createNameSpace(name);
-        return nameSpaces.get(name);
+        if(name == null)
+            throw new IllegalArgumentException("name must not be empty");
+        //生成は名前空間ごとに一度だけ行われる
+        return nameSpaces.computeIfAbsent(name, NameSpace::new);
     }
     
     /**
@@ -111,7 +134,7 @@ public class GlobalVariables implements Serializable {
      * @return 指定名のパッケージが含まれているかどうか
      */
     public boolean containsNameSpace(String name) {
-        return nameSpaces.containsKey(name);
+        return name != null && nameSpaces.containsKey(name);
     }
 
     /**
@@ -3,57 +3,44 @@
  * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
 package org.ocsoft.rosetto.contexts.base;
 
+import java.util.concurrent.ForkJoinPool;
+
 import org.ocsoft.rosetto.models.base.elements.RosettoAction;
 import org.ocsoft.rosetto.models.base.elements.RosettoValue;
 import org.ocsoft.rosetto.models.base.elements.values.LambdaFunction;
-import org.ocsoft.rosetto.models.base.elements.values.ListValue;
 import org.ocsoft.rosetto.models.base.elements.values.RosettoFunction;
 import org.ocsoft.rosetto.models.base.elements.values.ScriptValue;
 import org.ocsoft.rosetto.models.system.FunctionPackage;
 import org.ocsoft.rosetto.models.system.NameSpace;
 import org.ocsoft.rosetto.models.system.Parser;
 import org.ocsoft.rosetto.models.system.ScenarioPlayer;
-import org.ocsoft.rosetto.models.system.Scope;
-import org.ocsoft.rosetto.observers.RosettoObservatories;
+import org.ocsoft.rosetto.parsers.ScenarioCache;
 import org.ocsoft.rosetto.system.RosettoLogger;
 import org.ocsoft.rosetto.utils.base.Values;
 
 /**
  * Rosettoの実行中の状態全体を保持するコンテキスト.<br>
- * RosettoPlayerが再生にあたって必要とする情報は全てこのクラスのシングルトンインスタンスから取得される.<br>
- * このクラスのinitializeメソッドが呼び出されることでRosettoが動作可能な状態になる.
+ * RosettoPlayerが再生にあたって必要とする情報は全てこのクラスから取得される.<br>
+ * このクラスのinitializeメソッドが呼び出されることでRosettoが動作可能な状態になる.<br>
+ * 実際の状態は現在のスレッドの実行環境(RosettoRuntime.current)が保持しており、
+ * このクラスの静的メソッドはその実行環境への操作を委譲する.
  * @author tohhy
  */
 public class Rosetto {
-    /**
-     * シングルトンインスタンス.
-     */
-    private static final Rosetto instance = new Rosetto();
-    
-    /**
-     * 全てのグローバル変数を保持するインスタンス.
-     */
-    private GlobalVariables globalVars;
-    
-    /**
-     * すべての関数を保持するインスタンス.
-     */
-    private ActionContext actions;
     
     /**
-     * Rosettoのシステム状態を保持するインスタンス.
+     * コンストラクタは非公開.
      */
-    private SystemContext system;
+    private Rosetto() {}
     
     /**
-     * 初期化が済んでいるかどうか.
+     * 現在のスレッドで使われる実行環境を返す.<br>
+     * RosettoRuntime.enterで結びつけた実行環境がなければデフォルトの実行環境が返る.
+     * @return 現在のスレッドで使われる実行環境
      */
-    private boolean isInitialized = false;
-    
-    /**
-     * コンストラクタは非公開.
-     */
-    private Rosetto() {}
+    public static RosettoRuntime getRuntime() {
+        return RosettoRuntime.current();
+    }
     
     /**
      * 指定したコンテキストを用いてContextsを初期化し、使用可能な状態にする.<br>
@@ -62,14 +49,12 @@ public class Rosetto {
      */
     public static void initialize(GlobalVariables global, 
             ActionContext actions, SystemContext system) {
-        if(instance.isInitialized)
+        RosettoRuntime runtime = RosettoRuntime.current();
+        if(runtime.isInitialized())
             throw new IllegalStateException("Contexts already initialized");
         RosettoLogger.resetExceptionLogLevel();
         RosettoLogger.resetLevel();
-        instance.globalVars = (global != null) ? global : new GlobalVariables();
-        instance.actions = (actions != null) ? actions : new ActionContext();
-        instance.system = (system != null) ? system : new SystemContext();
-        instance.isInitialized = true;
+        runtime.initialize(global, actions, system);
     }
     
     /**
@@ -84,11 +69,7 @@ public class Rosetto {
      * Contextsを破棄して使用不可能な状態にする.
      */
     public static void dispose() {
-        instance.globalVars = null;
-        instance.actions = null;
-        instance.system = null;
-        instance.isInitialized = false;
-        RosettoObservatories.clear();
+        RosettoRuntime.current().dispose();
     }
     
     /**
@@ -96,15 +77,7 @@ public class Rosetto {
      * @return Contextsが初期化されて使用可能な状態にあるかどうか
      */
     public static boolean isInitialized() {
-        return instance.isInitialized;
-    }
-    
-    /**
-     * 初期化済みでない場合にIllegalStateExceptionを投げる.
-     */
-    private static void initializedCheck() {
-        if(!instance.isInitialized)
-            throw new IllegalStateException("Contexts not initialized yet");
+        return RosettoRuntime.current().isInitialized();
     }
     
     /**
@@ -113,9 +86,7 @@ public class Rosetto {
      * @return 取得した値、変数が存在しなければnull
      */
     public static RosettoValue get(String key) {
-        initializedCheck();
-        if(key == null) return Values.NULL;
-        return instance.globalVars.get(key);
+        return RosettoRuntime.current().get(key);
     }
     
     /**
@@ -124,20 +95,7 @@ public class Rosetto {
      * @param value 設定する値
      */
     public static void define(String key, RosettoValue value) {
-        initializedCheck();
-        if(key == null || key.length() == 0)
-            throw new IllegalArgumentException("key must not be empty");
-        if(key.endsWith("."))
-            throw new IllegalArgumentException("name must not end with dot");
-        
-        int lastDotIndex = key.lastIndexOf(".");
-        if(lastDotIndex > 0) {
-            String packageName = key.substring(0, lastDotIndex);
-            NameSpace ns = instance.globalVars.getNameSpace(packageName);
-            ns.define(key.substring(lastDotIndex+1), value);
-        } else {
-            instance.globalVars.define(key, value);
-        }
+        RosettoRuntime.current().define(key, value);
     }
     
     /**
@@ -193,7 +151,15 @@ public class Rosetto {
      * @return 取得したアクション. アクションが存在しなければValues.NULL
      */
     public static RosettoAction getAction(String key) {
-        return instance.actions.get(key);
+        return RosettoRuntime.current().getAction(key);
+    }
+    
+    /**
+     * このContextが保持するアクションコンテキストのインスタンスを取得する.
+     * @return このContextが保持するアクションコンテキストのインスタンス
+     */
+    public static ActionContext getActionContext() {
+        return RosettoRuntime.current().getActionContext();
     }
     
     /**
@@ -202,8 +168,7 @@ public class Rosetto {
      * @param func アクションコンテキストに追加する関数
      */
     public static void defineFunction(String name, LambdaFunction func) {
-        initializedCheck();
-        instance.actions.defineAction(name, func);
+        RosettoRuntime.current().defineFunction(name, func);
     }
     
     /**
@@ -212,8 +177,7 @@ public class Rosetto {
      * @param func アクションコンテキストに追加する関数
      */
     public static void defineFunction(RosettoFunction func) {
-        initializedCheck();
-        instance.actions.defineAction(func.getName(), func);
+        RosettoRuntime.current().defineFunction(func);
     }
     
     /**
@@ -222,14 +186,7 @@ public class Rosetto {
      * @param macro 追加するマクロ
      */
     public static void defineMacro(String name, RosettoValue args, final ScriptValue macro) {
-        initializedCheck();
-        instance.actions.defineAction(name, new LambdaFunction(args) {
-            private static final long serialVersionUID = 1020313832990079692L;
-            @Override
-            protected RosettoValue run(Scope scope, ListValue rawArgs) {
-                return macro.evaluate(scope);
-            }
-        });
+        RosettoRuntime.current().defineMacro(name, args, macro);
     }
     
     /**
@@ -238,8 +195,7 @@ public class Rosetto {
      * @param packageName 読み込んだ関数パッケージにつける名称
      */
     public static void importPackage(FunctionPackage p, String packageName) {
-        initializedCheck();
-        instance.actions.importPackage(p, packageName);
+        RosettoRuntime.current().importPackage(p, packageName);
     }
     
     /**
@@ -247,8 +203,7 @@ public class Rosetto {
      * @param packageName 読み込むパッケージの名称
      */
     public static void usePackage(String packageName) {
-        initializedCheck();
-        instance.actions.usePackage(packageName);
+        RosettoRuntime.current().usePackage(packageName);
     }
     
     /**
@@ -258,7 +213,7 @@ public class Rosetto {
      * @return 取得した名前空間
      */
     public static NameSpace getNameSpace(String name) {
-        return instance.globalVars.getNameSpace(name);
+        return RosettoRuntime.current().getNameSpace(name);
     }
 
     /**
@@ -266,8 +221,7 @@ public class Rosetto {
      * @return このContextが保持する名前空間全体のインスタンス
      */
     public static GlobalVariables getVariableContext() {
-        initializedCheck();
-        return instance.globalVars;
+        return RosettoRuntime.current().getVariableContext();
     }
     
     /**
@@ -277,10 +231,7 @@ public class Rosetto {
      * @param variableContext 新しく指定する名前空間全体のインスタンス
      */
     public static void setVariableContext(GlobalVariables variableContext) {
-        initializedCheck();
-        if(variableContext == null)
-            throw new IllegalArgumentException("wholespace must not be null");
-        instance.globalVars = variableContext;
+        RosettoRuntime.current().setVariableContext(variableContext);
     }
     
     /**
@@ -288,8 +239,7 @@ public class Rosetto {
      * @return 現在のコンテキストで利用するパーサー
      */
     public static Parser getParser() {
-        initializedCheck();
-        return instance.system.getParser();
+        return RosettoRuntime.current().getParser();
     }
     
     /**
@@ -297,8 +247,15 @@ public class Rosetto {
      * @param parser 現在のコンテキストで利用するパーサー
      */
     public static void setParser(Parser parser) {
-        initializedCheck();
-        instance.system.setParser(parser);
+        RosettoRuntime.current().setParser(parser);
+    }
+    
+    /**
+     * 現在のコンテキストでスクリプトのパース結果を保持するキャッシュを取得する.
+     * @return 現在のコンテキストで利用するシナリオキャッシュ
+     */
+    public static ScenarioCache getScenarioCache() {
+        return RosettoRuntime.current().getScenarioCache();
     }
     
     /**
@@ -306,8 +263,7 @@ public class Rosetto {
      * @return 現在のコンテキストで利用するシナリオプレイヤー
      */
     public static ScenarioPlayer getPlayer() {
-        initializedCheck();
-        return instance.system.getPlayer();
+        return RosettoRuntime.current().getPlayer();
     }
     
     /**
@@ -315,9 +271,24 @@ public class Rosetto {
      * @param player 現在のコンテキストで利用するシナリオプレイヤー
      */
     public static void setPlayer(ScenarioPlayer player) {
-        initializedCheck();
-        instance.system.setPlayer(player);
+        RosettoRuntime.current().setPlayer(player);
     }
     
+    /**
+     * 現在のコンテキストで並列実行に利用するスレッドプールを取得する.
+     * @return 現在のコンテキストで並列実行に利用するスレッドプール
+     */
+    public static ForkJoinPool getForkJoinPool() {
+        return RosettoRuntime.current().getForkJoinPool();
+    }
+    
+    /**
+     * 現在のコンテキストで並列実行に利用するスレッドプールを変更する.<br>
+     * 初期状態ではForkJoinPool.commonPool()が使われる.
+     * @param pool 現在のコンテキストで並列実行に利用するスレッドプール
+     */
+    public static void setForkJoinPool(ForkJoinPool pool) {
+        RosettoRuntime.current().setForkJoinPool(pool);
+    }
 
 }
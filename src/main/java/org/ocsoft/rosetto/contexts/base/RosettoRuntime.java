@@ -0,0 +1,440 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package org.ocsoft.rosetto.contexts.base;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.ocsoft.rosetto.models.base.elements.RosettoAction;
+import org.ocsoft.rosetto.models.base.elements.RosettoValue;
+import org.ocsoft.rosetto.models.base.elements.values.LambdaFunction;
+import org.ocsoft.rosetto.models.base.elements.values.ListValue;
+import org.ocsoft.rosetto.models.base.elements.values.RosettoFunction;
+import org.ocsoft.rosetto.models.base.elements.values.ScriptValue;
+import org.ocsoft.rosetto.models.system.FunctionPackage;
+import org.ocsoft.rosetto.models.system.NameSpace;
+import org.ocsoft.rosetto.models.system.Parser;
+import org.ocsoft.rosetto.models.system.ScenarioPlayer;
+import org.ocsoft.rosetto.models.system.Scope;
+import org.ocsoft.rosetto.observers.RosettoObservatories;
+import org.ocsoft.rosetto.parsers.ScenarioCache;
+import org.ocsoft.rosetto.utils.base.Values;
+
+/**
+ * 独立したRosettoの実行環境.<br>
+ * グローバル変数・アクション・システム状態とオブザーバを自身で保持し、他の実行環境とは状態を共有しない.<br>
+ * 1つのJVM上で複数のスクリプトセッションを動かす場合はセッションごとに生成し、
+ * enter・run・callで実行中のスレッドに結びつけてから評価する.
+ * スレッドに結びついている間は静的なRosettoの操作は全てその実行環境に対して行われる.
+ * 結びついていないスレッドではデフォルトの実行環境が使われる.
+ * @author tohhy
+ */
+public class RosettoRuntime {
+    /**
+     * 実行環境が結びつけられていないスレッドで使われる実行環境.
+     */
+    private static final RosettoRuntime defaultRuntime = new RosettoRuntime();
+    
+    /**
+     * スレッドに結びつけられた実行環境.
+     */
+    private static final ThreadLocal<RosettoRuntime> bound = new ThreadLocal<RosettoRuntime>();
+    
+    /**
+     * 実行環境が結びつけられているスレッドの数.
+     * 0であればThreadLocalを参照せずにデフォルトの実行環境を返す.
+     */
+    private static final AtomicInteger boundCount = new AtomicInteger();
+    
+    /**
+     * 全てのグローバル変数を保持するインスタンス.
+     */
+    private volatile GlobalVariables globalVars;
+    
+    /**
+     * すべての関数を保持するインスタンス.
+     */
+    private volatile ActionContext actions;
+    
+    /**
+     * Rosettoのシステム状態を保持するインスタンス.
+     */
+    private volatile SystemContext system;
+    
+    /**
+     * この実行環境のオブザーバ.
+     */
+    private volatile RosettoObservatories observatories = new RosettoObservatories();
+    
+    /**
+     * 初期化が済んでいるかどうか.
+     */
+    private volatile boolean isInitialized = false;
+    
+    /**
+     * 未初期化の実行環境を生成する.
+     * 使用する前にinitializeを呼ぶ必要がある.
+     */
+    public RosettoRuntime() {}
+    
+    /**
+     * 現在のスレッドで使われる実行環境を返す.<br>
+     * スレッドに結びつけられた実行環境があればそれを、なければデフォルトの実行環境を返す.
+     * @return 現在のスレッドで使われる実行環境
+     */
+    public static RosettoRuntime current() {
+        if(boundCount.get() == 0) return defaultRuntime;
+        RosettoRuntime runtime = bound.get();
+        return (runtime != null) ? runtime : defaultRuntime;
+    }
+    
+    /**
+     * 実行環境が結びつけられていないスレッドで使われる実行環境を返す.
+     * @return デフォルトの実行環境
+     */
+    public static RosettoRuntime getDefault() {
+        return defaultRuntime;
+    }
+    
+    /**
+     * この実行環境を現在のスレッドに結びつける.<br>
+     * 返り値のcloseを呼ぶと、結びつける前の状態に戻る.入れ子にして呼び出してもよい.
+     * @return 結びつけを解除するためのハンドル
+     */
+    public Binding enter() {
+        RosettoRuntime previous = bound.get();
+        bound.set(this);
+        if(previous == null) boundCount.incrementAndGet();
+        return new Binding(previous);
+    }
+    
+    /**
+     * この実行環境を現在のスレッドに結びつけて指定した処理を実行する.
+     * @param task 実行する処理
+     */
+    public void run(Runnable task) {
+        Binding b = enter();
+        try {
+            task.run();
+        } finally {
+            b.close();
+        }
+    }
+    
+    /**
+     * この実行環境を現在のスレッドに結びつけて指定した処理を実行し、その結果を返す.
+     * @param task 実行する処理
+     * @return 処理の結果
+     * @throws Exception 処理が送出した例外
+     */
+    public <T> T call(Callable<T> task) throws Exception {
+        Binding b = enter();
+        try {
+            return task.call();
+        } finally {
+            b.close();
+        }
+    }
+    
+    /**
+     * 指定したコンテキストを用いてこの実行環境を初期化し、使用可能な状態にする.<br>
+     * nullを指定したコンテキストはデフォルトの設定で初期化される.
+     * @throws IllegalStateException すでに初期化されている場合
+     */
+    public synchronized void initialize(GlobalVariables global, 
+            ActionContext actions, SystemContext system) {
+        if(isInitialized)
+            throw new IllegalStateException("Contexts already initialized");
+        this.globalVars = (global != null) ? global : new GlobalVariables();
+        this.actions = (actions != null) ? actions : new ActionContext();
+        this.system = (system != null) ? system : new SystemContext();
+        this.isInitialized = true;
+    }
+    
+    /**
+     * この実行環境を初期化して使用可能な状態にする.
+     * @throws IllegalStateException すでに初期化されている場合
+     */
+    public void initialize() {
+        initialize(null, null, null);
+    }
+    
+    /**
+     * この実行環境を破棄して使用不可能な状態にする.
+     * オブザーバも全て取り除かれる.
+     */
+    public synchronized void dispose() {
+        this.globalVars = null;
+        this.actions = null;
+        this.system = null;
+        this.isInitialized = false;
+        clearObservatories();
+    }
+    
+    /**
+     * この実行環境が初期化されて使用可能な状態にあるかどうかを返す.
+     * @return 初期化されて使用可能な状態にあるかどうか
+     */
+    public boolean isInitialized() {
+        return isInitialized;
+    }
+    
+    /**
+     * 初期化済みでない場合にIllegalStateExceptionを投げる.
+     */
+    private void initializedCheck() {
+        if(!isInitialized)
+            throw new IllegalStateException("Contexts not initialized yet");
+    }
+    
+    /**
+     * この実行環境のオブザーバを返す.
+     * @return この実行環境のオブザーバ
+     */
+    public RosettoObservatories getObservatories() {
+        return observatories;
+    }
+    
+    /**
+     * この実行環境のオブザーバを全て取り除く.
+     */
+    public void clearObservatories() {
+        RosettoObservatories old = this.observatories;
+        this.observatories = new RosettoObservatories();
+        old.dispose();
+    }
+    
+    /**
+     * 指定したグローバル変数に保存されている値を取得する.
+     * @param key 値を取得する変数名
+     * @return 取得した値、変数が存在しなければnull
+     */
+    public RosettoValue get(String key) {
+        initializedCheck();
+        if(key == null) return Values.NULL;
+        return globalVars.get(key);
+    }
+    
+    /**
+     * 指定したグローバル変数に指定した値を設定する.
+     * @param key 値を設定する変数名
+     * @param value 設定する値
+     */
+    public void define(String key, RosettoValue value) {
+        initializedCheck();
+        if(key == null || key.length() == 0)
+            throw new IllegalArgumentException("key must not be empty");
+        if(key.endsWith("."))
+            throw new IllegalArgumentException("name must not end with dot");
+        
+        int lastDotIndex = key.lastIndexOf(".");
+        if(lastDotIndex > 0) {
+            String packageName = key.substring(0, lastDotIndex);
+            NameSpace ns = globalVars.getNameSpace(packageName);
+            ns.define(key.substring(lastDotIndex+1), value);
+        } else {
+            globalVars.define(key, value);
+        }
+    }
+    
+    /**
+     * アクションコンテキストから指定名のアクションを取得する.<br>
+     * 指定名のアクションが存在しない場合はValues.NULLが返る.
+     * @param key 値を取得する変数名
+     * @return 取得したアクション. アクションが存在しなければValues.NULL
+     */
+    public RosettoAction getAction(String key) {
+        return actions.get(key);
+    }
+    
+    /**
+     * この実行環境が保持するアクションコンテキストのインスタンスを取得する.
+     * @return この実行環境が保持するアクションコンテキストのインスタンス
+     */
+    public ActionContext getActionContext() {
+        initializedCheck();
+        return actions;
+    }
+    
+    /**
+     * 指定した無名関数を指定名でアクションコンテキストに追加する.
+     * @param name 追加する関数の名称
+     * @param func アクションコンテキストに追加する関数
+     */
+    public void defineFunction(String name, LambdaFunction func) {
+        initializedCheck();
+        actions.defineAction(name, func);
+    }
+    
+    /**
+     * 指定した関数をアクションコンテキストに追加する.
+     * @param func アクションコンテキストに追加する関数
+     */
+    public void defineFunction(RosettoFunction func) {
+        initializedCheck();
+        actions.defineAction(func.getName(), func);
+    }
+    
+    /**
+     * 指定したマクロをアクションコンテキストに追加する.
+     * @param name 追加するマクロの名称
+     * @param macro 追加するマクロ
+     */
+    public void defineMacro(String name, RosettoValue args, final ScriptValue macro) {
+        initializedCheck();
+        actions.defineAction(name, new LambdaFunction(args) {
+            private static final long serialVersionUID = 1020313832990079692L;
+            @Override
+            protected RosettoValue run(Scope scope, ListValue rawArgs) {
+                return macro.evaluate(scope);
+            }
+        });
+    }
+    
+    /**
+     * 指定した関数パッケージを読み込み、絶対参照で呼び出せるようにする.
+     * @param p 読み込む関数パッケージ
+     * @param packageName 読み込んだ関数パッケージにつける名称
+     */
+    public void importPackage(FunctionPackage p, String packageName) {
+        initializedCheck();
+        actions.importPackage(p, packageName);
+    }
+    
+    /**
+     * 指定した関数パッケージを関数コンテキストに読み込み、含まれる関数をすべて直接参照可能にする.
+     * @param packageName 読み込むパッケージの名称
+     */
+    public void usePackage(String packageName) {
+        initializedCheck();
+        actions.usePackage(packageName);
+    }
+    
+    /**
+     * 指定名の名前空間を取得する.<br>
+     * コンテキスト中に指定名の名前空間がまだ存在しない場合は生成して返す.
+     * @param name 取得する名前空間
+     * @return 取得した名前空間
+     */
+    public NameSpace getNameSpace(String name) {
+        return globalVars.getNameSpace(name);
+    }
+    
+    /**
+     * この実行環境が保持する名前空間全体のインスタンスを取得する.
+     * @return この実行環境が保持する名前空間全体のインスタンス
+     */
+    public GlobalVariables getVariableContext() {
+        initializedCheck();
+        return globalVars;
+    }
+    
+    /**
+     * この実行環境が保持する名前空間全体のインスタンスを指定したインスタンスに入れ替える.
+     * @param variableContext 新しく指定する名前空間全体のインスタンス
+     */
+    public void setVariableContext(GlobalVariables variableContext) {
+        initializedCheck();
+        if(variableContext == null)
+            throw new IllegalArgumentException("wholespace must not be null");
+        this.globalVars = variableContext;
+    }
+    
+    /**
+     * この実行環境で利用するパーサーを取得する.
+     * @return この実行環境で利用するパーサー
+     */
+    public Parser getParser() {
+        initializedCheck();
+        return system.getParser();
+    }
+    
+    /**
+     * この実行環境で利用するパーサーを変更する.
+     * @param parser この実行環境で利用するパーサー
+     */
+    public void setParser(Parser parser) {
+        initializedCheck();
+        system.setParser(parser);
+    }
+    
+    /**
+     * この実行環境でスクリプトのパース結果を保持するキャッシュを取得する.
+     * @return この実行環境で利用するシナリオキャッシュ
+     */
+    public ScenarioCache getScenarioCache() {
+        initializedCheck();
+        return system.getScenarioCache();
+    }
+    
+    /**
+     * この実行環境で利用するシナリオプレイヤーを取得する.
+     * @return この実行環境で利用するシナリオプレイヤー
+     */
+    public ScenarioPlayer getPlayer() {
+        initializedCheck();
+        return system.getPlayer();
+    }
+    
+    /**
+     * この実行環境で利用するシナリオプレイヤーを変更する.
+     * @param player この実行環境で利用するシナリオプレイヤー
+     */
+    public void setPlayer(ScenarioPlayer player) {
+        initializedCheck();
+        system.setPlayer(player);
+    }
+    
+    /**
+     * この実行環境で並列実行に利用するスレッドプールを取得する.
+     * @return この実行環境で並列実行に利用するスレッドプール
+     */
+    public ForkJoinPool getForkJoinPool() {
+        initializedCheck();
+        return system.getForkJoinPool();
+    }
+    
+    /**
+     * この実行環境で並列実行に利用するスレッドプールを変更する.
+     * @param pool この実行環境で並列実行に利用するスレッドプール
+     */
+    public void setForkJoinPool(ForkJoinPool pool) {
+        initializedCheck();
+        system.setForkJoinPool(pool);
+    }
+    
+    /**
+     * 実行環境とスレッドの結びつけを解除するためのハンドル.
+     * try-with-resources文で用いることを想定している.
+     */
+    public static final class Binding implements AutoCloseable {
+        /**
+         * 結びつける前にスレッドに結びついていた実行環境.
+         */
+        private final RosettoRuntime previous;
+        
+        private boolean closed;
+        
+        private Binding(RosettoRuntime previous) {
+            this.previous = previous;
+        }
+        
+        /**
+         * スレッドを結びつける前の状態に戻す.
+         * 結びつけたスレッドと同じスレッドから呼ぶ必要がある.二度目以降の呼び出しは何もしない.
+         */
+        @Override
+        public void close() {
+            if(closed) return;
+            closed = true;
+            if(previous != null) {
+                bound.set(previous);
+            } else {
+                bound.remove();
+                boundCount.decrementAndGet();
+            }
+        }
+    }
+}
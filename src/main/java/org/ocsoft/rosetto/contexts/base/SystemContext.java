@@ -3,8 +3,11 @@
  * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
 package org.ocsoft.rosetto.contexts.base;
 
+import java.util.concurrent.ForkJoinPool;
+
 import org.ocsoft.rosetto.models.system.Parser;
 import org.ocsoft.rosetto.models.system.ScenarioPlayer;
+import org.ocsoft.rosetto.parsers.ScenarioCache;
 import org.ocsoft.rosetto.parsers.rosetto.RosettoParser;
 
 /**
@@ -23,6 +26,16 @@ public class SystemContext {
      */
     private ScenarioPlayer player;
     
+    /**
+     * マクロ等のスクリプトのパース結果を保持するキャッシュ.
+     */
+    private final ScenarioCache scenarioCache = new ScenarioCache();
+    
+    /**
+     * pmapなどの並列実行に使用されるスレッドプール.
+     */
+    private ForkJoinPool forkJoinPool = ForkJoinPool.commonPool();
+    
     /**
      * パッケージ内でのみ生成.
      */
@@ -42,6 +55,16 @@ public class SystemContext {
      */
     public void setParser(Parser parser) {
         this.parser = parser;
+        //以前のパーサーによるパース結果は使えない
+        scenarioCache.clear();
+    }
+    
+    /**
+     * スクリプトのパース結果を保持するキャッシュを取得する.
+     * @return スクリプトのパース結果を保持するキャッシュ
+     */
+    public ScenarioCache getScenarioCache() {
+        return scenarioCache;
     }
     
     /**
@@ -59,4 +82,22 @@ public class SystemContext {
     public void setPlayer(ScenarioPlayer player) {
         this.player = player;
     }
+    
+    /**
+     * 並列実行に利用するスレッドプールを取得する.
+     * @return 並列実行に利用するスレッドプール
+     */
+    public ForkJoinPool getForkJoinPool() {
+        return forkJoinPool;
+    }
+    
+    /**
+     * 並列実行に利用するスレッドプールを指定する.
+     * @param forkJoinPool 並列実行に利用するスレッドプール
+     */
+    public void setForkJoinPool(ForkJoinPool forkJoinPool) {
+        if(forkJoinPool == null)
+            throw new IllegalArgumentException("forkJoinPool must not be null");
+        this.forkJoinPool = forkJoinPool;
+    }
 }
@@ -5,10 +5,9 @@ package org.ocsoft.rosetto.functions.base;
 
 import org.ocsoft.rosetto.models.base.elements.RosettoValue;
 import org.ocsoft.rosetto.models.base.elements.ValueType;
-import org.ocsoft.rosetto.models.base.elements.values.ListValue;
+import org.ocsoft.rosetto.models.base.elements.values.PrimitiveFunction;
 import org.ocsoft.rosetto.models.base.elements.values.RosettoFunction;
 import org.ocsoft.rosetto.models.system.FunctionPackage;
-import org.ocsoft.rosetto.models.system.Scope;
 import org.ocsoft.rosetto.system.exceptions.UnExpectedTypeValueException;
 import org.ocsoft.rosetto.utils.base.Values;
 
@@ -42,156 +41,67 @@ public class ArithmeticFunctions extends FunctionPackage {
               eq, lt, gt, leq, geq);
     }
     
-    public static final RosettoFunction plus = new RosettoFunction("+", 
-            "*nums") {
+    public static final RosettoFunction plus = new Fold("+", true) {
         private static final long serialVersionUID = -411581748747383868L;
         
         @Override
-        protected RosettoValue run(Scope scope, ListValue rawArgs) {
-            long l = 0;
-            double d = 0.0;
-            boolean isDouble = false;
-            RosettoValue nums = scope.get("nums");
-            while(true) {
-                RosettoValue num = nums.first();
-                if(num.getType() == ValueType.DOUBLE) {
-                    //double値が入れば以降の計算はすべてdouble
-                    isDouble = true;
-                    d += l;
-                    l = 0;
-                    d += num.asDouble();
-                } else if(num.getType() == ValueType.INTEGER) {
-                    if(isDouble) {
-                        d += num.asDouble();
-                    } else {
-                        l += num.asLong();
-                    }
-                } else {
-                    throw new UnExpectedTypeValueException();
-                }
-                nums = nums.rest();
-                if(nums.getType() == ValueType.NULL) break;
-            }
-            return isDouble ? Values.create(d) : Values.create(l);
+        protected long applyLong(long x, long y) {
+            return x + y;
+        }
+        
+        @Override
+        protected double applyDouble(double x, double y) {
+            return x + y;
         }
     };
     
-    public static final RosettoFunction minus = new RosettoFunction("-", 
-            "*nums") {
+    public static final RosettoFunction minus = new Fold("-", false) {
         private static final long serialVersionUID = -411581748747383868L;
         
         @Override
-        protected RosettoValue run(Scope scope, ListValue rawArgs) {
-            long l = 0;
-            double d = 0.0;
-            boolean isDouble = false;
-            boolean isFirstItem = true;
-            RosettoValue nums = scope.get("nums");
-            while(true) {
-                RosettoValue num = nums.first();
-                if(num.getType() == ValueType.DOUBLE) {
-                    //double値が入れば以降の計算はすべてdouble
-                    isDouble = true;
-                    d += l;
-                    l = 0;
-                    d = (isFirstItem) ? num.asDouble() : d-num.asDouble();
-                } else if(num.getType() == ValueType.INTEGER) {
-                    if(isDouble) {
-                        d = d-num.asDouble();
-                    } else {
-                        l = (isFirstItem) ? num.asLong() : l-num.asLong();
-                    }
-                } else {
-                    throw new UnExpectedTypeValueException();
-                }
-                isFirstItem = false;
-                nums = nums.rest();
-                if(nums.getType() == ValueType.NULL) break;
-            }
-            return isDouble ? Values.create(d) : Values.create(l);
+        protected long applyLong(long x, long y) {
+            return x - y;
+        }
+        
+        @Override
+        protected double applyDouble(double x, double y) {
+            return x - y;
         }
     };
     
-    public static final RosettoFunction multiple = new RosettoFunction("*", 
-            "*nums") {
+    public static final RosettoFunction multiple = new Fold("*", false) {
         private static final long serialVersionUID = -411581748747383868L;
         
         @Override
-        protected RosettoValue run(Scope scope, ListValue rawArgs) {
-            long l = 0;
-            double d = 0.0;
-            boolean isDouble = false;
-            boolean isFirstItem = true;
-            RosettoValue nums = scope.get("nums");
-            while(true) {
-                RosettoValue num = nums.first();
-                if(num.getType() == ValueType.DOUBLE) {
-                    //double値が入れば以降の計算はすべてdouble
-                    isDouble = true;
-                    d += l;
-                    l = 0;
-                    d = (isFirstItem) ? num.asDouble() : d*num.asDouble();
-                } else if(num.getType() == ValueType.INTEGER) {
-                    if(isDouble) {
-                        d = d*num.asDouble();
-                    } else {
-                        l = (isFirstItem) ? num.asLong() : l*num.asLong();
-                    }
-                } else {
-                    throw new UnExpectedTypeValueException();
-                }
-                isFirstItem = false;
-                nums = nums.rest();
-                if(nums.getType() == ValueType.NULL) break;
-            }
-            return isDouble ? Values.create(d) : Values.create(l);
+        protected long applyLong(long x, long y) {
+            return x * y;
+        }
+        
+        @Override
+        protected double applyDouble(double x, double y) {
+            return x * y;
         }
     };
     
-    public static final RosettoFunction division = new RosettoFunction("/", 
-            "*nums") {
+    public static final RosettoFunction division = new Fold("/", false) {
         private static final long serialVersionUID = -411581748747383868L;
         
         @Override
-        protected RosettoValue run(Scope scope, ListValue rawArgs) {
-            long l = 0;
-            double d = 0.0;
-            boolean isDouble = false;
-            boolean isFirstItem = true;
-            RosettoValue nums = scope.get("nums");
-            while(true) {
-                RosettoValue num = nums.first();
-                if(num.getType() == ValueType.DOUBLE) {
-                    //double値が入れば以降の計算はすべてdouble
-                    isDouble = true;
-                    d += l;
-                    l = 0;
-                    d = (isFirstItem) ? num.asDouble() : d/num.asDouble();
-                } else if(num.getType() == ValueType.INTEGER) {
-                    if(isDouble) {
-                        d = d/num.asDouble();
-                    } else {
-                        l = (isFirstItem) ? num.asLong() : l/num.asLong();
-                    }
-                } else {
-                    throw new UnExpectedTypeValueException();
-                }
-                isFirstItem = false;
-                nums = nums.rest();
-                if(nums.getType() == ValueType.NULL) break;
-            }
-            return isDouble ? Values.create(d) : Values.create(l);
+        protected long applyLong(long x, long y) {
+            return x / y;
+        }
+        
+        @Override
+        protected double applyDouble(double x, double y) {
+            return x / y;
         }
     };
     
-    public static final RosettoFunction mod = new RosettoFunction("mod", 
-            "x", "y") {
+    public static final RosettoFunction mod = new Binary("mod") {
         private static final long serialVersionUID = -411581748747383868L;
         
         @Override
-        protected RosettoValue run(Scope scope, ListValue rawArgs) {
-            RosettoValue x = scope.get("x");
-            RosettoValue y = scope.get("y");
+        protected RosettoValue apply(RosettoValue x, RosettoValue y) {
             if(x.getType() == ValueType.DOUBLE || y.getType() == ValueType.DOUBLE) {
                 return Values.create(x.asDouble() % y.asDouble());
             }
@@ -200,19 +110,15 @@ public class ArithmeticFunctions extends FunctionPackage {
     };
     
     
-    public static final RosettoFunction eq = new RosettoFunction("eq?", 
-            "x", "y") {
+    public static final RosettoFunction eq = new Binary("eq?") {
         private static final long serialVersionUID = -411581748747383868L;
         
         @Override
-        protected RosettoValue run(Scope scope, ListValue rawArgs) {
-            RosettoValue x = scope.get("x");
-            RosettoValue y = scope.get("y");
+        protected RosettoValue apply(RosettoValue x, RosettoValue y) {
             boolean result = false;
-            if((x.getType() == ValueType.INTEGER || x.getType() == ValueType.DOUBLE) &&
-               (y.getType() == ValueType.INTEGER || y.getType() == ValueType.DOUBLE)) {
+            if(isNumber(x) && isNumber(y)) {
                 //数値比較の場合はdoubleで比較
-                result = scope.get("x").asDouble() == scope.get("y").asDouble();
+                result = x.asDouble() == y.asDouble();
             } else {
                 //それ以外は文字列表現で比較
                 result = x.asString().equals(y.asString());
@@ -221,44 +127,142 @@ public class ArithmeticFunctions extends FunctionPackage {
         }
     };
     
-    public static final RosettoFunction lt = new RosettoFunction("<", 
-            "x", "y") {
+    public static final RosettoFunction lt = new Binary("<") {
         private static final long serialVersionUID = -411581748747383868L;
         
         @Override
-        protected RosettoValue run(Scope scope, ListValue rawArgs) {
-            return Values.create(scope.get("x").asDouble() < scope.get("y").asDouble());
+        protected RosettoValue apply(RosettoValue x, RosettoValue y) {
+            return Values.create(x.asDouble() < y.asDouble());
         }
     };
     
-    public static final RosettoFunction gt = new RosettoFunction(">", 
-            "x", "y") {
+    public static final RosettoFunction gt = new Binary(">") {
         private static final long serialVersionUID = -411581748747383868L;
         
         @Override
-        protected RosettoValue run(Scope scope, ListValue rawArgs) {
-            return Values.create(scope.get("x").asDouble() > scope.get("y").asDouble());
+        protected RosettoValue apply(RosettoValue x, RosettoValue y) {
+            return Values.create(x.asDouble() > y.asDouble());
         }
     };
     
-    public static final RosettoFunction leq = new RosettoFunction("leq?", 
-            "x", "y") {
+    public static final RosettoFunction leq = new Binary("leq?") {
         private static final long serialVersionUID = -411581748747383868L;
         
         @Override
-        protected RosettoValue run(Scope scope, ListValue rawArgs) {
-            return Values.create(scope.get("x").asDouble() <= scope.get("y").asDouble());
+        protected RosettoValue apply(RosettoValue x, RosettoValue y) {
+            return Values.create(x.asDouble() <= y.asDouble());
         }
     };
     
-    public static final RosettoFunction geq = new RosettoFunction("geq?", 
-            "x", "y") {
+    public static final RosettoFunction geq = new Binary("geq?") {
         private static final long serialVersionUID = -411581748747383868L;
         
         @Override
-        protected RosettoValue run(Scope scope, ListValue rawArgs) {
-            return Values.create(scope.get("x").asDouble() >= scope.get("y").asDouble());
+        protected RosettoValue apply(RosettoValue x, RosettoValue y) {
+            return Values.create(x.asDouble() >= y.asDouble());
         }
     };
+    
+    /**
+     * 指定した値が整数値あるいはdouble値かどうかを返す.
+     */
+    private static boolean isNumber(RosettoValue v) {
+        ValueType type = v.getType();
+        return type == ValueType.INTEGER || type == ValueType.DOUBLE;
+    }
+    
+    /**
+     * 可変長の数値を左から順に畳み込む四則演算.<br>
+     * 整数値のみであればlongで計算し、double値が現れた時点でそれまでの結果をdoubleに変換して
+     * 以降はすべてdoubleで計算する.数値以外が含まれていればUnExpectedTypeValueExceptionになる.
+     */
+    private static abstract class Fold extends PrimitiveFunction {
+        private static final long serialVersionUID = 6361431370640049536L;
+        
+        /**
+         * 0を初期値として最初の値から演算を適用するかどうか.
+         * falseなら最初の値をそのまま初期値とする.
+         */
+        private final boolean fromZero;
+        
+        Fold(String name, boolean fromZero) {
+            super(name, "*nums");
+            this.fromZero = fromZero;
+        }
+        
+        /**
+         * 整数値同士の演算.
+         */
+        protected abstract long applyLong(long x, long y);
+        
+        /**
+         * double値同士の演算.
+         */
+        protected abstract double applyDouble(double x, double y);
+        
+        @Override
+        protected RosettoValue apply(RosettoValue x, RosettoValue y) {
+            ValueType tx = x.getType();
+            ValueType ty = y.getType();
+            if(tx == ValueType.INTEGER && ty == ValueType.INTEGER) {
+                long l = x.asLong();
+                if(fromZero) l = applyLong(0, l);
+                return Values.create(applyLong(l, y.asLong()));
+            }
+            if(!isNumber(x) || !isNumber(y)) throw new UnExpectedTypeValueException();
+            double d = x.asDouble();
+            if(fromZero) d = applyDouble(0.0, d);
+            //double値が現れると整数部の結果が足し込まれるため、負のゼロは正のゼロになる
+            if(ty == ValueType.DOUBLE) d += 0L;
+            return Values.create(applyDouble(d, y.asDouble()));
+        }
+        
+        @Override
+        protected RosettoValue apply(RosettoValue[] nums) {
+            long l = 0;
+            double d = 0.0;
+            boolean isDouble = false;
+            for(int i=0; i<nums.length; i++) {
+                RosettoValue num = nums[i];
+                boolean isFirstItem = (i == 0) && !fromZero;
+                ValueType type = num.getType();
+                if(type == ValueType.DOUBLE) {
+                    //double値が入れば以降の計算はすべてdouble
+                    isDouble = true;
+                    d += l;
+                    l = 0;
+                    d = isFirstItem ? num.asDouble() : applyDouble(d, num.asDouble());
+                } else if(type == ValueType.INTEGER) {
+                    if(isDouble) {
+                        d = applyDouble(d, num.asDouble());
+                    } else {
+                        l = isFirstItem ? num.asLong() : applyLong(l, num.asLong());
+                    }
+                } else {
+                    throw new UnExpectedTypeValueException();
+                }
+            }
+            return isDouble ? Values.create(d) : Values.create(l);
+        }
+    }
+    
+    /**
+     * 二つの引数x, yをとる演算.
+     */
+    private static abstract class Binary extends PrimitiveFunction {
+        private static final long serialVersionUID = -5436002829519883010L;
+        
+        Binary(String name) {
+            super(name, "x", "y");
+        }
+        
+        @Override
+        protected abstract RosettoValue apply(RosettoValue x, RosettoValue y);
+        
+        @Override
+        protected RosettoValue apply(RosettoValue[] args) {
+            return apply(args[0], args[1]);
+        }
+    }
 
 }
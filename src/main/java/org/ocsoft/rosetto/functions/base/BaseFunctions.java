@@ -3,6 +3,8 @@
  * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
 package org.ocsoft.rosetto.functions.base;
 
+import org.ocsoft.rosetto.compiler.PurityAnalyzer;
+import org.ocsoft.rosetto.compiler.ScenarioCompiler;
 import org.ocsoft.rosetto.contexts.base.Rosetto;
 import org.ocsoft.rosetto.models.base.elements.RosettoValue;
 import org.ocsoft.rosetto.models.base.elements.ValueType;
@@ -55,6 +57,11 @@ public class BaseFunctions extends FunctionPackage {
     public static final RosettoFunction pass = new RosettoFunction("pass") {
         private static final long serialVersionUID = 4075950193187972686L;
         
+        @Override
+        public boolean isPure() {
+            return true;
+        }
+        
         @Override
         protected RosettoValue run(Scope scope, ListValue rawArgs) {
             return Values.VOID;
@@ -68,6 +75,12 @@ public class BaseFunctions extends FunctionPackage {
             "label",
            "name", "title=none") {
         private static final long serialVersionUID = 8564363060975824392L;
+        
+        @Override
+        public boolean isPure() {
+            return true;
+        }
+        
         @Override
         protected RosettoValue run(Scope scope, ListValue rawArgs) {return Values.VOID;}
         
@@ -80,6 +93,11 @@ public class BaseFunctions extends FunctionPackage {
             "*action") {
         private static final long serialVersionUID = -411581748747383868L;
         
+        @Override
+        public boolean isPure() {
+            return true;
+        }
+        
         @Override
         protected Scope createScope(ListValue args, Scope parentScope) {
             Scope scope = new Scope(parentScope);
@@ -117,6 +135,11 @@ public class BaseFunctions extends FunctionPackage {
             "list") {
         private static final long serialVersionUID = -411581748747383868L;
         
+        @Override
+        public boolean isPure() {
+            return true;
+        }
+        
         @Override
         protected RosettoValue run(Scope scope, ListValue args) {
             RosettoValue v = scope.get("list");
@@ -131,6 +154,11 @@ public class BaseFunctions extends FunctionPackage {
             "list") {
         private static final long serialVersionUID = -411581748747383868L;
         
+        @Override
+        public boolean isPure() {
+            return true;
+        }
+        
         @Override
         protected RosettoValue run(Scope scope, ListValue args) {
             RosettoValue v = scope.get("list");
@@ -162,6 +190,11 @@ public class BaseFunctions extends FunctionPackage {
             "name") {
         private static final long serialVersionUID = 4075950193187972686L;
         
+        @Override
+        public boolean isPure() {
+            return true;
+        }
+        
         @Override
         protected RosettoValue run(Scope scope, ListValue rawArgs) {
             RosettoValue key = scope.get("name");
@@ -194,6 +227,11 @@ public class BaseFunctions extends FunctionPackage {
             "name") {
         private static final long serialVersionUID = 4075950193187972686L;
         
+        @Override
+        public boolean isPure() {
+            return true;
+        }
+        
         @Override
         protected RosettoValue run(Scope scope, ListValue rawArgs) {
             RosettoValue key = scope.get("name");
@@ -223,13 +261,24 @@ public class BaseFunctions extends FunctionPackage {
             RosettoValue actionValue = scope.get("action");
             if(actionValue.getType() == ValueType.ACTION_CALL) {
                 String name = scope.get("name").asString();
-                final ActionCall ac = (ActionCall) actionValue;
+                //本体は呼び出しのたびに評価されるのでリンクしておく
+                final ActionCall ac = ScenarioCompiler.compile((ActionCall) actionValue);
                 RosettoFunction f = new RosettoFunction(name, argsValue) {
                     private static final long serialVersionUID = 1L;
                     @Override
                     protected RosettoValue run(Scope scope, ListValue args) {
                         return ac.evaluate(scope);
                     }
+                    
+                    @Override
+                    public RosettoValue getBody() {
+                        return ac;
+                    }
+                    
+                    @Override
+                    public boolean isPure() {
+                        return PurityAnalyzer.isPure(this);
+                    }
                 };
                 Rosetto.defineFunction(f);
                 return f;
@@ -245,6 +294,11 @@ public class BaseFunctions extends FunctionPackage {
             "args", "action") {
         private static final long serialVersionUID = -411581748747383868L;
         
+        @Override
+        public boolean isPure() {
+            return true;
+        }
+        
         @Override
         protected Scope createScope(ListValue args, Scope parentScope) {
             //引数のうち最初のものを引数リスト、それ以降を順に実行される実装内容とみなす
@@ -259,9 +313,9 @@ public class BaseFunctions extends FunctionPackage {
         @Override
         protected RosettoValue run(Scope scope, ListValue args) {
             final RosettoValue argsValue = scope.get("args");
-            final RosettoValue actionValue = scope.get("action");
             validateType(argsValue, ValueType.LIST);
-            validateType(actionValue, ValueType.ACTION_CALL, ValueType.LIST);
+            validateType(scope.get("action"), ValueType.ACTION_CALL, ValueType.LIST);
+            final RosettoValue actionValue = ScenarioCompiler.compile(scope.get("action"));
             
             RosettoFunction f = new LambdaFunction(argsValue) {
                 private static final long serialVersionUID = 1L;
@@ -269,6 +323,16 @@ public class BaseFunctions extends FunctionPackage {
                 protected RosettoValue run(Scope scope, ListValue args) {
                     return FunctionUtils.doActions(scope, actionValue);
                 }
+                
+                @Override
+                public RosettoValue getBody() {
+                    return actionValue;
+                }
+                
+                @Override
+                public boolean isPure() {
+                    return PurityAnalyzer.isPure(this);
+                }
             };
             return f;
         }
@@ -298,6 +362,11 @@ public class BaseFunctions extends FunctionPackage {
             "args", "script") {
         private static final long serialVersionUID = -411581748747383868L;
         
+        @Override
+        public boolean isPure() {
+            return true;
+        }
+        
         
         @Override
         protected RosettoValue run(Scope scope, ListValue args) {
@@ -3,16 +3,19 @@
  * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
 package org.ocsoft.rosetto.functions.base;
 
-import java.util.LinkedList;
-import java.util.List;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.Map;
 
+import org.ocsoft.rosetto.compiler.PurityAnalyzer;
 import org.ocsoft.rosetto.contexts.base.Rosetto;
 import org.ocsoft.rosetto.models.base.elements.RosettoAction;
 import org.ocsoft.rosetto.models.base.elements.RosettoValue;
 import org.ocsoft.rosetto.models.base.elements.ValueType;
 import org.ocsoft.rosetto.models.base.elements.values.ListValue;
 import org.ocsoft.rosetto.models.base.elements.values.RosettoFunction;
+import org.ocsoft.rosetto.models.base.elements.values.SequenceValue;
 import org.ocsoft.rosetto.models.system.FunctionPackage;
 import org.ocsoft.rosetto.models.system.Scope;
 import org.ocsoft.rosetto.utils.base.FunctionUtils;
@@ -33,7 +36,7 @@ public class FunctionalFunctions extends FunctionPackage {
      * 
      */
     private FunctionalFunctions() {
-        super(map, range, cond);
+        super(map, filter, reduce, fold, each, count, range, cond);
     }
     
     /**
@@ -54,37 +57,115 @@ public class FunctionalFunctions extends FunctionPackage {
         
         @Override
         protected RosettoValue run(Scope scope, ListValue args) {
-            RosettoValue f = scope.get("fn");
+            RosettoAction fn = toAction(scope.get("fn"));
             RosettoValue l = scope.get("list");
-            RosettoAction fn = (f instanceof RosettoFunction) ? 
-                    (RosettoFunction) f : Rosetto.getAction(f.asString());
-            
             if(l instanceof ListValue) {
-                List<RosettoValue> list = ((ListValue)l).getList();
-                List<RosettoValue> result = new LinkedList<RosettoValue>();
-                for(RosettoValue v : list) {
-                    result.add(fn.execute(v.asString(), scope).evaluate(scope));
+                ListValue list = (ListValue)l;
+                RosettoValue[] result = new RosettoValue[list.size()];
+                for(int i=0; i<result.length; i++) {
+                    result[i] = apply(fn, scope, list.getAt(i));
                 }
                 return new ListValue(result);
+            } else if(l instanceof SequenceValue) {
+                SequenceValue mapped = ((SequenceValue)l).map(fn, scope);
+                return isLazy(fn) ? mapped : mapped.toList();
             } else {
-                return fn.execute(l.asString(), scope).evaluate(scope);
+                return apply(fn, scope, l);
             }
         }
     };
     
+    public static final RosettoFunction filter = new RosettoFunction("filter", 
+            "fn", "list") {
+        private static final long serialVersionUID = -411581748747383868L;
+        
+        @Override
+        protected RosettoValue run(Scope scope, ListValue args) {
+            RosettoAction fn = toAction(scope.get("fn"));
+            RosettoValue l = scope.get("list");
+            if(l instanceof SequenceValue) {
+                SequenceValue filtered = ((SequenceValue)l).filter(fn, scope);
+                return isLazy(fn) ? filtered : filtered.toList();
+            }
+            ListValue list = (l instanceof ListValue) ? (ListValue) l : new ListValue(l);
+            RosettoValue[] result = new RosettoValue[list.size()];
+            int count = 0;
+            for(int i=0; i<result.length; i++) {
+                RosettoValue v = list.getAt(i);
+                if(apply(fn, scope, v).asBool(false)) result[count++] = v;
+            }
+            return new ListValue(Arrays.copyOf(result, count));
+        }
+    };
+    
+    public static final RosettoFunction reduce = new RosettoFunction("reduce", 
+            "fn", "list") {
+        private static final long serialVersionUID = -411581748747383868L;
+        
+        @Override
+        protected RosettoValue run(Scope scope, ListValue args) {
+            RosettoAction fn = toAction(scope.get("fn"));
+            Iterator<RosettoValue> it = elements(scope.get("list")).iterator();
+            //空のリストは畳み込めない
+            if(!it.hasNext()) return Values.NULL;
+            return foldLeft(fn, scope, it.next(), it);
+        }
+    };
+    
+    public static final RosettoFunction fold = new RosettoFunction("fold", 
+            "fn", "init", "list") {
+        private static final long serialVersionUID = -411581748747383868L;
+        
+        @Override
+        protected RosettoValue run(Scope scope, ListValue args) {
+            RosettoAction fn = toAction(scope.get("fn"));
+            Iterator<RosettoValue> it = elements(scope.get("list")).iterator();
+            return foldLeft(fn, scope, scope.get("init"), it);
+        }
+    };
+    
+    public static final RosettoFunction each = new RosettoFunction("each", 
+            "fn", "list") {
+        private static final long serialVersionUID = -411581748747383868L;
+        
+        @Override
+        protected RosettoValue run(Scope scope, ListValue args) {
+            RosettoAction fn = toAction(scope.get("fn"));
+            for(RosettoValue v : elements(scope.get("list"))) {
+                apply(fn, scope, v);
+            }
+            return Values.VOID;
+        }
+    };
+    
+    public static final RosettoFunction count = new RosettoFunction("count", 
+            "fn", "list") {
+        private static final long serialVersionUID = -411581748747383868L;
+        
+        @Override
+        protected RosettoValue run(Scope scope, ListValue args) {
+            RosettoAction fn = toAction(scope.get("fn"));
+            int count = 0;
+            for(RosettoValue v : elements(scope.get("list"))) {
+                if(apply(fn, scope, v).asBool(false)) count++;
+            }
+            return Values.create(count);
+        }
+    };
+    
     public static final RosettoFunction range = new RosettoFunction("range", 
             "start", "end") {
         private static final long serialVersionUID = -411581748747383868L;
         
+        @Override
+        public boolean isPure() {
+            return true;
+        }
+        
         @Override
         protected RosettoValue run(Scope scope, ListValue args) {
-            int start = scope.get("start").asInt();
-            int end = scope.get("end").asInt();
-            List<RosettoValue> list = new LinkedList<RosettoValue>();
-            for(int i=start; i<end; i++) {
-                list.add(Values.create(i));
-            }
-            return new ListValue(list);
+            //要素は参照されるまで生成しない
+            return SequenceValue.range(scope.get("start").asLong(), scope.get("end").asLong());
         }
     };
     
@@ -92,6 +173,11 @@ public class FunctionalFunctions extends FunctionPackage {
             "*args") {
         private static final long serialVersionUID = -411581748747383868L;
         
+        @Override
+        public boolean isPure() {
+            return true;
+        }
+        
         @Override
         protected Scope createScope(ListValue args, Scope parentScope) {
             Map<String, RosettoValue> parsed = args.bind(this, parentScope);
@@ -121,5 +207,51 @@ public class FunctionalFunctions extends FunctionPackage {
             return Values.NULL;
         }
     };
+    
+    /**
+     * 関数として渡された値を実行可能なアクションにする.<br>
+     * 関数値であればそのまま、それ以外は文字列表現を名前とするアクションを返す.
+     */
+    static RosettoAction toAction(RosettoValue f) {
+        return (f instanceof RosettoFunction) ? (RosettoFunction) f : Rosetto.getAction(f.asString());
+    }
+    
+    /**
+     * シーケンスに対して関数を遅延して実行してよいかどうかを返す.<br>
+     * 副作用のある関数は、いつ何度参照されるかによらず呼び出した時点で全ての要素に対して一度ずつ実行する.
+     */
+    private static boolean isLazy(RosettoAction fn) {
+        return fn instanceof RosettoFunction && PurityAnalyzer.isPure((RosettoFunction) fn);
+    }
+    
+    /**
+     * リストとして渡された値の要素を返す.<br>
+     * シーケンスは要素を順に計算しながら返す.リストでもシーケンスでもない値はその値一つだけからなるリストとみなす.
+     */
+    static Iterable<RosettoValue> elements(RosettoValue l) {
+        if(l instanceof ListValue) return ((ListValue) l).getList();
+        if(l instanceof SequenceValue) return (SequenceValue) l;
+        return Collections.singletonList(l);
+    }
+    
+    /**
+     * 指定した値をそのまま引数として関数を実行し、結果を評価して返す.<br>
+     * 値を文字列に戻して解析しなおすことはしないため、リストや関数もそのまま渡される.
+     */
+    static RosettoValue apply(RosettoAction fn, Scope scope, RosettoValue...args) {
+        return fn.execute(new ListValue(args), scope).evaluate(scope);
+    }
+    
+    /**
+     * 残りの要素を、initを初期値として左から順に畳み込む.
+     */
+    private static RosettoValue foldLeft(RosettoAction fn, Scope scope, 
+            RosettoValue init, Iterator<RosettoValue> rest) {
+        RosettoValue acc = init;
+        while(rest.hasNext()) {
+            acc = apply(fn, scope, acc, rest.next());
+        }
+        return acc;
+    }
 
 }
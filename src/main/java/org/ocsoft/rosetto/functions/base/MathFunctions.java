@@ -46,6 +46,11 @@ public class MathFunctions extends FunctionPackage {
     public static final RosettoFunction sqrt = new RosettoFunction("sqrt", 
             "*nums") {
         private static final long serialVersionUID = -521290113842191274L;
+        
+        @Override
+        public boolean isPure() {
+            return true;
+        }
         @Override
         protected RosettoValue run(Scope scope, ListValue rawArgs) {
             List<RosettoValue> result = new LinkedList<RosettoValue>();
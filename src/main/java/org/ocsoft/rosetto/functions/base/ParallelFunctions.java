@@ -0,0 +1,238 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package org.ocsoft.rosetto.functions.base;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+import org.ocsoft.rosetto.compiler.PurityAnalyzer;
+import org.ocsoft.rosetto.contexts.base.Rosetto;
+import org.ocsoft.rosetto.contexts.base.RosettoRuntime;
+import org.ocsoft.rosetto.models.base.elements.RosettoAction;
+import org.ocsoft.rosetto.models.base.elements.RosettoValue;
+import org.ocsoft.rosetto.models.base.elements.values.ListValue;
+import org.ocsoft.rosetto.models.base.elements.values.RosettoFunction;
+import org.ocsoft.rosetto.models.base.elements.values.SequenceValue;
+import org.ocsoft.rosetto.models.system.FunctionPackage;
+import org.ocsoft.rosetto.models.system.Scope;
+import org.ocsoft.rosetto.system.RosettoLogger;
+import org.ocsoft.rosetto.system.messages.SystemMessage;
+import org.ocsoft.rosetto.utils.base.Values;
+
+/**
+ * リストの要素ごとの処理を複数のスレッドで並列に実行する関数群.<br>
+ * 処理はRosetto.getForkJoinPoolのスレッドプールで、呼び出し元と同じ実行環境を結びつけて実行される.
+ * 並列に実行されるのはPurityAnalyzerが純粋と判定した関数だけで、
+ * それ以外の関数は警告を出力した上で呼び出し元のスレッドで順に実行される.
+ * @author tohhy
+ */
+public class ParallelFunctions extends FunctionPackage {
+
+    /**
+     *
+     */
+    private static ParallelFunctions instance;
+
+    /**
+     *
+     */
+    private ParallelFunctions() {
+        super(pmap, preduce);
+    }
+
+    /**
+     * ParallelFunctionsのインスタンスを取得する.
+     * @return ParallelFunctionsのインスタンス
+     */
+    public static ParallelFunctions getInstance() {
+        if(instance == null) {
+            instance = new ParallelFunctions();
+        }
+        return instance;
+    }
+
+    /**
+     * mapと同じ結果を、要素ごとの関数の実行を並列に行って求める.
+     */
+    public static final RosettoFunction pmap = new RosettoFunction("pmap",
+            "fn", "list") {
+        private static final long serialVersionUID = -411581748747383868L;
+
+        @Override
+        protected RosettoValue run(Scope scope, ListValue args) {
+            RosettoAction fn = FunctionalFunctions.toAction(scope.get("fn"));
+            RosettoValue l = scope.get("list");
+            if(!(l instanceof ListValue) && !(l instanceof SequenceValue)) {
+                return FunctionalFunctions.apply(fn, scope, l);
+            }
+            RosettoValue[] values = toArray(l);
+            RosettoValue[] result = new RosettoValue[values.length];
+            if(isParallelizable(fn)) {
+                ForkJoinPool pool = Rosetto.getForkJoinPool();
+                pool.invoke(new MapTask(RosettoRuntime.current(), fn, scope, values, result,
+                        0, values.length, granularity(pool, values.length)));
+            } else {
+                for(int i=0; i<values.length; i++) {
+                    result[i] = FunctionalFunctions.apply(fn, scope, values[i]);
+                }
+            }
+            return new ListValue(result);
+        }
+    };
+
+    /**
+     * reduceと同じ結果を、リストを分割して並列に畳み込んで求める.<br>
+     * 分割した部分ごとの結果も同じ関数で順に畳み込むため、関数は結合的である必要がある.
+     */
+    public static final RosettoFunction preduce = new RosettoFunction("preduce",
+            "fn", "list") {
+        private static final long serialVersionUID = 5873306040532616871L;
+
+        @Override
+        protected RosettoValue run(Scope scope, ListValue args) {
+            RosettoAction fn = FunctionalFunctions.toAction(scope.get("fn"));
+            RosettoValue[] values = toArray(scope.get("list"));
+            //空のリストは畳み込めない
+            if(values.length == 0) return Values.NULL;
+            if(isParallelizable(fn)) {
+                ForkJoinPool pool = Rosetto.getForkJoinPool();
+                return pool.invoke(new ReduceTask(RosettoRuntime.current(), fn, scope, values,
+                        0, values.length, granularity(pool, values.length)));
+            }
+            RosettoValue acc = values[0];
+            for(int i=1; i<values.length; i++) {
+                acc = FunctionalFunctions.apply(fn, scope, acc, values[i]);
+            }
+            return acc;
+        }
+    };
+
+    /**
+     * 指定した関数を並列に実行してよいかどうかを返す.実行できない場合は警告を出力する.
+     */
+    private static boolean isParallelizable(RosettoAction fn) {
+        if(fn instanceof RosettoFunction && PurityAnalyzer.isPure((RosettoFunction) fn)) return true;
+        RosettoLogger.warning(SystemMessage.E9000_NOT_PARALLELIZABLE, fn);
+        return false;
+    }
+
+    /**
+     * リストとして渡された値の要素を配列にする.シーケンスは全ての要素を計算する.
+     */
+    private static RosettoValue[] toArray(RosettoValue l) {
+        if(l instanceof SequenceValue) l = ((SequenceValue) l).toList();
+        if(l instanceof ListValue) {
+            ListValue list = (ListValue) l;
+            return list.getList().toArray(new RosettoValue[list.size()]);
+        }
+        return new RosettoValue[]{l};
+    }
+
+    /**
+     * 一つのタスクで順に処理する要素数.スレッド数の4倍程度のタスクに分かれるようにする.
+     */
+    private static int granularity(ForkJoinPool pool, int length) {
+        return Math.max(1, length / (pool.getParallelism() * 4));
+    }
+
+    /**
+     * 配列の指定範囲の要素に関数を適用して結果の配列に書き込むタスク.
+     */
+    private static final class MapTask extends RecursiveAction {
+        private static final long serialVersionUID = -3046208474004826441L;
+
+        private final RosettoRuntime runtime;
+        private final RosettoAction fn;
+        private final Scope scope;
+        private final RosettoValue[] values;
+        private final RosettoValue[] result;
+        private final int from;
+        private final int to;
+        private final int granularity;
+
+        private MapTask(RosettoRuntime runtime, RosettoAction fn, Scope scope,
+                RosettoValue[] values, RosettoValue[] result, int from, int to, int granularity) {
+            this.runtime = runtime;
+            this.fn = fn;
+            this.scope = scope;
+            this.values = values;
+            this.result = result;
+            this.from = from;
+            this.to = to;
+            this.granularity = granularity;
+        }
+
+        @Override
+        protected void compute() {
+            if(to - from <= granularity) {
+                RosettoRuntime.Binding binding = runtime.enter();
+                try {
+                    for(int i=from; i<to; i++) {
+                        result[i] = FunctionalFunctions.apply(fn, scope, values[i]);
+                    }
+                } finally {
+                    binding.close();
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new MapTask(runtime, fn, scope, values, result, from, mid, granularity),
+                      new MapTask(runtime, fn, scope, values, result, mid, to, granularity));
+        }
+    }
+
+    /**
+     * 配列の指定範囲の要素を左から順に畳み込むタスク.
+     */
+    private static final class ReduceTask extends RecursiveTask<RosettoValue> {
+        private static final long serialVersionUID = 2518620411587360829L;
+
+        private final RosettoRuntime runtime;
+        private final RosettoAction fn;
+        private final Scope scope;
+        private final RosettoValue[] values;
+        private final int from;
+        private final int to;
+        private final int granularity;
+
+        private ReduceTask(RosettoRuntime runtime, RosettoAction fn, Scope scope,
+                RosettoValue[] values, int from, int to, int granularity) {
+            this.runtime = runtime;
+            this.fn = fn;
+            this.scope = scope;
+            this.values = values;
+            this.from = from;
+            this.to = to;
+            this.granularity = granularity;
+        }
+
+        @Override
+        protected RosettoValue compute() {
+            if(to - from <= granularity) {
+                RosettoRuntime.Binding binding = runtime.enter();
+                try {
+                    RosettoValue acc = values[from];
+                    for(int i=from+1; i<to; i++) {
+                        acc = FunctionalFunctions.apply(fn, scope, acc, values[i]);
+                    }
+                    return acc;
+                } finally {
+                    binding.close();
+                }
+            }
+            int mid = (from + to) >>> 1;
+            ReduceTask left = new ReduceTask(runtime, fn, scope, values, from, mid, granularity);
+            ReduceTask right = new ReduceTask(runtime, fn, scope, values, mid, to, granularity);
+            invokeAll(left, right);
+            RosettoRuntime.Binding binding = runtime.enter();
+            try {
+                //左右の結果も順序を保って畳み込む
+                return FunctionalFunctions.apply(fn, scope, left.join(), right.join());
+            } finally {
+                binding.close();
+            }
+        }
+    }
+}
@@ -8,6 +8,7 @@ import org.ocsoft.rosetto.models.base.elements.values.ListValue;
 import org.ocsoft.rosetto.models.base.elements.values.NullValue;
 import org.ocsoft.rosetto.models.base.elements.values.RosettoFunction;
 import org.ocsoft.rosetto.models.base.elements.values.ScriptValue;
+import org.ocsoft.rosetto.models.base.elements.values.SequenceValue;
 import org.ocsoft.rosetto.models.base.elements.values.VoidValue;
 
 /**
@@ -31,6 +32,10 @@ public enum ValueType {
      * 構造体を表す型.
      */
     LIST(ListValue.class),
+    /**
+     * 要素を必要になった時点で計算する遅延シーケンスを表す型.
+     */
+    SEQUENCE(SequenceValue.class),
     /**
      * 関数を示す型.
      */
@@ -8,10 +8,10 @@ import javax.annotation.concurrent.Immutable;
 
 import org.ocsoft.rosetto.contexts.base.Rosetto;
 import org.ocsoft.rosetto.functions.base.BaseFunctions;
+import org.ocsoft.rosetto.models.base.elements.RosettoAction;
 import org.ocsoft.rosetto.models.base.elements.RosettoValue;
 import org.ocsoft.rosetto.models.base.elements.ValueType;
 import org.ocsoft.rosetto.models.system.Scope;
-import org.ocsoft.rosetto.observers.RosettoObservatories;
 import org.ocsoft.rosetto.system.RosettoLogger;
 import org.ocsoft.rosetto.system.exceptions.NotConvertibleException;
 import org.ocsoft.rosetto.system.messages.SystemMessage;
@@ -79,7 +79,7 @@ public class ActionCall implements RosettoValue {
      * @param functionName 呼び出す関数名
      * @param args 適用する引数
      */
-    private ActionCall(String functionName, ListValue args) {
+    protected ActionCall(String functionName, ListValue args) {
         if(functionName == null)
             throw new IllegalArgumentException("関数オブジェクトがnullです");
         this.callName = functionName;
@@ -109,8 +109,18 @@ public class ActionCall implements RosettoValue {
      * @return 評価した結果
      */
     public RosettoValue evaluate(Scope parentScope) {
+        return invoke(Rosetto.getAction(getActionName()), parentScope);
+    }
+    
+    /**
+     * 解決済みのアクションをこのActionCallの引数で実行する.<br>
+     * アクションが見つからなかった場合や実行可能な対象でなかった場合は処理が省略されてVoidが返る.
+     * @param v 実行するアクション
+     * @param parentScope 実行時のスコープ
+     * @return 評価した結果
+     */
+    protected RosettoValue invoke(RosettoAction v, Scope parentScope) {
         String varName = this.getActionName();
-        RosettoValue v = Rosetto.getAction(varName);
         
         if(v == Values.NULL || v == BaseFunctions.pass) {
             RosettoLogger.warning(SystemMessage.E1100_ACTION_NOT_FOUND, varName);
@@ -120,16 +130,13 @@ public class ActionCall implements RosettoValue {
         if(v.getType() == ValueType.FUNCTION) {
             RosettoFunction f = (RosettoFunction) v;
             ListValue args = this.getArgs();
-            RosettoValue result = f.execute(args, parentScope);
-            RosettoObservatories.getAction().functionExecuted(f, args, result);
-            return result;
+            //実行の通知は関数自身が行う
+            return f.execute(args, parentScope);
         }
         
         if(v.getType() == ValueType.SCRIPT) {
-            ScriptValue macro = (ScriptValue) v;
-            RosettoValue result = macro.execute(parentScope);
-            RosettoObservatories.getAction().macroExecuted(macro, args, result);
-            return result;
+            //実行の通知はマクロ自身が行う
+            return ((ScriptValue) v).execute(parentScope);
         }
         
         //それでもなければ何もしない
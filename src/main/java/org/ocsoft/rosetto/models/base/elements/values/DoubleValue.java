@@ -16,6 +16,21 @@ import org.ocsoft.rosetto.utils.base.Values;
 public class DoubleValue implements RosettoValue {
     private static final long serialVersionUID = -3880822918826025412L;
     
+    /**
+     * 0.0を表すインスタンス.
+     */
+    public static final DoubleValue ZERO = new DoubleValue(0.0);
+    
+    /**
+     * 1.0を表すインスタンス.
+     */
+    public static final DoubleValue ONE = new DoubleValue(1.0);
+    
+    /**
+     * 1.0のビット表現.
+     */
+    private static final long ONE_BITS = Double.doubleToRawLongBits(1.0);
+    
     /**
      * 
      */
@@ -29,6 +44,26 @@ public class DoubleValue implements RosettoValue {
         this.value = value;
     }
     
+    /**
+     * 指定した値のDoubleValueを返す.<br>
+     * 0.0と1.0では常に同じインスタンスが返り、それ以外では新しく生成する.-0.0は0.0とは別に扱う.
+     * @param value DoubleValueとして生成する値
+     * @return 指定した値のDoubleValue
+     */
+    public static DoubleValue valueOf(double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        if(bits == 0L) return ZERO;
+        if(bits == ONE_BITS) return ONE;
+        return new DoubleValue(value);
+    }
+    
+    /**
+     * デシリアライズ時に0.0と1.0は共有のインスタンスに置き換える.
+     */
+    private Object readResolve() {
+        return (getClass() == DoubleValue.class) ? valueOf(value) : this;
+    }
+    
     @Override
     public String toString() {
         return String.valueOf(value);
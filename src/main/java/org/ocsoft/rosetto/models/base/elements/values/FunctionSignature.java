@@ -0,0 +1,133 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package org.ocsoft.rosetto.models.base.elements.values;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.concurrent.Immutable;
+
+import org.ocsoft.rosetto.models.base.elements.RosettoValue;
+import org.ocsoft.rosetto.models.system.FrameLayout;
+import org.ocsoft.rosetto.utils.base.Values;
+
+/**
+ * RosettoFunctionの引数定義を解析した結果を保持するイミュータブルなオブジェクト.<br>
+ * "name"は入力必須の引数、"name=value"はデフォルト値つきの引数、"*name"は可変長引数を表す.
+ * デフォルト値は解析時に一度だけRosettoValueに変換され、呼び出しのたびには解析されない.
+ * @author tohhy
+ */
+@Immutable
+final class FunctionSignature {
+    /**
+     * 引数定義のない関数の引数.
+     */
+    static final FunctionSignature EMPTY = new FunctionSignature(
+            new String[0], new RosettoValue[0], 0, -1, false);
+
+    /**
+     * 定義順の引数名.可変長引数は先頭の*を含む.
+     */
+    final String[] names;
+
+    /**
+     * 引数のデフォルト値.入力必須の引数ではnull.
+     */
+    final RosettoValue[] defaults;
+
+    /**
+     * 入力必須の引数の数.可変長引数も含む.
+     */
+    final int requiredCount;
+
+    /**
+     * 可変長引数の位置.なければ-1.
+     */
+    final int mutableIndex;
+
+    /**
+     * 可変長引数の値を格納する名前.先頭の*を除いたもの.可変長引数がなければnull.
+     */
+    final String mutableName;
+
+    /**
+     * 可変長引数とみなせる引数が複数あるかどうか.
+     */
+    final boolean hasMultipleMutable;
+
+    /**
+     * 引数を配列に保持する際のレイアウト.引数名、可変長引数があればその値を格納する名前の順に並ぶ.
+     * 名前が重複していて配列に割り当てられない場合はnull.
+     */
+    final FrameLayout layout;
+
+    private FunctionSignature(String[] names, RosettoValue[] defaults,
+            int requiredCount, int mutableIndex, boolean hasMultipleMutable) {
+        this.names = names;
+        this.defaults = defaults;
+        this.requiredCount = requiredCount;
+        this.mutableIndex = mutableIndex;
+        this.mutableName = (mutableIndex >= 0) ? names[mutableIndex].substring(1) : null;
+        this.hasMultipleMutable = hasMultipleMutable;
+        this.layout = createLayout(names, mutableName);
+    }
+
+    /**
+     * 引数名と可変長引数の値を格納する名前を順に割り当てたレイアウトを生成する.
+     * @return 生成したレイアウト、名前が重複していればnull
+     */
+    private static FrameLayout createLayout(String[] names, String mutableName) {
+        String[] slots = (mutableName == null) ? names : Arrays.copyOf(names, names.length + 1);
+        if(mutableName != null) slots[names.length] = mutableName;
+        Set<String> seen = new HashSet<String>();
+        for(String n : slots) {
+            if(!seen.add(n)) return null;
+        }
+        return new FrameLayout(slots);
+    }
+
+    /**
+     * 引数定義のリストを解析する.
+     * @param args 関数の引数定義
+     * @return 解析した結果
+     */
+    static FunctionSignature compile(List<String> args) {
+        int len = args.size();
+        if(len == 0) return EMPTY;
+        String[] names = new String[len];
+        RosettoValue[] defaults = new RosettoValue[len];
+        int requiredCount = 0;
+        int mutableIndex = -1;
+        boolean hasMultipleMutable = false;
+        for(int i=0; i<len; i++) {
+            String s = args.get(i);
+            int eqIndex = s.indexOf('=');
+            if(eqIndex == -1) {
+                //名前のみなので入力必須
+                names[i] = s;
+                requiredCount++;
+            } else {
+                //名前とデフォルト値
+                names[i] = s.substring(0, eqIndex);
+                defaults[i] = Values.create(s.substring(eqIndex + 1));
+            }
+            if(isMutable(names[i])) {
+                if(mutableIndex >= 0) hasMultipleMutable = true;
+                else mutableIndex = i;
+            }
+        }
+        return new FunctionSignature(names, defaults, requiredCount, mutableIndex, hasMultipleMutable);
+    }
+
+    /**
+     * 指定した引数名が可変長引数を表すかどうかを返す.
+     * @param name 引数名
+     * @return 可変長引数かどうか
+     */
+    static boolean isMutable(String name) {
+        return name.startsWith("*") && name.length() >= 2;
+    }
+}
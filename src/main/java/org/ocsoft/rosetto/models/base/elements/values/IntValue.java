@@ -17,6 +17,24 @@ import org.ocsoft.rosetto.utils.base.Values;
 public class IntValue implements RosettoValue {
     private static final long serialVersionUID = -6660103213801013944L;
     
+    /**
+     * valueOfでキャッシュされる最小の値.
+     */
+    static final int CACHE_LOW = -128;
+    
+    /**
+     * valueOfでキャッシュされる最大の値.
+     */
+    static final int CACHE_HIGH = 1024;
+    
+    /**
+     * CACHE_LOWからCACHE_HIGHまでのインスタンス.
+     */
+    private static final IntValue[] CACHE = new IntValue[CACHE_HIGH - CACHE_LOW + 1];
+    static {
+        for(int i=0; i<CACHE.length; i++) CACHE[i] = new IntValue(i + CACHE_LOW);
+    }
+    
     /**
      * 
      */
@@ -38,6 +56,24 @@ public class IntValue implements RosettoValue {
         this.value = value;
     }
     
+    /**
+     * 指定した値のIntValueを返す.<br>
+     * CACHE_LOWからCACHE_HIGHまでの値では常に同じインスタンスが返り、それ以外では新しく生成する.
+     * @param value IntValueとして生成する値
+     * @return 指定した値のIntValue
+     */
+    public static IntValue valueOf(long value) {
+        if(value >= CACHE_LOW && value <= CACHE_HIGH) return CACHE[(int)value - CACHE_LOW];
+        return new IntValue(value);
+    }
+    
+    /**
+     * デシリアライズ時にキャッシュされている値であればキャッシュのインスタンスに置き換える.
+     */
+    private Object readResolve() {
+        return (getClass() == IntValue.class) ? valueOf(value) : this;
+    }
+    
     @Override
     public String toString() {
         return String.valueOf(value);
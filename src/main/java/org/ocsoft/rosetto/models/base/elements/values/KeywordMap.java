@@ -0,0 +1,194 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package org.ocsoft.rosetto.models.base.elements.values;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.annotation.concurrent.Immutable;
+
+import org.ocsoft.rosetto.models.base.elements.RosettoValue;
+
+/**
+ * ListValueのキーワード引数部を保持するイミュータブルなマップ.<br>
+ * キーの昇順に並べたキーと値の配列の組で保持する.
+ * キーワード引数はほとんどの場合数個しかないため、
+ * 要素数が少ないうちは線形探索、多い場合は二分探索で検索する.
+ * @author tohhy
+ */
+@Immutable
+final class KeywordMap {
+    /**
+     * 空のマップ.
+     */
+    static final KeywordMap EMPTY = new KeywordMap(new String[0], new RosettoValue[0]);
+    
+    /**
+     * この要素数以下であれば線形探索を行う.
+     */
+    private static final int SMALL_SIZE = 4;
+    
+    /**
+     * 昇順に並んだキー.
+     */
+    private final String[] keys;
+    
+    /**
+     * keysと同じ順に並んだ値.
+     */
+    private final RosettoValue[] values;
+    
+    /**
+     * 整列済みの配列を受け取ってマップを生成する.配列はコピーされない.
+     */
+    private KeywordMap(String[] keys, RosettoValue[] values) {
+        this.keys = keys;
+        this.values = values;
+    }
+    
+    /**
+     * 指定したマップと同じ内容のKeywordMapを生成する.
+     * @param map 元にするマップ
+     * @return 生成したマップ
+     */
+    static KeywordMap of(Map<String, RosettoValue> map) {
+        if(map == null || map.isEmpty()) return EMPTY;
+        //TreeMapであれば既にキー順に並んでいる
+        Map<String, RosettoValue> sorted = (map instanceof TreeMap 
+                && ((TreeMap<String, RosettoValue>)map).comparator() == null) ? 
+                        map : new TreeMap<String, RosettoValue>(map);
+        int size = sorted.size();
+        String[] keys = new String[size];
+        RosettoValue[] values = new RosettoValue[size];
+        int i = 0;
+        for(Map.Entry<String, RosettoValue> e : sorted.entrySet()) {
+            keys[i] = e.getKey();
+            values[i] = e.getValue();
+            i++;
+        }
+        return new KeywordMap(keys, values);
+    }
+    
+    /**
+     * キーはそのままで、値を指定した配列に置き換えたマップを返す.
+     * @param newValues 新しい値の配列.コピーされない
+     * @return 値を置き換えたマップ
+     */
+    KeywordMap withValues(RosettoValue[] newValues) {
+        if(newValues.length != values.length)
+            throw new IllegalArgumentException("size mismatch");
+        return new KeywordMap(keys, newValues);
+    }
+    
+    /**
+     * 指定したキーの位置を返す.存在しなければ負の値.
+     */
+    private int indexOf(String key) {
+        if(key == null) return -1;
+        int size = keys.length;
+        if(size <= SMALL_SIZE) {
+            for(int i=0; i<size; i++) {
+                if(keys[i].equals(key)) return i;
+            }
+            return -1;
+        }
+        return Arrays.binarySearch(keys, key);
+    }
+    
+    int size() {
+        return keys.length;
+    }
+    
+    boolean containsKey(String key) {
+        return indexOf(key) >= 0;
+    }
+    
+    /**
+     * 指定キーに関連づけられた値を返す.存在しなければnull.
+     */
+    RosettoValue get(String key) {
+        int index = indexOf(key);
+        return (index >= 0) ? values[index] : null;
+    }
+    
+    String keyAt(int index) {
+        return keys[index];
+    }
+    
+    RosettoValue valueAt(int index) {
+        return values[index];
+    }
+    
+    /**
+     * このマップの読み取り専用のMapとしてのビューを返す.キーの昇順でイテレーションされる.
+     * @return このマップのビュー
+     */
+    Map<String, RosettoValue> asMap() {
+        return new MapView();
+    }
+    
+    /**
+     * KeywordMapをMapとして参照するための読み取り専用ビュー.
+     */
+    private final class MapView extends AbstractMap<String, RosettoValue> {
+        
+        @Override
+        public int size() {
+            return keys.length;
+        }
+        
+        @Override
+        public boolean containsKey(Object key) {
+            return (key instanceof String) && indexOf((String)key) >= 0;
+        }
+        
+        @Override
+        public RosettoValue get(Object key) {
+            return (key instanceof String) ? KeywordMap.this.get((String)key) : null;
+        }
+        
+        @Override
+        public Set<Map.Entry<String, RosettoValue>> entrySet() {
+            return new AbstractSet<Map.Entry<String, RosettoValue>>() {
+                @Override
+                public int size() {
+                    return keys.length;
+                }
+                
+                @Override
+                public Iterator<Map.Entry<String, RosettoValue>> iterator() {
+                    return new Iterator<Map.Entry<String, RosettoValue>>() {
+                        private int index = 0;
+                        
+                        @Override
+                        public boolean hasNext() {
+                            return index < keys.length;
+                        }
+                        
+                        @Override
+                        public Map.Entry<String, RosettoValue> next() {
+                            if(index >= keys.length) throw new NoSuchElementException();
+                            Map.Entry<String, RosettoValue> e = 
+                                    new SimpleImmutableEntry<String, RosettoValue>(
+                                            keys[index], values[index]);
+                            index++;
+                            return e;
+                        }
+                        
+                        @Override
+                        public void remove() {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+            };
+        }
+    }
+}
@@ -4,19 +4,26 @@
 
 package org.ocsoft.rosetto.models.base.elements.values;
 
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
+import java.util.AbstractList;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
 import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import org.apache.commons.lang3.StringUtils;
 import org.ocsoft.rosetto.contexts.base.Rosetto;
 import org.ocsoft.rosetto.models.base.elements.RosettoValue;
 import org.ocsoft.rosetto.models.base.elements.ValueType;
+import org.ocsoft.rosetto.models.system.FrameLayout;
 import org.ocsoft.rosetto.models.system.Parser;
 import org.ocsoft.rosetto.models.system.Scope;
 import org.ocsoft.rosetto.system.exceptions.NotConvertibleException;
@@ -37,27 +44,66 @@ import org.ocsoft.rosetto.utils.base.Values;
  * <br>
  * 先にキーワードを持つものが抽出されてマップとして保持され、その後に残りの要素がリストとして保持される.<br>
  * シーケンス操作はすべてリスト部分のみに適用される.<br>
- * [size (a=1 b=2 c=3)] => 0
+ * [size (a=1 b=2 c=3)] => 0<br>
+ * <br>
+ * リスト部は配列の一部分として保持する.restは同じ配列を共有する位置のずれたビューを返すためO(1)で、
+ * consも可能な場合は配列の前方の空きを使って既存の要素を共有する.
+ * 配列の内容はいったんリストから見える状態になった後は書き換えられない.
  * @author tohhy
  */
 public class ListValue implements RosettoValue {
     private static final long serialVersionUID = -5778537199758610111L;
     
+    /**
+     * シリアライズ形式.以前のLinkedListとTreeMapによる形式を維持する.
+     */
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("list", LinkedList.class),
+        new ObjectStreamField("map", TreeMap.class)
+    };
+    
     public static final ListValue EMPTY = 
-            new ListValue(new LinkedList<RosettoValue>(), 
-                                new TreeMap<String, RosettoValue>());
+            new ListValue(new RosettoValue[0], 0, 0, KeywordMap.EMPTY, null);
     
     /**
-     * 通常引数のリスト.<br>
-     * Lispライクな処理を多用するのでLinkedListが必須.
+     * 通常引数を保持する配列.他のListValueと共有されることがある.<br>
+     * offsetから配列の末尾までがこのリストの要素.
      */
-    private final LinkedList<RosettoValue> list;
+    private final RosettoValue[] values;
+    
+    /**
+     * このリストの最初の要素の配列中の位置.
+     */
+    private final int offset;
+    
+    /**
+     * このリストの要素数.
+     */
+    private final int length;
+    
+    /**
+     * 配列の前方で既に使われている位置の下限.<br>
+     * consで配列の前方の空きを共有するために、同じ配列を持つリストの間で共有される.
+     * 前方に空きを持たない配列ではnull.
+     */
+    private final AtomicInteger frontier;
     
     /**
      * キーワード引数のマップ.<br>
-     * 並び順を一意にするためにTreeMapが必須.
+     * 並び順を一意にするためにキーの昇順で保持する.
+     */
+    private final KeywordMap map;
+    
+    /**
+     * デシリアライズ時に読み込んだ内容から生成したインスタンス.
+     */
+    private transient ListValue deserialized;
+    
+    /**
+     * 要素にActionCallを含むかどうか.<br>
+     * 0は未調査、1は含む、2は含まないことを表す.初回のevaluateChildren時に調べる.
      */
-    private final TreeMap<String, RosettoValue> map;
+    private transient int actionCallState = 0;
     
 
     /**
@@ -119,50 +165,48 @@ public class ListValue implements RosettoValue {
     
     public static ListValue createFromValue(
             List<RosettoValue> list, Map<String, RosettoValue> map) {
-        return new ListValue(
-                new LinkedList<RosettoValue>(list), 
-                new HashMap<String, RosettoValue>(map));
+        return new ListValue(list, map);
     }
     
     public static ListValue createFromValue(ListValue list) {
-        return new ListValue(
-                new LinkedList<RosettoValue>(list.getList()), 
-                new HashMap<String, RosettoValue>(list.getMap()));
+        //イミュータブルなのでそのまま共有できる
+        return list;
     }
     
     private ListValue(List<RosettoValue> list, Map<String, RosettoValue> map) {
-        this.list = (list instanceof LinkedList) ? 
-                (LinkedList<RosettoValue>) list : new LinkedList<RosettoValue>(list);
-        this.map = (map instanceof TreeMap) ? 
-                (TreeMap<String, RosettoValue>)map : new TreeMap<String, RosettoValue>(map);
+        this(list.toArray(new RosettoValue[list.size()]), KeywordMap.of(map));
+    }
+    
+    private ListValue(RosettoValue[] values, KeywordMap map) {
+        this(values, 0, values.length, map, null);
+    }
+    
+    private ListValue(RosettoValue[] values, int offset, int length, 
+            KeywordMap map, AtomicInteger frontier) {
+        this.values = values;
+        this.offset = offset;
+        this.length = length;
+        this.map = map;
+        this.frontier = frontier;
     }
     
     public ListValue(List<RosettoValue> list) {
-        this((list instanceof LinkedList) ? 
-                (LinkedList<RosettoValue>) list : new LinkedList<RosettoValue>(list), 
-                new TreeMap<String, RosettoValue>());
+        this(list.toArray(new RosettoValue[list.size()]), KeywordMap.EMPTY);
     }
     
     public ListValue(RosettoValue...values) {
-        this(toList(values));
-        
+        this(values.clone(), KeywordMap.EMPTY);
     }
     
     public ListValue(String...values) {
-        this(toList(values));
-    }
-    
-    private static List<RosettoValue> toList(RosettoValue...values) {
-        LinkedList<RosettoValue> list = new LinkedList<RosettoValue>();
-        for(RosettoValue v : values) list.add(v);
-        return list;
+        this(toArray(values), KeywordMap.EMPTY);
     }
 
-    private static List<RosettoValue> toList(String...values) {
+    private static RosettoValue[] toArray(String...values) {
         Parser parser = Rosetto.getParser();
-        LinkedList<RosettoValue> list = new LinkedList<RosettoValue>();
-        for(String s : values) list.add(parser.parseElement(s));
-        return list;
+        RosettoValue[] result = new RosettoValue[values.length];
+        for(int i=0; i<values.length; i++) result[i] = parser.parseElement(values[i]);
+        return result;
     }
     
     @Override
@@ -185,10 +229,16 @@ public class ListValue implements RosettoValue {
      */
     public String toArgsExpression() {
         StringBuilder sb = new StringBuilder();
-        sb.append(StringUtils.join(list, ' '));
+        for(int i=0; i<length; i++) {
+            if(i > 0) sb.append(' ');
+            sb.append(values[offset + i]);
+        }
         int mapLen = map.size();
         if(mapLen > 0) sb.append(" ");
-        sb.append(StringUtils.join(map.entrySet(), ' '));
+        for(int i=0; i<mapLen; i++) {
+            if(i > 0) sb.append(' ');
+            sb.append(map.keyAt(i)).append('=').append(map.valueAt(i));
+        }
         return sb.toString();
     }
     
@@ -202,23 +252,39 @@ public class ListValue implements RosettoValue {
      * @return
      */
     public ListValue evaluateChildren(Scope parentScope) {
-        List<RosettoValue> list = new ArrayList<RosettoValue>();
-        Map<String, RosettoValue> map = new TreeMap<String, RosettoValue>();
-        for(RosettoValue v:this.list) {
-            if(v instanceof ActionCall) {
-                list.add(((ActionCall)v).evaluate(parentScope));
-            } else {
-                list.add(v);
-            }
+        //リテラルのみからなるリストは評価しても変わらないので自身を返す
+        if(!containsActionCall()) return this;
+        RosettoValue[] list = new RosettoValue[length];
+        for(int i=0; i<length; i++) {
+            RosettoValue v = values[offset + i];
+            list[i] = (v instanceof ActionCall) ? ((ActionCall)v).evaluate(parentScope) : v;
         }
-        for(Entry<String, RosettoValue> e : this.map.entrySet()) {
-            if(e.getValue() instanceof ActionCall) {
-                map.put(e.getKey(), ((ActionCall)e.getValue()).evaluate(parentScope));
-            } else {
-                map.put(e.getKey(), e.getValue());
-            }
+        int mapLen = map.size();
+        RosettoValue[] mapValues = new RosettoValue[mapLen];
+        for(int i=0; i<mapLen; i++) {
+            RosettoValue v = map.valueAt(i);
+            mapValues[i] = (v instanceof ActionCall) ? ((ActionCall)v).evaluate(parentScope) : v;
         }
-        return new ListValue(list, map);
+        return new ListValue(list, map.withValues(mapValues));
+    }
+
+    /**
+     * 指定位置の要素を評価して返す.ActionCallであれば評価した結果、それ以外はそのままの値を返す.
+     * @param listIndex 評価する要素の位置
+     * @param parentScope ActionCallの評価に用いるスコープ
+     * @return 評価した結果
+     */
+    RosettoValue evaluateAt(int listIndex, Scope parentScope) {
+        RosettoValue v = values[offset + listIndex];
+        return (v instanceof ActionCall) ? ((ActionCall)v).evaluate(parentScope) : v;
+    }
+    
+    /**
+     * キーワード引数を持つかどうかを返す.
+     * @return キーワード引数を持つかどうか
+     */
+    boolean hasKeywords() {
+        return map.size() != 0;
     }
 
     /**
@@ -231,114 +297,230 @@ public class ListValue implements RosettoValue {
      */
     public Map<String, RosettoValue> bind(RosettoFunction func, Scope currentScope) {
         if(func == null) throw new IllegalArgumentException("渡された関数がnullです");
+        FunctionSignature sig = func.getSignature();
+        //結果のマップ.引数名と入力をすべて格納しても再ハッシュが起きない大きさで作る
+        MapTarget target = new MapTarget(new HashMap<String, RosettoValue>(
+                Math.max(16, (sig.names.length + map.size()) * 4 / 3 + 1)));
+        bind(func, sig, currentScope, target);
+        return target.result;
+    }
+    
+    /**
+     * 指定した関数とスコープを用いてこの引数リストをパースし、関数の実行時のスコープを生成する.<br>
+     * 引数の扱いはbindと同じで、関数の引数はFrameLayoutに従って配列に直接格納される.
+     * 引数名が重複しているなど配列に割り当てられない関数ではbindの結果のマップをもつスコープになる.
+     * @param func パースに用いる関数
+     * @param parentScope ActionCallの評価に用いるスコープ.生成するスコープの親になる
+     * @return 関数の実行時のスコープ
+     */
+    public Scope bindScope(RosettoFunction func, Scope parentScope) {
+        if(func == null) throw new IllegalArgumentException("渡された関数がnullです");
+        FunctionSignature sig = func.getSignature();
+        if(sig.layout == null) return new Scope(parentScope, bind(func, parentScope));
+        SlotTarget target = new SlotTarget(sig.layout);
+        bind(func, sig, parentScope, target);
+        return new Scope(parentScope, sig.layout, target.slots, target.extra);
+    }
+    
+    /**
+     * 引数を束縛した結果を指定した格納先に書き込む.
+     */
+    private void bind(RosettoFunction func, FunctionSignature sig, Scope currentScope, BindTarget result) {
+        String[] names = sig.names;
+        int argc = names.length;
         
-        //結果のマップ
-        Map<String, RosettoValue> result = new HashMap<String, RosettoValue>();
-        //関数が持つ引数のリスト
-        LinkedList<String> funcArgs = new LinkedList<String>();
+        //デフォルト値を先に登録してしまう
+        for(int i=0; i<argc; i++) {
+            if(sig.defaults[i] != null) result.put(i, names[i], sig.defaults[i]);
+        }
         
         //関数がいくつ入力必須の引数を持っているか
-        int requiredArgsCount = 0;
-        
-        //関数に定義されている全引数についてイテレーション
-        for(String s : func.getArguments()) {
-            int eqIndex = s.indexOf("=");
-            if(eqIndex == -1) {
-                //名前のみの場合は引数リストに追加
-                funcArgs.add(s);
-                //名前のみなので入力必須
-                requiredArgsCount++;
-            } else {
-                //名前とデフォルト値
-                String key = s.substring(0, eqIndex);
-                RosettoValue value = Values.create(s.substring(eqIndex+1, s.length()));
-                //引数リストに追加
-                funcArgs.add(key);
-                //結果にデフォルト値を登録してしまう
-                result.put(key, value);
-            }
-        }
+        int requiredArgsCount = sig.requiredCount;
+        //キーワード引数で埋まっていない引数の数
+        int remaining = argc;
+        //キーワード引数で埋まった引数.キーワード引数がなければnull
+        boolean[] consumed = null;
         
         //ここから入力とのバインド
         
         //キーワード引数入力を先に処理
-        for(Entry<String, RosettoValue> e : getMap().entrySet()) {
-            //もしEntryのキーがfuncArgsの値と一致するなら該当のfuncArgを消去
-            boolean removed = funcArgs.remove(e.getKey());
-            //一致していればカウントを減算
-            if(removed) requiredArgsCount--;
+        for(int k=0; k<map.size(); k++) {
+            String key = map.keyAt(k);
+            int slot = -1;
+            //もしキーが引数名と一致するなら最初に一致したものを埋める
+            for(int i=0; i<argc; i++) {
+                if((consumed == null || !consumed[i]) && names[i].equals(key)) {
+                    if(consumed == null) consumed = new boolean[argc];
+                    consumed[i] = true;
+                    remaining--;
+                    //一致していればカウントを減算
+                    requiredArgsCount--;
+                    slot = i;
+                    break;
+                }
+            }
             //結果にキーワード引数を追加
-            result.put(e.getKey(), e.getValue());
+            result.put(slot, key, map.valueAt(k));
         }
         
         //非キーワード引数入力を処理
-        String mutableArg = searchMutableArg(funcArgs);
-        if(mutableArg != null) {
+        int mutableIndex = searchMutableArg(sig, consumed);
+        if(mutableIndex >= 0) {
             //もし可変長引数が含まれていれば
             
             //引数の要求数が入力の数よりも大きければエラー
             //可変長引数は要求数に含まないので-1
-            if(requiredArgsCount - 1 > getList().size()) {
+            if(requiredArgsCount - 1 > length) {
                 throw new IllegalArgumentException("関数に必要な引数を満たせません: " + 
                             getList().toString() + "|" + func.getArguments());
             }
             
             //引数に余りがあれば、それを可変長引数として追加していく
             //可変長引数のリスト
-            List<RosettoValue> margs = new LinkedList<RosettoValue>();
-            for(int i=0; i<getList().size(); i++) {
-                RosettoValue v = getList().get(i);
-                if(!funcArgs.isEmpty()) {
-                    //関数側で定義された引数名が空になるまでpopして取りだしていく
-                    String farg = funcArgs.pollFirst();
-                    //可変長引数自体は無視し、直接結びつけない
-                    if(farg.equals(mutableArg)) {
-                        //この時点で空である必要、そうでなければエラー
-                        if(!funcArgs.isEmpty()) {
+            List<RosettoValue> margs = null;
+            int next = 0;
+            for(int i=0; i<length; i++) {
+                RosettoValue v = values[offset + i];
+                next = nextUnconsumed(consumed, next, argc);
+                if(next < argc) {
+                    //関数側で定義された引数名を順に取りだしていく
+                    if(next == mutableIndex) {
+                        //可変長引数は最後である必要、そうでなければエラー
+                        if(nextUnconsumed(consumed, next + 1, argc) < argc) {
                             throw new IllegalArgumentException("mutable args must be last element");
                         }
                         //可変長引数に追加
+                        if(margs == null) margs = new ArrayList<RosettoValue>(length - i);
                         margs.add(v);
                     }
                     //引数名に値を結びつけて追加
-                    result.put(farg, v);
+                    result.put(next, names[next], v);
+                    next++;
                 } else {
                     //可変長引数に追加
+                    if(margs == null) margs = new ArrayList<RosettoValue>(length - i);
                     margs.add(v);
                 }
             }
             
             //可変長相当の引数があれば
-            if(margs.size() > 0) {
-                //可変長引数の名前
-                String margName = mutableArg.substring(1);
+            if(margs != null) {
                 //listvalueとして追加
-                result.put(margName, new ListValue(margs));
+                if(mutableIndex == sig.mutableIndex) {
+                    result.put(argc, sig.mutableName, new ListValue(margs));
+                } else {
+                    result.put(-1, names[mutableIndex].substring(1), new ListValue(margs));
+                }
             }
             
         } else {
             //含まれていなければ
-            if(requiredArgsCount > getList().size()) {
+            if(requiredArgsCount > length) {
                 throw new IllegalArgumentException("関数に必要な引数を満たせません: " + 
                         getList().toString() + "|" + func.getArguments());
-            } else if(funcArgs.size() < getList().size()) {
+            } else if(remaining < length) {
                 throw new IllegalArgumentException("不明な引数が余ります: " + 
                         getList().toString() + "|" + func.getArguments());
             }
-            for(RosettoValue value : getList()) {
+            int next = 0;
+            for(int i=0; i<length; i++) {
+                RosettoValue value = values[offset + i];
+                next = nextUnconsumed(consumed, next, argc);
                 //残った非キーワード引数を順に結合してマップへ追加
                 if(value.getType() == ValueType.ACTION_CALL) {
                     //ActionCallなら評価しておく
-                    result.put(funcArgs.pollFirst(), 
+                    result.put(next, names[next], 
                             ((ActionCall)value).evaluate(currentScope));
                 } else {
-                    result.put(funcArgs.pollFirst(), value);
+                    result.put(next, names[next], value);
                 }
+                next++;
+            }
+        }
+    }
+    
+    /**
+     * 束縛した引数の格納先.
+     */
+    private static abstract class BindTarget {
+        /**
+         * 引数を格納する.
+         * @param slot FunctionSignatureのレイアウト中の位置.分からなければ-1
+         * @param name 引数名
+         * @param value 引数の値
+         */
+        abstract void put(int slot, String name, RosettoValue value);
+    }
+    
+    /**
+     * 引数名と値のマップに格納する.
+     */
+    private static final class MapTarget extends BindTarget {
+        private final Map<String, RosettoValue> result;
+        
+        private MapTarget(Map<String, RosettoValue> result) {
+            this.result = result;
+        }
+        
+        @Override
+        void put(int slot, String name, RosettoValue value) {
+            result.put(name, value);
+        }
+    }
+    
+    /**
+     * レイアウトに従って配列に格納し、レイアウトにない引数だけをマップに格納する.
+     */
+    private static final class SlotTarget extends BindTarget {
+        private final FrameLayout layout;
+        private final RosettoValue[] slots;
+        private Map<String, RosettoValue> extra;
+        
+        private SlotTarget(FrameLayout layout) {
+            this.layout = layout;
+            this.slots = new RosettoValue[layout.size()];
+        }
+        
+        @Override
+        void put(int slot, String name, RosettoValue value) {
+            if(slot < 0) slot = layout.indexOf(name);
+            if(slot >= 0) {
+                slots[slot] = value;
+            } else {
+                if(extra == null) extra = new HashMap<String, RosettoValue>();
+                extra.put(name, value);
             }
         }
-        return result;
+    }
+    
+    /**
+     * キーワード引数で埋まっていない次の引数の位置を返す.
+     * @return from以降で最初に埋まっていない引数の位置.なければargc
+     */
+    private static int nextUnconsumed(boolean[] consumed, int from, int argc) {
+        if(consumed == null) return from;
+        while(from < argc && consumed[from]) from++;
+        return from;
     }
 
+    /**
+     * リスト部・マップ部のいずれかにActionCallが含まれているかどうかを返す.
+     * @return ActionCallが含まれているかどうか
+     */
+    public boolean containsActionCall() {
+        if(actionCallState == 0) {
+            boolean contains = false;
+            for(int i=0; i<length && !contains; i++) {
+                contains = values[offset + i] instanceof ActionCall;
+            }
+            for(int i=0; i<map.size() && !contains; i++) {
+                contains = map.valueAt(i) instanceof ActionCall;
+            }
+            actionCallState = contains ? 1 : 2;
+        }
+        return actionCallState == 1;
+    }
+    
     public boolean hasMappedValue() {
         return map.size() > 0;
     }
@@ -352,26 +534,46 @@ public class ListValue implements RosettoValue {
     
     @Override
     public RosettoValue first() {
-        return list.getFirst();
+        if(length == 0) throw new NoSuchElementException();
+        return values[offset];
     }
     
+    /**
+     * 最初の要素を除いたリストを返す.<br>
+     * 配列をコピーせず、同じ配列を参照する位置のずれたリストを返す.
+     */
     @Override
     public RosettoValue rest() {
-        if(list.size() == 0 || list.size() == 1) return Values.NULL;
-        if(list.size() == 2) return list.get(1);
-        return new ListValue(list.subList(1, list.size()), map);
+        if(length == 0 || length == 1) return Values.NULL;
+        if(length == 2) return values[offset + 1];
+        return new ListValue(values, offset + 1, length - 1, map, frontier);
     }
     
+    /**
+     * 指定した値を先頭に加えたリストを返す.キーワード引数部はそのまま引き継がれる.<br>
+     * このリストの直前の位置が配列上で空いていればそこに値を置いて配列を共有し、
+     * そうでなければ前方に空きを持たせた新しい配列にコピーする.
+     */
     @Override
     public RosettoValue cons(RosettoValue head) {
-        return null;
+        if(frontier != null && offset > 0 && frontier.compareAndSet(offset, offset - 1)) {
+            values[offset - 1] = head;
+            return new ListValue(values, offset - 1, length + 1, map, frontier);
+        }
+        int room = Math.max(4, length);
+        RosettoValue[] grown = new RosettoValue[room + 1 + length];
+        System.arraycopy(values, offset, grown, room + 1, length);
+        grown[room] = head;
+        return new ListValue(grown, room, length + 1, map, new AtomicInteger(room));
     }
     
     /**
      * List部の指定インデックスに存在する値を取得する.
      */
     public RosettoValue getAt(int listIndex) {
-        return list.get(listIndex);
+        if(listIndex < 0 || listIndex >= length)
+            throw new IndexOutOfBoundsException("Index: " + listIndex + ", Size: " + length);
+        return values[offset + listIndex];
     }
     
     /**
@@ -379,14 +581,15 @@ public class ListValue implements RosettoValue {
      */
     @Override
     public int size() {
-        return list.size();
+        return length;
     }
     
     /**
      * オプションマップ中の指定キーに関連づけられた値を取得する.
      */
     public RosettoValue get(String mapKey) {
-        return map.containsKey(mapKey) ? map.get(mapKey) : Values.NULL;
+        RosettoValue v = map.get(mapKey);
+        return (v != null) ? v : Values.NULL;
     }
 
     public int optionSize() {
@@ -394,24 +597,65 @@ public class ListValue implements RosettoValue {
     }
 
     public List<RosettoValue> getList() {
-        return Collections.unmodifiableList(list);
+        return new ListView();
     }
 
     public Map<String, RosettoValue> getMap() {
-        return Collections.unmodifiableMap(map);
+        return map.asMap();
     }
     
     /**
-     * 引数中から可変長引数を探して返す.
-     * @return 可変長引数、引数中に可変長引数がなければnull
+     * リスト部を読み取り専用のListとして参照するビュー.
      */
-    private String searchMutableArg(List<String> args) {
-        String result = null;
-        for(String s : args) {
-            if(s.startsWith("*") && s.length() >= 2) {
-                if(result != null)
+    private final class ListView extends AbstractList<RosettoValue> implements RandomAccess {
+        @Override
+        public RosettoValue get(int index) {
+            return getAt(index);
+        }
+        
+        @Override
+        public int size() {
+            return length;
+        }
+    }
+    
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("list", new LinkedList<RosettoValue>(getList()));
+        fields.put("map", new TreeMap<String, RosettoValue>(getMap()));
+        out.writeFields();
+    }
+    
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        List<RosettoValue> list = (List<RosettoValue>) fields.get("list", null);
+        Map<String, RosettoValue> map = (Map<String, RosettoValue>) fields.get("map", null);
+        if(list == null || map == null)
+            throw new InvalidObjectException("list and map are required");
+        deserialized = new ListValue(list, map);
+    }
+    
+    private Object readResolve() {
+        return deserialized;
+    }
+    
+    /**
+     * キーワード引数で埋まっていない引数の中から可変長引数を探して返す.
+     * @return 可変長引数の位置、引数中に可変長引数がなければ-1
+     */
+    private static int searchMutableArg(FunctionSignature sig, boolean[] consumed) {
+        if(consumed == null) {
+            if(sig.hasMultipleMutable)
+                throw new IllegalArgumentException("multiple mutablearg found");
+            return sig.mutableIndex;
+        }
+        int result = -1;
+        for(int i=0; i<sig.names.length; i++) {
+            if(!consumed[i] && FunctionSignature.isMutable(sig.names[i])) {
+                if(result >= 0)
                     throw new IllegalArgumentException("multiple mutablearg found");
-                result = s;
+                result = i;
             }
         }
         return result;
@@ -0,0 +1,135 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package org.ocsoft.rosetto.models.base.elements.values;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.ocsoft.rosetto.models.base.elements.RosettoValue;
+import org.ocsoft.rosetto.models.base.elements.ValueType;
+import org.ocsoft.rosetto.models.system.Scope;
+
+/**
+ * 評価済みの引数の配列を直接受け取って実行される関数.<br>
+ * 引数定義が可変長引数一つだけ、あるいはデフォルト値のない引数のみからなる関数で、
+ * キーワード引数なしで呼び出された場合はスコープを生成せずにapplyを呼び出す.
+ * それ以外の呼び出しでは通常の関数と同様に引数を束縛し、束縛した値を並べてapplyを呼び出す.<br>
+ * 可変長引数は束縛後のリストをfirstとrestで辿った場合と同じ並びで渡される.
+ * @author tohhy
+ */
+public abstract class PrimitiveFunction extends RosettoFunction {
+    private static final long serialVersionUID = -2893326427760811352L;
+
+    /**
+     * 指定した名前と引数定義をもつ関数を生成する.
+     * @param name 関数名
+     * @param args 引数定義
+     */
+    public PrimitiveFunction(String name, String...args) {
+        super(name, args);
+    }
+
+    /**
+     * 評価済みの引数を受け取って関数を実行する.
+     * @param args 評価済みの引数.引数定義の順に並ぶ
+     * @return 実行結果
+     */
+    protected abstract RosettoValue apply(RosettoValue[] args);
+
+    /**
+     * 評価済みの引数二つを受け取って関数を実行する.<br>
+     * 引数が二つの呼び出しでは配列を作らずにこちらが呼ばれる.
+     * デフォルトではapply(RosettoValue[])に委譲する.
+     * @param x 一つ目の引数
+     * @param y 二つ目の引数
+     * @return 実行結果
+     */
+    protected RosettoValue apply(RosettoValue x, RosettoValue y) {
+        return apply(new RosettoValue[]{x, y});
+    }
+
+    /**
+     * 評価済みの引数から結果を計算する関数なので、デフォルトでは並列に実行できるものとする.
+     */
+    @Override
+    public boolean isPure() {
+        return true;
+    }
+
+    @Override
+    protected RosettoValue call(ListValue args, Scope parentScope) {
+        int argc = args.size();
+        if(args.hasKeywords() || !accepts(getSignature(), argc)) {
+            return super.call(args, parentScope);
+        }
+        if(argc == 2) {
+            RosettoValue x = args.evaluateAt(0, parentScope);
+            RosettoValue y = args.evaluateAt(1, parentScope);
+            if(!isVariadic() || !needsUnroll(y)) return apply(x, y);
+            return apply(unroll(new ListValue(x, y)));
+        }
+        RosettoValue[] values = new RosettoValue[argc];
+        for(int i=0; i<argc; i++) {
+            values[i] = args.evaluateAt(i, parentScope);
+        }
+        if(isVariadic() && needsUnroll(values[argc - 1])) {
+            return apply(unroll(new ListValue(values)));
+        }
+        return apply(values);
+    }
+
+    @Override
+    protected RosettoValue run(Scope scope, ListValue rawArgs) {
+        FunctionSignature sig = getSignature();
+        List<RosettoValue> values = new ArrayList<RosettoValue>(sig.names.length);
+        for(int i=0; i<sig.names.length; i++) {
+            if(i == sig.mutableIndex) {
+                values.addAll(Arrays.asList(unroll(scope.get(sig.mutableName))));
+            } else {
+                values.add(scope.get(sig.names[i]));
+            }
+        }
+        if(values.size() == 2) return apply(values.get(0), values.get(1));
+        return apply(values.toArray(new RosettoValue[values.size()]));
+    }
+
+    /**
+     * 引数定義が可変長引数一つだけかどうかを返す.
+     */
+    private boolean isVariadic() {
+        return getSignature().mutableIndex >= 0;
+    }
+
+    /**
+     * 指定した数の非キーワード引数による呼び出しを、束縛なしで実行できるかどうかを返す.
+     */
+    private static boolean accepts(FunctionSignature sig, int argc) {
+        if(sig.mutableIndex >= 0) {
+            return sig.names.length == 1 && argc >= 1;
+        }
+        return sig.requiredCount == sig.names.length && argc == sig.names.length;
+    }
+
+    /**
+     * 可変長引数の末尾の値が、firstとrestで辿った際に展開されるか読み飛ばされるかを返す.
+     */
+    private static boolean needsUnroll(RosettoValue last) {
+        ValueType type = last.getType();
+        return type == ValueType.LIST || type == ValueType.SEQUENCE || type == ValueType.NULL;
+    }
+
+    /**
+     * 可変長引数に束縛された値をfirstとrestで辿って配列にする.
+     */
+    private static RosettoValue[] unroll(RosettoValue nums) {
+        List<RosettoValue> result = new ArrayList<RosettoValue>();
+        while(true) {
+            result.add(nums.first());
+            nums = nums.rest();
+            if(nums.getType() == ValueType.NULL) break;
+        }
+        return result.toArray(new RosettoValue[result.size()]);
+    }
+}
@@ -41,6 +41,11 @@ public abstract class RosettoFunction implements RosettoValue, RosettoAction {
      */
     private final List<String> args;
     
+    /**
+     * 引数リストを解析した結果.最初に引数を束縛する際に生成される.
+     */
+    private transient volatile FunctionSignature signature;
+    
     /**
      * この関数のオブジェクトを指定した名前と引数で生成する.<br>
      * 
@@ -112,7 +117,19 @@ public abstract class RosettoFunction implements RosettoValue, RosettoAction {
      */
     protected Scope createScope(ListValue args, Scope parentScope) {
         //通常はすべての関数が評価されて渡される
-        return new Scope(args.evaluateChildren(parentScope), this, parentScope);
+        return args.evaluateChildren(parentScope).bindScope(this, parentScope);
+    }
+
+    /**
+     * 引数を束縛したスコープを生成し、runを呼び出す.<br>
+     * executeから呼び出され、例外の処理と実行の通知はexecute側で行われる.
+     * スコープを経由せずに実行できる関数はこのメソッドをオーバーライドする.
+     * @param args 非nullの実行時引数
+     * @param parentScope 実行時のスコープ
+     * @return 実行結果
+     */
+    protected RosettoValue call(ListValue args, Scope parentScope) {
+        return run(createScope(args, parentScope), args);
     }
 
     /**
@@ -132,13 +149,13 @@ public abstract class RosettoFunction implements RosettoValue, RosettoAction {
             args = ListValue.EMPTY;
         RosettoValue result = Values.NULL;
         try {
-            Scope functionScope = createScope(args, parentScope);
-            result = run(functionScope, args);
+            result = call(args, parentScope);
         } catch(Exception e) {
             RosettoLogger.throwing(getClass(), "execute", e);
         }
         RosettoObservatories.getAction().functionExecuted(this, args, result);
-        RosettoLogger.finer(SystemMessage.S11000_FUNCTION_EXECUTED, this.toString());
+        //関数情報の文字列はログが出力される場合にのみ生成される
+        RosettoLogger.finer(SystemMessage.S11000_FUNCTION_EXECUTED, this);
         return result;
     }
 
@@ -198,6 +215,27 @@ public abstract class RosettoFunction implements RosettoValue, RosettoAction {
         if(!isValid) throw new UnExpectedTypeValueException();
     }
 
+    /**
+     * この関数が大域的な状態を変更しないかどうかを返す.<br>
+     * trueを返す関数は、pmapなどによって複数のスレッドから同時に実行されることがある.
+     * グローバル変数や関数の定義、呼び出し元のスコープを変更する関数はfalseを返さなければならない.
+     * デフォルトではfalse.
+     * @return 並列に実行してよい関数かどうか
+     */
+    public boolean isPure() {
+        return false;
+    }
+
+    /**
+     * この関数の実行内容を表す式を返す.<br>
+     * defnやfnで定義された関数のように、本体の式を評価して実行される関数はその式を返す.
+     * 式を持たない関数ではnull.
+     * @return 関数本体の式、なければnull
+     */
+    public RosettoValue getBody() {
+        return null;
+    }
+
     /**
      * この関数が取る引数のリストを読み取り専用で返す.
      * @return この関数が取る引数のリスト
@@ -206,6 +244,19 @@ public abstract class RosettoFunction implements RosettoValue, RosettoAction {
         return Collections.unmodifiableList(args);
     }
 
+    /**
+     * この関数の引数リストを解析した結果を返す.解析は最初の呼び出し時に一度だけ行われる.
+     * @return 引数リストを解析した結果
+     */
+    FunctionSignature getSignature() {
+        FunctionSignature s = signature;
+        if(s == null) {
+            s = FunctionSignature.compile(args);
+            signature = s;
+        }
+        return s;
+    }
+
     public String getName() {
         return name;
     }
@@ -3,6 +3,8 @@
  * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
 package org.ocsoft.rosetto.models.base.elements.values;
 
+import java.util.logging.Level;
+
 import org.ocsoft.rosetto.contexts.base.Rosetto;
 import org.ocsoft.rosetto.models.base.elements.RosettoAction;
 import org.ocsoft.rosetto.models.base.elements.RosettoValue;
@@ -61,14 +63,16 @@ public class ScriptValue implements RosettoAction {
         RosettoValue result = Values.NULL;
         try {
             Scope scriptScope = createScope(args, parentScope);
-            Scenario parsed = Rosetto.getParser().parseScript(this);
+            Scenario parsed = Rosetto.getScenarioCache().get(this, Rosetto.getParser());
             Rosetto.getPlayer().pushScenario(parsed, scriptScope);
         } catch(Exception e) {
             e.printStackTrace();
         }
         RosettoObservatories.getAction().macroExecuted(this, args, result);
-        String s = (script.length() > 10) ? asString().substring(0, 10) : asString();
-        RosettoLogger.finer(SystemMessage.S11100_MACRO_EXECUTED, s);
+        if(RosettoLogger.isLoggable(Level.FINER)) {
+            String s = (script.length() > 10) ? asString().substring(0, 10) : asString();
+            RosettoLogger.finer(SystemMessage.S11100_MACRO_EXECUTED, s);
+        }
         return Values.VOID;
     }
 
@@ -107,7 +111,8 @@ public class ScriptValue implements RosettoAction {
 
     @Override
     public RosettoValue evaluate(Scope scope) {
-        Rosetto.getPlayer().pushScenario(Rosetto.getParser().parseScript(script), scope);
+        Scenario parsed = Rosetto.getScenarioCache().get(this, Rosetto.getParser());
+        Rosetto.getPlayer().pushScenario(parsed, scope);
         return Values.VOID;
     }
 
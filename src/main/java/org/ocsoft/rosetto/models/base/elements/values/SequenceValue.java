@@ -0,0 +1,499 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package org.ocsoft.rosetto.models.base.elements.values;
+
+import java.io.ObjectStreamException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.ocsoft.rosetto.models.base.elements.RosettoAction;
+import org.ocsoft.rosetto.models.base.elements.RosettoValue;
+import org.ocsoft.rosetto.models.base.elements.ValueType;
+import org.ocsoft.rosetto.models.system.Scope;
+import org.ocsoft.rosetto.system.exceptions.NotConvertibleException;
+import org.ocsoft.rosetto.utils.base.Values;
+
+/**
+ * 要素を必要になった時点で計算する遅延シーケンス.<br>
+ * mapやfilterを重ねたシーケンスは中間のリストを作らずに、一つの要素ずつ元のシーケンスから順に計算される.
+ * 計算した要素は保持され、同じ要素を何度参照しても、restで得た残りのシーケンスから参照しても
+ * 関数は要素ごとに一度しか実行されない.<br>
+ * 文字列表現や等価性は同じ要素を持つListValueと同じになり、シリアライズ時にはListValueに変換される.
+ * @author tohhy
+ */
+public abstract class SequenceValue implements RosettoValue, Iterable<RosettoValue> {
+    private static final long serialVersionUID = 3079415702236843155L;
+
+    /**
+     * startからendの直前までの整数を順に返すシーケンスを生成する.
+     * @param start 最初の値
+     * @param end 終わりの値.この値は含まない
+     * @return 生成したシーケンス
+     */
+    public static SequenceValue range(long start, long end) {
+        return new Range(start, Math.max(start, end));
+    }
+
+    /**
+     * 各要素を引数として指定した関数を実行した結果を要素とするシーケンスを返す.
+     * @param fn 実行する関数
+     * @param scope 関数を実行するスコープ
+     * @return 関数を適用したシーケンス
+     */
+    public SequenceValue map(RosettoAction fn, Scope scope) {
+        if(fn == null) throw new IllegalArgumentException("fn must not be null");
+        return new Memoized(new Mapped(this, fn, scope), 0);
+    }
+
+    /**
+     * 各要素を引数として指定した関数を実行し、結果が真になった要素だけを持つシーケンスを返す.
+     * 真偽値に変換できない結果は偽とみなす.
+     * @param fn 実行する関数
+     * @param scope 関数を実行するスコープ
+     * @return 条件を満たす要素のシーケンス
+     */
+    public SequenceValue filter(RosettoAction fn, Scope scope) {
+        if(fn == null) throw new IllegalArgumentException("fn must not be null");
+        return new Memoized(new Filtered(this, fn, scope), 0);
+    }
+
+    /**
+     * 要素を先頭から順に計算するイテレータを返す.
+     * @return 要素のイテレータ
+     */
+    @Override
+    public abstract Iterator<RosettoValue> iterator();
+
+    /**
+     * 先頭からn個の要素を除いたシーケンスを返す.
+     * @param n 除く要素の数
+     * @return 残りのシーケンス
+     */
+    protected abstract SequenceValue drop(int n);
+
+    /**
+     * 全ての要素を計算してListValueにまとめる.
+     * @return 同じ要素を持つListValue
+     */
+    public ListValue toList() {
+        List<RosettoValue> result = new ArrayList<RosettoValue>();
+        for(RosettoValue v : this) result.add(v);
+        return new ListValue(result);
+    }
+
+    /**
+     * 関数に値を一つ渡して実行し、結果を評価して返す.
+     */
+    private static RosettoValue apply(RosettoAction fn, Scope scope, RosettoValue v) {
+        return fn.execute(new ListValue(v), scope).evaluate(scope);
+    }
+
+    /**
+     * シリアライズ時には要素を計算したListValueに置き換える.
+     */
+    protected Object writeReplace() throws ObjectStreamException {
+        return toList();
+    }
+
+    @Override
+    public ValueType getType() {
+        return ValueType.SEQUENCE;
+    }
+
+    @Override
+    public Object getValue() {
+        return this;
+    }
+
+    @Override
+    public RosettoValue evaluate(Scope scope) {
+        return this;
+    }
+
+    @Override
+    public RosettoValue first() {
+        Iterator<RosettoValue> it = iterator();
+        if(!it.hasNext()) throw new NoSuchElementException();
+        return it.next();
+    }
+
+    /**
+     * 最初の要素を除いたシーケンスを返す.<br>
+     * ListValueと同じく、残りがなければNULLを、残りが一つであればその要素自身を返す.
+     */
+    @Override
+    public RosettoValue rest() {
+        Iterator<RosettoValue> it = iterator();
+        if(!it.hasNext()) return Values.NULL;
+        it.next();
+        if(!it.hasNext()) return Values.NULL;
+        RosettoValue second = it.next();
+        if(!it.hasNext()) return second;
+        return drop(1);
+    }
+
+    @Override
+    public RosettoValue cons(RosettoValue head) {
+        return toList().cons(head);
+    }
+
+    @Override
+    public RosettoValue getAt(int index) {
+        if(index >= 0) {
+            int i = 0;
+            for(RosettoValue v : this) {
+                if(i++ == index) return v;
+            }
+        }
+        throw new IndexOutOfBoundsException("Index: " + index);
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for(Iterator<RosettoValue> it = iterator(); it.hasNext(); it.next()) size++;
+        return size;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if(obj instanceof RosettoValue) {
+            return ((RosettoValue)obj).asString().equals(this.asString());
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return asString();
+    }
+
+    @Override
+    public String asString() throws NotConvertibleException {
+        StringBuilder sb = new StringBuilder("(");
+        boolean isFirst = true;
+        for(RosettoValue v : this) {
+            if(!isFirst) sb.append(' ');
+            sb.append(v);
+            isFirst = false;
+        }
+        return sb.append(')').toString();
+    }
+
+    @Override
+    public String asString(String defaultValue) {
+        return asString();
+    }
+
+    @Override
+    public boolean asBool() throws NotConvertibleException {
+        throw new NotConvertibleException();
+    }
+
+    @Override
+    public boolean asBool(boolean defaultValue) {
+        return defaultValue;
+    }
+
+    @Override
+    public int asInt() throws NotConvertibleException {
+        throw new NotConvertibleException();
+    }
+
+    @Override
+    public int asInt(int defaultValue) {
+        return defaultValue;
+    }
+
+    @Override
+    public long asLong() throws NotConvertibleException {
+        throw new NotConvertibleException();
+    }
+
+    @Override
+    public long asLong(long defaultValue) {
+        return defaultValue;
+    }
+
+    @Override
+    public double asDouble() throws NotConvertibleException {
+        throw new NotConvertibleException();
+    }
+
+    @Override
+    public double asDouble(double defaultValue) {
+        return defaultValue;
+    }
+
+    /**
+     * 整数の範囲.要素数や位置による参照は計算で求める.
+     */
+    private static final class Range extends SequenceValue {
+        private static final long serialVersionUID = -7412598307386010637L;
+
+        private final long start;
+        private final long end;
+
+        private Range(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public Iterator<RosettoValue> iterator() {
+            return new Iterator<RosettoValue>() {
+                private long next = start;
+
+                @Override
+                public boolean hasNext() {
+                    return next < end;
+                }
+
+                @Override
+                public RosettoValue next() {
+                    if(next >= end) throw new NoSuchElementException();
+                    return Values.create(next++);
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+
+        @Override
+        protected SequenceValue drop(int n) {
+            return new Range(Math.min(start + n, end), end);
+        }
+
+        @Override
+        public RosettoValue first() {
+            if(start >= end) throw new NoSuchElementException();
+            return Values.create(start);
+        }
+
+        @Override
+        public RosettoValue rest() {
+            long remaining = end - start;
+            if(remaining <= 1) return Values.NULL;
+            if(remaining == 2) return Values.create(start + 1);
+            return drop(1);
+        }
+
+        @Override
+        public RosettoValue getAt(int index) {
+            if(index < 0 || index >= end - start)
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+            return Values.create(start + index);
+        }
+
+        @Override
+        public int size() {
+            return (int)Math.min(end - start, Integer.MAX_VALUE);
+        }
+    }
+
+    /**
+     * 計算済みの要素を先頭から保持し、足りない要素を順に計算するシーケンス.<br>
+     * restやdropで得たシーケンスは同じ要素を共有し、位置だけが異なる.
+     */
+    private static final class Memoized extends SequenceValue {
+        private static final long serialVersionUID = -5178092337624370313L;
+
+        private final Realized realized;
+        private final int offset;
+
+        private Memoized(Realized realized, int offset) {
+            this.realized = realized;
+            this.offset = offset;
+        }
+
+        @Override
+        public Iterator<RosettoValue> iterator() {
+            return new Iterator<RosettoValue>() {
+                private int index = offset;
+
+                @Override
+                public boolean hasNext() {
+                    return realized.has(index);
+                }
+
+                @Override
+                public RosettoValue next() {
+                    if(!hasNext()) throw new NoSuchElementException();
+                    return realized.get(index++);
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+
+        @Override
+        protected SequenceValue drop(int n) {
+            return (n == 0) ? this : new Memoized(realized, offset + n);
+        }
+
+        @Override
+        public RosettoValue first() {
+            if(!realized.has(offset)) throw new NoSuchElementException();
+            return realized.get(offset);
+        }
+
+        @Override
+        public RosettoValue rest() {
+            if(!realized.has(offset + 1)) return Values.NULL;
+            if(!realized.has(offset + 2)) return realized.get(offset + 1);
+            return drop(1);
+        }
+
+        @Override
+        public RosettoValue getAt(int index) {
+            if(index < 0) throw new IndexOutOfBoundsException("Index: " + index);
+            return realized.at(offset + index);
+        }
+
+        @Override
+        public int size() {
+            return Math.max(realized.size() - offset, 0);
+        }
+    }
+
+    /**
+     * シーケンスの要素を計算し、計算した要素を先頭から順に保持する.
+     * 複数のスレッドから参照されてもよいように、要素の計算は一度に一つずつ行う.
+     */
+    private abstract static class Realized {
+        /**
+         * 計算済みの要素.
+         */
+        protected final List<RosettoValue> values = new ArrayList<RosettoValue>();
+        /**
+         * 全ての要素を計算し終えたかどうか.
+         */
+        private boolean done;
+
+        /**
+         * 指定位置の次の要素を計算して返す.要素がもうなければnull.
+         * @param index 計算する要素の位置
+         * @return 計算した要素
+         */
+        protected abstract RosettoValue computeNext(int index);
+
+        /**
+         * 指定位置までの要素を計算し、その位置に要素があるかどうかを返す.
+         */
+        synchronized boolean has(int index) {
+            while(!done && values.size() <= index) {
+                RosettoValue v = computeNext(values.size());
+                if(v == null) done = true;
+                else values.add(v);
+            }
+            return index < values.size();
+        }
+
+        /**
+         * 指定位置の要素を返す.hasで存在を確かめてから呼ぶ.
+         */
+        synchronized RosettoValue get(int index) {
+            return values.get(index);
+        }
+
+        /**
+         * 指定位置の要素を返す.位置を指定して要素を計算できる場合は、手前の要素を計算しなくてもよい.
+         */
+        synchronized RosettoValue at(int index) {
+            if(!has(index)) throw new IndexOutOfBoundsException("Index: " + index);
+            return values.get(index);
+        }
+
+        /**
+         * 要素数を返す.要素を計算せずに数えられない場合は全ての要素を計算する.
+         */
+        synchronized int size() {
+            has(Integer.MAX_VALUE);
+            return values.size();
+        }
+    }
+
+    /**
+     * 元のシーケンスの各要素に関数を適用した要素.<br>
+     * 要素数は元のシーケンスと同じなので、位置による参照ではその要素だけを計算する.
+     * 先に計算した要素は、先頭から順に計算が追いついたときにそのまま使われる.
+     */
+    private static final class Mapped extends Realized {
+        private final SequenceValue source;
+        private final RosettoAction fn;
+        private final Scope scope;
+        /**
+         * 位置による参照で、先頭からの計算より先に計算された要素.
+         */
+        private final Map<Integer, RosettoValue> ahead = new HashMap<Integer, RosettoValue>();
+        private Iterator<RosettoValue> it;
+
+        private Mapped(SequenceValue source, RosettoAction fn, Scope scope) {
+            this.source = source;
+            this.fn = fn;
+            this.scope = scope;
+        }
+
+        @Override
+        protected RosettoValue computeNext(int index) {
+            if(it == null) it = source.iterator();
+            if(!it.hasNext()) return null;
+            RosettoValue v = it.next();
+            RosettoValue computed = ahead.remove(index);
+            return (computed != null) ? computed : apply(fn, scope, v);
+        }
+
+        @Override
+        synchronized RosettoValue at(int index) {
+            if(index < values.size()) return values.get(index);
+            RosettoValue computed = ahead.get(index);
+            if(computed == null) {
+                computed = apply(fn, scope, source.getAt(index));
+                ahead.put(index, computed);
+            }
+            return computed;
+        }
+
+        @Override
+        synchronized int size() {
+            return source.size();
+        }
+    }
+
+    /**
+     * 元のシーケンスのうち、関数の結果が真になる要素.
+     */
+    private static final class Filtered extends Realized {
+        private final SequenceValue source;
+        private final RosettoAction fn;
+        private final Scope scope;
+        private Iterator<RosettoValue> it;
+
+        private Filtered(SequenceValue source, RosettoAction fn, Scope scope) {
+            this.source = source;
+            this.fn = fn;
+            this.scope = scope;
+        }
+
+        @Override
+        protected RosettoValue computeNext(int index) {
+            if(it == null) it = source.iterator();
+            while(it.hasNext()) {
+                RosettoValue v = it.next();
+                if(apply(fn, scope, v).asBool(false)) return v;
+            }
+            return null;
+        }
+    }
+}
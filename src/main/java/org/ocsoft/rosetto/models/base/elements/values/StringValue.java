@@ -3,6 +3,10 @@
  * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
 package org.ocsoft.rosetto.models.base.elements.values;
 
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
 import org.ocsoft.rosetto.models.base.elements.RosettoValue;
 import org.ocsoft.rosetto.models.base.elements.ValueType;
 import org.ocsoft.rosetto.models.system.Scope;
@@ -21,6 +25,12 @@ public class StringValue implements RosettoValue {
      */
     private final String value;
     
+    /**
+     * internで共有されているインスタンス.どこからも参照されなくなったものは自動的に取り除かれる.
+     */
+    private static final Map<String, WeakReference<StringValue>> INTERNED = 
+            new WeakHashMap<String, WeakReference<StringValue>>();
+    
     /**
      * 指定した文字列でStringValueを初期化する.
      * @param value このStringValueの実体となる値
@@ -32,6 +42,29 @@ public class StringValue implements RosettoValue {
         this.value = value;
     }
     
+    /**
+     * 指定した文字列のStringValueを共有のインスタンスから返す.<br>
+     * 同じ内容の文字列に対しては、どこかから参照されている間は同じインスタンスが返る.
+     * 共有のテーブルは弱参照で保持するため、参照されなくなったインスタンスはGCで回収される.
+     * @param value StringValueとして生成する値
+     * @return 指定した文字列のStringValue
+     * @throws IllegalArgumentException valueがnullの場合
+     */
+    public static StringValue intern(String value) {
+        if(value == null)
+            throw new IllegalArgumentException("value must not be null");
+        synchronized(INTERNED) {
+            WeakReference<StringValue> ref = INTERNED.get(value);
+            StringValue result = (ref == null) ? null : ref.get();
+            if(result == null) {
+                result = new StringValue(value);
+                //キーには値自身が持つ文字列を使い、値が生きている間はエントリも残るようにする
+                INTERNED.put(result.value, new WeakReference<StringValue>(result));
+            }
+            return result;
+        }
+    }
+    
     @Override
     public String toString() {
         return value;
@@ -4,10 +4,13 @@
 
 package org.ocsoft.rosetto.models.base.scenario;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -35,6 +38,22 @@ public class Scenario implements Serializable {
      */
     private final Map<String, Label> labels;
     
+    /**
+     * ラベルの位置を昇順に並べた配列.同じ位置のラベルは1つにまとめられる.
+     * labelsから生成され、直列化されない.
+     */
+    private transient int[] labelPositions;
+    
+    /**
+     * labelPositionsの各位置に対応するラベル.
+     */
+    private transient Label[] positionedLabels;
+    
+    /**
+     * ユニットのインデックスから所属するラベルを引く表.buildLabelTableで作成される.
+     */
+    private transient volatile Label[] labelTable;
+    
     /**
      * 指定したトークンのリストでこのシナリオを初期化する.
      * トークンのリストはラベルとユニットのリストに振り分けられて格納される.
@@ -56,6 +75,7 @@ public class Scenario implements Serializable {
         this.labels = (tokens != null) ? 
                 Collections.unmodifiableMap(createLabelMap(tokens)) : 
                 Collections.unmodifiableMap(new HashMap<String, Label>());
+        indexLabels();
     }
     
     /**
@@ -70,6 +90,7 @@ public class Scenario implements Serializable {
         this.labels = (labels != null) ? 
                 Collections.unmodifiableMap(createLabelMap(labels)) : 
                 Collections.unmodifiableMap(new HashMap<String, Label>());
+        indexLabels();
     }
     
     /**
@@ -103,6 +124,37 @@ public class Scenario implements Serializable {
         return result;
     }
     
+    /**
+     * ラベルを位置の昇順に並べたインデックスを作成する.<br>
+     * 同じ位置に複数のラベルがある場合は、labelsの列挙順で最初のものを残す.
+     */
+    private void indexLabels() {
+        Label[] sorted = labels.values().toArray(new Label[labels.size()]);
+        //安定ソートなので同じ位置のラベルは列挙順のまま並ぶ
+        Arrays.sort(sorted, new Comparator<Label>() {
+            @Override
+            public int compare(Label o1, Label o2) {
+                return Integer.compare(o1.getIndex(), o2.getIndex());
+            }
+        });
+        int[] positions = new int[sorted.length];
+        Label[] distinct = new Label[sorted.length];
+        int count = 0;
+        for(Label l : sorted) {
+            if(count > 0 && positions[count - 1] == l.getIndex()) continue;
+            positions[count] = l.getIndex();
+            distinct[count] = l;
+            count++;
+        }
+        this.labelPositions = Arrays.copyOf(positions, count);
+        this.positionedLabels = Arrays.copyOf(distinct, count);
+    }
+    
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        indexLabels();
+    }
+    
     /**
      * このページが保持するユニット一覧の文字列表現を返す.
      */
@@ -126,15 +178,32 @@ public class Scenario implements Serializable {
      * @return 指定インデックスが所属するラベル
      */
     public Label getLabelAt(int index) {
-        Label selected = null;
-        int selectedIndex = Integer.MIN_VALUE;
-        for(Label l : labels.values()) {
-            if(l.getIndex() <= index && l.getIndex() > selectedIndex) {
-                selected = l;
-                selectedIndex = l.getIndex();
+        Label[] table = labelTable;
+        if(table != null && index >= 0 && index < table.length) return table[index];
+        //index以下で最大のラベル位置を探す
+        int found = Arrays.binarySearch(labelPositions, index);
+        if(found < 0) found = -found - 2;
+        return (found < 0) ? null : positionedLabels[found];
+    }
+    
+    /**
+     * 全てのユニットについて所属するラベルの表を作成し、以降のgetLabelAtを定数時間にする.<br>
+     * ユニット数に比例したメモリを使うため、ラベルの参照が頻繁な大きなシナリオでのみ呼ぶ.
+     * 既に作成済みなら何もしない.
+     */
+    public void buildLabelTable() {
+        if(labelTable != null) return;
+        //最後のユニットの直後に置かれたラベルも引けるようにユニット数+1の大きさにする
+        Label[] table = new Label[units.size() + 1];
+        int next = 0;
+        Label current = null;
+        for(int i=0; i<table.length; i++) {
+            while(next < labelPositions.length && labelPositions[next] <= i) {
+                current = positionedLabels[next++];
             }
+            table[i] = current;
         }
-        return selected;
+        labelTable = table;
     }
     
     /**
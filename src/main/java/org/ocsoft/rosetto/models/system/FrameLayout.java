@@ -0,0 +1,87 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package org.ocsoft.rosetto.models.system;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * スコープのローカル変数を配列で保持する際の、変数名と配列中の位置の対応.<br>
+ * 関数ごとに一つ作られ、その関数の呼び出しで生成される全てのスコープで共有される.
+ * 同じ名前が二度現れることはない.
+ * @author tohhy
+ */
+@Immutable
+public final class FrameLayout {
+    /**
+     * この数以下であれば線形探索を行う.
+     */
+    private static final int SMALL_SIZE = 8;
+
+    /**
+     * 位置ごとの変数名.
+     */
+    private final String[] names;
+
+    /**
+     * 変数名から位置への対応.変数が少ない場合はnull.
+     */
+    private final Map<String, Integer> indexes;
+
+    /**
+     * 指定した変数名を順に配列へ割り当てるレイアウトを生成する.
+     * @param names 変数名
+     * @throws IllegalArgumentException 同じ変数名が含まれている場合
+     */
+    public FrameLayout(String...names) {
+        this.names = names.clone();
+        Map<String, Integer> map = new HashMap<String, Integer>();
+        for(int i=0; i<names.length; i++) {
+            if(map.put(names[i], i) != null)
+                throw new IllegalArgumentException("duplicate name: " + names[i]);
+        }
+        this.indexes = (names.length > SMALL_SIZE) ? map : null;
+    }
+
+    /**
+     * 指定した変数名の位置を返す.
+     * @param name 変数名
+     * @return 位置、このレイアウトに含まれなければ-1
+     */
+    public int indexOf(String name) {
+        if(indexes != null) {
+            Integer index = indexes.get(name);
+            return (index == null) ? -1 : index;
+        }
+        for(int i=0; i<names.length; i++) {
+            if(names[i].equals(name)) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * 指定した位置の変数名を返す.
+     * @param index 位置
+     * @return 変数名
+     */
+    public String getName(int index) {
+        return names[index];
+    }
+
+    /**
+     * このレイアウトが持つ変数の数を返す.
+     * @return 変数の数
+     */
+    public int size() {
+        return names.length;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(names);
+    }
+}
@@ -0,0 +1,130 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package org.ocsoft.rosetto.models.system;
+
+import org.ocsoft.rosetto.models.base.elements.RosettoValue;
+import org.ocsoft.rosetto.utils.base.Values;
+
+/**
+ * 名前の決まったローカル変数への参照.<br>
+ * 最後に変数が見つかったスコープの深さと配列中の位置を覚えておき、
+ * 次回も同じ形のスコープの並びから参照された場合は名前で探さずにその位置を直接読む.
+ * 形が異なる場合はScope.getと同じ順序で探しなおす.
+ * @author tohhy
+ */
+public final class LocalReference {
+
+    /**
+     * 参照する変数名.
+     */
+    private final String name;
+
+    /**
+     * 最後に見つかった位置.まだ見つかっていない場合はnull.
+     */
+    private volatile Hit hit;
+
+    /**
+     * 指定した名前のローカル変数への参照を生成する.
+     * @param name 参照する変数名
+     */
+    public LocalReference(String name) {
+        if(name == null) throw new IllegalArgumentException("name must not be null");
+        this.name = name;
+    }
+
+    /**
+     * 参照する変数名を返す.
+     * @return 参照する変数名
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 指定したスコープから見た変数の値を返す.
+     * 変数が存在しない場合はValues.NULLが返る.
+     * @param scope 参照するスコープ
+     * @return 変数の値
+     */
+    public RosettoValue get(Scope scope) {
+        Hit h = hit;
+        if(h != null) {
+            RosettoValue v = h.read(scope, name);
+            if(v != null) return v;
+        }
+        return lookup(scope);
+    }
+
+    /**
+     * スコープを辿って変数を探し、配列中に見つかればその位置を覚える.
+     */
+    private RosettoValue lookup(Scope scope) {
+        int depth = 0;
+        for(Scope s = scope; s != null; s = s.getParent(), depth++) {
+            if(s.layout != null) {
+                int index = s.layout.indexOf(name);
+                if(index >= 0) {
+                    if(s.slots[index] == null) continue;
+                    hit = Hit.create(scope, depth, index, name);
+                    return s.slots[index];
+                }
+                if(s.vars != null && s.vars.containsKey(name)) return s.vars.get(name);
+            } else if(s.vars.containsKey(name)) {
+                return s.vars.get(name);
+            }
+        }
+        return Values.NULL;
+    }
+
+    /**
+     * 変数が見つかった位置と、そこに至るまでのスコープの形.
+     */
+    private static final class Hit {
+        /**
+         * 深さごとのスコープのレイアウト.末尾が変数の見つかったスコープ.
+         */
+        private final FrameLayout[] path;
+
+        /**
+         * 見つかったスコープの配列中の位置.
+         */
+        private final int index;
+
+        private Hit(FrameLayout[] path, int index) {
+            this.path = path;
+            this.index = index;
+        }
+
+        /**
+         * 見つかった位置を覚える.途中のスコープの配列に同じ名前がある場合は覚えない.
+         * @return 覚えた位置、覚えられない場合はnull
+         */
+        private static Hit create(Scope scope, int depth, int index, String name) {
+            FrameLayout[] path = new FrameLayout[depth + 1];
+            Scope s = scope;
+            for(int d=0; d<=depth; d++, s = s.getParent()) {
+                path[d] = s.layout;
+                if(d < depth && s.layout != null && s.layout.indexOf(name) >= 0) return null;
+            }
+            return new Hit(path, index);
+        }
+
+        /**
+         * 覚えた位置の値を読む.スコープの形が異なる場合はnullを返す.
+         */
+        private RosettoValue read(Scope scope, String name) {
+            Scope s = scope;
+            int depth = path.length - 1;
+            for(int d=0; d<depth; d++) {
+                if(s == null || s.layout != path[d]) return null;
+                //途中のスコープのマップに同じ名前があればそちらが優先される
+                if(s.vars != null && !s.vars.isEmpty() && s.vars.containsKey(name)) return null;
+                s = s.getParent();
+            }
+            if(s == null || s.layout != path[depth]) return null;
+            return s.slots[index];
+        }
+    }
+}
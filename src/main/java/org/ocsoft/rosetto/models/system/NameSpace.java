@@ -3,12 +3,17 @@
  * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
 package org.ocsoft.rosetto.models.system;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.ocsoft.rosetto.contexts.base.Rosetto;
 import org.ocsoft.rosetto.models.base.elements.RosettoValue;
@@ -20,28 +25,34 @@ import org.ocsoft.rosetto.utils.base.Values;
 /**
  * Rosetto中の単一の名前空間を表現するクラス.<br>
  * 名前空間直下に直接保持する変数と、requireにより参照可能になっている絶対参照変数の二種類のMapを保持する.<br>
- * 特定変数名に対する再代入不可フラグをもつ.
+ * 特定変数名に対する再代入不可フラグをもつ.<br>
+ * 変数の値と再代入不可フラグは1つの組として並行マップに保持され、複数スレッドから同時に読み書きできる.
  * @author tohhy
  */
 public class NameSpace implements Serializable {
     private static final long serialVersionUID = 5454239542524847421L;
     
     /**
-     * この名前空間の名称.
+     * この名前空間の名称.直列化の復元時にのみ再設定される.
      */
-    private final String name;
+    private String name;
     
     /**
-     * この名前空間が直接保持する変数の一覧.
+     * 直列化される項目.以前の形式と互換性を保つため、変数の一覧とロックされた変数名の一覧に分けて書き出す.
      */
-    private final Map<String, RosettoValue> variables = new HashMap<String, RosettoValue>();
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("name", String.class),
+        new ObjectStreamField("variables", Map.class),
+        new ObjectStreamField("sealedKeys", Set.class),
+    };
     
     /**
-     * ロックされた変数名の一覧.<br>
-     * ここに登録された変数名に対して再代入しようとするとエラーになる.<br>
-     * 基本関数等はここに登録され、誤って上書きされることによるバグを抑制する.
+     * この名前空間が直接保持する変数と、その変数がロックされているかどうかの一覧.<br>
+     * ロックされた変数に対して再代入しようとするとエラーになる.<br>
+     * 基本関数等はロックされ、誤って上書きされることによるバグを抑制する.
+     * 値を持たずにロックだけされた変数名も保持する.
      */
-    private final Set<String> sealedKeys = new HashSet<String>();
+    private transient ConcurrentHashMap<String, Slot> slots = new ConcurrentHashMap<String, Slot>();
     
     /**
      * 指定名の名前空間オブジェクトを作成する.<br>
@@ -75,8 +86,32 @@ public class NameSpace implements Serializable {
     @Override
     public String toString() {
         return "[namespace:" + name + 
-                " variables:" + variables + 
-                " sealed:" + sealedKeys + "]";
+                " variables:" + getVariables() + 
+                " sealed:" + getSealedKeys() + "]";
+    }
+    
+    /**
+     * 現在の変数の一覧の複製を返す.
+     * @return 変数名と値のマップ
+     */
+    private Map<String, RosettoValue> getVariables() {
+        Map<String, RosettoValue> result = new HashMap<String, RosettoValue>();
+        for(Entry<String, Slot> e : slots.entrySet()) {
+            if(e.getValue().value != null) result.put(e.getKey(), e.getValue().value);
+        }
+        return result;
+    }
+    
+    /**
+     * 現在ロックされている変数名の一覧の複製を返す.
+     * @return ロックされている変数名のセット
+     */
+    private Set<String> getSealedKeys() {
+        Set<String> result = new HashSet<String>();
+        for(Entry<String, Slot> e : slots.entrySet()) {
+            if(e.getValue().sealed) result.add(e.getKey());
+        }
+        return result;
     }
     
     /**
@@ -89,7 +124,8 @@ public class NameSpace implements Serializable {
         if(key == null) return Values.NULL;
         
         if(!key.contains(".")) {
-            return variables.containsKey(key) ? variables.get(key) : Values.NULL;
+            Slot slot = slots.get(key);
+            return (slot != null && slot.value != null) ? slot.value : Values.NULL;
         }
         String nameSpace = this.name + "." + key.substring(0, key.lastIndexOf("."));
         String varName = key.substring(key.lastIndexOf(".") + 1);
@@ -111,10 +147,12 @@ public class NameSpace implements Serializable {
             throw new IllegalArgumentException("value must not be null");
         if(key.contains("."))
             throw new IllegalArgumentException("variable name can't contain dot char");
-        if(isSealed(key)) {
-            throw new VariableSealedException("specified key " + key + " is sealed");
-        }
-        variables.put(key, value);
+        //ロックの確認と代入を不可分に行う
+        slots.compute(key, (k, old) -> {
+            if(old != null && old.sealed)
+                throw new VariableSealedException("specified key " + key + " is sealed");
+            return new Slot(value, false);
+        });
         RosettoObservatories.getVariable().valueChanged(this.name, key, value);
     }
     
@@ -126,15 +164,17 @@ public class NameSpace implements Serializable {
         if(space == null)
             throw new IllegalArgumentException("namespace is null");
         
-        for(Entry<String, RosettoValue> e : space.variables.entrySet()) {
+        for(Entry<String, Slot> e : space.slots.entrySet()) {
+            RosettoValue value = e.getValue().value;
+            if(value == null) continue;
             try {
-                define(e.getKey(), e.getValue());
+                define(e.getKey(), value);
             } catch(VariableSealedException ex) {
                 RosettoLogger.warning("variable" + e.getKey() + " include failed: "
                         + "key already sealed");
             }
             //シールされているキーをincludeした場合このパッケージでもseal
-            if(space.isSealed(e.getKey())) seal(e.getKey());
+            if(e.getValue().sealed) seal(e.getKey());
         }
     }
     
@@ -144,7 +184,8 @@ public class NameSpace implements Serializable {
      * @return 変数がロックされているかどうか
      */
     public boolean isSealed(String key) {
-        return sealedKeys.contains(key);
+        Slot slot = slots.get(key);
+        return slot != null && slot.sealed;
     }
     
     /**
@@ -152,7 +193,7 @@ public class NameSpace implements Serializable {
      * @param key ロックする変数名
      */
     public void seal(String key) {
-        sealedKeys.add(key);
+        slots.compute(key, (k, old) -> new Slot((old != null) ? old.value : null, true));
     }
     
     /**
@@ -160,7 +201,7 @@ public class NameSpace implements Serializable {
      * @param key ロックを解除する変数名
      */
     public void unSeal(String key) {
-        sealedKeys.remove(key);
+        slots.computeIfPresent(key, (k, old) -> (old.value != null) ? new Slot(old.value, false) : null);
     }
     
     /**
@@ -170,4 +211,52 @@ public class NameSpace implements Serializable {
     public String getName() {
         return name;
     }
+    
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("name", name);
+        fields.put("variables", getVariables());
+        fields.put("sealedKeys", getSealedKeys());
+        out.writeFields();
+    }
+    
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        Map<String, RosettoValue> variables = (Map<String, RosettoValue>)fields.get("variables", null);
+        Set<String> sealedKeys = (Set<String>)fields.get("sealedKeys", null);
+        ConcurrentHashMap<String, Slot> restored = new ConcurrentHashMap<String, Slot>();
+        if(variables != null) {
+            for(Entry<String, RosettoValue> e : variables.entrySet()) {
+                restored.put(e.getKey(), new Slot(e.getValue(), false));
+            }
+        }
+        if(sealedKeys != null) {
+            for(String key : sealedKeys) {
+                Slot old = restored.get(key);
+                restored.put(key, new Slot((old != null) ? old.value : null, true));
+            }
+        }
+        this.slots = restored;
+        this.name = (String)fields.get("name", null);
+    }
+    
+    /**
+     * 変数の値とロックの有無の組.イミュータブル.
+     */
+    private static final class Slot {
+        /**
+         * 変数の値.ロックのみされている場合はnull.
+         */
+        private final RosettoValue value;
+        /**
+         * 変数がロックされているかどうか.
+         */
+        private final boolean sealed;
+        
+        private Slot(RosettoValue value, boolean sealed) {
+            this.value = value;
+            this.sealed = sealed;
+        }
+    }
 }
@@ -13,38 +13,52 @@ import org.ocsoft.rosetto.models.base.elements.values.RosettoFunction;
 import org.ocsoft.rosetto.utils.base.Values;
 
 /**
- * ローカル変数を保持するスコープ.
+ * ローカル変数を保持するスコープ.<br>
+ * 関数の引数のように名前が予め決まっている変数は、FrameLayoutに従って配列の決まった位置に保持できる.
+ * それ以外の変数はマップに保持される.同じ名前の変数が配列とマップの両方に入ることはない.
  * @author tohhy
  */
 public class Scope {
-    
+
     /**
-     * このスコープが保持するローカル変数の一覧.
+     * このスコープが保持するローカル変数のうち、配列に割り当てられていないものの一覧.
+     * 配列を持つスコープでは必要になるまでnull.
      */
-    private final Map<String, RosettoValue> vars;
-    
+    Map<String, RosettoValue> vars;
+
+    /**
+     * 配列に保持する変数の名前と位置の対応.配列を持たないスコープではnull.
+     */
+    final FrameLayout layout;
+
+    /**
+     * layoutに従って保持されるローカル変数.値のない位置はnull.
+     */
+    final RosettoValue[] slots;
+
     /**
      * このスコープの親スコープ.
      */
     private final Scope parent;
-    
+
     /**
      * 新しいルートスコープを生成する.
      */
     public Scope() {
-        this.vars = new HashMap<String, RosettoValue>();
-        this.parent = null;
+        this((Scope)null);
     }
-    
+
     /**
      * 指定スコープを親とする新しいスコープを生成する.
      * @param parent 生成するスコープの親スコープ
      */
     public Scope(Scope parent) {
         this.vars = new HashMap<String, RosettoValue>();
+        this.layout = null;
+        this.slots = null;
         this.parent = parent;
     }
-    
+
     /**
      * 指定したローカル変数マッピングをもつ新しいスコープを生成する.
      * @param parent 生成するスコープの親スコープ、ルートスコープならnull
@@ -52,9 +66,29 @@ public class Scope {
      */
     public Scope(Scope parent, Map<String, RosettoValue> values) {
         this.vars = new HashMap<String, RosettoValue>(values);
+        this.layout = null;
+        this.slots = null;
+        this.parent = parent;
+    }
+
+    /**
+     * 配列に割り当てたローカル変数をもつ新しいスコープを生成する.<br>
+     * slotsはlayoutと同じ長さで、値のない位置はnullにする.slotsとextraは複製されずにそのまま保持される.
+     * @param parent 生成するスコープの親スコープ、ルートスコープならnull
+     * @param layout 配列に保持する変数の名前と位置の対応
+     * @param slots layoutに従って並べた変数の値
+     * @param extra layoutに含まれない変数、なければnull
+     */
+    public Scope(Scope parent, FrameLayout layout, RosettoValue[] slots,
+            Map<String, RosettoValue> extra) {
+        if(layout == null || slots == null || slots.length != layout.size())
+            throw new IllegalArgumentException("slots must match the layout");
+        this.vars = extra;
+        this.layout = layout;
+        this.slots = slots;
         this.parent = parent;
     }
-    
+
     /**
      * 未評価の引数と関数を取り、関数に対して実行時引数として与えるスコープを生成する.<br>
      * インスタンス化のためには引数として与える先の関数が必要になる.<br>
@@ -64,14 +98,16 @@ public class Scope {
      * @param func 実行する関数
      */
     public Scope(ListValue args, RosettoFunction func, Scope parent) {
-        Map<String, RosettoValue> parsed = args.bind(func, parent);
-        this.vars = new HashMap<String, RosettoValue>(parsed);
+        //bindは呼び出しごとに新しいマップを返すので、複製せずにそのまま保持する
+        this.vars = args.bind(func, parent);
+        this.layout = null;
+        this.slots = null;
         this.parent = parent;
     }
-    
+
     @Override
     public String toString() {
-        return vars.toString();
+        return (layout == null) ? vars.toString() : toMap().toString();
     }
 
     /**
@@ -81,7 +117,7 @@ public class Scope {
     public boolean hasParent() {
         return parent != null;
     }
-    
+
     /**
      * このスコープの親スコープを返す.
      * @return このスコープの親スコープ
@@ -89,7 +125,7 @@ public class Scope {
     public Scope getParent() {
         return parent;
     }
-    
+
     /**
      * 指定キーにマッピングされた値を取得する.
      * 指定キーが存在しない場合はValues.NULLが返る.
@@ -97,37 +133,85 @@ public class Scope {
      * @return 指定キーにマッピングされた値
      */
     public RosettoValue get(String key) {
-        if(vars.containsKey(key)) return vars.get(key);
-        if(hasParent()) return parent.get(key);
+        Scope s = this;
+        do {
+            if(s.layout != null) {
+                int index = s.layout.indexOf(key);
+                if(index >= 0) {
+                    if(s.slots[index] != null) return s.slots[index];
+                } else if(s.vars != null && s.vars.containsKey(key)) {
+                    return s.vars.get(key);
+                }
+            } else if(s.vars.containsKey(key)) {
+                return s.vars.get(key);
+            }
+            s = s.parent;
+        } while(s != null);
         return Values.NULL;
     }
-    
+
     /**
      * このスコープに新しくローカル変数をセットする.
      * @param key セットする変数のキー
      * @param value セットする変数の値
      */
     public void set(String key, RosettoValue value) {
+        if(layout != null) {
+            int index = layout.indexOf(key);
+            if(index >= 0) {
+                slots[index] = value;
+                return;
+            }
+            if(vars == null) vars = new HashMap<String, RosettoValue>();
+        }
         this.vars.put(key, value);
     }
-    
+
     /**
      * 指定キーがこの引数マップに含まれているかを取得する.
      * @param key 参照するキー
      * @return キーが存在するかどうか
      */
     public boolean containsKey(String key) {
-        if(vars.containsKey(key)) return true;
-        if(hasParent()) return parent.containsKey(key);
+        for(Scope s = this; s != null; s = s.parent) {
+            if(s.containsLocal(key)) return true;
+        }
         return false;
     }
-    
+
+    /**
+     * 親スコープを辿らず、このスコープ自身が指定キーを持つかどうかを返す.
+     * @param key 参照するキー
+     * @return このスコープが指定キーを持つかどうか
+     */
+    boolean containsLocal(String key) {
+        if(layout != null) {
+            int index = layout.indexOf(key);
+            if(index >= 0) return slots[index] != null;
+            return vars != null && vars.containsKey(key);
+        }
+        return vars.containsKey(key);
+    }
+
     /**
      * キーワード引数のマップを取得する.読み込み専用.
      * @return キーワード引数のマップ
      */
     public Map<String, RosettoValue> getMap() {
-        return Collections.unmodifiableMap(vars);
+        return Collections.unmodifiableMap((layout == null) ? vars : toMap());
+    }
+
+    /**
+     * 配列とマップに保持している変数を一つのマップにまとめる.
+     * @return このスコープの全てのローカル変数
+     */
+    private Map<String, RosettoValue> toMap() {
+        Map<String, RosettoValue> result = (vars == null) ?
+                new HashMap<String, RosettoValue>() : new HashMap<String, RosettoValue>(vars);
+        for(int i=0; i<slots.length; i++) {
+            if(slots[i] != null) result.put(layout.getName(i), slots[i]);
+        }
+        return result;
     }
 
 }
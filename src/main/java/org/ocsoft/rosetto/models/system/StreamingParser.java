@@ -0,0 +1,46 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package org.ocsoft.rosetto.models.system;
+
+import java.io.Reader;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+
+import org.ocsoft.rosetto.models.base.scenario.Scenario;
+import org.ocsoft.rosetto.models.base.scenario.ScenarioToken;
+
+/**
+ * スクリプト全体を読み込まずに、読み出しながら逐次パースできるパーサーの機能を定義したインタフェース.<br>
+ * 先頭のユニットから順に取り出せるため、全体のパースを待たずに再生を始められる.
+ * @author tohhy
+ */
+public interface StreamingParser extends Parser {
+    
+    /**
+     * 指定したReaderからスクリプトを読み出しながらパースし、トークンを順に返すイテレータを返す.<br>
+     * Readerはイテレータが必要とした分だけ読み出され、閉じられない.
+     * 読み出しに失敗した場合はUncheckedIOExceptionがイテレータから送出される.
+     * @param script スクリプトの読み出し元
+     * @return パースしたユニットとラベルを順に返すイテレータ
+     */
+    public Iterator<ScenarioToken> streamScript(Reader script);
+    
+    /**
+     * 指定したチャネルからスクリプトを読み出しながらパースし、トークンを順に返すイテレータを返す.<br>
+     * チャネルはイテレータが必要とした分だけ読み出され、閉じられない.
+     * @param script スクリプトの読み出し元
+     * @param charset スクリプトの文字コード
+     * @return パースしたユニットとラベルを順に返すイテレータ
+     */
+    public Iterator<ScenarioToken> streamScript(ReadableByteChannel script, Charset charset);
+    
+    /**
+     * 指定したReaderからスクリプトを読み出してパースし、解釈後のシナリオオブジェクトを返す.
+     * @param script スクリプトの読み出し元
+     * @return パース後のシナリオ
+     */
+    public Scenario parseScript(Reader script);
+    
+}
@@ -3,34 +3,155 @@
  * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
 package org.ocsoft.rosetto.observers;
 
-import org.frows.observatories.v0_1_0.Observatory;
+import java.util.Set;
+
 import org.ocsoft.rosetto.models.base.elements.RosettoValue;
 import org.ocsoft.rosetto.models.base.elements.values.ListValue;
 import org.ocsoft.rosetto.models.base.elements.values.RosettoFunction;
 import org.ocsoft.rosetto.models.base.elements.values.ScriptValue;
 
 /**
- * アクション実行を監視するObservertory.
+ * アクション実行を監視するObservertory.<br>
+ * オブザーバが登録されていない場合の通知は配列を一度読むだけで終わる.
  * @author tohhy
  */
-public class ActionObservatory extends Observatory<ActionObserver> 
-implements ActionObserver {
+public class ActionObservatory implements ActionObserver {
+    
+    /**
+     * 登録されているオブザーバ.
+     */
+    private final ObserverList<ActionObserver> observers = new ObserverList<ActionObserver>();
     
     ActionObservatory() {}
     
+    /**
+     * オブザーバを追加する.通知はアクションを実行したスレッドから直接呼び出される.
+     * @param observer 追加するオブザーバ
+     */
+    public void addObserver(ActionObserver observer) {
+        observers.add(observer);
+    }
+    
+    /**
+     * 通知を別スレッドからまとめて受け取るオブザーバを追加する.<br>
+     * 通知は最大capacity件までバッファされ、溢れた場合は古いものから捨てられる.
+     * @param observer 追加するオブザーバ
+     * @param capacity バッファできる通知の数
+     * @return 追加したオブザーバへの配信. 既に登録されているオブザーバであればnull
+     */
+    public AsyncDelivery<?> addAsyncObserver(ActionObserver observer, int capacity) {
+        if(observer == null) throw new IllegalArgumentException("observer must not be null");
+        Relay relay = new Relay(observer, capacity);
+        if(observers.add(relay)) return relay.delivery;
+        relay.delivery.close();
+        return null;
+    }
+    
+    /**
+     * オブザーバを取り除く.非同期で配信していた場合は配信も停止する.
+     * @param observer 取り除くオブザーバ
+     */
+    public void removeObserver(ActionObserver observer) {
+        observers.remove(observer);
+    }
+    
+    /**
+     * 登録されているオブザーバの一覧を読み取り専用で返す.
+     * @return 登録されているオブザーバの一覧
+     */
+    public Set<ActionObserver> getObservers() {
+        return observers.asSet();
+    }
+    
+    /**
+     * オブザーバが一つでも登録されているかどうかを返す.
+     * @return オブザーバが登録されていればtrue
+     */
+    public boolean hasObservers() {
+        return observers.get().length > 0;
+    }
+    
+    /**
+     * 全てのオブザーバを取り除く.
+     */
+    public void clear() {
+        observers.clear();
+    }
+    
     @Override
     public void functionExecuted(RosettoFunction func, ListValue args,
             RosettoValue evaluatedValue) {
-        for(ActionObserver o : getObservers()) {
-            o.functionExecuted(func, args, evaluatedValue);
+        Object[] os = observers.get();
+        for(int i=0; i<os.length; i++) {
+            ((ActionObserver)os[i]).functionExecuted(func, args, evaluatedValue);
         }
     }
     
     @Override
     public void macroExecuted(ScriptValue macro, ListValue args,
             RosettoValue evaluatedValue) {
-        for(ActionObserver o : getObservers()) {
-            o.macroExecuted(macro, args, evaluatedValue);
+        Object[] os = observers.get();
+        for(int i=0; i<os.length; i++) {
+            ((ActionObserver)os[i]).macroExecuted(macro, args, evaluatedValue);
+        }
+    }
+    
+    /**
+     * 実行されたアクションの通知.
+     */
+    private static final class Event {
+        private final RosettoFunction func;
+        private final ScriptValue macro;
+        private final ListValue args;
+        private final RosettoValue evaluatedValue;
+        
+        private Event(RosettoFunction func, ScriptValue macro, 
+                ListValue args, RosettoValue evaluatedValue) {
+            this.func = func;
+            this.macro = macro;
+            this.args = args;
+            this.evaluatedValue = evaluatedValue;
+        }
+    }
+    
+    /**
+     * 通知をバッファに積み、配信用スレッドから元のオブザーバに渡す中継役.
+     */
+    private static final class Relay implements ActionObserver, AsyncDelivery.Relay<ActionObserver> {
+        private final ActionObserver target;
+        private final AsyncDelivery<Event> delivery;
+        
+        private Relay(final ActionObserver target, int capacity) {
+            this.target = target;
+            this.delivery = new AsyncDelivery<Event>(capacity, e -> {
+                if(e.func != null) {
+                    target.functionExecuted(e.func, e.args, e.evaluatedValue);
+                } else {
+                    target.macroExecuted(e.macro, e.args, e.evaluatedValue);
+                }
+            });
+        }
+        
+        @Override
+        public void functionExecuted(RosettoFunction func, ListValue args,
+                RosettoValue evaluatedValue) {
+            delivery.offer(new Event(func, null, args, evaluatedValue));
+        }
+        
+        @Override
+        public void macroExecuted(ScriptValue macro, ListValue args,
+                RosettoValue evaluatedValue) {
+            delivery.offer(new Event(null, macro, args, evaluatedValue));
+        }
+        
+        @Override
+        public ActionObserver getTarget() {
+            return target;
+        }
+        
+        @Override
+        public AsyncDelivery<?> getDelivery() {
+            return delivery;
         }
     }
     
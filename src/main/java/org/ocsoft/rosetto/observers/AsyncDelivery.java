@@ -0,0 +1,186 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package org.ocsoft.rosetto.observers;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.ocsoft.rosetto.system.RosettoLogger;
+
+/**
+ * オブザーバへの通知を別スレッドからまとめて配信する.<br>
+ * 通知は固定長のリングバッファに積まれ、配信用のスレッドが溜まった分をまとめて取り出してオブザーバに渡す.
+ * バッファが一杯の場合は最も古い通知を捨てるため、オブザーバの処理が遅くてもスクリプトの評価は待たされない.
+ * 捨てた通知の数はgetDroppedCountで取得できる.
+ * @author tohhy
+ */
+public final class AsyncDelivery<E> {
+    /**
+     * 配信用スレッドの名前に付ける連番.
+     */
+    private static final AtomicInteger threadCount = new AtomicInteger();
+    
+    /**
+     * 通知を積むリングバッファ.
+     */
+    private final Object[] ring;
+    
+    /**
+     * 最も古い通知の位置.
+     */
+    private int head;
+    
+    /**
+     * 積まれている通知の数.
+     */
+    private int size;
+    
+    /**
+     * バッファが一杯で捨てた通知の数.
+     */
+    private long dropped;
+    
+    /**
+     * 配信用スレッドがオブザーバを呼び出している最中かどうか.
+     */
+    private boolean delivering;
+    
+    private boolean closed;
+    
+    /**
+     * 取り出した通知を処理する関数.
+     */
+    private final Consumer<? super E> sink;
+    
+    /**
+     * 配信用スレッド.
+     */
+    private final Thread worker;
+    
+    /**
+     * 指定した容量のバッファをもち、取り出した通知をsinkに渡す配信を開始する.
+     * @param capacity バッファに積める通知の数
+     * @param sink 通知を処理する関数
+     */
+    AsyncDelivery(int capacity, Consumer<? super E> sink) {
+        if(capacity <= 0) throw new IllegalArgumentException("capacity must be positive");
+        this.ring = new Object[capacity];
+        this.sink = sink;
+        this.worker = new Thread(this::drainLoop, "rosetto-observer-" + threadCount.incrementAndGet());
+        worker.setDaemon(true);
+        worker.start();
+    }
+    
+    /**
+     * 通知をバッファに積む.バッファが一杯であれば最も古い通知を捨てる.
+     * 停止後は何もしない.
+     * @param event 積む通知
+     */
+    synchronized void offer(E event) {
+        if(closed) return;
+        if(size == ring.length) {
+            ring[head] = null;
+            head = (head + 1) % ring.length;
+            size--;
+            dropped++;
+        }
+        ring[(head + size) % ring.length] = event;
+        size++;
+        if(size == 1) notifyAll();
+    }
+    
+    /**
+     * バッファが一杯で捨てた通知の数を返す.
+     * @return 捨てた通知の数
+     */
+    public synchronized long getDroppedCount() {
+        return dropped;
+    }
+    
+    /**
+     * 積まれた通知が全て配信されるまで待つ.
+     * @param timeout 待つ時間の上限
+     * @param unit timeoutの単位
+     * @return 時間内に全て配信されればtrue
+     * @throws InterruptedException 待機中に割り込まれた場合
+     */
+    public synchronized boolean awaitIdle(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while((size > 0 || delivering) && !closed) {
+            long rest = deadline - System.nanoTime();
+            if(rest <= 0) return false;
+            TimeUnit.NANOSECONDS.timedWait(this, rest);
+        }
+        return true;
+    }
+    
+    /**
+     * 配信を停止する.まだ配信されていない通知は捨てられる.
+     */
+    public synchronized void close() {
+        closed = true;
+        for(int i=0; i<size; i++) ring[(head + i) % ring.length] = null;
+        size = 0;
+        notifyAll();
+    }
+    
+    /**
+     * 配信用スレッドの処理.溜まった通知をまとめて取り出し、ロックの外でsinkに渡す.
+     */
+    @SuppressWarnings("unchecked")
+    private void drainLoop() {
+        Object[] batch = new Object[ring.length];
+        while(true) {
+            int count;
+            synchronized(this) {
+                delivering = false;
+                notifyAll();
+                while(size == 0 && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if(closed) return;
+                count = size;
+                for(int i=0; i<count; i++) {
+                    int index = (head + i) % ring.length;
+                    batch[i] = ring[index];
+                    ring[index] = null;
+                }
+                head = (head + count) % ring.length;
+                size = 0;
+                delivering = true;
+            }
+            for(int i=0; i<count; i++) {
+                try {
+                    sink.accept((E)batch[i]);
+                } catch(RuntimeException e) {
+                    RosettoLogger.catchException(e);
+                }
+                batch[i] = null;
+            }
+        }
+    }
+    
+    /**
+     * 非同期配信されるオブザーバとして登録される中継役.
+     * 通知を受け取るとバッファに積み、元のオブザーバには配信用スレッドから渡す.
+     */
+    interface Relay<O> {
+        /**
+         * 通知の配信先であるオブザーバを返す.
+         * @return 元のオブザーバ
+         */
+        O getTarget();
+        
+        /**
+         * この中継役が通知を積む配信を返す.
+         * @return 配信
+         */
+        AsyncDelivery<?> getDelivery();
+    }
+}
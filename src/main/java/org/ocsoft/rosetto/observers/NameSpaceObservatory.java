@@ -3,28 +3,156 @@
  * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
 package org.ocsoft.rosetto.observers;
 
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
-import org.frows.observatories.v0_1_0.ObjectObservatory;
 import org.ocsoft.rosetto.models.base.elements.RosettoValue;
 
 /**
- * 単一の名前空間以下の変数の変更を観測するObservatory.
+ * 単一の名前空間以下の変数の変更を観測するObservatory.<br>
+ * オブザーバは名前空間をドットで区切った階層ごとの木に登録される.
+ * a.b.cの変更では空の名前空間、a、a.b、a.b.cに登録されたオブザーバだけが辿られ、
+ * 登録されている名前空間の数には依存しない.
  * @author tohhy
  */
-public class NameSpaceObservatory extends ObjectObservatory<String, VariableObserver> 
-    implements VariableObserver {
+public class NameSpaceObservatory implements VariableObserver {
+    
+    /**
+     * 空の名前空間に対応する木の根.
+     */
+    private final Node root = new Node();
     
     NameSpaceObservatory() {}
     
+    /**
+     * 指定した名前空間とその下位の名前空間の変数変更を監視するオブザーバを登録する.<br>
+     * 名前空間はドットで区切られた階層単位で比較され、hogeに登録したオブザーバはhogeとhoge.fooには反応するが、hogefooには反応しない.
+     * 空の名前空間に登録したオブザーバは全ての変更に反応する.
+     * @param nameSpace 対象とする名前空間
+     * @param observer 追加するオブザーバ
+     */
+    public synchronized void addObserver(String nameSpace, VariableObserver observer) {
+        if(nameSpace == null) throw new IllegalArgumentException("nameSpace must not be null");
+        Node node = root;
+        int start = 0;
+        int end;
+        while((end = nextSegmentEnd(nameSpace, start)) >= 0) {
+            String segment = nameSpace.substring(start, end);
+            Node child = node.children.get(segment);
+            if(child == null) {
+                child = new Node();
+                node.children.put(segment, child);
+            }
+            node = child;
+            start = end + 1;
+        }
+        node.observers.add(observer);
+    }
+    
+    /**
+     * 指定した名前空間に登録したオブザーバを取り除く.
+     * @param nameSpace 登録時に指定した名前空間
+     * @param observer 取り除くオブザーバ
+     */
+    public synchronized void removeObserver(String nameSpace, VariableObserver observer) {
+        if(nameSpace == null) return;
+        removeObserver(root, nameSpace, 0, observer);
+    }
+    
+    /**
+     * 登録されている名前空間ごとのオブザーバの一覧を読み取り専用で返す.
+     * @return 名前空間をキーとしたオブザーバの一覧
+     */
+    public Map<String, Set<VariableObserver>> getObjectObservers() {
+        Map<String, Set<VariableObserver>> result = new LinkedHashMap<String, Set<VariableObserver>>();
+        collect(root, "", result);
+        return Collections.unmodifiableMap(result);
+    }
+    
+    /**
+     * 全てのオブザーバを取り除く.
+     */
+    public synchronized void clear() {
+        clear(root);
+        root.children.clear();
+    }
+    
     @Override
     public void valueChanged(String nameSpace, String variableName, RosettoValue newValue) {
-        for(Entry<String, Set<VariableObserver>> os : getObjectObservers().entrySet()) {
-            if(nameSpace.startsWith(os.getKey()))
-                for(VariableObserver o : os.getValue()) {
-                    o.valueChanged(nameSpace, variableName, newValue);
-                }
+        Node node = root;
+        notify(node, nameSpace, variableName, newValue);
+        int start = 0;
+        int end;
+        while(!node.children.isEmpty() && (end = nextSegmentEnd(nameSpace, start)) >= 0) {
+            node = node.children.get(nameSpace.substring(start, end));
+            if(node == null) return;
+            notify(node, nameSpace, variableName, newValue);
+            start = end + 1;
+        }
+    }
+    
+    private static void notify(Node node, String nameSpace, String variableName, RosettoValue newValue) {
+        Object[] os = node.observers.get();
+        for(int i=0; i<os.length; i++) {
+            ((VariableObserver)os[i]).valueChanged(nameSpace, variableName, newValue);
         }
     }
+    
+    /**
+     * startから始まる階層の終端を返す.
+     * @return 階層の終端の位置. 階層がもう残っていなければ-1
+     */
+    private static int nextSegmentEnd(String nameSpace, int start) {
+        if(start >= nameSpace.length()) return -1;
+        int dot = nameSpace.indexOf('.', start);
+        return (dot < 0) ? nameSpace.length() : dot;
+    }
+    
+    /**
+     * オブザーバを取り除き、オブザーバも下位の階層も持たなくなった節を木から外す.
+     * @return nodeが空になった場合はtrue
+     */
+    private static boolean removeObserver(Node node, String nameSpace, int start, VariableObserver observer) {
+        int end = nextSegmentEnd(nameSpace, start);
+        if(end < 0) {
+            node.observers.remove(observer);
+        } else {
+            String segment = nameSpace.substring(start, end);
+            Node child = node.children.get(segment);
+            if(child != null && removeObserver(child, nameSpace, end + 1, observer))
+                node.children.remove(segment);
+        }
+        return node.observers.get().length == 0 && node.children.isEmpty();
+    }
+    
+    private static void collect(Node node, String path, Map<String, Set<VariableObserver>> result) {
+        if(node.observers.get().length > 0) result.put(path, node.observers.asSet());
+        for(Entry<String, Node> e : node.children.entrySet()) {
+            collect(e.getValue(), path.isEmpty() ? e.getKey() : path + "." + e.getKey(), result);
+        }
+    }
+    
+    private static void clear(Node node) {
+        node.observers.clear();
+        for(Node child : node.children.values()) clear(child);
+    }
+    
+    /**
+     * 名前空間の一階層に対応する木の節.
+     */
+    private static final class Node {
+        /**
+         * この名前空間に登録されたオブザーバ.
+         */
+        private final ObserverList<VariableObserver> observers = new ObserverList<VariableObserver>();
+        
+        /**
+         * 下位の階層. 書き込みは外側のロック下で行い、通知時はロックなしで読む.
+         */
+        private final Map<String, Node> children = new ConcurrentHashMap<String, Node>();
+    }
 }
@@ -0,0 +1,93 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package org.ocsoft.rosetto.observers;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * 登録されたオブザーバを配列で保持する.<br>
+ * 追加・削除のたびに配列を複製し、通知側は揮発性の配列を一度読むだけで走査できる.
+ * オブザーバが登録されていなければ空配列が返る.
+ * @author tohhy
+ */
+final class ObserverList<O> {
+    private static final Object[] EMPTY = new Object[0];
+    
+    /**
+     * 登録されているオブザーバ. 非同期配信されるオブザーバはAsyncDelivery.Relayに包まれている.
+     */
+    private volatile Object[] observers = EMPTY;
+    
+    /**
+     * 現在登録されているオブザーバの配列を返す.返された配列を変更してはいけない.
+     * @return 登録されているオブザーバの配列
+     */
+    Object[] get() {
+        return observers;
+    }
+    
+    /**
+     * オブザーバを追加する.既に登録されていれば何もしない.
+     * @param observer 追加するオブザーバ
+     * @return 追加された場合はtrue
+     */
+    synchronized boolean add(Object observer) {
+        if(observer == null) throw new IllegalArgumentException("observer must not be null");
+        Object target = unwrap(observer);
+        for(Object o : observers) {
+            if(unwrap(o).equals(target)) return false;
+        }
+        Object[] next = Arrays.copyOf(observers, observers.length + 1);
+        next[observers.length] = observer;
+        observers = next;
+        return true;
+    }
+    
+    /**
+     * 指定したオブザーバを取り除く.非同期配信されていれば配信も停止する.
+     * @param observer 取り除くオブザーバ
+     */
+    synchronized void remove(Object observer) {
+        Object[] current = observers;
+        for(int i=0; i<current.length; i++) {
+            if(!unwrap(current[i]).equals(observer)) continue;
+            close(current[i]);
+            Object[] next = new Object[current.length - 1];
+            System.arraycopy(current, 0, next, 0, i);
+            System.arraycopy(current, i + 1, next, i, current.length - i - 1);
+            observers = (next.length == 0) ? EMPTY : next;
+            return;
+        }
+    }
+    
+    /**
+     * 全てのオブザーバを取り除き、非同期配信を停止する.
+     */
+    synchronized void clear() {
+        for(Object o : observers) close(o);
+        observers = EMPTY;
+    }
+    
+    /**
+     * 登録されているオブザーバの一覧を読み取り専用で返す.
+     * @return 登録されているオブザーバの一覧
+     */
+    @SuppressWarnings("unchecked")
+    Set<O> asSet() {
+        Set<O> result = new LinkedHashSet<O>();
+        for(Object o : observers) result.add((O)unwrap(o));
+        return Collections.unmodifiableSet(result);
+    }
+    
+    private static Object unwrap(Object o) {
+        return (o instanceof AsyncDelivery.Relay) ? ((AsyncDelivery.Relay<?>)o).getTarget() : o;
+    }
+    
+    private static void close(Object o) {
+        if(o instanceof AsyncDelivery.Relay) ((AsyncDelivery.Relay<?>)o).getDelivery().close();
+    }
+}
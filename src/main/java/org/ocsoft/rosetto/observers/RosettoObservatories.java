@@ -3,17 +3,15 @@
  * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
 package org.ocsoft.rosetto.observers;
 
+import org.ocsoft.rosetto.contexts.base.RosettoRuntime;
+
 /**
- * 
+ * 実行環境ごとのオブザーバをまとめて保持する.<br>
+ * 静的メソッドは現在のスレッドの実行環境(RosettoRuntime.current)が保持するオブザーバを返す.
  * @author tohhy
  */
 public class RosettoObservatories {
     
-    /**
-     * 
-     */
-    private static RosettoObservatories instance;
-    
     /**
      * 
      */
@@ -27,24 +25,21 @@ public class RosettoObservatories {
     /**
      * 
      */
-    private final VariableObservatory variable = new VariableObservatory();
+    private final VariableObservatory variable = new VariableObservatory(nameSpace);
     
     /**
      * 
      * @return
      */
     private static RosettoObservatories getInstance() {
-        if(instance == null) {
-            instance = new RosettoObservatories();
-        }
-        return instance;
+        return RosettoRuntime.current().getObservatories();
     }
     
     /**
      * 
      */
     public static void clear() {
-        instance = new RosettoObservatories();
+        RosettoRuntime.current().clearObservatories();
     }
     
     /**
@@ -71,4 +66,38 @@ public class RosettoObservatories {
         return getInstance().variable;
     }
     
+    /**
+     * このインスタンスが保持するオブザーバを全て取り除き、非同期配信を停止する.
+     * 名前空間ごとのオブザーバも取り除かれる.
+     */
+    public void dispose() {
+        action.clear();
+        variable.clear();
+        nameSpace.clear();
+    }
+    
+    /**
+     * このインスタンスが保持するアクションのオブザーバを返す.
+     * @return アクションのオブザーバ
+     */
+    public ActionObservatory getActionObservatory() {
+        return action;
+    }
+    
+    /**
+     * このインスタンスが保持する名前空間のオブザーバを返す.
+     * @return 名前空間のオブザーバ
+     */
+    public NameSpaceObservatory getNameSpaceObservatory() {
+        return nameSpace;
+    }
+    
+    /**
+     * このインスタンスが保持する変数のオブザーバを返す.
+     * @return 変数のオブザーバ
+     */
+    public VariableObservatory getVariableObservatory() {
+        return variable;
+    }
+    
 }
@@ -3,17 +3,77 @@
  * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
 package org.ocsoft.rosetto.observers;
 
-import org.frows.observatories.v0_1_0.Observatory;
+import java.util.Set;
+
 import org.ocsoft.rosetto.models.base.elements.RosettoValue;
 
 /**
- * Rosetto中の全変数の変更を監視する.
+ * Rosetto中の全変数の変更を監視する.<br>
+ * オブザーバが登録されていない場合の通知は配列を一度読むだけで終わる.
  * @author tohhy
  */
-public class VariableObservatory extends Observatory<VariableObserver> 
-    implements VariableObserver {
+public class VariableObservatory implements VariableObserver {
+    
+    /**
+     * 登録されているオブザーバ.
+     */
+    private final ObserverList<VariableObserver> observers = new ObserverList<VariableObserver>();
+    
+    /**
+     * 名前空間ごとの変更の通知先.
+     */
+    private final NameSpaceObservatory nameSpaces;
+    
+    VariableObservatory(NameSpaceObservatory nameSpaces) {
+        this.nameSpaces = nameSpaces;
+    }
+    
+    /**
+     * オブザーバを追加する.通知は変数を変更したスレッドから直接呼び出される.
+     * @param observer 追加するオブザーバ
+     */
+    public void addObserver(VariableObserver observer) {
+        observers.add(observer);
+    }
     
-    VariableObservatory() {}
+    /**
+     * 通知を別スレッドからまとめて受け取るオブザーバを追加する.<br>
+     * 通知は最大capacity件までバッファされ、溢れた場合は古いものから捨てられる.
+     * @param observer 追加するオブザーバ
+     * @param capacity バッファできる通知の数
+     * @return 追加したオブザーバへの配信. 既に登録されているオブザーバであればnull
+     */
+    public AsyncDelivery<?> addAsyncObserver(VariableObserver observer, int capacity) {
+        if(observer == null) throw new IllegalArgumentException("observer must not be null");
+        Relay relay = new Relay(observer, capacity);
+        if(observers.add(relay)) return relay.delivery;
+        relay.delivery.close();
+        return null;
+    }
+    
+    /**
+     * オブザーバを取り除く.非同期で配信していた場合は配信も停止する.
+     * @param observer 取り除くオブザーバ
+     */
+    public void removeObserver(VariableObserver observer) {
+        observers.remove(observer);
+    }
+    
+    /**
+     * 登録されているオブザーバの一覧を読み取り専用で返す.
+     * @return 登録されているオブザーバの一覧
+     */
+    public Set<VariableObserver> getObservers() {
+        return observers.asSet();
+    }
+    
+    /**
+     * 全てのオブザーバを取り除く.
+     * 名前空間ごとのオブザーバは取り除かれない.
+     */
+    public void clear() {
+        observers.clear();
+    }
     
     /**
      * 特定の名前空間の変数変更のみを監視するオブザーバを登録する.
@@ -21,16 +81,62 @@ public class VariableObservatory extends Observatory<VariableObserver>
      * @param observer 追加するオブザーバ
      */
     public void addNameSpaceObserver(String nameSpace, VariableObserver observer) {
-        RosettoObservatories.getNameSpace().addObserver(nameSpace, observer);
+        nameSpaces.addObserver(nameSpace, observer);
     }
     
     @Override
     public void valueChanged(String nameSpace, String variableName,
             RosettoValue newValue) {
-        for(VariableObserver o : getObservers()) {
-            o.valueChanged(nameSpace, variableName, newValue);
+        Object[] os = observers.get();
+        for(int i=0; i<os.length; i++) {
+            ((VariableObserver)os[i]).valueChanged(nameSpace, variableName, newValue);
+        }
+        nameSpaces.valueChanged(nameSpace, variableName, newValue);
+    }
+    
+    /**
+     * 変更された変数の通知.
+     */
+    private static final class Event {
+        private final String nameSpace;
+        private final String variableName;
+        private final RosettoValue newValue;
+        
+        private Event(String nameSpace, String variableName, RosettoValue newValue) {
+            this.nameSpace = nameSpace;
+            this.variableName = variableName;
+            this.newValue = newValue;
+        }
+    }
+    
+    /**
+     * 通知をバッファに積み、配信用スレッドから元のオブザーバに渡す中継役.
+     */
+    private static final class Relay implements VariableObserver, AsyncDelivery.Relay<VariableObserver> {
+        private final VariableObserver target;
+        private final AsyncDelivery<Event> delivery;
+        
+        private Relay(final VariableObserver target, int capacity) {
+            this.target = target;
+            this.delivery = new AsyncDelivery<Event>(capacity, 
+                    e -> target.valueChanged(e.nameSpace, e.variableName, e.newValue));
+        }
+        
+        @Override
+        public void valueChanged(String nameSpace, String variableName,
+                RosettoValue newValue) {
+            delivery.offer(new Event(nameSpace, variableName, newValue));
+        }
+        
+        @Override
+        public VariableObserver getTarget() {
+            return target;
+        }
+        
+        @Override
+        public AsyncDelivery<?> getDelivery() {
+            return delivery;
         }
-        RosettoObservatories.getNameSpace().valueChanged(nameSpace, variableName, newValue);
     }
 
 }
@@ -4,7 +4,9 @@
 package org.ocsoft.rosetto.parsers;
 
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 import org.frows.lilex.designator.Designators;
 import org.frows.lilex.parser.Normalizer;
@@ -16,6 +18,24 @@ import org.frows.lilex.parser.Normalizer;
  * @author tohhy
  */
 public abstract class AbstractNormalizer extends Normalizer {
+    /**
+     * 行中指示子を適用する段階.
+     */
+    static final int MIDDLE = 0;
+    /**
+     * 行頭指示子を適用する段階.
+     */
+    static final int HEAD = 1;
+    /**
+     * 行末指示子を適用する段階.
+     */
+    static final int TAIL = 2;
+    
+    /**
+     * 現在のスレッドで実行中の正規化の状態.
+     */
+    private final ThreadLocal<Object> state = new ThreadLocal<Object>();
+    
     /**
      * 指定した指示子を用いるノーマライザを生成する.
      * @param designators このノーマライザが使用する指示子一覧
@@ -46,14 +66,47 @@ public abstract class AbstractNormalizer extends Normalizer {
      * @return 正規化した行のリスト
      */
     public final List<String> normalize(List<String> lines) {
-        List<String> result = new ArrayList<String>(lines);
-        //前処理
-        result = prepareNormalize(result);
-        //指示子による変換
-        result = super.normalize(lines);
-        //後処理
-        result = finishNormalize(result);
-        return result;
+        Object previous = enter(createState());
+        try {
+            List<String> result = new ArrayList<String>(lines);
+            //前処理
+            result = prepareNormalize(result);
+            //指示子による変換
+            result = super.normalize(lines);
+            //後処理
+            result = finishNormalize(result);
+            return result;
+        } finally {
+            exit(previous);
+        }
+    }
+    
+    /**
+     * 与えられたスクリプトの行を逐次加工し、角括弧形式のタグとプレーンテキストのみの行として返すイテレータを生成する.<br>
+     * 変換規則はnormalize(List)と同じで、行中・行頭・行末の各段階をそれぞれ一行の先読みで処理する.<br>
+     * 各段階の処理は行の順に呼ばれるが、段階をまたいだ呼び出しの順序は交互になる.
+     * そのため、ある段階の処理が他の段階の状態に依存するノーマライザは逐次処理に対応できない.<br>
+     * prepareNormalizeとfinishNormalizeは行全体を必要とするため呼ばれない.
+     * これらを上書きするサブクラスはisStreamableでfalseを返す必要がある.
+     * @param lines 正規化する行のイテレータ
+     * @return 正規化した行を順に返すイテレータ
+     */
+    public final Iterator<String> normalize(Iterator<String> lines) {
+        if(lines == null) throw new IllegalArgumentException("linesがnullです");
+        //状態はイテレータごとに持ち、各段階の処理の間だけ結びつける
+        Object invocation = createState();
+        Iterator<String> middle = new Stage(lines, MIDDLE, invocation);
+        Iterator<String> head = new Stage(middle, HEAD, invocation);
+        return new Stage(head, TAIL, invocation);
+    }
+    
+    /**
+     * このノーマライザがnormalize(Iterator)による逐次処理に対応するかどうかを返す.<br>
+     * prepareNormalizeやfinishNormalizeで行全体を参照するサブクラスはfalseを返すように上書きする.
+     * @return 逐次処理に対応していればtrue
+     */
+    public boolean isStreamable() {
+        return true;
     }
     
     /**
@@ -77,4 +130,140 @@ public abstract class AbstractNormalizer extends Normalizer {
         return lines;
     }
     
+    /**
+     * 一回の正規化の間だけ使われる状態を生成する.<br>
+     * 正規化のたびに呼ばれ、生成した状態はその正規化の処理中にgetStateで取得できる.
+     * ノーマライザのインスタンスは複数のスレッドから同時に使われるため、
+     * 行をまたいで引き継ぐ情報はフィールドではなくこの状態に持たせる.
+     * @return 正規化の状態、状態を持たないノーマライザならnull
+     */
+    protected Object createState() {
+        return null;
+    }
+    
+    /**
+     * createStateで生成した状態の、その時点での複製を返す.<br>
+     * IncrementalParserは行ごとに状態の複製を記録し、変更された行の直前から正規化をやり直す.
+     * 複製した状態はequalsで比較され、変更前と同じ状態に戻った時点で以降の行の再処理を打ち切る.
+     * 複製できない場合はnullを返し、その場合IncrementalParserは常に全体をパースする.<br>
+     * 差分パースでは状態は行頭指示子の処理の間だけ結びつけられるため、
+     * 行中・行末指示子の処理は状態を使わず前後の行のみに依存している必要がある.
+     * @param state 複製する状態
+     * @return 状態の複製、複製できなければnull
+     */
+    protected Object copyState(Object state) {
+        return null;
+    }
+    
+    /**
+     * 実行中の正規化についてcreateStateで生成された状態を取得する.<br>
+     * 各指示子の処理の中から呼び出す.正規化の外で呼び出した場合はnullを返す.
+     * @return 実行中の正規化の状態
+     */
+    protected Object getState() {
+        return state.get();
+    }
+    
+    /**
+     * 指定した状態を結びつけて、一行に一つの段階の指示子を適用する.
+     * @param phase MIDDLE、HEAD、TAILのいずれか
+     * @param line 処理する行
+     * @param prevLine 上流の直前の行、なければnull
+     * @param nextLine 上流の直後の行、なければnull
+     * @param invocation 処理中に結びつける正規化の状態
+     * @return 処理した行、行が除去されればnull
+     */
+    String process(int phase, String line, String prevLine, String nextLine, Object invocation) {
+        //複数の逐次処理が同じスレッドで交互に進んでも状態が混ざらないようにする
+        Object previous = enter(invocation);
+        try {
+            switch(phase) {
+            case MIDDLE: return processMiddleDesignators(line, prevLine, nextLine);
+            case HEAD: return processHeadDesignators(line, prevLine, nextLine);
+            default: return processTailDesignators(line, prevLine, nextLine);
+            }
+        } finally {
+            exit(previous);
+        }
+    }
+    
+    /**
+     * 現在のスレッドに正規化の状態を結びつけ、それまでの状態を返す.
+     */
+    private Object enter(Object invocation) {
+        Object previous = state.get();
+        state.set(invocation);
+        return previous;
+    }
+    
+    /**
+     * 現在のスレッドの正規化の状態をenterの前に戻す.
+     */
+    private void exit(Object previous) {
+        if(previous == null) state.remove();
+        else state.set(previous);
+    }
+    
+    /**
+     * 上流の行を一行先読みしながら、単一の段階の指示子を適用するイテレータ.<br>
+     * 上流のnullの行は前後の行としては参照されるが、それ自体は処理されない.
+     * 処理の結果nullになった行は下流に渡さない.
+     */
+    private final class Stage implements Iterator<String> {
+        private final Iterator<String> source;
+        private final int phase;
+        /**
+         * この逐次処理全体で共有する正規化の状態.
+         */
+        private final Object invocation;
+        /**
+         * 直前に処理した上流の行.
+         */
+        private String prev;
+        /**
+         * 次に処理する上流の行.
+         */
+        private String current;
+        private boolean hasCurrent;
+        private boolean started;
+        /**
+         * 次に返す処理済みの行.
+         */
+        private String pending;
+        
+        private Stage(Iterator<String> source, int phase, Object invocation) {
+            this.source = source;
+            this.phase = phase;
+            this.invocation = invocation;
+        }
+        
+        @Override
+        public boolean hasNext() {
+            //最初の行は要求されるまで読まない
+            if(!started) {
+                started = true;
+                hasCurrent = source.hasNext();
+                if(hasCurrent) current = source.next();
+            }
+            while(pending == null && hasCurrent) {
+                String line = current;
+                String next = null;
+                hasCurrent = source.hasNext();
+                if(hasCurrent) next = source.next();
+                if(line != null) pending = process(phase, line, prev, next, invocation);
+                prev = line;
+                current = next;
+            }
+            return pending != null;
+        }
+        
+        @Override
+        public String next() {
+            if(!hasNext()) throw new NoSuchElementException();
+            String result = pending;
+            pending = null;
+            return result;
+        }
+    }
+    
 }
@@ -0,0 +1,406 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package org.ocsoft.rosetto.parsers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+import org.ocsoft.rosetto.models.base.scenario.Label;
+import org.ocsoft.rosetto.models.base.scenario.Scenario;
+import org.ocsoft.rosetto.models.base.scenario.Unit;
+import org.ocsoft.rosetto.parsers.rosetto.RosettoParser;
+
+/**
+ * 編集されたシナリオを、前回のパース結果との差分だけ解釈し直して再構築するパーサー.<br>
+ * 前回与えられた行と新しい行を先頭と末尾から比較し、変更された範囲の直前から
+ * 正規化・ユニット文字列への分割・ユニットの生成をやり直す.
+ * 各段階は変更された範囲を過ぎて前回と同じ状態に戻った時点で打ち切り、以降は前回の結果を位置をずらして使う.
+ * 変更の影響を受けなかったユニットは新しいシナリオでも同じインスタンスが共有され、ラベルの位置は付け直される.<br>
+ * 複数行にまたがるタグや連続したページングのように行をまたぐ正規化の状態は、
+ * ノーマライザのcopyStateで行ごとに記録して再開に用いる.
+ * 逐次処理に対応しないノーマライザや状態を複製できないノーマライザでは、常に全体をパースする.<br>
+ * <br>
+ * 一つのインスタンスは一つのシナリオファイルの編集を追跡する.
+ * 行ごとの中間結果を保持するため、元のスクリプトの数倍程度のメモリを使用する.
+ * パースに失敗した場合は例外を投げ、前回のパース結果をそのまま保持する.
+ * @author tohhy
+ */
+public class IncrementalParser {
+    /**
+     * ユニットの生成に用いるパーサー.
+     */
+    private final ScenarioParser parser;
+
+    /**
+     * パーサーが使用するノーマライザ.
+     */
+    private final AbstractNormalizer normalizer;
+
+    /**
+     * 差分パースを行えるかどうか.falseなら常に全体をパースする.
+     */
+    private final boolean incremental;
+
+    /**
+     * 何もパースしていない状態の正規化の状態.
+     */
+    private final Object initialState;
+
+    /**
+     * 前回パースした行.
+     */
+    private String[] lines;
+
+    /**
+     * 行ごとの行中指示子の適用結果.
+     */
+    private String[] middles;
+
+    /**
+     * 行ごとの、その行の行頭指示子を適用する前の正規化の状態.末尾の要素は全ての行を処理した後の状態.
+     */
+    private Object[] states;
+
+    /**
+     * 行ごとの行頭指示子の適用結果.複数行にまたがるタグは最後の行の結果になる.
+     */
+    private String[] heads;
+
+    /**
+     * 行ごとの正規化の結果.
+     */
+    private String[] tails;
+
+    /**
+     * 行ごとの、その行を分割する前の閉じられていない左角括弧の数.
+     */
+    private int[] openCounts;
+
+    /**
+     * 行ごとの、その行を分割する前のユニットとして確定していない文字列.
+     */
+    private String[] buffers;
+
+    /**
+     * 行ごとの、その行を分割する前に確定したユニットの数.
+     */
+    private int[] unitStarts;
+
+    /**
+     * 前回のパース結果のユニット.
+     */
+    private List<Unit> units;
+
+    /**
+     * 前回のパース結果のラベル.ユニットの順に並ぶ.
+     */
+    private List<Label> labels;
+
+    /**
+     * 前回のパース結果.
+     */
+    private Scenario scenario;
+
+    /**
+     * 前回のパースで処理し直した行の数.
+     */
+    private int reparsedLineCount;
+
+    /**
+     * 前回のパースで再利用したユニットの数.
+     */
+    private int reusedUnitCount;
+
+    /**
+     * 指定したパーサーで差分パースを行うように初期化する.
+     * @param parser ユニットの生成に用いるパーサー
+     */
+    public IncrementalParser(ScenarioParser parser) {
+        if(parser == null) throw new IllegalArgumentException("parserがnullです");
+        this.parser = parser;
+        this.normalizer = parser.getNormalizer();
+        this.initialState = normalizer.createState();
+        this.incremental = normalizer.isStreamable()
+                && (initialState == null || normalizer.copyState(initialState) != null);
+        reset();
+    }
+
+    /**
+     * RosettoParserで差分パースを行うように初期化する.
+     */
+    public IncrementalParser() {
+        this(new RosettoParser());
+    }
+
+    /**
+     * 前回のパース結果を破棄する.次回のパースは全体に対して行われる.
+     */
+    public synchronized void reset() {
+        lines = new String[0];
+        middles = new String[0];
+        states = new Object[]{initialState};
+        heads = new String[0];
+        tails = new String[0];
+        openCounts = new int[1];
+        buffers = new String[1];
+        unitStarts = new int[1];
+        units = Collections.emptyList();
+        labels = Collections.emptyList();
+        scenario = new Scenario(units, labels);
+        reparsedLineCount = 0;
+        reusedUnitCount = 0;
+    }
+
+    /**
+     * 文字列表現のシナリオを、前回のパース結果との差分をもとに解釈してシナリオオブジェクトを作成する.
+     * @param scenarioText 文字列表現のシナリオ
+     * @return パース後のシナリオ
+     */
+    public Scenario parseScript(String scenarioText) {
+        if(scenarioText == null) throw new IllegalArgumentException("scenarioTextがnullです");
+        return parseScript(ParseUtils.asLines(scenarioText));
+    }
+
+    /**
+     * 行ごとに分割されたシナリオスクリプトを、前回のパース結果との差分をもとに解釈してシナリオオブジェクトを作成する.<br>
+     * 結果はScenarioParser.parseScriptで全体をパースした場合と同じになる.
+     * @param scenarioLines 行ごとに分割されたシナリオスクリプト
+     * @return パース後のシナリオ
+     */
+    public synchronized Scenario parseScript(List<String> scenarioLines) {
+        if(scenarioLines == null) throw new IllegalArgumentException("scenarioLinesがnullです");
+        String[] next = scenarioLines.toArray(new String[scenarioLines.size()]);
+        if(!incremental) {
+            Scenario result = parser.parseScript(scenarioLines);
+            lines = next;
+            scenario = result;
+            reparsedLineCount = next.length;
+            reusedUnitCount = 0;
+            return result;
+        }
+        return update(next);
+    }
+
+    /**
+     * 前回のパース結果を返す.まだパースしていなければ空のシナリオを返す.
+     * @return 前回のパース結果
+     */
+    public synchronized Scenario getScenario() {
+        return scenario;
+    }
+
+    /**
+     * 前回のパースで処理し直した行の数を返す.
+     * @return 前回のパースで処理し直した行の数
+     */
+    public synchronized int getReparsedLineCount() {
+        return reparsedLineCount;
+    }
+
+    /**
+     * 前回のパースで、その前の結果から再利用したユニットの数を返す.
+     * @return 前回のパースで再利用したユニットの数
+     */
+    public synchronized int getReusedUnitCount() {
+        return reusedUnitCount;
+    }
+
+    /**
+     * 前回の行との差分を求め、影響を受ける範囲だけ処理し直してシナリオを作成する.<br>
+     * 新しい中間結果は全て新しい配列に作成し、最後にまとめて置き換える.
+     */
+    private Scenario update(String[] next) {
+        int n = lines.length;
+        int m = next.length;
+        //先頭と末尾から一致する行数を求める
+        int limit = Math.min(n, m);
+        int prefix = 0;
+        while(prefix < limit && lines[prefix].equals(next[prefix])) prefix++;
+        int suffix = 0;
+        while(suffix < limit - prefix && lines[n - 1 - suffix].equals(next[m - 1 - suffix])) suffix++;
+        if(prefix == n && n == m) {
+            reparsedLineCount = 0;
+            reusedUnitCount = units.size();
+            return scenario;
+        }
+        //変更範囲より後の行の、新旧の位置の差
+        int delta = m - n;
+
+        //行中指示子は前後の行のみに依存するので、変更された行とその前後の行だけ処理し直す
+        String[] newMiddles = new String[m];
+        int middleFrom = Math.max(0, prefix - 1);
+        int middleTo = Math.min(m, m - suffix + 1);
+        System.arraycopy(middles, 0, newMiddles, 0, middleFrom);
+        for(int i=middleFrom; i<middleTo; i++) {
+            newMiddles[i] = normalizer.process(AbstractNormalizer.MIDDLE, next[i],
+                    (i > 0) ? next[i - 1] : null, (i + 1 < m) ? next[i + 1] : null, null);
+        }
+        System.arraycopy(middles, middleTo - delta, newMiddles, middleTo, m - middleTo);
+
+        //行頭指示子は状態をもつので、直後の行が変わりうる行から状態が前回と一致するまで処理し直す
+        String[] newHeads = new String[m];
+        Object[] newStates = new Object[m + 1];
+        int headFrom = Math.max(0, previous(newMiddles, middleFrom));
+        System.arraycopy(heads, 0, newHeads, 0, headFrom);
+        System.arraycopy(states, 0, newStates, 0, headFrom);
+        int prevIndex = previous(newMiddles, headFrom);
+        String prevLine = (prevIndex < 0) ? null : newMiddles[prevIndex];
+        Object before = states[headFrom];
+        Object state = copy(before);
+        int headTo = following(newMiddles, headFrom);
+        for(int i=headFrom; i<headTo; i++) newStates[i] = before;
+        while(headTo < m) {
+            if(headTo >= middleTo && Objects.equals(before, states[headTo - delta])
+                    && Objects.equals(prevLine, previousLine(middles, headTo - delta))) break;
+            int nextIndex = following(newMiddles, headTo + 1);
+            newStates[headTo] = before;
+            newHeads[headTo] = normalizer.process(AbstractNormalizer.HEAD, newMiddles[headTo],
+                    prevLine, (nextIndex < m) ? newMiddles[nextIndex] : null, state);
+            prevLine = newMiddles[headTo];
+            before = copy(state);
+            for(int i=headTo + 1; i<nextIndex; i++) newStates[i] = before;
+            headTo = nextIndex;
+        }
+        if(headTo == m) {
+            newStates[m] = before;
+        } else {
+            System.arraycopy(heads, headTo - delta, newHeads, headTo, m - headTo);
+            System.arraycopy(states, headTo - delta, newStates, headTo, m + 1 - headTo);
+        }
+
+        //行末指示子は前後の行に依存するので、行頭指示子の結果が変わった範囲とその前後の行を処理し直す
+        String[] newTails = new String[m];
+        int tailFrom = previous(newHeads, headFrom);
+        if(tailFrom < 0) tailFrom = headFrom;
+        int lastHead = following(newHeads, headTo);
+        int tailTo = (lastHead < m) ? lastHead + 1 : m;
+        System.arraycopy(tails, 0, newTails, 0, tailFrom);
+        prevIndex = previous(newHeads, tailFrom);
+        prevLine = (prevIndex < 0) ? null : newHeads[prevIndex];
+        for(int i=following(newHeads, tailFrom); i<tailTo; ) {
+            int nextIndex = following(newHeads, i + 1);
+            newTails[i] = normalizer.process(AbstractNormalizer.TAIL, newHeads[i],
+                    prevLine, (nextIndex < m) ? newHeads[nextIndex] : null, null);
+            prevLine = newHeads[i];
+            i = nextIndex;
+        }
+        System.arraycopy(tails, tailTo - delta, newTails, tailTo, m - tailTo);
+
+        //ユニット文字列への分割は、分割の途中の状態が前回と一致するまでやり直す
+        int[] newOpenCounts = new int[m + 1];
+        String[] newBuffers = new String[m + 1];
+        int[] newUnitStarts = new int[m + 1];
+        System.arraycopy(openCounts, 0, newOpenCounts, 0, tailFrom);
+        System.arraycopy(buffers, 0, newBuffers, 0, tailFrom);
+        System.arraycopy(unitStarts, 0, newUnitStarts, 0, tailFrom);
+        UnitSplitter splitter = new UnitSplitter(openCounts[tailFrom], buffers[tailFrom]);
+        int firstUnit = unitStarts[tailFrom];
+        List<String> unitStrs = new ArrayList<String>();
+        int splitTo = tailFrom;
+        for(; splitTo < m; splitTo++) {
+            int open = splitter.getOpenCount();
+            String buffered = splitter.getBuffered();
+            if(splitTo >= tailTo && open == openCounts[splitTo - delta]
+                    && Objects.equals(buffered, buffers[splitTo - delta])) break;
+            newOpenCounts[splitTo] = open;
+            newBuffers[splitTo] = buffered;
+            newUnitStarts[splitTo] = firstUnit + unitStrs.size();
+            if(newTails[splitTo] != null) splitter.append(newTails[splitTo], unitStrs);
+        }
+        int resumeUnit;
+        if(splitTo == m) {
+            newOpenCounts[m] = splitter.getOpenCount();
+            newBuffers[m] = splitter.getBuffered();
+            newUnitStarts[m] = firstUnit + unitStrs.size();
+            splitter.finish(unitStrs);
+            resumeUnit = units.size();
+        } else {
+            resumeUnit = unitStarts[splitTo - delta];
+        }
+        //ユニットの数の増減
+        int shift = firstUnit + unitStrs.size() - resumeUnit;
+        if(splitTo < m) {
+            System.arraycopy(openCounts, splitTo - delta, newOpenCounts, splitTo, m + 1 - splitTo);
+            System.arraycopy(buffers, splitTo - delta, newBuffers, splitTo, m + 1 - splitTo);
+            for(int i=splitTo; i<=m; i++) newUnitStarts[i] = unitStarts[i - delta] + shift;
+        }
+
+        //変更の影響を受けたユニットだけ生成し、前後のユニットは共有する
+        List<Unit> created = new ArrayList<Unit>(unitStrs.size());
+        for(String unitStr : unitStrs) created.add(parser.createUnit(unitStr));
+        List<Unit> newUnits = new ArrayList<Unit>(units.size() + shift);
+        newUnits.addAll(units.subList(0, firstUnit));
+        newUnits.addAll(created);
+        newUnits.addAll(units.subList(resumeUnit, units.size()));
+
+        //ラベルは直後のユニットの位置を指すので、後ろの範囲のラベルは位置をずらして作り直す
+        List<Label> newLabels = new ArrayList<Label>();
+        for(Label l : labels) {
+            if(l.getIndex() <= firstUnit) newLabels.add(l);
+        }
+        for(int i=0; i<created.size(); i++) {
+            Unit u = created.get(i);
+            if(ScenarioParser.isLabel(u)) {
+                newLabels.add(ScenarioParser.createLabel(firstUnit + i + 1, u.getAction()));
+            }
+        }
+        for(Label l : labels) {
+            if(l.getIndex() <= resumeUnit) continue;
+            newLabels.add((shift == 0) ? l : new Label(l.getName(), l.getIndex() + shift, l.getTitle()));
+        }
+
+        //全ての処理が成功してから置き換える
+        reusedUnitCount = units.size() - (resumeUnit - firstUnit);
+        reparsedLineCount = Math.max(Math.max(middleTo, headTo), Math.max(tailTo, splitTo)) - tailFrom;
+        lines = next;
+        middles = newMiddles;
+        states = newStates;
+        heads = newHeads;
+        tails = newTails;
+        openCounts = newOpenCounts;
+        buffers = newBuffers;
+        unitStarts = newUnitStarts;
+        units = newUnits;
+        labels = newLabels;
+        scenario = new Scenario(newUnits, newLabels);
+        return scenario;
+    }
+
+    /**
+     * 正規化の状態を複製する.状態を持たないノーマライザならnullを返す.
+     */
+    private Object copy(Object state) {
+        return (state == null) ? null : normalizer.copyState(state);
+    }
+
+    /**
+     * 指定した位置より前で、nullでない最後の要素の位置を返す.なければ-1を返す.
+     */
+    private static int previous(String[] values, int index) {
+        for(int i=index - 1; i>=0; i--) {
+            if(values[i] != null) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * 指定した位置より前で、nullでない最後の要素を返す.なければnullを返す.
+     */
+    private static String previousLine(String[] values, int index) {
+        int i = previous(values, index);
+        return (i < 0) ? null : values[i];
+    }
+
+    /**
+     * 指定した位置以降で、nullでない最初の要素の位置を返す.なければ配列の長さを返す.
+     */
+    private static int following(String[] values, int index) {
+        for(int i=index; i<values.length; i++) {
+            if(values[i] != null) return i;
+        }
+        return values.length;
+    }
+}
@@ -3,11 +3,11 @@
  * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
 package org.ocsoft.rosetto.parsers;
 
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Scanner;
 
 import org.ocsoft.rosetto.utils.base.TextUtils;
 
@@ -109,20 +109,34 @@ public class ParseUtils {
         return "[".concat(line).concat("]");
     }
     
+    /**
+     * scanTagsの結果:タグの外側に文字が残った.
+     */
+    private static final int HAS_TEXT = 1;
+    
+    /**
+     * scanTagsの結果:タグの外側に対応する左括弧のない右角括弧があった.
+     */
+    private static final int HAS_STRAY_CLOSE = 2;
+    
+    /**
+     * scanTagsの結果:閉じられていない左角括弧が残った.
+     */
+    private static final int UNCLOSED = 4;
+    
     /**
      * 指定した行が閉じられていない角括弧を持つかどうかを判定する.<br>
      * 連続する左角括弧によるエスケープは無効、括弧のネストは無視して最外周の階層のみ見る
      */
     public static boolean hasUnClosedBracket(String line) {
-        //成立しているタグを全て取り除く
-        line = removeAllTags(line);
         //括弧の有無を調べる
-        int obIndex = line.indexOf("[");
-        int cbIndex = line.indexOf("]");
-        //左括弧はあるが右括弧がないなら閉じられていない括弧と判断
-        if(obIndex >= 0 && cbIndex == -1) return true;
-        //それ以外なら通常文字列として扱う
-        return false;
+        int obIndex = line.indexOf('[');
+        int cbIndex = line.indexOf(']');
+        //どちらかがなければタグは成立しないので、左括弧の有無だけで決まる
+        if(obIndex == -1 || cbIndex == -1) return obIndex >= 0;
+        //成立しているタグを取り除いた結果に左括弧だけが残るなら閉じられていない括弧と判断
+        int flags = scanTags(line, null);
+        return (flags & UNCLOSED) != 0 && (flags & HAS_STRAY_CLOSE) == 0;
     }
     
     /**
@@ -134,36 +148,71 @@ public class ParseUtils {
      * @return タグを取り除いた行
      */
     public static String removeAllTags(String line) {
-        //括弧の有無を調べる
-        int obIndex = line.indexOf("[");
-        int cbIndex = line.indexOf("]");
         //左括弧か右括弧がなければそのまま
-        if(obIndex == -1 || cbIndex == -1) return line;
-        //タグ内のダブルクオートで囲まれた要素を取り除いておく
-        line = removeAllDoubleQuotedStrings(line);
-        //ダブルクオート除去後の括弧位置に更新、cbはobより後のものに制限する
-        obIndex = line.indexOf("[");
-        int cb = line.substring(obIndex).indexOf(']');
-        if(cb == -1) return line;
-        cbIndex = cb + obIndex;
-        //どちらも存在し括弧を形成しているならその部分を取り除いて再帰
-        String striped = line.substring(0, obIndex) + line.substring(cbIndex+1);
-        return removeAllTags(striped);
+        if(line.indexOf('[') == -1 || line.indexOf(']') == -1) return line;
+        StringBuilder result = new StringBuilder(line.length());
+        scanTags(line, result);
+        return result.toString();
     }
     
+    /**
+     * 行を先頭から一度だけ走査し、ダブルクオートで囲まれた部分とタグを取り除いた結果を調べる.<br>
+     * ダブルクオートの扱いはremoveAllDoubleQuotedStringsと同じ.
+     * 左角括弧から次の右角括弧までをタグとみなし、閉じられていない左角括弧以降はそのまま残す.
+     * @param line 走査する行
+     * @param out 取り除いた結果を追加する先.不要であればnull
+     * @return HAS_TEXT, HAS_STRAY_CLOSE, UNCLOSEDの組み合わせ
+     */
+    private static int scanTags(String line, StringBuilder out) {
+        int len = line.length();
+        //最初と最後のダブルクオートの間は読み飛ばす
+        int firstQuote = line.indexOf('"');
+        int lastQuote = line.lastIndexOf('"');
+        boolean skipQuoted = firstQuote != -1 && firstQuote < lastQuote;
+        int flags = 0;
+        //現在開いているタグの左括弧の位置. タグの外側なら-1
+        int tagStart = -1;
+        for(int i=0; i<len; i++) {
+            if(skipQuoted && i == firstQuote) i = lastQuote;
+            char c = line.charAt(i);
+            if(tagStart >= 0) {
+                if(c == ']') tagStart = -1;
+                continue;
+            }
+            if(c == '[') {
+                tagStart = i;
+                continue;
+            }
+            if(c == ']') flags |= HAS_STRAY_CLOSE;
+            flags |= HAS_TEXT;
+            if(out != null) out.append(c);
+        }
+        if(tagStart >= 0) {
+            flags |= UNCLOSED;
+            //閉じられていない左括弧以降はそのまま残す
+            if(out != null) {
+                if(skipQuoted && tagStart < firstQuote) {
+                    out.append(line, tagStart, firstQuote).append(line, lastQuote, len);
+                } else {
+                    out.append(line, tagStart, len);
+                }
+            }
+        }
+        return flags;
+    }
 
     /**
-     * 行中から全てのダブルクオートで囲まれた部分を取り除く.
+     * 行中から全てのダブルクオートで囲まれた部分を取り除く.<br>
+     * ダブルクオートが2つ以上ある場合、最初のダブルクオートから最後のダブルクオートの直前までを取り除く.
+     * 最後のダブルクオートは残る.
      * @param line 編集する行
      * @return ダブルクオートで囲まれた部分を取り除いた行
      */
     public static String removeAllDoubleQuotedStrings(String line) {
         int firstIndex = line.indexOf('"');
-        if(firstIndex == -1 || firstIndex == line.length() - 1) return line;
-        int secondIndex = line.substring(firstIndex + 1).indexOf('"');
-        if(secondIndex == -1) return line;
-        secondIndex = secondIndex + firstIndex;
-        return removeAllDoubleQuotedStrings(line.substring(0, firstIndex) + line.substring(secondIndex+1));
+        int lastIndex = line.lastIndexOf('"');
+        if(firstIndex == -1 || firstIndex == lastIndex) return line;
+        return line.substring(0, firstIndex) + line.substring(lastIndex);
     }
     
     /**
@@ -173,31 +222,39 @@ public class ParseUtils {
      * @return その行がタグのみかどうか
      */
     public static boolean isTagOnlyLine(String line) {
-        //成立しているタグを全て取り除く
-        line = removeAllTags(line);
-        //この時点で文字長0ならタグのみの行と判断できる
-        return (line.length() == 0);
+        //どちらかの括弧がなければタグは成立しないので、空行のみがタグのみの行
+        if(line.indexOf('[') == -1 || line.indexOf(']') == -1) return line.length() == 0;
+        //成立しているタグを全て取り除いて何も残らなければタグのみの行と判断できる
+        return scanTags(line, null) == 0;
     }
     
     /**
-     * 複数行からなる文字列を行ごとのリストへ変換する.
+     * 複数行からなる文字列を行ごとのリストへ変換する.<br>
+     * 改行はScanner.nextLineと同じくCRLF、LF、CR、U+2028、U+2029、U+0085で区切り、
+     * 最後の空白以外の文字を含む行より後ろの空白のみの行は含まない.
      * @param scenarioText 
      * @return 
      */
     public static List<String> asLines(String scenarioText) {
-        //行を読み出す
-        Scanner scanner = null;
-        try {
-            scanner = new Scanner(scenarioText);
-            List<String> lines = new LinkedList<String>();
-            while(scanner.hasNext()) {
-                lines.add(scanner.nextLine());
-            }
-            return lines;
-        } finally {
-            if(scanner != null)
-                scanner.close();
+        //最後の空白以外の文字の位置
+        int end = scenarioText.length();
+        while(end > 0 && Character.isWhitespace(scenarioText.charAt(end - 1))) end--;
+        List<String> lines = new ArrayList<String>();
+        int start = 0;
+        while(start < end) {
+            int i = start;
+            while(i < scenarioText.length() && !isLineSeparator(scenarioText.charAt(i))) i++;
+            lines.add(scenarioText.substring(start, i));
+            start = scenarioText.startsWith("\r\n", i) ? i + 2 : i + 1;
         }
+        return lines;
+    }
+    
+    /**
+     * 指定した文字が改行文字かどうかを返す.
+     */
+    private static boolean isLineSeparator(char c) {
+        return c == '\n' || c == '\r' || c == '\u2028' || c == '\u2029' || c == '\u0085';
     }
     
     /**
@@ -217,30 +274,9 @@ public class ParseUtils {
      */
     public static LinkedList<String> splitScript(String script) {
         LinkedList<String> list = new LinkedList<String>();
-        int scriptLength = script.length();
-        int obCount = 0;
-        int index = 0;
-        StringBuilder buf = new StringBuilder();
-        while(index != scriptLength) {
-            char c = script.charAt(index);
-            buf.append(c);
-            if(c == '[') {
-                obCount++;
-            } else if(c == ']') {
-                if(obCount > 0) obCount--;
-                //この段階で括弧が閉じきられていればここまでをUnitにする
-                if(obCount == 0) {
-                    list.add(buf.toString());
-                    buf = new StringBuilder();
-                }
-            }
-            index++;
-        }
-        if(obCount == 0) {
-            if(buf.length() > 0) list.add(buf.toString());
-        } else {
-            throw new IllegalArgumentException("not closed bracket found");
-        }
+        UnitSplitter splitter = new UnitSplitter();
+        splitter.append(script, list);
+        splitter.finish(list);
         return list;
     }
     
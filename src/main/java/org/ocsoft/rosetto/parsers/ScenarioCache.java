@@ -0,0 +1,189 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package org.ocsoft.rosetto.parsers;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+
+import org.ocsoft.rosetto.compiler.ScenarioCompiler;
+import org.ocsoft.rosetto.models.base.elements.values.ScriptValue;
+import org.ocsoft.rosetto.models.base.scenario.Scenario;
+import org.ocsoft.rosetto.models.system.Parser;
+
+/**
+ * スクリプトの文字列をキーとして、パース済みのシナリオを保持するキャッシュ.<br>
+ * マクロのように同じスクリプトが繰り返し実行される場合に、パースを一度で済ませるために用いる.<br>
+ * 保持するエントリ数とスクリプトの総文字数の両方に上限を持ち、
+ * 上限を超えた場合は最も長く参照されていないエントリから破棄する.<br>
+ * パースに用いるパーサーが変更された場合は保持している内容をすべて破棄する.
+ * @author tohhy
+ */
+public class ScenarioCache {
+    /**
+     * デフォルトの最大エントリ数.
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 256;
+    
+    /**
+     * デフォルトの最大総文字数.
+     */
+    public static final long DEFAULT_MAX_CHARS = 1024 * 1024;
+    
+    /**
+     * スクリプトとパース結果のマップ.参照順に並ぶ.
+     */
+    private final LinkedHashMap<String, Scenario> entries = 
+            new LinkedHashMap<String, Scenario>(16, 0.75f, true);
+    
+    /**
+     * 保持するエントリ数の上限.
+     */
+    private final int maxEntries;
+    
+    /**
+     * 保持するスクリプトの総文字数の上限.
+     */
+    private final long maxChars;
+    
+    /**
+     * 現在保持しているスクリプトの総文字数.
+     */
+    private long chars = 0;
+    
+    /**
+     * キャッシュ中のシナリオをパースしたパーサー.
+     */
+    private Parser parser;
+    
+    private long hitCount = 0;
+    private long missCount = 0;
+    private long evictionCount = 0;
+    
+    /**
+     * デフォルトの上限でキャッシュを生成する.
+     */
+    public ScenarioCache() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_CHARS);
+    }
+    
+    /**
+     * 指定した上限でキャッシュを生成する.
+     * @param maxEntries 保持するエントリ数の上限
+     * @param maxChars 保持するスクリプトの総文字数の上限
+     */
+    public ScenarioCache(int maxEntries, long maxChars) {
+        if(maxEntries < 0 || maxChars < 0)
+            throw new IllegalArgumentException("limits must not be negative");
+        this.maxEntries = maxEntries;
+        this.maxChars = maxChars;
+    }
+    
+    /**
+     * 指定したスクリプトをパースしたシナリオを返す.<br>
+     * キャッシュに存在すればそれを返し、存在しなければ指定したパーサーでパースして格納する.<br>
+     * 格納されるシナリオはScenarioCompilerでリンク済みのものになる.
+     * @param script パースするスクリプト
+     * @param parser パースに用いるパーサー
+     * @return パース後のシナリオ
+     */
+    public Scenario get(ScriptValue script, Parser parser) {
+        if(script == null)
+            throw new IllegalArgumentException("script must not be null");
+        if(parser == null)
+            throw new IllegalArgumentException("parser must not be null");
+        String key = script.getScript();
+        synchronized(this) {
+            if(this.parser != parser) {
+                clear();
+                this.parser = parser;
+            }
+            Scenario cached = entries.get(key);
+            if(cached != null) {
+                hitCount++;
+                return cached;
+            }
+            missCount++;
+        }
+        //パースはロックの外で行う
+        Scenario parsed = parser.parseScript(script);
+        if(parsed == null) return null;
+        parsed = ScenarioCompiler.compile(parsed);
+        synchronized(this) {
+            if(this.parser == parser) put(key, parsed);
+        }
+        return parsed;
+    }
+    
+    /**
+     * 指定したエントリを追加し、上限を超えた分を古いものから破棄する.
+     */
+    private void put(String key, Scenario scenario) {
+        //単独で上限を超えるものは保持しない
+        if(key.length() > maxChars || maxEntries == 0) return;
+        Scenario old = entries.put(key, scenario);
+        if(old == null) chars += key.length();
+        Iterator<Entry<String, Scenario>> it = entries.entrySet().iterator();
+        while(entries.size() > maxEntries || chars > maxChars) {
+            String eldest = it.next().getKey();
+            it.remove();
+            chars -= eldest.length();
+            evictionCount++;
+        }
+    }
+    
+    /**
+     * 保持しているすべてのエントリを破棄する.統計値はそのまま残る.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        chars = 0;
+    }
+    
+    /**
+     * 現在保持しているエントリ数を返す.
+     * @return 現在保持しているエントリ数
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+    
+    /**
+     * 現在保持しているスクリプトの総文字数を返す.
+     * @return 現在保持しているスクリプトの総文字数
+     */
+    public synchronized long getChars() {
+        return chars;
+    }
+    
+    /**
+     * キャッシュに存在した回数を返す.
+     * @return キャッシュに存在した回数
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+    
+    /**
+     * キャッシュに存在せずパースを行った回数を返す.
+     * @return キャッシュに存在しなかった回数
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+    
+    /**
+     * 上限を超えたために破棄したエントリの数を返す.
+     * @return 破棄したエントリの数
+     */
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+    
+    @Override
+    public synchronized String toString() {
+        return "[scenariocache size:" + entries.size() + " chars:" + chars + 
+                " hit:" + hitCount + " miss:" + missCount + " evicted:" + evictionCount + "]";
+    }
+}
@@ -3,8 +3,16 @@
  * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
 package org.ocsoft.rosetto.parsers;
 
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 
 import org.frows.lilex.parser.Tokenizer;
 import org.frows.lilex.token.Token;
@@ -16,8 +24,8 @@ import org.ocsoft.rosetto.models.base.scenario.Label;
 import org.ocsoft.rosetto.models.base.scenario.Scenario;
 import org.ocsoft.rosetto.models.base.scenario.ScenarioToken;
 import org.ocsoft.rosetto.models.base.scenario.Unit;
-import org.ocsoft.rosetto.models.system.Parser;
 import org.ocsoft.rosetto.models.system.Scope;
+import org.ocsoft.rosetto.models.system.StreamingParser;
 import org.ocsoft.rosetto.parsers.rosetto.RosettoElementParser;
 import org.ocsoft.rosetto.utils.base.TextUtils;
 
@@ -26,7 +34,7 @@ import org.ocsoft.rosetto.utils.base.TextUtils;
  * ScenarioParser.parse()から設定ファイルに合わせたサブクラスで初期化される.
  * @author tohhy
  */
-public class ScenarioParser extends Tokenizer implements Parser {
+public class ScenarioParser extends Tokenizer implements StreamingParser {
     /**
      * 正規記法のタグ全体にマッチする正規表現
      */
@@ -70,6 +78,13 @@ public class ScenarioParser extends Tokenizer implements Parser {
         this(normalizer, new RosettoElementParser());
     }
     
+    /**
+     * このパーサーが使用するノーマライザを返す.
+     */
+    AbstractNormalizer getNormalizer() {
+        return normalizer;
+    }
+    
     /**
      * 指定した文字列をRosettoValueに変換する.<br>
      * @param element
@@ -124,6 +139,34 @@ public class ScenarioParser extends Tokenizer implements Parser {
         return new Scenario(tokens);
     }
     
+    @Override
+    public Iterator<ScenarioToken> streamScript(Reader script) {
+        if(script == null) throw new IllegalArgumentException("scriptがnullです");
+        Iterator<String> lines = new ScriptLineIterator(script);
+        if(normalizer.isStreamable()) {
+            return new TokenIterator(normalizer.normalize(lines));
+        }
+        //逐次処理に対応しないノーマライザなら正規化のみ全行をまとめて行う
+        List<String> scenarioLines = new ArrayList<String>();
+        while(lines.hasNext()) scenarioLines.add(lines.next());
+        return new TokenIterator(normalizer.normalize(scenarioLines).iterator());
+    }
+    
+    @Override
+    public Iterator<ScenarioToken> streamScript(ReadableByteChannel script, Charset charset) {
+        if(script == null) throw new IllegalArgumentException("scriptがnullです");
+        if(charset == null) throw new IllegalArgumentException("charsetがnullです");
+        return streamScript(Channels.newReader(script, charset.newDecoder(), -1));
+    }
+    
+    @Override
+    public Scenario parseScript(Reader script) {
+        List<ScenarioToken> tokens = new ArrayList<ScenarioToken>();
+        Iterator<ScenarioToken> it = streamScript(script);
+        while(it.hasNext()) tokens.add(it.next());
+        return new Scenario(tokens);
+    }
+    
     /**
      * プレーンテキストとタグが１つずつ組になったテキストを受け取り、ユニットを生成して返す.
      * unitStrは<br>
@@ -155,20 +198,92 @@ public class ScenarioParser extends Tokenizer implements Parser {
             //ユニットを追加
             ps.addUnit(u);
             //ユニットがラベルならラベルも追加（パース時唯一の例外的処理）
-            if(u.getAction().getActionName().equals("label")) {
-                ps.addLabel(createLabel(ps, u.getAction()));
+            if(isLabel(u)) {
+                ps.addLabel(createLabel(ps.getUnitIndex(), u.getAction()));
             }
         }
         return ps.getTokens();
     }
     
-    private static Label createLabel(ParserState ps, ActionCall labelAction) {
+    static boolean isLabel(Unit u) {
+        return u.getAction().getActionName().equals("label");
+    }
+    
+    static Label createLabel(int unitIndex, ActionCall labelAction) {
         Map<String, RosettoValue> args = 
                 labelAction.getArgs().bind(BaseFunctions.label, new Scope());
         
         String labelName = args.get("name").asString();
         String labelTitle = args.get("title").asString();
-        return new Label(labelName,  ps.getUnitIndex(), labelTitle);
+        return new Label(labelName, unitIndex, labelTitle);
+    }
+    
+    /**
+     * 正規化された行を受け取りながらユニットとラベルを順に生成するイテレータ.<br>
+     * tokenizeと同じトークン列を、必要になった分だけ上流の行を読み進めて返す.
+     */
+    private final class TokenIterator implements Iterator<ScenarioToken> {
+        /**
+         * 正規化された行.
+         */
+        private final Iterator<String> normalized;
+        
+        /**
+         * 正規化された行をユニット文字列に分割する.
+         */
+        private final UnitSplitter splitter = new UnitSplitter();
+        
+        /**
+         * 確定したがまだトークンにしていないユニット文字列.
+         */
+        private final ArrayDeque<String> unitStrs = new ArrayDeque<String>();
+        
+        /**
+         * 生成したがまだ返していないトークン.
+         */
+        private final ArrayDeque<ScenarioToken> pending = new ArrayDeque<ScenarioToken>();
+        
+        /**
+         * これまでに生成したユニットの数.
+         */
+        private int unitIndex;
+        
+        private boolean finished;
+        
+        private TokenIterator(Iterator<String> normalized) {
+            this.normalized = normalized;
+        }
+        
+        @Override
+        public boolean hasNext() {
+            while(pending.isEmpty()) {
+                if(unitStrs.isEmpty()) {
+                    if(finished) return false;
+                    if(normalized.hasNext()) {
+                        splitter.append(normalized.next(), unitStrs);
+                    } else {
+                        finished = true;
+                        splitter.finish(unitStrs);
+                    }
+                    continue;
+                }
+                //テキストをコンパイルしてユニットにする
+                Unit u = createUnit(unitStrs.poll());
+                pending.add(u);
+                unitIndex++;
+                //ユニットがラベルならラベルも追加
+                if(isLabel(u)) {
+                    pending.add(createLabel(unitIndex, u.getAction()));
+                }
+            }
+            return true;
+        }
+        
+        @Override
+        public ScenarioToken next() {
+            if(!hasNext()) throw new NoSuchElementException();
+            return pending.poll();
+        }
     }
     
 }
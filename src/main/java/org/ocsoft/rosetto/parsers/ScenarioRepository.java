@@ -0,0 +1,427 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package org.ocsoft.rosetto.parsers;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import org.ocsoft.rosetto.compiler.ScenarioCompiler;
+import org.ocsoft.rosetto.contexts.base.RosettoRuntime;
+import org.ocsoft.rosetto.models.base.scenario.Scenario;
+import org.ocsoft.rosetto.models.system.Parser;
+import org.ocsoft.rosetto.parsers.rosetto.RosettoParser;
+import org.ocsoft.rosetto.system.RosettoLogger;
+import org.ocsoft.rosetto.system.messages.SystemMessage;
+import org.ocsoft.rosetto.utils.base.HashUtils;
+
+/**
+ * ディレクトリ内のシナリオファイルを名前で引けるようにまとめたカタログ.<br>
+ * 名前はディレクトリからの相対パスから拡張子を除き、区切りを/にしたもの.
+ * シナリオは最初に参照された時点で読み込まれ、loadAllで全てのファイルをスレッドプール上で並列に読み込むこともできる.
+ * 同じファイルを複数のスレッドが同時に参照した場合もパースは一度だけ行われる.<br>
+ * 読み込んだシナリオはScenarioCompilerでリンク済みのもので、
+ * 内容が同じファイルは同じインスタンスを共有する.
+ * 読み込み済みのシナリオ数が上限を超えると、最も長く参照されていないものから破棄し、次の参照で読み込みなおす.<br>
+ * パースはファイルごとにparserFactoryで生成したパーサーで行い、
+ * タグの引数の解釈はこのリポジトリを生成したスレッドの実行環境で行う.
+ * @author tohhy
+ */
+public class ScenarioRepository {
+    /**
+     * デフォルトのシナリオファイルの拡張子.
+     */
+    public static final String DEFAULT_EXTENSION = ".rosetto";
+
+    /**
+     * デフォルトの読み込み済みシナリオ数の上限.
+     */
+    public static final int DEFAULT_MAX_LOADED = 64;
+
+    /**
+     * シナリオファイルを探すディレクトリ.
+     */
+    private final File directory;
+
+    /**
+     * シナリオファイルの拡張子.
+     */
+    private final String extension;
+
+    /**
+     * 読み込み済みのシナリオ数の上限.
+     */
+    private final int maxLoaded;
+
+    /**
+     * ファイルごとにパーサーを生成する.
+     */
+    private final Supplier<? extends Parser> parserFactory;
+
+    /**
+     * パースを行う実行環境.
+     */
+    private final RosettoRuntime runtime;
+
+    /**
+     * 名前とファイルの情報のマップ.
+     */
+    private final Map<String, Entry> entries = new TreeMap<String, Entry>();
+
+    /**
+     * 読み込み済みのエントリ.参照順に並ぶ.
+     */
+    private final LinkedHashMap<String, Entry> loaded =
+            new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+    /**
+     * 内容のハッシュと、その内容から読み込んだシナリオのマップ.
+     */
+    private final Map<String, Scenario> canonical = new HashMap<String, Scenario>();
+
+    private long hitCount = 0;
+    private long missCount = 0;
+    private long evictionCount = 0;
+
+    /**
+     * 指定したディレクトリのシナリオファイルをデフォルトの設定で扱うリポジトリを生成する.
+     * @param directory シナリオファイルを探すディレクトリ
+     * @throws IOException ディレクトリを読めない場合
+     */
+    public ScenarioRepository(File directory) throws IOException {
+        this(directory, DEFAULT_EXTENSION, DEFAULT_MAX_LOADED, RosettoParser::new);
+    }
+
+    /**
+     * 指定した設定でリポジトリを生成する.
+     * @param directory シナリオファイルを探すディレクトリ
+     * @param extension シナリオファイルの拡張子
+     * @param maxLoaded 読み込み済みのシナリオ数の上限
+     * @param parserFactory ファイルごとにパーサーを生成する関数
+     * @throws IOException ディレクトリを読めない場合
+     */
+    public ScenarioRepository(File directory, String extension, int maxLoaded,
+            Supplier<? extends Parser> parserFactory) throws IOException {
+        if(directory == null)
+            throw new IllegalArgumentException("directory must not be null");
+        if(extension == null || extension.isEmpty())
+            throw new IllegalArgumentException("extension must not be empty");
+        if(maxLoaded < 1)
+            throw new IllegalArgumentException("maxLoaded must be positive");
+        if(parserFactory == null)
+            throw new IllegalArgumentException("parserFactory must not be null");
+        this.directory = directory;
+        this.extension = extension;
+        this.maxLoaded = maxLoaded;
+        this.parserFactory = parserFactory;
+        this.runtime = RosettoRuntime.current();
+        refresh();
+    }
+
+    /**
+     * ディレクトリを探しなおし、追加されたファイルを加え、削除されたファイルを取り除く.
+     * 既に読み込まれたシナリオはそのまま保持される.
+     * @throws IOException ディレクトリを読めない場合
+     */
+    public void refresh() throws IOException {
+        if(!directory.isDirectory())
+            throw new IOException("scenario directory not found : " + directory);
+        final Path root = directory.toPath();
+        final Map<String, File> found = new HashMap<String, File>();
+        try(Stream<Path> paths = Files.walk(root)) {
+            paths.filter(p -> Files.isRegularFile(p) && p.getFileName().toString().endsWith(extension))
+                 .forEach(p -> found.put(toName(root.relativize(p).toString()), p.toFile()));
+        }
+        synchronized(this) {
+            Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+            while(it.hasNext()) {
+                Map.Entry<String, Entry> e = it.next();
+                if(!found.containsKey(e.getKey())) {
+                    unload(e.getKey());
+                    it.remove();
+                }
+            }
+            for(Map.Entry<String, File> e : found.entrySet()) {
+                if(!entries.containsKey(e.getKey())) {
+                    entries.put(e.getKey(), new Entry(e.getKey(), e.getValue()));
+                }
+            }
+        }
+    }
+
+    /**
+     * 相対パスからシナリオの名前を作る.
+     */
+    private String toName(String relativePath) {
+        String name = relativePath.replace(File.separatorChar, '/');
+        return name.substring(0, name.length() - extension.length());
+    }
+
+    /**
+     * 指定した名前のシナリオを返す.読み込まれていなければ現在のスレッドで読み込む.<br>
+     * 指定した名前のファイルが存在しないか、読み込みに失敗した場合はnullを返す.
+     * @param name シナリオの名前
+     * @return 読み込んだシナリオ
+     */
+    public Scenario get(String name) {
+        if(name == null)
+            throw new IllegalArgumentException("name must not be null");
+        FutureTask<Scenario> task;
+        synchronized(this) {
+            Entry entry = entries.get(name);
+            if(entry == null) return null;
+            if(entry.task != null && entry.task.isDone()) {
+                hitCount++;
+            } else {
+                missCount++;
+            }
+            task = schedule(entry);
+        }
+        //他のスレッドが読み込み中であれば完了を待つ
+        task.run();
+        return await(name, task);
+    }
+
+    /**
+     * 全てのシナリオファイルを実行環境のスレッドプール上で並列に読み込み、完了まで待つ.<br>
+     * 読み込み済みのシナリオ数の上限を超えた分は、読み込み後に古いものから破棄される.
+     */
+    public void loadAll() {
+        List<FutureTask<Scenario>> tasks = new ArrayList<FutureTask<Scenario>>();
+        List<String> names = new ArrayList<String>();
+        synchronized(this) {
+            for(Entry entry : entries.values()) {
+                boolean scheduled = (entry.task != null);
+                FutureTask<Scenario> task = schedule(entry);
+                if(!scheduled) {
+                    tasks.add(task);
+                    names.add(entry.name);
+                }
+            }
+        }
+        for(FutureTask<Scenario> task : tasks) {
+            runtime.getForkJoinPool().execute(task);
+        }
+        for(int i=0; i<tasks.size(); i++) {
+            await(names.get(i), tasks.get(i));
+        }
+    }
+
+    /**
+     * 指定したエントリの読み込みタスクを返す.まだなければ生成し、上限を超えた分を破棄する.
+     */
+    private FutureTask<Scenario> schedule(final Entry entry) {
+        loaded.put(entry.name, entry);
+        if(entry.task == null) {
+            entry.task = new FutureTask<Scenario>(() -> runtime.call(() -> load(entry)));
+            Iterator<String> it = loaded.keySet().iterator();
+            while(loaded.size() > maxLoaded) {
+                String eldest = it.next();
+                it.remove();
+                discard(entries.get(eldest));
+                evictionCount++;
+            }
+        }
+        return entry.task;
+    }
+
+    /**
+     * 読み込みタスクの完了を待って結果を返す.失敗していればログを出力してnullを返す.
+     */
+    private Scenario await(String name, FutureTask<Scenario> task) {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            RosettoLogger.warning(SystemMessage.E9100_SCENARIO_LOAD_FAILED, name + " " + e.getCause());
+            //次の参照で読み込みなおせるように取り除く
+            synchronized(this) {
+                Entry entry = entries.get(name);
+                if(entry != null && entry.task == task) unload(name);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * ファイルを読み込んでパースし、内容が同じシナリオがあればそれを返す.
+     */
+    private Scenario load(Entry entry) throws IOException {
+        byte[] bytes = Files.readAllBytes(entry.file.toPath());
+        String hash = HashUtils.sha256(bytes);
+        synchronized(this) {
+            Scenario shared = canonical.get(hash);
+            if(shared != null) {
+                entry.hash = hash;
+                entry.parseNanos = -1;
+                return shared;
+            }
+        }
+        long start = System.nanoTime();
+        Scenario parsed = parserFactory.get().parseScript(new String(bytes, StandardCharsets.UTF_8));
+        if(parsed == null) throw new IOException("parser returned null");
+        parsed = ScenarioCompiler.compile(parsed);
+        long elapsed = System.nanoTime() - start;
+        synchronized(this) {
+            //読み込み中に破棄されたものは共有しない
+            boolean current = (loaded.get(entry.name) == entry);
+            if(current) entry.hash = hash;
+            //パース中に同じ内容のシナリオが読み込まれていればそちらを使う
+            Scenario shared = canonical.get(hash);
+            if(shared != null) {
+                entry.parseNanos = -1;
+                return shared;
+            }
+            if(!current) return parsed;
+            entry.parseNanos = elapsed;
+            canonical.put(hash, parsed);
+            return parsed;
+        }
+    }
+
+    /**
+     * 指定した名前のシナリオを読み込み済みでない状態にする.
+     */
+    private void unload(String name) {
+        loaded.remove(name);
+        discard(entries.get(name));
+    }
+
+    /**
+     * エントリの読み込み結果を破棄し、他に同じ内容を参照するエントリがなければ共有のシナリオも破棄する.
+     */
+    private void discard(Entry entry) {
+        if(entry == null) return;
+        entry.task = null;
+        String hash = entry.hash;
+        entry.hash = null;
+        if(hash == null) return;
+        for(Entry e : loaded.values()) {
+            if(hash.equals(e.hash)) return;
+        }
+        canonical.remove(hash);
+    }
+
+    /**
+     * このリポジトリが扱うシナリオの名前の一覧を返す.
+     * @return シナリオの名前の一覧
+     */
+    public synchronized Set<String> getNames() {
+        return Collections.unmodifiableSet(new TreeSet<String>(entries.keySet()));
+    }
+
+    /**
+     * 指定した名前のシナリオが読み込み済みかどうかを返す.
+     * @param name シナリオの名前
+     * @return 読み込み済みであればtrue
+     */
+    public synchronized boolean isLoaded(String name) {
+        Entry entry = entries.get(name);
+        return entry != null && entry.task != null && entry.task.isDone();
+    }
+
+    /**
+     * 指定した名前のシナリオを最後にパースした際にかかった時間をナノ秒で返す.
+     * 一度もパースしていないか、内容が同じ他のシナリオを共有した場合は-1を返す.
+     * @param name シナリオの名前
+     * @return パースにかかった時間
+     */
+    public synchronized long getParseNanos(String name) {
+        Entry entry = entries.get(name);
+        return (entry == null) ? -1 : entry.parseNanos;
+    }
+
+    /**
+     * パースを行った全てのシナリオについて、最後のパースにかかった時間をナノ秒で返す.
+     * @return 名前とパースにかかった時間のマップ
+     */
+    public synchronized Map<String, Long> getParseTimes() {
+        Map<String, Long> result = new TreeMap<String, Long>();
+        for(Entry e : entries.values()) {
+            if(e.parseNanos >= 0) result.put(e.name, e.parseNanos);
+        }
+        return result;
+    }
+
+    /**
+     * 現在読み込み済みのシナリオ数を返す.
+     * @return 読み込み済みのシナリオ数
+     */
+    public synchronized int getLoadedCount() {
+        return loaded.size();
+    }
+
+    /**
+     * 読み込み済みのシナリオを返した回数を返す.
+     * @return 読み込み済みだった回数
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * 読み込みを行った回数を返す.
+     * @return 読み込み済みでなかった回数
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * 上限を超えたために破棄したシナリオの数を返す.
+     * @return 破棄したシナリオの数
+     */
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "[scenariorepository files:" + entries.size() + " loaded:" + loaded.size() +
+                " hit:" + hitCount + " miss:" + missCount + " evicted:" + evictionCount + "]";
+    }
+
+    /**
+     * 一つのシナリオファイルの情報.
+     */
+    private static final class Entry {
+        private final String name;
+        private final File file;
+        /**
+         * 読み込みタスク.読み込まれていなければnull.
+         */
+        private FutureTask<Scenario> task;
+        /**
+         * 読み込んだ内容のハッシュ.
+         */
+        private String hash;
+        /**
+         * 最後のパースにかかった時間.
+         */
+        private long parseNanos = -1;
+
+        private Entry(String name, File file) {
+            this.name = name;
+            this.file = file;
+        }
+    }
+}
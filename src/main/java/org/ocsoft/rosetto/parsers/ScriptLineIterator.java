@@ -0,0 +1,79 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package org.ocsoft.rosetto.parsers;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Readerからスクリプトを一行ずつ読み出すイテレータ.<br>
+ * ParseUtils.asLinesと同じく、最後の空白以外の文字を含む行より後ろの空白のみの行は返さない.
+ * そのため空白のみの行は後に空白以外の文字を含む行が現れるまで保留される.
+ * @author tohhy
+ */
+class ScriptLineIterator implements Iterator<String> {
+    /**
+     * 読み出し元.
+     */
+    private final BufferedReader reader;
+    
+    /**
+     * 読み出し済みでまだ返していない行.
+     */
+    private final ArrayDeque<String> buffered = new ArrayDeque<String>();
+    
+    /**
+     * bufferedの末尾が空白以外の文字を含む行かどうか.
+     */
+    private boolean hasContent;
+    
+    /**
+     * 指定したReaderから読み出すイテレータを生成する.
+     * @param reader 読み出し元
+     */
+    ScriptLineIterator(Reader reader) {
+        this.reader = (reader instanceof BufferedReader) ? 
+                (BufferedReader)reader : new BufferedReader(reader);
+    }
+    
+    @Override
+    public boolean hasNext() {
+        if(hasContent) return true;
+        try {
+            String line;
+            while((line = reader.readLine()) != null) {
+                buffered.add(line);
+                if(containsNonWhitespace(line)) {
+                    hasContent = true;
+                    return true;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        //末尾の空白のみの行は捨てる
+        buffered.clear();
+        return false;
+    }
+    
+    @Override
+    public String next() {
+        if(!hasNext()) throw new NoSuchElementException();
+        String line = buffered.poll();
+        if(buffered.isEmpty()) hasContent = false;
+        return line;
+    }
+    
+    private static boolean containsNonWhitespace(String line) {
+        for(int i=0; i<line.length(); i++) {
+            if(!Character.isWhitespace(line.charAt(i))) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,92 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package org.ocsoft.rosetto.parsers;
+
+import java.util.Collection;
+
+/**
+ * 正規化された文字列を少しずつ受け取り、ユニット文字列に分割する.<br>
+ * タグ部分を末尾にするように分割する.分割規則はParseUtils.splitScriptと同じ.
+ * @author tohhy
+ */
+class UnitSplitter {
+    /**
+     * まだユニットとして確定していない文字列.
+     */
+    private final StringBuilder buf = new StringBuilder();
+    
+    /**
+     * 閉じられていない左角括弧の数.
+     */
+    private int obCount;
+    
+    /**
+     * 何も受け取っていない状態で生成する.
+     */
+    UnitSplitter() {}
+    
+    /**
+     * getOpenCountとgetBufferedで取得した途中の状態から処理を再開するように生成する.
+     * @param obCount 閉じられていない左角括弧の数
+     * @param buffered まだユニットとして確定していない文字列、なければnull
+     */
+    UnitSplitter(int obCount, String buffered) {
+        this.obCount = obCount;
+        if(buffered != null) buf.append(buffered);
+    }
+    
+    /**
+     * 閉じられていない左角括弧の数を返す.
+     */
+    int getOpenCount() {
+        return obCount;
+    }
+    
+    /**
+     * まだユニットとして確定していない文字列を返す.なければnullを返す.
+     */
+    String getBuffered() {
+        return (buf.length() == 0) ? null : buf.toString();
+    }
+    
+    /**
+     * 文字列を追加し、確定したユニット文字列をoutに追加する.
+     * @param str 追加する文字列
+     * @param out 確定したユニット文字列の追加先
+     */
+    void append(String str, Collection<String> out) {
+        int start = 0;
+        int length = str.length();
+        for(int i=0; i<length; i++) {
+            char c = str.charAt(i);
+            if(c == '[') {
+                obCount++;
+            } else if(c == ']') {
+                if(obCount > 0) obCount--;
+                //この段階で括弧が閉じきられていればここまでをUnitにする
+                if(obCount == 0) {
+                    if(buf.length() == 0) {
+                        out.add(str.substring(start, i + 1));
+                    } else {
+                        out.add(buf.append(str, start, i + 1).toString());
+                        buf.setLength(0);
+                    }
+                    start = i + 1;
+                }
+            }
+        }
+        buf.append(str, start, length);
+    }
+    
+    /**
+     * 入力の終わりを通知し、残っている文字列があればユニット文字列としてoutに追加する.
+     * @param out 確定したユニット文字列の追加先
+     * @throws IllegalArgumentException 閉じられていない括弧が残っている場合
+     */
+    void finish(Collection<String> out) {
+        if(obCount != 0) throw new IllegalArgumentException("not closed bracket found");
+        if(buf.length() > 0) out.add(buf.toString());
+        buf.setLength(0);
+    }
+}
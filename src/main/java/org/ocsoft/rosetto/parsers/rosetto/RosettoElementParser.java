@@ -17,7 +17,6 @@ import org.ocsoft.rosetto.models.base.elements.values.ScriptValue;
 import org.ocsoft.rosetto.models.base.elements.values.StringValue;
 import org.ocsoft.rosetto.parsers.AbstractElementParser;
 import org.ocsoft.rosetto.parsers.ParseUtils;
-import org.ocsoft.rosetto.utils.base.TextUtils;
 import org.ocsoft.rosetto.utils.base.Values;
 
 /**
@@ -26,6 +25,28 @@ import org.ocsoft.rosetto.utils.base.Values;
  */
 public class RosettoElementParser extends AbstractElementParser {
     
+    /**
+     * 文字列のリテラルをStringValue.internで共有するかどうか.
+     */
+    private final boolean internStrings;
+    
+    /**
+     * 文字列のリテラルを共有しないパーサーを生成する.
+     */
+    public RosettoElementParser() {
+        this(false);
+    }
+    
+    /**
+     * パーサーを生成する.<br>
+     * internStringsがtrueの場合、文字列のリテラルはStringValue.internで共有される.
+     * 同じ文字列が何度も現れる大きなシナリオでは保持するメモリが減るが、共有のテーブルへのアクセスが同期される.
+     * @param internStrings 文字列のリテラルを共有するかどうか
+     */
+    public RosettoElementParser(boolean internStrings) {
+        this.internStrings = internStrings;
+    }
+    
     /**
      * 与えられた文字列をRosettoの要素としてパースする.<br>
      * アクション呼び出しが含まれていた場合、ActionCallへ変換はするが内容の評価はしない.
@@ -61,9 +82,9 @@ public class RosettoElementParser extends AbstractElementParser {
         //数値ならそれに合わせた実体を持たせる
         if(NumberUtils.isNumber(element)) {
             if(element.contains(".")) {
-                return new DoubleValue(NumberUtils.toDouble(element));
+                return DoubleValue.valueOf(NumberUtils.toDouble(element));
             } else {
-                return new IntValue(NumberUtils.toLong(element));
+                return IntValue.valueOf(NumberUtils.toLong(element));
             }
         }
         
@@ -75,7 +96,7 @@ public class RosettoElementParser extends AbstractElementParser {
         }
         
         //どれにも当てはまらなければ文字列扱い
-        return new StringValue(element);
+        return internStrings ? StringValue.intern(element) : new StringValue(element);
     }
     
     
@@ -118,48 +139,88 @@ public class RosettoElementParser extends AbstractElementParser {
     }
     
     
+    /**
+     * スペース区切りの要素の列を要素ごとに分割する.<br>
+     * 括弧の内側やダブルクオートの内側にあるスペースでは分割しない.
+     * 要素間の連続したスペースは区切りとして扱い、要素の内側の連続したスペースは1つにまとめる.<br>
+     * 文字列を先頭から一度だけ走査し、括弧の深さとクオートの状態をプリミティブで保持する.
+     * @param elements 分割する文字列
+     * @return 分割した要素のリスト
+     * @throws IllegalArgumentException 括弧が閉じられていない場合
+     */
     public List<String> splitElements(String elements) {
         ArrayList<String> result = new ArrayList<String>();
-        String param = "";
+        int len = elements.length();
         int sbCount = 0;
         int rbCount = 0;
         int mbCount = 0;
-        for(String str : elements.split(" ")) {
-            //キーも値もなければ飛ばす
-            if(str.length() == 0) continue;
-            param += str;
-            
-            //括弧の開きをカウント
-            int sb = TextUtils.containsCount(str, '[');
-            int rb = TextUtils.containsCount(str, '(');
-            int mb = TextUtils.containsCount(str, '{');
-            //括弧の閉じをカウント
-            int csb = TextUtils.containsCount(str, ']');
-            int crb = TextUtils.containsCount(str, ')');
-            int cmb = TextUtils.containsCount(str, '}');
-            //開きの残りを計算
-            sbCount += sb-csb;
-            rbCount += rb-crb;
-            mbCount += mb-cmb;
-            //負の値になっていれば0に丸める
-            if(sbCount < 0) sbCount = 0;
-            if(rbCount < 0) rbCount = 0;
-            if(mbCount < 0) mbCount = 0;
-            
-            //奇数個のダブルクオートを含むならスペースを補って次の文字列と連結
-            if(TextUtils.containsCount(param, '\"') % 2 != 0) {
-                param = param + " ";
+        //現在の要素に含まれるダブルクオートの数
+        int quoteCount = 0;
+        //現在の要素の開始位置と、最後に連結した断片の終了位置. 要素がなければ-1
+        int paramStart = -1;
+        int paramEnd = -1;
+        //要素の内側に連続したスペースがあった場合のみ使う
+        StringBuilder buffer = null;
+        boolean buffered = false;
+        
+        int i = 0;
+        while(i < len) {
+            //スペースは飛ばす
+            if(elements.charAt(i) == ' ') {
+                i++;
                 continue;
             }
+            //次のスペースまでを1つの断片として括弧とクオートを数える
+            int fragmentStart = i;
+            int sb = 0;
+            int rb = 0;
+            int mb = 0;
+            for(; i < len; i++) {
+                char c = elements.charAt(i);
+                if(c == ' ') break;
+                switch(c) {
+                case '[': sb++; break;
+                case ']': sb--; break;
+                case '(': rb++; break;
+                case ')': rb--; break;
+                case '{': mb++; break;
+                case '}': mb--; break;
+                case '\"': quoteCount++; break;
+                default: break;
+                }
+            }
             
-            //括弧の開きが残っているならスペースを補って次の文字列と連結
-            if(sbCount > 0 || rbCount > 0 || mbCount > 0) {
-                param = param + " ";
-                continue;
+            //断片を現在の要素に連結する
+            if(paramStart == -1) {
+                paramStart = fragmentStart;
+            } else if(buffered || fragmentStart != paramEnd + 1) {
+                //スペースが連続していた場合は1つにまとめるためにバッファへ移す
+                if(!buffered) {
+                    if(buffer == null) buffer = new StringBuilder();
+                    buffer.setLength(0);
+                    buffer.append(elements, paramStart, paramEnd);
+                    buffered = true;
+                }
+                buffer.append(' ').append(elements, fragmentStart, i);
             }
+            paramEnd = i;
+            
+            //開きの残りを計算し、負の値になっていれば0に丸める
+            sbCount = Math.max(0, sbCount + sb);
+            rbCount = Math.max(0, rbCount + rb);
+            mbCount = Math.max(0, mbCount + mb);
+            
+            //奇数個のダブルクオートを含むなら次の断片と連結
+            if(quoteCount % 2 != 0) continue;
+            //括弧の開きが残っているなら次の断片と連結
+            if(sbCount > 0 || rbCount > 0 || mbCount > 0) continue;
+            
             //ここまで到達できればここまでの内容をひとつの引数とする
-            result.add(param);
-            param = "";
+            result.add(buffered ? buffer.toString() : elements.substring(paramStart, paramEnd));
+            paramStart = -1;
+            paramEnd = -1;
+            quoteCount = 0;
+            buffered = false;
         }
         if(sbCount > 0 || rbCount > 0 || mbCount > 0)
             throw new IllegalArgumentException("bracket not closed");
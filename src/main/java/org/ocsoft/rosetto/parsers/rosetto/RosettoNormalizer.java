@@ -7,18 +7,14 @@ import org.ocsoft.rosetto.parsers.AbstractNormalizer;
 import org.ocsoft.rosetto.parsers.ParseUtils;
 
 /**
- * Rosettoのスクリプトを標準形式に変換する.
+ * Rosettoのスクリプトを標準形式に変換する.<br>
+ * 行をまたぐ状態は正規化ごとに生成されるため、一つのインスタンスを複数のスレッドで同時に使用できる.
  * @author tohhy
  */
 public class RosettoNormalizer extends AbstractNormalizer {
     //改ページタグの定義
     private static final String PAGING_TAG = "[p]";
     
-    //連続したページングを無視するためのフラグ
-    private boolean duplicatePageFeed = true;
-    //editLineで複数行タグを処理するためのバッファ
-    private String tempLine;
-    
     public RosettoNormalizer() {
         super(new RosettoDesignators());
     }
@@ -37,11 +33,27 @@ public class RosettoNormalizer extends AbstractNormalizer {
         return line;
     }
     
+    @Override
+    protected Object createState() {
+        return new State();
+    }
+    
+    @Override
+    protected Object copyState(Object state) {
+        State source = (State)state;
+        State copy = new State();
+        copy.duplicatePageFeed = source.duplicatePageFeed;
+        copy.tempLine = source.tempLine;
+        return copy;
+    }
+    
     @Override
     protected String processHeadDesignators(String line, String prevLine, String nextLine) {
+        Object current = getState();
+        State state = (current instanceof State) ? (State)current : new State();
         //括弧の途中での改行に対応するために現在行を記憶しておく
-        if(tempLine != null) line = tempLine.concat(line);
-        tempLine = null;
+        if(state.tempLine != null) line = state.tempLine.concat(line);
+        state.tempLine = null;
         
         //行頭演算子を処理して行を置き換える
         line = super.processHeadDesignators(line, prevLine, nextLine);
@@ -49,15 +61,15 @@ public class RosettoNormalizer extends AbstractNormalizer {
         //置き換え後が単一のページングタグなら
         if(line.equals(PAGING_TAG)) {
             //ページ送りが重複していれば無視
-            if(duplicatePageFeed) return null;
-            duplicatePageFeed = true;
+            if(state.duplicatePageFeed) return null;
+            state.duplicatePageFeed = true;
         } else {
-            duplicatePageFeed = false;
+            state.duplicatePageFeed = false;
         }
         
         //閉じられていない括弧があれば次の行と連結する
         if(ParseUtils.hasUnClosedBracket(line)) {
-            tempLine = line + " ";
+            state.tempLine = line + " ";
             return null;
         }
         return line;
@@ -101,4 +113,27 @@ public class RosettoNormalizer extends AbstractNormalizer {
         //キャラクタ選択もページングを行う
         return line.contains(PAGING_TAG) || line.startsWith("[character.select");
     }
+    
+    /**
+     * 一回の正規化の間、行をまたいで引き継ぐ状態.
+     */
+    private static final class State {
+        //連続したページングを無視するためのフラグ
+        private boolean duplicatePageFeed = true;
+        //複数行タグを処理するためのバッファ
+        private String tempLine;
+        
+        @Override
+        public boolean equals(Object obj) {
+            if(!(obj instanceof State)) return false;
+            State other = (State)obj;
+            return duplicatePageFeed == other.duplicatePageFeed
+                    && (tempLine == null ? other.tempLine == null : tempLine.equals(other.tempLine));
+        }
+        
+        @Override
+        public int hashCode() {
+            return (duplicatePageFeed ? 1 : 0) + 31 * (tempLine == null ? 0 : tempLine.hashCode());
+        }
+    }
 }
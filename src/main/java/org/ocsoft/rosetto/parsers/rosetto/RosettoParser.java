@@ -17,4 +17,13 @@ public class RosettoParser extends ScenarioParser {
     public RosettoParser() {
         super(new RosettoNormalizer());
     }
+    
+    /**
+     * パーサーを初期化する.<br>
+     * internLiteralsがtrueの場合、シナリオ中の文字列のリテラルは同じ内容であれば同じStringValueを共有する.
+     * @param internLiterals 文字列のリテラルを共有するかどうか
+     */
+    public RosettoParser(boolean internLiterals) {
+        super(new RosettoNormalizer(), new RosettoElementParser(internLiterals));
+    }
 }
\ No newline at end of file
@@ -3,6 +3,7 @@
  * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
 package org.ocsoft.rosetto.system;
 
+import java.util.function.Supplier;
 import java.util.logging.ConsoleHandler;
 import java.util.logging.Handler;
 import java.util.logging.Level;
@@ -69,6 +70,52 @@ public class RosettoLogger {
         handler.setLevel(defaultLevel);
     }
     
+    /**
+     * 指定したレベルのログが現在の設定で出力されるかどうかを返す.<br>
+     * 出力内容の生成に手間がかかる場合、このメソッドで確認してから生成する.
+     * @param level 確認するログレベル
+     * @return 指定したレベルのログが出力されるかどうか
+     */
+    public static boolean isLoggable(Level level) {
+        return instance.isLoggable(level);
+    }
+    
+    /**
+     * 指定したレベルで、メッセージと引数を結合したログを出力する.<br>
+     * 出力されないレベルであれば引数の文字列化も結合も行わない.
+     * @param level ログレベル
+     * @param body 出力するメッセージ
+     * @param args メッセージに付加する引数
+     */
+    private static void logJoined(Level level, SystemMessage body, Object...args) {
+        if(!instance.isLoggable(level)) return;
+        instance.log(level, SystemMessages.get(body) + " : " + StringUtils.join(args, ','));
+    }
+    
+    /**
+     * 指定したレベルで、メッセージと単一の引数を結合したログを出力する.<br>
+     * 出力されないレベルであれば引数の文字列化も結合も行わず、配列も生成しない.
+     * @param level ログレベル
+     * @param body 出力するメッセージ
+     * @param arg メッセージに付加する引数. 出力時にのみ文字列化される
+     */
+    private static void logArg(Level level, SystemMessage body, Object arg) {
+        if(!instance.isLoggable(level)) return;
+        instance.log(level, SystemMessages.get(body) + " : " + String.valueOf(arg));
+    }
+    
+    /**
+     * 指定したレベルで、メッセージと関数が生成する内容を結合したログを出力する.<br>
+     * 出力されないレベルであればargは呼び出されない.
+     * @param level ログレベル
+     * @param body 出力するメッセージ
+     * @param arg メッセージに付加する内容を生成する関数
+     */
+    private static void logSupplied(Level level, SystemMessage body, Supplier<?> arg) {
+        if(!instance.isLoggable(level)) return;
+        instance.log(level, SystemMessages.get(body) + " : " + String.valueOf(arg.get()));
+    }
+    
     /**
      * ゲームの実行が維持できなくなるような致命的なエラーに付加するログ.
      * @param body 出力内容
@@ -82,7 +129,36 @@ public class RosettoLogger {
      * @param body 出力内容
      */
     public static void severe(SystemMessage body, String...args) {
-        severe(SystemMessages.get(body) + " : " + StringUtils.join(args, ','));
+        logJoined(Level.SEVERE, body, (Object[])args);
+    }
+    
+    /**
+     * 単一の引数を付加してSEVEREレベルのログを出力する.
+     * argは出力される場合にのみ文字列化される.
+     * @param body 出力内容
+     * @param arg 付加する引数
+     */
+    public static void severe(SystemMessage body, Object arg) {
+        logArg(Level.SEVERE, body, arg);
+    }
+    
+    /**
+     * 関数が生成する内容を付加してSEVEREレベルのログを出力する.
+     * argは出力される場合にのみ呼び出される.
+     * @param body 出力内容
+     * @param arg 付加する内容を生成する関数
+     */
+    public static void severe(SystemMessage body, Supplier<?> arg) {
+        logSupplied(Level.SEVERE, body, arg);
+    }
+    
+    /**
+     * 関数が生成する内容でSEVEREレベルのログを出力する.
+     * bodyは出力される場合にのみ呼び出される.
+     * @param body 出力内容を生成する関数
+     */
+    public static void severe(Supplier<String> body) {
+        instance.log(Level.SEVERE, body);
     }
     
     /**
@@ -98,7 +174,36 @@ public class RosettoLogger {
      * @param body 出力内容
      */
     public static void warning(SystemMessage body, String...args) {
-        warning(SystemMessages.get(body) + " : " + StringUtils.join(args, ','));
+        logJoined(Level.WARNING, body, (Object[])args);
+    }
+    
+    /**
+     * 単一の引数を付加してWARNINGレベルのログを出力する.
+     * argは出力される場合にのみ文字列化される.
+     * @param body 出力内容
+     * @param arg 付加する引数
+     */
+    public static void warning(SystemMessage body, Object arg) {
+        logArg(Level.WARNING, body, arg);
+    }
+    
+    /**
+     * 関数が生成する内容を付加してWARNINGレベルのログを出力する.
+     * argは出力される場合にのみ呼び出される.
+     * @param body 出力内容
+     * @param arg 付加する内容を生成する関数
+     */
+    public static void warning(SystemMessage body, Supplier<?> arg) {
+        logSupplied(Level.WARNING, body, arg);
+    }
+    
+    /**
+     * 関数が生成する内容でWARNINGレベルのログを出力する.
+     * bodyは出力される場合にのみ呼び出される.
+     * @param body 出力内容を生成する関数
+     */
+    public static void warning(Supplier<String> body) {
+        instance.log(Level.WARNING, body);
     }
 
     /**
@@ -115,7 +220,36 @@ public class RosettoLogger {
      * @param args 
      */
     public static void info(SystemMessage body, String...args) {
-        info(SystemMessages.get(body) + " : " + StringUtils.join(args, ','));
+        logJoined(Level.INFO, body, (Object[])args);
+    }
+    
+    /**
+     * 単一の引数を付加してINFOレベルのログを出力する.
+     * argは出力される場合にのみ文字列化される.
+     * @param body 出力内容
+     * @param arg 付加する引数
+     */
+    public static void info(SystemMessage body, Object arg) {
+        logArg(Level.INFO, body, arg);
+    }
+    
+    /**
+     * 関数が生成する内容を付加してINFOレベルのログを出力する.
+     * argは出力される場合にのみ呼び出される.
+     * @param body 出力内容
+     * @param arg 付加する内容を生成する関数
+     */
+    public static void info(SystemMessage body, Supplier<?> arg) {
+        logSupplied(Level.INFO, body, arg);
+    }
+    
+    /**
+     * 関数が生成する内容でINFOレベルのログを出力する.
+     * bodyは出力される場合にのみ呼び出される.
+     * @param body 出力内容を生成する関数
+     */
+    public static void info(Supplier<String> body) {
+        instance.log(Level.INFO, body);
     }
     
     /**
@@ -132,7 +266,36 @@ public class RosettoLogger {
      * @param args
      */
     public static void fine(SystemMessage body, String...args) {
-        fine(SystemMessages.get(body) + " : " + StringUtils.join(args, ','));
+        logJoined(Level.FINE, body, (Object[])args);
+    }
+    
+    /**
+     * 単一の引数を付加してFINEレベルのログを出力する.
+     * argは出力される場合にのみ文字列化される.
+     * @param body 出力内容
+     * @param arg 付加する引数
+     */
+    public static void fine(SystemMessage body, Object arg) {
+        logArg(Level.FINE, body, arg);
+    }
+    
+    /**
+     * 関数が生成する内容を付加してFINEレベルのログを出力する.
+     * argは出力される場合にのみ呼び出される.
+     * @param body 出力内容
+     * @param arg 付加する内容を生成する関数
+     */
+    public static void fine(SystemMessage body, Supplier<?> arg) {
+        logSupplied(Level.FINE, body, arg);
+    }
+    
+    /**
+     * 関数が生成する内容でFINEレベルのログを出力する.
+     * bodyは出力される場合にのみ呼び出される.
+     * @param body 出力内容を生成する関数
+     */
+    public static void fine(Supplier<String> body) {
+        instance.log(Level.FINE, body);
     }
     
     /**
@@ -149,7 +312,36 @@ public class RosettoLogger {
      * @param args
      */
     public static void finer(SystemMessage body, String...args) {
-        finer(SystemMessages.get(body) + " : " + StringUtils.join(args, ','));
+        logJoined(Level.FINER, body, (Object[])args);
+    }
+    
+    /**
+     * 単一の引数を付加してFINERレベルのログを出力する.
+     * argは出力される場合にのみ文字列化される.
+     * @param body 出力内容
+     * @param arg 付加する引数
+     */
+    public static void finer(SystemMessage body, Object arg) {
+        logArg(Level.FINER, body, arg);
+    }
+    
+    /**
+     * 関数が生成する内容を付加してFINERレベルのログを出力する.
+     * argは出力される場合にのみ呼び出される.
+     * @param body 出力内容
+     * @param arg 付加する内容を生成する関数
+     */
+    public static void finer(SystemMessage body, Supplier<?> arg) {
+        logSupplied(Level.FINER, body, arg);
+    }
+    
+    /**
+     * 関数が生成する内容でFINERレベルのログを出力する.
+     * bodyは出力される場合にのみ呼び出される.
+     * @param body 出力内容を生成する関数
+     */
+    public static void finer(Supplier<String> body) {
+        instance.log(Level.FINER, body);
     }
     
     /**
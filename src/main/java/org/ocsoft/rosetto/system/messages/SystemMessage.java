@@ -19,6 +19,9 @@ public enum SystemMessage {
     
     E8000_WRONG_TYPE_ARGUMENT(8000),
     
+    E9000_NOT_PARALLELIZABLE(9000),
+    E9100_SCENARIO_LOAD_FAILED(9100),
+    
     S11000_FUNCTION_EXECUTED(11000),
     S11100_MACRO_EXECUTED(11100),
     
@@ -20,6 +20,10 @@ public class SystemMessagesJA {
                 "指定名の関数またはマクロがコンテキスト中に見つかりません : ");
         messages.put(SystemMessage.E8000_WRONG_TYPE_ARGUMENT, 
                 "引数の型が一致しません : ");
+        messages.put(SystemMessage.E9000_NOT_PARALLELIZABLE, 
+                "副作用を持つ可能性のある関数は並列に実行できないため、順に実行します : ");
+        messages.put(SystemMessage.E9100_SCENARIO_LOAD_FAILED, 
+                "シナリオファイルを読み込めませんでした : ");
     }
     
     private static final SystemMessagesJA instance = new SystemMessagesJA();
@@ -0,0 +1,34 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package org.ocsoft.rosetto.utils.base;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * ハッシュ値の計算に関わるユーティリティクラス.
+ * @author tohhy
+ */
+public class HashUtils {
+    
+    /**
+     * 指定したバイト列のSHA-256ハッシュ値を16進数の文字列で返す.
+     * @param bytes ハッシュ値を計算するバイト列
+     * @return 小文字の16進数64桁の文字列
+     */
+    public static String sha256(byte[] bytes) {
+        if(bytes == null) throw new IllegalArgumentException("bytes must not be null");
+        try {
+            StringBuilder sb = new StringBuilder();
+            for(byte b : MessageDigest.getInstance("SHA-256").digest(bytes)) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            //SHA-256は全てのJava実装で利用できる
+            throw new IllegalStateException(e);
+        }
+    }
+    
+}
@@ -52,13 +52,11 @@ public class TextUtils {
      * 指定したcharが指定したString中にいくつ含まれているかを返す.
      */
     public static int containsCount(String str, char c) {
-        String temp = str;
         int count = 0;
-        int index = temp.indexOf(c);
+        int index = str.indexOf(c);
         while(index > -1) {
             count++;
-            temp = temp.substring(index+1);
-            index = temp.indexOf(c);
+            index = str.indexOf(c, index + 1);
         }
         return count;
     }
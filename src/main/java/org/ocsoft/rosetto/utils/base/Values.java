@@ -48,31 +48,32 @@ public class Values {
     
     /**
      * 指定した整数を受け取ってIntValueを生成する.<br>
-     * 値は内部的にはlong精度で保持される.
+     * 値は内部的にはlong精度で保持される.小さな値ではキャッシュされたインスタンスが返る.
      * @param value IntValueとして生成する値
      * @return 生成したIntValue
      */
     public static IntValue create(int value) {
-        return new IntValue(value);
+        return IntValue.valueOf(value);
     }
     
     /**
      * 指定したlong整数を受け取ってIntValueを生成する.<br>
-     * 値は内部的にはlong精度で保持される.
+     * 値は内部的にはlong精度で保持される.小さな値ではキャッシュされたインスタンスが返る.
      * @param value IntValueとして生成する値
      * @return 生成したIntValue
      */
     public static IntValue create(long value) {
-        return new IntValue(value);
+        return IntValue.valueOf(value);
     }
     
     /**
      * 指定した倍精度浮動小数点数を受け取ってDoubleValueを生成する.
+     * 0.0と1.0では共有のインスタンスが返る.
      * @param value DoubleValueとして生成する値
      * @return 生成したDoubleValue
      */
     public static DoubleValue create(double value) {
-        return new DoubleValue(value);
+        return DoubleValue.valueOf(value);
     }
     
     /**
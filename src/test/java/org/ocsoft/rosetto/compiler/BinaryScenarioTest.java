@@ -0,0 +1,141 @@
+package org.ocsoft.rosetto.compiler;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.ocsoft.rosetto.contexts.base.Rosetto;
+import org.ocsoft.rosetto.models.base.scenario.Scenario;
+import org.ocsoft.rosetto.models.system.Scope;
+
+public class BinaryScenarioTest {
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    private Scope testScope;
+    
+    private static final String SCRIPT = 
+            "はじめ[label a title=最初]foo[+ 1 [* 2 3]]bar[label b]"
+            + "[def x (1 2.5 true key=@y)]baz[macro (v) {Hello, [write @v]!}]"
+            + "[+ @a @b]";
+    
+    @Before
+    public void setUp() {
+        Rosetto.dispose();
+        Rosetto.initialize();
+        testScope = new Scope();
+    }
+    
+    private static void assertSameScenario(Scenario sut, Scenario src) {
+        assertThat(sut.getLength(), is(src.getLength()));
+        for(int i=0; i<src.getLength(); i++) {
+            assertThat(sut.getUnitAt(i).getText(), is(src.getUnitAt(i).getText()));
+            assertThat(sut.getUnitAt(i).getAction(), is(src.getUnitAt(i).getAction()));
+        }
+        assertThat(sut.getLabels().keySet(), is(src.getLabels().keySet()));
+        for(String name : src.getLabels().keySet()) {
+            assertThat(sut.getLabels().get(name).getIndex(), is(src.getLabels().get(name).getIndex()));
+            assertThat(sut.getLabels().get(name).getTitle(), is(src.getLabels().get(name).getTitle()));
+        }
+    }
+    
+    @Test
+    public void 書き出したシナリオを読み込める() throws Exception {
+        Scenario src = Rosetto.getParser().parseScript(SCRIPT);
+        Scenario sut = BinaryScenarioLoader.load(ByteBuffer.wrap(BinaryScenarioWriter.toBytes(src)));
+        assertSameScenario(sut, src);
+        assertThat(sut.getLabelAt(sut.getLength() - 1).getName(), is(src.getLabelAt(src.getLength() - 1).getName()));
+        
+        //読み込んだアクションはリンク済みで評価できる
+        assertThat(sut.getUnitAt(1).getAction(), instanceOf(LinkedActionCall.class));
+        assertThat(sut.getUnitAt(1).getAction().evaluate(testScope).asInt(), is(7));
+        assertThat(sut.getUnitAt(sut.getLength() - 1).getAction().getArgs().getAt(0), 
+                instanceOf(LocalVariableCall.class));
+    }
+    
+    @Test
+    public void ファイルをマップして読み込める() throws Exception {
+        Scenario src = Rosetto.getParser().parseScript(SCRIPT);
+        File file = folder.newFile("scenario.rsb");
+        BinaryScenarioWriter.write(src, file);
+        Scenario sut = BinaryScenarioLoader.load(file);
+        assertSameScenario(sut, src);
+    }
+    
+    @Test
+    public void ユニットは一度だけ読み込まれる() throws Exception {
+        Scenario src = Rosetto.getParser().parseScript(SCRIPT);
+        Scenario sut = BinaryScenarioLoader.load(ByteBuffer.wrap(BinaryScenarioWriter.toBytes(src)));
+        assertThat(sut.getUnitAt(2), is(sameInstance(sut.getUnitAt(2))));
+        assertThat(sut.getUnitAt(-1) == null, is(true));
+        assertThat(sut.getUnitAt(sut.getLength()) == null, is(true));
+    }
+    
+    @Test
+    public void 同じシナリオは同じバイト列になる() throws Exception {
+        byte[] first = BinaryScenarioWriter.toBytes(Rosetto.getParser().parseScript(SCRIPT));
+        byte[] second = BinaryScenarioWriter.toBytes(Rosetto.getParser().parseScript(SCRIPT));
+        assertThat(first, is(second));
+        Scenario loaded = BinaryScenarioLoader.load(ByteBuffer.wrap(first));
+        assertThat(BinaryScenarioWriter.toBytes(loaded), is(first));
+    }
+    
+    @Test
+    public void 読み込んだシナリオはシリアライズできる() throws Exception {
+        Scenario src = Rosetto.getParser().parseScript(SCRIPT);
+        Scenario loaded = BinaryScenarioLoader.load(ByteBuffer.wrap(BinaryScenarioWriter.toBytes(src)));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(loaded);
+        out.close();
+        Scenario sut = (Scenario) new ObjectInputStream(
+                new ByteArrayInputStream(bytes.toByteArray())).readObject();
+        assertSameScenario(sut, src);
+    }
+    
+    @Test
+    public void 空のシナリオ() throws Exception {
+        Scenario src = new Scenario();
+        Scenario sut = BinaryScenarioLoader.load(ByteBuffer.wrap(BinaryScenarioWriter.toBytes(src)));
+        assertThat(sut.isEmpty(), is(true));
+        assertThat(sut.getLabels().isEmpty(), is(true));
+    }
+    
+    @Test(expected = IOException.class)
+    public void 形式が異なれば読み込めない() throws Exception {
+        BinaryScenarioLoader.load(ByteBuffer.wrap("not a scenario file".getBytes("UTF-8")));
+    }
+    
+    @Test(expected = IOException.class)
+    public void バージョンが異なれば読み込めない() throws Exception {
+        byte[] bytes = BinaryScenarioWriter.toBytes(Rosetto.getParser().parseScript(SCRIPT));
+        bytes[7] = 99;
+        BinaryScenarioLoader.load(ByteBuffer.wrap(bytes));
+    }
+    
+    @Test(expected = IllegalStateException.class)
+    public void 壊れたユニットは参照時に例外になる() throws Exception {
+        byte[] bytes = BinaryScenarioWriter.toBytes(Rosetto.getParser().parseScript("[+ 1 2]"));
+        //最後のユニットのアクションを未知のタグにする
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        int unitTable = 20 + 4 * buf.getInt(8);
+        int last = buf.getInt(12) - 1;
+        bytes[buf.getInt(unitTable + 8 * last + 4)] = 127;
+        Scenario sut = BinaryScenarioLoader.load(buf);
+        sut.getUnitAt(last);
+    }
+}
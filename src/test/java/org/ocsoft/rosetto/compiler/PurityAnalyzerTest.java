@@ -0,0 +1,95 @@
+package org.ocsoft.rosetto.compiler;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.ocsoft.rosetto.contexts.base.Rosetto;
+import org.ocsoft.rosetto.functions.base.BaseFunctions;
+import org.ocsoft.rosetto.functions.base.FunctionalFunctions;
+import org.ocsoft.rosetto.functions.base.ParallelFunctions;
+import org.ocsoft.rosetto.models.base.elements.RosettoValue;
+import org.ocsoft.rosetto.models.base.elements.values.RosettoFunction;
+import org.ocsoft.rosetto.models.system.Scope;
+
+public class PurityAnalyzerTest {
+    
+    private Scope testScope;
+    
+    @Before
+    public void setUp() {
+        Rosetto.dispose();
+        Rosetto.initialize();
+        Rosetto.usePackage("functional");
+        testScope = new Scope();
+    }
+    
+    private RosettoFunction fn(String script) {
+        return (RosettoFunction) BaseFunctions.fn.execute(script, testScope);
+    }
+    
+    @Test
+    public void 組み込み関数の純粋性() throws Exception {
+        assertThat(PurityAnalyzer.isPure((RosettoFunction)Rosetto.getAction("+")), is(true));
+        assertThat(PurityAnalyzer.isPure(BaseFunctions.set), is(false));
+        assertThat(PurityAnalyzer.isPure(BaseFunctions.def), is(false));
+        assertThat(PurityAnalyzer.isPure(BaseFunctions.use), is(false));
+    }
+    
+    @Test
+    public void 本体の呼び出しから判定する() throws Exception {
+        assertThat(PurityAnalyzer.isPure(fn("(x) [* @x [+ @x 1]]")), is(true));
+        assertThat(PurityAnalyzer.isPure(fn("(x) [set y @x] [* @x 2]")), is(false));
+        //引数の中の呼び出しも判定する
+        assertThat(PurityAnalyzer.isPure(fn("(x) [+ @x [def y 1]]")), is(false));
+        //見つからない名前の呼び出しは純粋とみなさない
+        assertThat(PurityAnalyzer.isPure(fn("(x) [undefined-action @x]")), is(false));
+    }
+    
+    @Test
+    public void 定義した関数を呼ぶ関数も判定できる() throws Exception {
+        BaseFunctions.defn.execute("double (x) [* @x 2]", testScope);
+        BaseFunctions.defn.execute("store (x) [set y @x]", testScope);
+        assertThat(PurityAnalyzer.isPure(fn("(x) [double @x]")), is(true));
+        assertThat(PurityAnalyzer.isPure(fn("(x) [store @x]")), is(false));
+        
+        //再帰呼び出しは本体の残りで判定する
+        BaseFunctions.defn.execute("down (x) [cond [eq? @x 0] 0 [down [- @x 1]]]", testScope);
+        assertThat(PurityAnalyzer.isPure((RosettoFunction)Rosetto.getAction("down")), is(true));
+    }
+    
+    @Test
+    public void 高階関数は渡した関数の純粋性で判定する() throws Exception {
+        BaseFunctions.defn.execute("setter (x) [def last @x]", testScope);
+        BaseFunctions.defn.execute("double (x) [* @x 2]", testScope);
+        //組み込みの高階関数はそれ自体では純粋とみなさない
+        assertThat(PurityAnalyzer.isPure(FunctionalFunctions.map), is(false));
+        assertThat(PurityAnalyzer.isPure(ParallelFunctions.pmap), is(false));
+        //名前で渡した関数を解決して判定する
+        assertThat(PurityAnalyzer.isPure(fn("(x) [map setter (1 2)]")), is(false));
+        assertThat(PurityAnalyzer.isPure(fn("(x) [map double (1 2)]")), is(true));
+        assertThat(PurityAnalyzer.isPure(fn("(x) [reduce + @x]")), is(true));
+        //関数リテラルは本体で判定する
+        assertThat(PurityAnalyzer.isPure(fn("(x) [filter [fn (y) [def z @y]] @x]")), is(false));
+        assertThat(PurityAnalyzer.isPure(fn("(x) [filter [fn (y) [eq? @y 1]] @x]")), is(true));
+        //定数でない関数の指定は純粋とみなさない
+        assertThat(PurityAnalyzer.isPure(fn("(x) [map @x (1 2)]")), is(false));
+        //eachは常に純粋とみなさない
+        assertThat(PurityAnalyzer.isPure(fn("(x) [each setter (1)]")), is(false));
+        assertThat(PurityAnalyzer.isPure(fn("(x) [each double (1)]")), is(false));
+    }
+    
+    @Test
+    public void 副作用のある関数を名前で渡す関数はpmapで順に実行される() throws Exception {
+        BaseFunctions.defn.execute("setter (x) [def last @x]", testScope);
+        BaseFunctions.defn.execute("bad (x) [map setter @x]", testScope);
+        assertThat(PurityAnalyzer.isPure((RosettoFunction)Rosetto.getAction("bad")), is(false));
+        StringBuilder list = new StringBuilder("(");
+        for(int i=0; i<100; i++) list.append(i).append(' ');
+        RosettoValue result = ParallelFunctions.pmap.execute("bad " + list.append(')'), testScope);
+        assertThat(result.size(), is(100));
+        //順に実行されるため最後の要素が残る
+        assertThat(Rosetto.get("last").asInt(), is(99));
+    }
+}
@@ -0,0 +1,157 @@
+package org.ocsoft.rosetto.compiler;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.ocsoft.rosetto.compiler.ScenarioBatchCompiler.Result;
+import org.ocsoft.rosetto.contexts.base.Rosetto;
+import org.ocsoft.rosetto.models.base.scenario.Scenario;
+import org.ocsoft.rosetto.models.system.Scope;
+
+public class ScenarioBatchCompilerTest {
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    private File src;
+    private File out;
+    
+    @Before
+    public void setUp() throws Exception {
+        Rosetto.dispose();
+        Rosetto.initialize();
+        src = folder.newFolder("src");
+        out = folder.newFolder("out");
+    }
+    
+    private void write(String path, String script) throws Exception {
+        File f = new File(src, path);
+        f.getParentFile().mkdirs();
+        Files.write(f.toPath(), script.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    private Result compile() throws Exception {
+        return new ScenarioBatchCompiler(src, out).compile();
+    }
+    
+    @Test
+    public void ディレクトリ内のスクリプトをコンパイルする() throws Exception {
+        write("a.rosetto", "foo[+ 1 [* 2 3]]bar");
+        write("sub/b.rosetto", "[label x]baz[sqrt 4]");
+        write("ignored.txt", "[unknown]");
+        Result result = compile();
+        assertThat(result.isSuccessful(), is(true));
+        assertThat(result.getCompiled(), is(2));
+        assertThat(new File(out, ScenarioBatchCompiler.MANIFEST_NAME).isFile(), is(true));
+        assertThat(new File(out, "ignored.rsb").exists(), is(false));
+        
+        Scenario a = BinaryScenarioLoader.load(new File(out, "a.rsb"));
+        assertThat(a.getUnitAt(0).getAction().evaluate(new Scope()).asInt(), is(7));
+        Scenario b = BinaryScenarioLoader.load(new File(out, "sub/b.rsb"));
+        assertThat(b.getLabels().containsKey("x"), is(true));
+    }
+    
+    @Test
+    public void 変更のないスクリプトは省略される() throws Exception {
+        write("a.rosetto", "foo[+ 1 2]");
+        write("b.rosetto", "bar[+ 3 4]");
+        assertThat(compile().getCompiled(), is(2));
+        
+        Result second = compile();
+        assertThat(second.getCompiled(), is(0));
+        assertThat(second.getSkipped(), is(2));
+        
+        write("b.rosetto", "bar[+ 5 6]");
+        Result third = compile();
+        assertThat(third.getCompiled(), is(1));
+        assertThat(third.getSkipped(), is(1));
+        assertThat(BinaryScenarioLoader.load(new File(out, "b.rsb"))
+                .getUnitAt(0).getAction().evaluate(new Scope()).asInt(), is(11));
+        
+        //出力が消えていればコンパイルしなおす
+        new File(out, "a.rsb").delete();
+        assertThat(compile().getCompiled(), is(1));
+    }
+    
+    @Test
+    public void 削除されたスクリプトの出力は削除される() throws Exception {
+        write("a.rosetto", "foo");
+        write("b.rosetto", "bar");
+        compile();
+        new File(src, "b.rosetto").delete();
+        Result result = compile();
+        assertThat(result.getRemoved(), is(1));
+        assertThat(new File(out, "b.rsb").exists(), is(false));
+        assertThat(new File(out, "a.rsb").exists(), is(true));
+    }
+    
+    @Test
+    public void 解決できない名前はエラーになる() throws Exception {
+        write("a.rosetto", "foo[undefined-action 1]");
+        Result result = compile();
+        assertThat(result.isSuccessful(), is(false));
+        assertThat(result.getErrors().size(), is(1));
+        assertThat(new File(out, "a.rsb").exists(), is(false));
+        
+        //lenientであれば警告になり、出力される
+        ScenarioBatchCompiler lenient = new ScenarioBatchCompiler(src, out);
+        lenient.setLenient(true);
+        Result second = lenient.compile();
+        assertThat(second.isSuccessful(), is(true));
+        assertThat(second.getWarnings().size(), is(1));
+        assertThat(new File(out, "a.rsb").exists(), is(true));
+    }
+    
+    @Test
+    public void 既知の名前は解決できる() throws Exception {
+        //改行で挿入されるタグはアプリケーションが定義する
+        write("a.rosetto", "foo\nbar[wait 10]\n");
+        ScenarioBatchCompiler compiler = new ScenarioBatchCompiler(src, out);
+        Result first = compiler.compile();
+        assertThat(first.getErrors().size(), is(1));
+        compiler.addKnownNames("wait");
+        assertThat(compiler.compile().isSuccessful(), is(true));
+    }
+    
+    @Test
+    public void 他のスクリプトで定義された名前は解決できる() throws Exception {
+        write("lib.rosetto", "[defn double (x) [* @x 2]]");
+        write("main.rosetto", "[double 21][parallel.pmap double (1 2)]");
+        assertThat(compile().isSuccessful(), is(true));
+        
+        //定義側が省略されても定義された名前は覚えている
+        write("main.rosetto", "[double 4]");
+        Result result = compile();
+        assertThat(result.isSuccessful(), is(true));
+        assertThat(result.getSkipped(), is(1));
+    }
+    
+    @Test
+    public void 定義が削除されると変更のないスクリプトもエラーになる() throws Exception {
+        write("lib.rosetto", "[defn double (x) [* @x 2]]");
+        write("main.rosetto", "[double 21]");
+        assertThat(compile().isSuccessful(), is(true));
+        
+        //mainは変更されていないが、全体をコンパイルした場合と同じエラーになる
+        write("lib.rosetto", "foo");
+        Result result = compile();
+        assertThat(result.isSuccessful(), is(false));
+        assertThat(result.getErrors().size(), is(1));
+        assertThat(result.getErrors().get(0).startsWith("main.rosetto"), is(true));
+        assertThat(new File(out, "main.rsb").exists(), is(false));
+        //次回も同じエラーになる
+        assertThat(compile().isSuccessful(), is(false));
+        
+        write("lib.rosetto", "[defn double (x) [* @x 2]]");
+        assertThat(compile().isSuccessful(), is(true));
+        assertThat(new File(out, "main.rsb").exists(), is(true));
+    }
+}
@@ -0,0 +1,113 @@
+package org.ocsoft.rosetto.compiler;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.ocsoft.rosetto.contexts.base.Rosetto;
+import org.ocsoft.rosetto.models.base.elements.values.ActionCall;
+import org.ocsoft.rosetto.models.base.elements.values.ListValue;
+import org.ocsoft.rosetto.models.base.scenario.Scenario;
+import org.ocsoft.rosetto.models.system.Scope;
+import org.ocsoft.rosetto.utils.base.Values;
+
+public class ScenarioCompilerTest {
+    
+    private Scope testScope;
+    
+    @Before
+    public void setUp() {
+        Rosetto.dispose();
+        Rosetto.initialize();
+        testScope = new Scope();
+    }
+    
+    @Test
+    public void シナリオをコンパイルしても内容は変わらない() throws Exception {
+        Scenario src = Rosetto.getParser().parseScript(
+                "foo[label a]bar[+ 1 [* 2 3]]baz");
+        Scenario sut = ScenarioCompiler.compile(src);
+        assertThat(sut.getLength(), is(src.getLength()));
+        assertThat(sut.getLabels().size(), is(1));
+        for(int i=0; i<src.getLength(); i++) {
+            assertThat(sut.getUnitAt(i).getText(), is(src.getUnitAt(i).getText()));
+            assertThat(sut.getUnitAt(i).getAction(), is(src.getUnitAt(i).getAction()));
+            assertThat(sut.getUnitAt(i).getAction(), instanceOf(LinkedActionCall.class));
+        }
+        assertThat(sut.getUnitAt(sut.getLength()-2).getAction().evaluate(testScope).asInt(), is(7));
+    }
+    
+    @Test
+    public void 引数のActionCallもリンクされる() throws Exception {
+        ActionCall src = Rosetto.getParser().parseScript("[+ 1 [* 2 3]]")
+                .getUnitAt(0).getAction();
+        LinkedActionCall sut = ScenarioCompiler.compile(src);
+        assertThat(sut.getArgs().getAt(1), instanceOf(LinkedActionCall.class));
+        assertThat(ScenarioCompiler.compile(sut), is(sameInstance(sut)));
+    }
+    
+    @Test
+    public void ActionCallを含まないリストは共有される() throws Exception {
+        ListValue src = ListValue.createFromString("1 2 a=3");
+        assertThat(ScenarioCompiler.compile(src), is(sameInstance(src)));
+        assertThat(src.evaluateChildren(testScope), is(sameInstance(src)));
+    }
+    
+    @Test
+    public void 関数が再定義されるとリンクしなおす() throws Exception {
+        LinkedActionCall sut = ScenarioCompiler.compile(
+                Rosetto.getParser().parseScript("[foo]").getUnitAt(0).getAction());
+        assertThat(sut.isLinked(), is(false));
+        Rosetto.getParser().parseScript("[defn foo () [+ 1 1]]")
+            .getUnitAt(0).getAction().evaluate(testScope);
+        assertThat(sut.evaluate(testScope).asInt(), is(2));
+        assertThat(sut.isLinked(), is(true));
+        
+        Rosetto.getParser().parseScript("[defn foo () [+ 1 2]]")
+            .getUnitAt(0).getAction().evaluate(testScope);
+        assertThat(sut.isLinked(), is(false));
+        assertThat(sut.evaluate(testScope).asInt(), is(3));
+    }
+    
+    @Test
+    public void 再初期化後は新しいコンテキストで解決する() throws Exception {
+        LinkedActionCall sut = ScenarioCompiler.compile(
+                Rosetto.getParser().parseScript("[+ 1 1]").getUnitAt(0).getAction());
+        assertThat(sut.evaluate(testScope).asInt(), is(2));
+        Rosetto.dispose();
+        Rosetto.initialize();
+        assertThat(sut.isLinked(), is(false));
+        assertThat(sut.evaluate(testScope).asInt(), is(2));
+    }
+    
+    @Test
+    public void 定数名のgetlocalは変数を直接参照する() throws Exception {
+        ActionCall src = Rosetto.getParser().parseScript("[+ @a @b]").getUnitAt(0).getAction();
+        LinkedActionCall sut = ScenarioCompiler.compile(src);
+        assertThat(sut.getArgs().getAt(0), instanceOf(LocalVariableCall.class));
+        assertThat(sut, is(src));
+        
+        Rosetto.getParser().parseScript("[defn add (a b) [+ @a @b]]")
+            .getUnitAt(0).getAction().evaluate(testScope);
+        ActionCall call = ScenarioCompiler.compile(
+                Rosetto.getParser().parseScript("[add 1 2]").getUnitAt(0).getAction());
+        assertThat(call.evaluate(testScope).asInt(), is(3));
+        assertThat(call.evaluate(testScope).asInt(), is(3));
+        
+        //getlocal自身の引数名はその名前自体になる
+        LinkedActionCall name = ScenarioCompiler.compile(new ActionCall("getlocal", "name"));
+        assertThat(name.evaluate(testScope).asString(), is("name"));
+        
+        testScope.set("a", Values.create(10));
+        LinkedActionCall a = ScenarioCompiler.compile(new ActionCall("getlocal", "a"));
+        assertThat(a.evaluate(testScope).asInt(), is(10));
+        
+        //getlocalが再定義されていれば再定義された関数を呼ぶ
+        Rosetto.getParser().parseScript("[defn getlocal (name) [+ 40 2]]")
+            .getUnitAt(0).getAction().evaluate(testScope);
+        assertThat(a.evaluate(testScope).asInt(), is(42));
+    }
+}
@@ -6,6 +6,15 @@ import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
 
+import static org.hamcrest.CoreMatchers.sameInstance;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import org.junit.Before;
 import org.junit.Test;
 import org.ocsoft.rosetto.contexts.base.GlobalVariables;
@@ -145,5 +154,32 @@ public class GlobalVariablesTest {
         }
     }
     
+    @Test
+    public void 同時に取得しても名前空間は一つだけ生成される() throws Exception {
+        final GlobalVariables sut = new GlobalVariables();
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            for(int n=0; n<50; n++) {
+                final String name = "ns" + n;
+                List<Future<NameSpace>> results = new ArrayList<Future<NameSpace>>();
+                for(int i=0; i<8; i++) {
+                    results.add(pool.submit(new Callable<NameSpace>() {
+                        @Override
+                        public NameSpace call() throws Exception {
+                            NameSpace ns = sut.getNameSpace(name);
+                            ns.define("v" + Thread.currentThread().getId(), Values.create(1));
+                            return ns;
+                        }
+                    }));
+                }
+                NameSpace first = results.get(0).get();
+                for(Future<NameSpace> f : results) {
+                    assertThat(f.get(), is(sameInstance(first)));
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
 
 }
@@ -0,0 +1,133 @@
+package org.ocsoft.rosetto.contexts.base;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.ocsoft.rosetto.compiler.ScenarioCompiler;
+import org.ocsoft.rosetto.models.base.elements.RosettoValue;
+import org.ocsoft.rosetto.models.base.elements.values.ActionCall;
+import org.ocsoft.rosetto.models.base.elements.values.ListValue;
+import org.ocsoft.rosetto.models.base.elements.values.RosettoFunction;
+import org.ocsoft.rosetto.models.system.Scope;
+import org.ocsoft.rosetto.utils.base.Values;
+
+public class RosettoRuntimeTest {
+    private RosettoRuntime a;
+    private RosettoRuntime b;
+    
+    @Before
+    public void setUp() {
+        Rosetto.dispose();
+        Rosetto.initialize();
+        a = new RosettoRuntime();
+        a.initialize();
+        b = new RosettoRuntime();
+        b.initialize();
+    }
+    
+    @After
+    public void tearDown() {
+        a.dispose();
+        b.dispose();
+    }
+    
+    @Test
+    public void 結びつけていないスレッドではデフォルトの実行環境を使う() throws Exception {
+        assertThat(RosettoRuntime.current(), is(sameInstance(RosettoRuntime.getDefault())));
+        assertThat(Rosetto.getRuntime(), is(sameInstance(RosettoRuntime.getDefault())));
+    }
+    
+    @Test
+    public void 実行環境ごとに変数が独立している() throws Exception {
+        Rosetto.define("foo", 0);
+        a.run(new Runnable() {
+            @Override
+            public void run() {
+                Rosetto.define("foo", 1);
+            }
+        });
+        try(RosettoRuntime.Binding binding = b.enter()) {
+            Rosetto.define("foo", 2);
+            assertThat(Rosetto.get("foo").asInt(), is(2));
+        }
+        assertThat(Rosetto.get("foo").asInt(), is(0));
+        assertThat(a.get("foo").asInt(), is(1));
+        assertThat(b.get("foo").asInt(), is(2));
+    }
+    
+    @Test
+    public void 入れ子に結びつけると元の実行環境に戻る() throws Exception {
+        try(RosettoRuntime.Binding outer = a.enter()) {
+            try(RosettoRuntime.Binding inner = b.enter()) {
+                assertThat(RosettoRuntime.current(), is(sameInstance(b)));
+            }
+            assertThat(RosettoRuntime.current(), is(sameInstance(a)));
+        }
+        assertThat(RosettoRuntime.current(), is(sameInstance(RosettoRuntime.getDefault())));
+    }
+    
+    @SuppressWarnings("serial")
+    @Test
+    public void 同じ呼び出しが実行環境ごとのアクションに解決される() throws Exception {
+        for(final RosettoRuntime r : new RosettoRuntime[]{a, b}) {
+            final int id = (r == a) ? 1 : 2;
+            r.defineFunction(new RosettoFunction("whoami") {
+                @Override
+                protected RosettoValue run(Scope scope, ListValue rawArgs) {
+                    return Values.create(id);
+                }
+            });
+        }
+        final ActionCall call = ScenarioCompiler.compile(new ActionCall("whoami"));
+        Callable<Integer> task = new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                return call.evaluate(new Scope()).asInt();
+            }
+        };
+        assertThat(a.call(task), is(1));
+        assertThat(b.call(task), is(2));
+        assertThat(a.call(task), is(1));
+    }
+    
+    @Test
+    public void 複数のスレッドで別々の実行環境を使える() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+            for(int i=0; i<16; i++) {
+                final int n = i;
+                results.add(pool.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        RosettoRuntime r = new RosettoRuntime();
+                        r.initialize();
+                        return r.call(new Callable<Integer>() {
+                            @Override
+                            public Integer call() throws Exception {
+                                for(int j=0; j<100; j++) Rosetto.define("count", n + j);
+                                return Rosetto.get("count").asInt();
+                            }
+                        });
+                    }
+                }));
+            }
+            for(int i=0; i<16; i++) assertThat(results.get(i).get(), is(i + 99));
+        } finally {
+            pool.shutdown();
+        }
+        assertThat(RosettoRuntime.current(), is(sameInstance(RosettoRuntime.getDefault())));
+    }
+    
+}
@@ -10,6 +10,8 @@ import org.junit.Test;
 import org.ocsoft.rosetto.contexts.base.Rosetto;
 import org.ocsoft.rosetto.functions.base.ArithmeticFunctions;
 import org.ocsoft.rosetto.models.base.elements.RosettoValue;
+import org.ocsoft.rosetto.models.base.elements.ValueType;
+import org.ocsoft.rosetto.models.base.elements.values.ListValue;
 import org.ocsoft.rosetto.models.base.elements.values.RosettoFunction;
 import org.ocsoft.rosetto.models.system.Scope;
 import org.ocsoft.rosetto.system.RosettoLogger;
@@ -192,4 +194,49 @@ public class ArithmeticFunctionsTest {
         assertThat(geq.execute("100 100", s).asBool(), is(true));
         assertThat(geq.execute("1.0 1.000", s).asBool(), is(true));
     }
+    
+    @Test
+    public void 引数の数によらず同じ規則で計算される() throws Exception {
+        Scope s = new Scope();
+        assertThat(ArithmeticFunctions.plus.execute("1", s).asInt(), is(1));
+        assertThat(ArithmeticFunctions.minus.execute("5", s).asInt(), is(5));
+        assertThat(ArithmeticFunctions.minus.execute("3 0.5", s).asDouble(), is(2.5));
+        assertThat(ArithmeticFunctions.multiple.execute("2.5 2", s).getType(), is(ValueType.DOUBLE));
+        assertThat(ArithmeticFunctions.plus.execute("1 2 3.5 4", s).asDouble(), is(10.5));
+        //引数がなければNull
+        assertThat(ArithmeticFunctions.plus.execute(ListValue.EMPTY, s), is((RosettoValue)Values.NULL));
+        //0除算はNull
+        assertThat(ArithmeticFunctions.division.execute("1 0", s), is((RosettoValue)Values.NULL));
+        //double値の前には整数部の結果が足し込まれるので、負のゼロは正のゼロになることがある
+        assertThat(ArithmeticFunctions.plus.execute("-0.0", s).asDouble(), is(0.0));
+        assertThat(ArithmeticFunctions.plus.execute("-0.0 -0.0", s).asDouble(), is(0.0));
+        assertThat(ArithmeticFunctions.minus.execute("-0.0 0.0", s).asDouble(), is(0.0));
+        assertThat(ArithmeticFunctions.multiple.execute("-0.0 1", s).asDouble(), is(-0.0));
+    }
+    
+    @Test
+    public void 末尾のリストは展開され末尾のNullは無視される() throws Exception {
+        Scope s = new Scope();
+        RosettoValue one = Values.create(1);
+        RosettoValue list = new ListValue(Values.create(2), Values.create(3));
+        assertThat(ArithmeticFunctions.plus.execute(new ListValue(one, list), s).asInt(), is(6));
+        assertThat(ArithmeticFunctions.minus.execute(new ListValue(one, one, list), s).asInt(), is(-5));
+        assertThat(ArithmeticFunctions.plus.execute(new ListValue(one, Values.NULL), s).asInt(), is(1));
+        //リストが末尾以外にあればNull
+        assertThat(ArithmeticFunctions.plus.execute(new ListValue(list, one), s), 
+                is((RosettoValue)Values.NULL));
+        assertThat(ArithmeticFunctions.plus.execute(new ListValue(list), s), 
+                is((RosettoValue)Values.NULL));
+    }
+    
+    @Test
+    public void キーワード引数でも計算できる() throws Exception {
+        Scope s = new Scope();
+        assertThat(ArithmeticFunctions.plus.execute("nums=3", s).asInt(), is(3));
+        assertThat(ArithmeticFunctions.lt.execute("y=1 x=2", s).asBool(), is(false));
+        assertThat(ArithmeticFunctions.eq.execute("1 y=1", s).asBool(), is(true));
+        //引数の過不足はNull
+        assertThat(ArithmeticFunctions.eq.execute("1", s), is((RosettoValue)Values.NULL));
+        assertThat(ArithmeticFunctions.gt.execute("1 2 3", s), is((RosettoValue)Values.NULL));
+    }
 }
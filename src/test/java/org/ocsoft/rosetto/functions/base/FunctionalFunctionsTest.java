@@ -3,12 +3,17 @@ package org.ocsoft.rosetto.functions.base;
 import static org.hamcrest.CoreMatchers.*;
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.junit.Before;
 import org.junit.Test;
 import org.ocsoft.rosetto.contexts.base.Rosetto;
 import org.ocsoft.rosetto.functions.base.FunctionalFunctions;
 import org.ocsoft.rosetto.functions.base.MathFunctions;
 import org.ocsoft.rosetto.models.base.elements.RosettoValue;
+import org.ocsoft.rosetto.models.base.elements.ValueType;
+import org.ocsoft.rosetto.models.base.elements.values.ListValue;
 import org.ocsoft.rosetto.models.base.elements.values.RosettoFunction;
 import org.ocsoft.rosetto.models.system.Scope;
 import org.ocsoft.rosetto.utils.base.Values;
@@ -73,7 +78,125 @@ public class FunctionalFunctionsTest {
         RosettoValue sut6 = cond.execute("false 1", testScope);
         assertThat(sut6, is((RosettoValue)Values.NULL));
     }
-
-
-
+    
+    @Test
+    public void mapは値を文字列に戻さずに渡す() throws Exception {
+        RosettoFunction map = FunctionalFunctions.map;
+        
+        //リストの要素がリストでもそのまま一つの引数として渡る
+        RosettoValue sut1 = map.execute("first ((1 2) (3 4))", testScope);
+        assertThat(sut1.asString(), is("(1 3)"));
+        
+        //空白を含む文字列も分割されない
+        RosettoValue strings = new ListValue(Values.create("foo bar"), Values.create("baz"));
+        RosettoValue sut2 = map.execute(new ListValue(Values.create("first"), strings), testScope);
+        assertThat(sut2.asString(), is("(foo bar baz)"));
+    }
+    
+    @Test
+    public void filterTest() throws Exception {
+        RosettoFunction filter = FunctionalFunctions.filter;
+        
+        RosettoValue sut1 = filter.execute("[fn (x) [< @x 3]] (1 5 2 4 0)", testScope);
+        assertThat(sut1.asString(), is("(1 2 0)"));
+        
+        RosettoValue sut2 = filter.execute("[fn (x) [< @x 0]] (1 2 3)", testScope);
+        assertThat(sut2.size(), is(0));
+    }
+    
+    @Test
+    public void reduceTest() throws Exception {
+        RosettoFunction reduce = FunctionalFunctions.reduce;
+        
+        assertThat(reduce.execute("+ (1 2 3 4)", testScope).asInt(), is(10));
+        assertThat(reduce.execute("[fn (x y) [- @x @y]] (10 2 3)", testScope).asInt(), is(5));
+        assertThat(reduce.execute("+ (7)", testScope).asInt(), is(7));
+        assertThat(reduce.execute("+ ()", testScope), is((RosettoValue)Values.NULL));
+    }
+    
+    @Test
+    public void foldTest() throws Exception {
+        RosettoFunction fold = FunctionalFunctions.fold;
+        
+        assertThat(fold.execute("+ 100 (1 2 3)", testScope).asInt(), is(106));
+        assertThat(fold.execute("* 2.5 (2 2)", testScope).asDouble(), is(10.0));
+        assertThat(fold.execute("+ 5 ()", testScope).asInt(), is(5));
+    }
+    
+    @Test
+    public void eachTest() throws Exception {
+        final List<RosettoValue> called = new ArrayList<RosettoValue>();
+        RosettoFunction recorder = new RosettoFunction("recorder", "x") {
+            private static final long serialVersionUID = 1L;
+            @Override
+            protected RosettoValue run(Scope scope, ListValue rawArgs) {
+                called.add(scope.get("x"));
+                return Values.NULL;
+            }
+        };
+        RosettoValue list = new ListValue(Values.create(1), new ListValue(Values.create(2), Values.create(3)));
+        RosettoValue sut = FunctionalFunctions.each.execute(new ListValue(recorder, list), testScope);
+        assertThat(sut, is((RosettoValue)Values.VOID));
+        assertThat(called.size(), is(2));
+        assertThat(called.get(0).asInt(), is(1));
+        assertThat(called.get(1).asString(), is("(2 3)"));
+    }
+    
+    @Test
+    public void countTest() throws Exception {
+        RosettoFunction count = FunctionalFunctions.count;
+        
+        assertThat(count.execute("[fn (x) [geq? @x 2]] (1 2 3 4)", testScope).asInt(), is(3));
+        assertThat(count.execute("[fn (x) [eq? @x foo]] (foo bar foo)", testScope).asInt(), is(2));
+        assertThat(count.execute("[fn (x) [eq? @x @x]] ()", testScope).asInt(), is(0));
+    }
+    
+    @Test
+    public void rangeに対するmapとfilterは遅延される() throws Exception {
+        RosettoValue range = FunctionalFunctions.range.execute("0 1000000000", testScope);
+        assertThat(range.getType(), is(ValueType.SEQUENCE));
+        assertThat(range.size(), is(1000000000));
+        
+        RosettoValue mapped = FunctionalFunctions.map.execute(
+                new ListValue(Values.create("sqrt"), range), testScope);
+        assertThat(mapped.getType(), is(ValueType.SEQUENCE));
+        assertThat(mapped.getAt(16).asDouble(), is(4.0));
+        
+        RosettoValue filtered = FunctionalFunctions.filter.execute("[fn (x) [< @x 5]] [range 0 10]", testScope);
+        assertThat(filtered.asString(), is("(0 1 2 3 4)"));
+    }
+    
+    @Test
+    public void rangeを畳み込める() throws Exception {
+        assertThat(FunctionalFunctions.reduce.execute("+ [range 0 100001]", testScope).asLong(), 
+                is(5000050000L));
+        assertThat(FunctionalFunctions.fold.execute("+ 10 [range 0 0]", testScope).asInt(), is(10));
+        assertThat(FunctionalFunctions.count.execute(
+                "[fn (x) [eq? 0 [mod @x 3]]] [map [fn (x) [+ @x 1]] [range 0 30]]", testScope).asInt(), 
+                is(10));
+    }
+    
+    @Test
+    public void 副作用のある関数のmapはその場で一度ずつ実行される() throws Exception {
+        final List<RosettoValue> called = new ArrayList<RosettoValue>();
+        RosettoFunction odd = new RosettoFunction("odd", "x") {
+            private static final long serialVersionUID = 1L;
+            @Override
+            protected RosettoValue run(Scope scope, ListValue rawArgs) {
+                called.add(scope.get("x"));
+                return Values.create(scope.get("x").asInt() % 2 == 1);
+            }
+        };
+        RosettoValue range = FunctionalFunctions.range.execute("0 5", testScope);
+        RosettoValue mapped = FunctionalFunctions.map.execute(new ListValue(odd, range), testScope);
+        assertThat(called.size(), is(5));
+        assertThat(mapped.asString(), is("(false true false true false)"));
+        assertThat(mapped.asString(), is("(false true false true false)"));
+        assertThat(called.size(), is(5));
+        
+        RosettoValue filtered = FunctionalFunctions.filter.execute(new ListValue(odd, range), testScope);
+        assertThat(called.size(), is(10));
+        assertThat(filtered.asString(), is("(1 3)"));
+        assertThat(called.size(), is(10));
+    }
 }
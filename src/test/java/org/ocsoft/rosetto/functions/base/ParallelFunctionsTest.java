@@ -0,0 +1,107 @@
+package org.ocsoft.rosetto.functions.base;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.ocsoft.rosetto.contexts.base.Rosetto;
+import org.ocsoft.rosetto.models.base.elements.RosettoValue;
+import org.ocsoft.rosetto.models.base.elements.ValueType;
+import org.ocsoft.rosetto.models.system.Scope;
+
+public class ParallelFunctionsTest {
+    
+    private Scope testScope;
+    
+    @Before
+    public void setUp() {
+        Rosetto.dispose();
+        Rosetto.initialize();
+        Rosetto.usePackage("functional");
+        Rosetto.usePackage("parallel");
+        testScope = new Scope();
+    }
+    
+    @After
+    public void tearDown() {
+        Rosetto.dispose();
+    }
+    
+    private static String numbers(int length) {
+        StringBuilder sb = new StringBuilder("(");
+        for(int i=0; i<length; i++) {
+            if(i > 0) sb.append(' ');
+            sb.append(i);
+        }
+        return sb.append(')').toString();
+    }
+    
+    @Test
+    public void pmapTest() throws Exception {
+        String list = numbers(1000);
+        RosettoValue expected = FunctionalFunctions.map.execute("[fn (x) [* @x @x]] " + list, testScope);
+        RosettoValue sut1 = ParallelFunctions.pmap.execute("[fn (x) [* @x @x]] " + list, testScope);
+        assertThat(sut1.asString(), is(expected.asString()));
+        
+        RosettoValue sut2 = ParallelFunctions.pmap.execute("[fn (x) [+ @x 1]] [range 0 4]", testScope);
+        assertThat(sut2.asString(), is("(1 2 3 4)"));
+        
+        RosettoValue sut3 = ParallelFunctions.pmap.execute("[fn (x) [+ @x 1]] ()", testScope);
+        assertThat(sut3.asString(), is("()"));
+        
+        RosettoValue sut4 = ParallelFunctions.pmap.execute("[fn (x) [+ @x 1]] 4", testScope);
+        assertThat(sut4.asInt(), is(5));
+    }
+    
+    @Test
+    public void preduceTest() throws Exception {
+        String list = numbers(1000);
+        RosettoValue sut1 = ParallelFunctions.preduce.execute("+ " + list, testScope);
+        assertThat(sut1.asInt(), is(499500));
+        
+        //結合的であれば非可換な関数でも順序が保たれる
+        RosettoValue sut2 = ParallelFunctions.preduce.execute("[fn (x y) [+ [* @x 0] @y]] " + list, testScope);
+        assertThat(sut2.asInt(), is(999));
+        
+        RosettoValue sut3 = ParallelFunctions.preduce.execute("+ (7)", testScope);
+        assertThat(sut3.asInt(), is(7));
+        
+        RosettoValue sut4 = ParallelFunctions.preduce.execute("+ ()", testScope);
+        assertThat(sut4.getType(), is(ValueType.NULL));
+    }
+    
+    @Test
+    public void 副作用を持つ関数は順に実行される() throws Exception {
+        RosettoValue sut1 = ParallelFunctions.pmap.execute("[fn (x) [def last @x] [+ @x 1]] " + numbers(100), testScope);
+        assertThat(sut1.asString(), is(FunctionalFunctions.map.execute("[fn (x) [+ @x 1]] " + numbers(100), testScope).asString()));
+        //順に実行されるため最後の要素が残る
+        assertThat(Rosetto.get("last").asInt(), is(99));
+        
+        RosettoValue sut2 = ParallelFunctions.preduce.execute("[fn (x y) [set last @y] [+ @x @y]] " + numbers(100), testScope);
+        assertThat(sut2.asInt(), is(4950));
+    }
+    
+    @Test
+    public void 指定したスレッドプールで実行される() throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            Rosetto.setForkJoinPool(pool);
+            assertThat(Rosetto.getForkJoinPool(), is(sameInstance(pool)));
+            RosettoValue sut1 = ParallelFunctions.pmap.execute("[fn (x) [* @x 2]] " + numbers(500), testScope);
+            assertThat(sut1.getAt(499).asInt(), is(998));
+            RosettoValue sut2 = ParallelFunctions.preduce.execute("+ " + numbers(500), testScope);
+            assertThat(sut2.asInt(), is(124750));
+        } finally {
+            pool.shutdown();
+        }
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void スレッドプールにnullは指定できない() throws Exception {
+        Rosetto.setForkJoinPool(null);
+    }
+}
@@ -1,10 +1,16 @@
 package org.ocsoft.rosetto.models.base.elements.values;
 
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
 import org.junit.Before;
 import org.junit.Test;
 import org.ocsoft.rosetto.contexts.base.Rosetto;
 import org.ocsoft.rosetto.models.base.elements.RosettoValue;
 import org.ocsoft.rosetto.models.base.elements.values.DoubleValue;
+import org.ocsoft.rosetto.utils.base.Values;
 
 public class DoubleValueTest {
 
@@ -22,4 +28,13 @@ public class DoubleValueTest {
         ValueTestUtils.isSingleValue(sut);
     }
 
+    @Test
+    public void 零と一は同じインスタンスが返る() throws Exception {
+        assertThat(Values.create(0.0), is(sameInstance(DoubleValue.ZERO)));
+        assertThat(Values.create(1.0), is(sameInstance(DoubleValue.ONE)));
+        assertThat(Values.create(-0.0), is(not(sameInstance(DoubleValue.ZERO))));
+        assertThat(Values.create(-0.0).asString(), is("-0.0"));
+        assertThat(Values.create(0.5).asDouble(), is(0.5));
+    }
+
 }
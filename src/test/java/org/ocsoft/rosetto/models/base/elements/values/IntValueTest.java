@@ -1,10 +1,21 @@
 package org.ocsoft.rosetto.models.base.elements.values;
 
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
 import org.junit.Before;
 import org.junit.Test;
 import org.ocsoft.rosetto.contexts.base.Rosetto;
 import org.ocsoft.rosetto.models.base.elements.RosettoValue;
 import org.ocsoft.rosetto.models.base.elements.values.IntValue;
+import org.ocsoft.rosetto.utils.base.Values;
 
 public class IntValueTest {
 
@@ -22,4 +33,26 @@ public class IntValueTest {
         ValueTestUtils.isSingleValue(sut);
     }
 
+    @Test
+    public void 小さな値は同じインスタンスが返る() throws Exception {
+        assertThat(Values.create(0), is(sameInstance(Values.create(0L))));
+        assertThat(IntValue.valueOf(-128), is(sameInstance(IntValue.valueOf(-128))));
+        assertThat(IntValue.valueOf(1024), is(sameInstance(IntValue.valueOf(1024))));
+        assertThat(IntValue.valueOf(1025), is(not(sameInstance(IntValue.valueOf(1025)))));
+        assertThat(IntValue.valueOf(-129), is(not(sameInstance(IntValue.valueOf(-129)))));
+        assertThat(IntValue.valueOf(1025).asInt(), is(1025));
+        assertThat(IntValue.valueOf(-1).asInt(), is(-1));
+    }
+    
+    @Test
+    public void デシリアライズ後もキャッシュのインスタンスになる() throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bos);
+        out.writeObject(new IntValue(7));
+        out.close();
+        ObjectInputStream in = new ObjectInputStream(
+                new ByteArrayInputStream(bos.toByteArray()));
+        assertThat(in.readObject(), is(sameInstance((Object)IntValue.valueOf(7))));
+    }
+
 }
@@ -3,11 +3,20 @@ package org.ocsoft.rosetto.models.base.elements.values;
 import static org.hamcrest.CoreMatchers.*;
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Map;
+import java.util.TreeMap;
+
 import org.junit.Before;
 import org.junit.Test;
 import org.ocsoft.rosetto.contexts.base.Rosetto;
 import org.ocsoft.rosetto.models.base.elements.values.IntValue;
+import org.ocsoft.rosetto.models.base.elements.RosettoValue;
 import org.ocsoft.rosetto.models.base.elements.values.ListValue;
+import org.ocsoft.rosetto.models.system.Scope;
 import org.ocsoft.rosetto.utils.base.Values;
 
 public class ListValueTest {
@@ -41,6 +50,65 @@ public class ListValueTest {
         
     }
     
+    @Test
+    public void restしても元のリストは変わらない() throws Exception {
+        ListValue src = ListValue.createFromString("1 2 3 4 a=5");
+        ListValue rest = (ListValue)src.rest();
+        assertThat(rest.asString(), is("(2 3 4 a=5)"));
+        assertThat(rest.getAt(0).asInt(), is(2));
+        assertThat(src.asString(), is("(1 2 3 4 a=5)"));
+        assertThat(rest.getList().size(), is(3));
+    }
+    
+    @Test
+    public void consTest() throws Exception {
+        ListValue src = ListValue.createFromString("1 2 a=3");
+        ListValue sut1 = (ListValue)src.cons(Values.create(0));
+        assertThat(sut1.asString(), is("(0 1 2 a=3)"));
+        assertThat(src.asString(), is("(1 2 a=3)"));
+        
+        //前方の空きを共有して連続でconsできる
+        ListValue sut2 = (ListValue)sut1.cons(Values.create(-1));
+        ListValue sut3 = (ListValue)sut2.cons(Values.create(-2));
+        assertThat(sut3.asString(), is("(-2 -1 0 1 2 a=3)"));
+        
+        //同じリストに別の値をconsしても互いに影響しない
+        ListValue sut4 = (ListValue)sut1.cons(Values.create(100));
+        assertThat(sut4.asString(), is("(100 0 1 2 a=3)"));
+        assertThat(sut2.asString(), is("(-1 0 1 2 a=3)"));
+        assertThat(sut3.asString(), is("(-2 -1 0 1 2 a=3)"));
+        
+        //restしたリストへのcons
+        ListValue sut5 = (ListValue)((ListValue)sut3.rest()).cons(Values.create(9));
+        assertThat(sut5.asString(), is("(9 -1 0 1 2 a=3)"));
+        assertThat(sut3.asString(), is("(-2 -1 0 1 2 a=3)"));
+        
+        assertThat(ListValue.EMPTY.cons(Values.create(1)).asString(), is("(1)"));
+    }
+    
+    @Test
+    public void キーワード引数はキー順に並ぶ() throws Exception {
+        ListValue sut = ListValue.createFromString("e=5 b=2 a=1 d=4 c=3 f=6");
+        assertThat(sut.get("d").asInt(), is(4));
+        assertThat(sut.containsKey("f"), is(true));
+        assertThat(sut.containsKey("g"), is(false));
+        assertThat(sut.getMap().toString(), is("{a=1, b=2, c=3, d=4, e=5, f=6}"));
+    }
+    
+    @Test
+    public void シリアライズできる() throws Exception {
+        ListValue src = (ListValue)ListValue.createFromString("0 1 2 x=3").rest();
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bos);
+        out.writeObject(src);
+        out.close();
+        ObjectInputStream in = new ObjectInputStream(
+                new ByteArrayInputStream(bos.toByteArray()));
+        ListValue sut = (ListValue)in.readObject();
+        assertThat(sut.asString(), is("(1 2 x=3)"));
+        assertThat(sut, is(src));
+    }
+    
     @Test
     public void convertTest() throws Exception {
          convertAndTestEachOther("(foo bar baz)");
@@ -58,4 +126,76 @@ public class ListValueTest {
         assertThat(v1, is(v2));
     }
 
+    @Test
+    public void bindで通常引数とデフォルト値を結びつける() throws Exception {
+        RosettoFunction f = function("a", "b", "c=1", "d=foo");
+        assertThat(bind("10 20", f), is("{a=10, b=20, c=1, d=foo}"));
+        assertThat(bind("10 20 30 bar", f), is("{a=10, b=20, c=30, d=bar}"));
+        assertThat(bind("10 b=20 d=baz", f), is("{a=10, b=20, c=1, d=baz}"));
+        //キーワード引数で埋まった引数は通常引数の割り当てから外れる
+        assertThat(bind("10 20 a=1", f), is("{a=1, b=10, c=20, d=foo}"));
+    }
+    
+    @Test
+    public void bindで可変長引数をリストにまとめる() throws Exception {
+        RosettoFunction f = function("a", "*rest");
+        assertThat(bind("1 2 3 4", f), is("{*rest=2, a=1, rest=(2 3 4)}"));
+        assertThat(bind("1", f), is("{a=1}"));
+        assertThat(bind("", function("*args")), is("{}"));
+    }
+    
+    @Test
+    public void bindで引数が足りなければ例外() throws Exception {
+        assertBindFails("1", function("a", "b"));
+        assertBindFails("", function("a", "b", "*rest"));
+    }
+    
+    @Test
+    public void bindで引数が余れば例外() throws Exception {
+        assertBindFails("1 2 3", function("a", "b"));
+        assertBindFails("1 2", function());
+    }
+    
+    @Test
+    public void bindで可変長引数が最後でなければ例外() throws Exception {
+        assertBindFails("1 2", function("*rest", "a"));
+        assertBindFails("1 2", function("*a", "*b"));
+    }
+    
+    @Test
+    public void bindを繰り返しても結果は変わらない() throws Exception {
+        RosettoFunction f = function("a", "b=(1 2)");
+        for(int i=0; i<3; i++) {
+            assertThat(bind(String.valueOf(i), f), is("{a=" + i + ", b=(1 2)}"));
+        }
+    }
+    
+    @SuppressWarnings("serial")
+    private static RosettoFunction function(String...args) {
+        return new RosettoFunction("f", args) {
+            @Override
+            protected RosettoValue run(Scope scope, ListValue rawArgs) {
+                return Values.VOID;
+            }
+        };
+    }
+    
+    private static String bind(String args, RosettoFunction f) {
+        Map<String, String> result = new TreeMap<String, String>();
+        for(Map.Entry<String, RosettoValue> e : 
+            ListValue.createFromString(args).bind(f, new Scope()).entrySet()) {
+            result.put(e.getKey(), e.getValue().asString());
+        }
+        return result.toString();
+    }
+    
+    private static void assertBindFails(String args, RosettoFunction f) {
+        try {
+            ListValue.createFromString(args).bind(f, new Scope());
+            fail();
+        } catch(IllegalArgumentException e) {
+            //期待通り
+        }
+    }
+
 }
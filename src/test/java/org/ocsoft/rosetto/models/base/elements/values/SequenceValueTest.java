@@ -0,0 +1,174 @@
+package org.ocsoft.rosetto.models.base.elements.values;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.ocsoft.rosetto.contexts.base.Rosetto;
+import org.ocsoft.rosetto.functions.base.ArithmeticFunctions;
+import org.ocsoft.rosetto.models.base.elements.RosettoValue;
+import org.ocsoft.rosetto.models.base.elements.ValueType;
+import org.ocsoft.rosetto.models.system.Scope;
+import org.ocsoft.rosetto.utils.base.Values;
+
+public class SequenceValueTest {
+    
+    private Scope scope;
+    
+    /**
+     * 呼び出された引数を記録しながら値を二倍にする関数.
+     */
+    private List<RosettoValue> called;
+    private RosettoFunction twice;
+    
+    @Before
+    public void setUp() {
+        Rosetto.dispose();
+        Rosetto.initialize();
+        scope = new Scope();
+        called = new ArrayList<RosettoValue>();
+        twice = new RosettoFunction("twice", "x") {
+            private static final long serialVersionUID = 1L;
+            @Override
+            protected RosettoValue run(Scope scope, ListValue rawArgs) {
+                called.add(scope.get("x"));
+                return Values.create(scope.get("x").asLong() * 2);
+            }
+        };
+    }
+
+    @Test
+    public void rangeはリストと同じように振る舞う() throws Exception {
+        SequenceValue sut = SequenceValue.range(1, 5);
+        assertThat(sut.getType(), is(ValueType.SEQUENCE));
+        assertThat(sut.asString(), is("(1 2 3 4)"));
+        assertThat(sut.size(), is(4));
+        assertThat(sut.first().asInt(), is(1));
+        assertThat(sut.getAt(3).asInt(), is(4));
+        assertThat(sut.rest().asString(), is("(2 3 4)"));
+        assertThat(sut.equals(ListValue.createFromString("1 2 3 4")), is(true));
+        
+        //残りが一つなら要素そのもの、なければNULL
+        assertThat(SequenceValue.range(1, 3).rest().asInt(), is(2));
+        assertThat(SequenceValue.range(1, 2).rest(), is((RosettoValue)Values.NULL));
+        assertThat(SequenceValue.range(5, 1).size(), is(0));
+        assertThat(SequenceValue.range(5, 1).asString(), is("()"));
+    }
+    
+    @Test
+    public void 要素は参照されるまで計算されない() throws Exception {
+        SequenceValue sut = SequenceValue.range(0, 1000000000).map(twice, scope);
+        assertThat(called.size(), is(0));
+        assertThat(sut.size(), is(1000000000));
+        assertThat(sut.getAt(21).asInt(), is(42));
+        assertThat(called.size(), is(1));
+    }
+    
+    @Test
+    public void mapとfilterは一つの要素ずつ計算される() throws Exception {
+        RosettoFunction small = new RosettoFunction("small", "x") {
+            private static final long serialVersionUID = 1L;
+            @Override
+            protected RosettoValue run(Scope scope, ListValue rawArgs) {
+                called.add(Values.create("small"));
+                return Values.create(scope.get("x").asLong() < 6);
+            }
+        };
+        SequenceValue sut = SequenceValue.range(0, 5).map(twice, scope).filter(small, scope);
+        List<String> result = new ArrayList<String>();
+        for(RosettoValue v : sut) result.add(v.asString());
+        assertThat(result.toString(), is("[0, 2, 4]"));
+        //mapとfilterが要素ごとに交互に呼ばれる
+        assertThat(called.toString(), is("[0, small, 1, small, 2, small, 3, small, 4, small]"));
+    }
+    
+    @Test
+    public void restを辿ると全ての要素が得られる() throws Exception {
+        RosettoValue v = SequenceValue.range(0, 10).map(twice, scope);
+        List<Integer> result = new ArrayList<Integer>();
+        while(true) {
+            result.add(v.first().asInt());
+            v = v.rest();
+            if(v.getType() == ValueType.NULL) break;
+        }
+        assertThat(result.toString(), is("[0, 2, 4, 6, 8, 10, 12, 14, 16, 18]"));
+    }
+    
+    @Test
+    public void 計算した要素は保持される() throws Exception {
+        SequenceValue sut = SequenceValue.range(0, 5).map(twice, scope);
+        assertThat(called.size(), is(0));
+        assertThat(sut.asString(), is("(0 2 4 6 8)"));
+        assertThat(sut.asString(), is("(0 2 4 6 8)"));
+        assertThat(sut.getAt(3).asInt(), is(6));
+        assertThat(sut.size(), is(5));
+        assertThat(called.toString(), is("[0, 1, 2, 3, 4]"));
+    }
+    
+    @Test
+    public void restで辿っても関数は要素ごとに一度だけ実行される() throws Exception {
+        RosettoValue v = SequenceValue.range(0, 5).map(twice, scope);
+        while(v.getType() == ValueType.SEQUENCE) {
+            v.first();
+            v = v.rest();
+        }
+        assertThat(v.asInt(), is(8));
+        assertThat(called.toString(), is("[0, 1, 2, 3, 4]"));
+        
+        //位置で先に計算した要素も計算しなおさない
+        called.clear();
+        SequenceValue mapped = SequenceValue.range(0, 5).map(twice, scope);
+        assertThat(mapped.getAt(2).asInt(), is(4));
+        assertThat(mapped.asString(), is("(0 2 4 6 8)"));
+        assertThat(called.toString(), is("[2, 0, 1, 3, 4]"));
+    }
+    
+    @Test
+    public void filterをrestで辿っても先頭から計算しなおさない() throws Exception {
+        final int[] count = new int[1];
+        RosettoFunction even = new RosettoFunction("even", "x") {
+            private static final long serialVersionUID = 1L;
+            @Override
+            protected RosettoValue run(Scope scope, ListValue rawArgs) {
+                count[0]++;
+                return Values.create(scope.get("x").asLong() % 2 == 0);
+            }
+        };
+        RosettoValue v = SequenceValue.range(0, 2000).filter(even, scope);
+        int size = 0;
+        while(v.getType() == ValueType.SEQUENCE) {
+            v.first();
+            v = v.rest();
+            size++;
+        }
+        assertThat(size + 1, is(1000));
+        assertThat(count[0], is(2000));
+    }
+    
+    @Test
+    public void 可変長引数の末尾のシーケンスは展開される() throws Exception {
+        ListValue args = new ListValue(Values.create(1), SequenceValue.range(1, 4));
+        assertThat(ArithmeticFunctions.plus.execute(args, scope).asInt(), is(7));
+    }
+    
+    @Test
+    public void シリアライズするとリストになる() throws Exception {
+        SequenceValue sut = SequenceValue.range(0, 3).map(twice, scope);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(sut);
+        out.close();
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        RosettoValue result = (RosettoValue)in.readObject();
+        assertThat(result.getType(), is(ValueType.LIST));
+        assertThat(result.asString(), is("(0 2 4)"));
+    }
+}
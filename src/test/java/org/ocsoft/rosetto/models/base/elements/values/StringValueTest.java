@@ -1,5 +1,6 @@
 package org.ocsoft.rosetto.models.base.elements.values;
 
+import static org.hamcrest.CoreMatchers.*;
 import static org.junit.Assert.*;
 
 import org.junit.Before;
@@ -24,4 +25,13 @@ public class StringValueTest {
         ValueTestUtils.isSingleValue(sut);
     }
 
+    @Test
+    public void internは同じ内容に同じインスタンスを返す() throws Exception {
+        StringValue a = StringValue.intern(new String("foo"));
+        StringValue b = StringValue.intern(new String("foo"));
+        assertThat(a, is(sameInstance(b)));
+        assertThat(a.asString(), is("foo"));
+        assertThat(StringValue.intern("bar"), is(not(sameInstance(a))));
+    }
+
 }
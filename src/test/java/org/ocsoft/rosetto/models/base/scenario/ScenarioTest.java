@@ -1,9 +1,16 @@
 package org.ocsoft.rosetto.models.base.scenario;
 
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
 import static org.junit.Assert.assertThat;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
 
 import org.frows.lilex.token.Token;
 import org.junit.Test;
@@ -38,5 +45,57 @@ public class ScenarioTest {
          Scenario sut6 = new Scenario((Token[])null);
          assertThat(sut6.getLength(), is(0));
     }
+    
+    @Test
+    public void getLabelAtは直前のラベルを返す() throws Exception {
+        List<Unit> units = new ArrayList<Unit>();
+        for(int i=0; i<10; i++) units.add(new Unit("u" + i));
+        List<Label> labels = new ArrayList<Label>();
+        labels.add(new Label("b", 5));
+        labels.add(new Label("a", 2));
+        labels.add(new Label("c", 10));
+        Scenario sut = new Scenario(units, labels);
+        assertThat(sut.getLabelAt(-1), is(nullValue()));
+        assertThat(sut.getLabelAt(1), is(nullValue()));
+        assertThat(sut.getLabelAt(2).getName(), is("a"));
+        assertThat(sut.getLabelAt(4).getName(), is("a"));
+        assertThat(sut.getLabelAt(5).getName(), is("b"));
+        assertThat(sut.getLabelAt(9).getName(), is("b"));
+        assertThat(sut.getLabelAt(10).getName(), is("c"));
+        assertThat(sut.getLabelAt(100).getName(), is("c"));
+    }
+    
+    @Test
+    public void ラベル表の有無で結果が変わらない() throws Exception {
+        Random rand = new Random(7);
+        for(int n=0; n<50; n++) {
+            int length = rand.nextInt(40);
+            List<Unit> units = new ArrayList<Unit>();
+            for(int i=0; i<length; i++) units.add(new Unit("u" + i));
+            List<Label> labels = new ArrayList<Label>();
+            int labelCount = rand.nextInt(8);
+            for(int i=0; i<labelCount; i++) labels.add(new Label("l" + i, rand.nextInt(length + 2)));
+            Scenario sut = new Scenario(units, labels);
+            Label[] expected = new Label[length + 4];
+            for(int i=0; i<expected.length; i++) expected[i] = sut.getLabelAt(i - 1);
+            sut.buildLabelTable();
+            for(int i=0; i<expected.length; i++) {
+                assertThat(sut.getLabelAt(i - 1), is(expected[i]));
+            }
+        }
+    }
+    
+    @Test
+    public void 直列化後もラベルを引ける() throws Exception {
+        Scenario sut = new Scenario(new Unit("foo"), new Unit("bar"), new Label("a", 1));
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bout);
+        out.writeObject(sut);
+        out.close();
+        Scenario restored = (Scenario)new ObjectInputStream(
+                new ByteArrayInputStream(bout.toByteArray())).readObject();
+        assertThat(restored.getLabelAt(0), is(nullValue()));
+        assertThat(restored.getLabelAt(1).getName(), is("a"));
+    }
 
 }
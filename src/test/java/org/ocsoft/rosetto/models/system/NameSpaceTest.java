@@ -5,6 +5,12 @@ import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.concurrent.CountDownLatch;
+
 import org.junit.Before;
 import org.junit.Test;
 import org.ocsoft.rosetto.contexts.base.Rosetto;
@@ -182,5 +188,107 @@ public class NameSpaceTest {
         sut.define("bar", Values.create(10000));
         assertThat(sut.get("bar").asInt(), is(10000));
     }
+    
+    @Test
+    public void 値のない変数もロックできる() throws Exception {
+        NameSpace sut = new NameSpace("foo");
+        sut.seal("bar");
+        assertThat(sut.isSealed("bar"), is(true));
+        assertThat(sut.get("bar"), is((RosettoValue)Values.NULL));
+        try {
+            sut.define("bar", Values.create(1));
+            fail();
+        } catch(Exception e) {
+            assertThat(e, instanceOf(VariableSealedException.class));
+        }
+        sut.unSeal("bar");
+        assertThat(sut.isSealed("bar"), is(false));
+        sut.define("bar", Values.create(1));
+        assertThat(sut.get("bar").asInt(), is(1));
+    }
+    
+    @Test
+    public void 直列化後も値とロックが保たれる() throws Exception {
+        NameSpace sut = new NameSpace("foo");
+        sut.define("a", Values.create(1));
+        sut.define("b", Values.create("str"));
+        sut.seal("b");
+        sut.seal("c");
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bout);
+        out.writeObject(sut);
+        out.close();
+        NameSpace restored = (NameSpace)new ObjectInputStream(
+                new ByteArrayInputStream(bout.toByteArray())).readObject();
+        assertThat(restored.getName(), is("foo"));
+        assertThat(restored.get("a").asInt(), is(1));
+        assertThat(restored.get("b").asString(), is("str"));
+        assertThat(restored.isSealed("a"), is(false));
+        assertThat(restored.isSealed("b"), is(true));
+        assertThat(restored.isSealed("c"), is(true));
+        assertThat(restored.toString(), is(sut.toString()));
+    }
+    
+    @Test
+    public void 複数スレッドから定義しても値が失われない() throws Exception {
+        final NameSpace sut = new NameSpace("foo");
+        final int threads = 8;
+        final int perThread = 500;
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        for(int t=0; t<threads; t++) {
+            final int id = t;
+            workers[t] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for(int i=0; i<perThread; i++) {
+                        sut.define("v" + id + "_" + i, Values.create(i));
+                    }
+                }
+            };
+            workers[t].start();
+        }
+        start.countDown();
+        for(Thread w : workers) w.join();
+        for(int t=0; t<threads; t++) {
+            for(int i=0; i<perThread; i++) {
+                assertThat(sut.get("v" + t + "_" + i).asInt(), is(i));
+            }
+        }
+    }
+    
+    @Test
+    public void ロックと代入が競合しても代入はロック前にのみ成功する() throws Exception {
+        for(int n=0; n<200; n++) {
+            final NameSpace sut = new NameSpace("foo");
+            sut.define("x", Values.create(0));
+            final int[] succeeded = new int[1];
+            Thread writer = new Thread() {
+                @Override
+                public void run() {
+                    for(int i=1; i<=100; i++) {
+                        try {
+                            sut.define("x", Values.create(i));
+                            succeeded[0] = i;
+                        } catch(VariableSealedException e) {
+                            return;
+                        }
+                    }
+                }
+            };
+            writer.start();
+            sut.seal("x");
+            RosettoValue sealed = sut.get("x");
+            writer.join();
+            //ロック後に値が変わっていない
+            assertThat(sut.get("x"), is(sealed));
+            assertThat(sealed.asInt(), is(succeeded[0]));
+        }
+    }
 
 }
@@ -1,6 +1,7 @@
 package org.ocsoft.rosetto.models.system;
 
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
 import static org.hamcrest.CoreMatchers.nullValue;
 import static org.junit.Assert.assertThat;
 
@@ -81,4 +82,61 @@ public class ScopeTest {
          assertThat(sut2.get("y").asString(), is("10"));
     }
 
+    @Test
+    public void 配列に割り当てたスコープから変数を読み書きできる() throws Exception {
+        Scope parent = new Scope();
+        parent.set("z", Values.create(3));
+        FrameLayout layout = new FrameLayout("x", "y");
+        Scope sut = new Scope(parent, layout, 
+                new RosettoValue[]{Values.create(1), null}, null);
+        assertThat(sut.get("x").asInt(), is(1));
+        //値のない位置は親スコープから探す
+        assertThat(sut.containsKey("y"), is(false));
+        assertThat(sut.get("z").asInt(), is(3));
+        
+        sut.set("y", Values.create(2));
+        sut.set("w", Values.create(4));
+        assertThat(sut.get("y").asInt(), is(2));
+        assertThat(sut.get("w").asInt(), is(4));
+        assertThat(sut.containsKey("w"), is(true));
+        assertThat(sut.getMap().size(), is(3));
+        assertThat(parent.get("w"), is((RosettoValue)Values.NULL));
+    }
+    
+    @Test
+    public void 関数のスコープは配列に割り当てられる() throws Exception {
+        Scope sut = ListValue.createFromString("100 [+ 1 3] w=5").bindScope(func1, testScope);
+        assertThat(sut.layout, is(not(nullValue())));
+        assertThat(sut.get("x").asString(), is("100"));
+        assertThat(sut.get("y").asString(), is("4"));
+        assertThat(sut.get("w").asInt(), is(5));
+        assertThat(sut.getParent(), is(testScope));
+    }
+    
+    @Test
+    public void LocalReferenceは同じ形のスコープでは覚えた位置を読む() throws Exception {
+        FrameLayout layout = new FrameLayout("a", "b");
+        LocalReference sut = new LocalReference("b");
+        Scope root = new Scope();
+        root.set("b", Values.create(0));
+        for(int i=1; i<=3; i++) {
+            Scope frame = new Scope(root, layout, 
+                    new RosettoValue[]{Values.create(-1), Values.create(i)}, null);
+            Scope inner = new Scope(frame);
+            assertThat(sut.get(inner).asInt(), is(i));
+        }
+        
+        //途中のスコープで同じ名前が定義されていればそちらが優先される
+        Scope frame = new Scope(root, layout, 
+                new RosettoValue[]{Values.create(-1), Values.create(5)}, null);
+        Scope inner = new Scope(frame);
+        inner.set("b", Values.create(6));
+        assertThat(sut.get(inner).asInt(), is(6));
+        
+        //値のない位置は親スコープから探す
+        Scope empty = new Scope(root, layout, new RosettoValue[2], null);
+        assertThat(sut.get(new Scope(empty)).asInt(), is(0));
+        assertThat(new LocalReference("c").get(inner), is((RosettoValue)Values.NULL));
+    }
+
 }
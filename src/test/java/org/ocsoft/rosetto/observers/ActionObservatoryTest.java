@@ -1,18 +1,36 @@
 package org.ocsoft.rosetto.observers;
 
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
 import static org.junit.Assert.assertThat;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
 import org.junit.Test;
+import org.ocsoft.rosetto.contexts.base.Rosetto;
 import org.ocsoft.rosetto.models.base.elements.RosettoValue;
+import org.ocsoft.rosetto.models.base.elements.values.ActionCall;
 import org.ocsoft.rosetto.models.base.elements.values.ListValue;
 import org.ocsoft.rosetto.models.base.elements.values.RosettoFunction;
 import org.ocsoft.rosetto.models.base.elements.values.ScriptValue;
 import org.ocsoft.rosetto.models.system.Scope;
 import org.ocsoft.rosetto.observers.ActionObserver;
 import org.ocsoft.rosetto.observers.RosettoObservatories;
+import org.ocsoft.rosetto.utils.base.Values;
 
 public class ActionObservatoryTest {
+    
+    @Before
+    public void setUp() {
+        Rosetto.dispose();
+        Rosetto.initialize();
+    }
 
     @Test
     public void testName() throws Exception {
@@ -42,5 +60,112 @@ public class ActionObservatoryTest {
         sut.execute(new Scope());
         assertThat(sb.length(), is(1));
     }
+    
+    @SuppressWarnings("serial")
+    @Test
+    public void ActionCallの評価一回につき通知は一回() throws Exception {
+        Rosetto.defineFunction(new RosettoFunction("one") {
+            @Override
+            protected RosettoValue run(Scope scope, ListValue args) {
+                return Values.create(1);
+            }
+        });
+        Counter counter = new Counter();
+        RosettoObservatories.getAction().addObserver(counter);
+        new ActionCall("one").evaluate(new Scope());
+        assertThat(counter.functions.size(), is(1));
+        assertThat(counter.functions.get(0), is("one"));
+    }
+    
+    @Test
+    public void 取り除いたオブザーバには通知されない() throws Exception {
+        Counter counter = new Counter();
+        RosettoObservatories.getAction().addObserver(counter);
+        assertThat(RosettoObservatories.getAction().getObservers().size(), is(1));
+        RosettoObservatories.getAction().removeObserver(counter);
+        assertThat(RosettoObservatories.getAction().getObservers().size(), is(0));
+        new Func("f").execute(new Scope());
+        assertThat(counter.functions.size(), is(0));
+    }
+    
+    @Test
+    public void 非同期のオブザーバには別スレッドから通知される() throws Exception {
+        final List<Thread> threads = Collections.synchronizedList(new ArrayList<Thread>());
+        AsyncDelivery<?> delivery = RosettoObservatories.getAction().addAsyncObserver(new Counter() {
+            @Override
+            public void functionExecuted(RosettoFunction func, ListValue args,
+                    RosettoValue evaluatedValue) {
+                threads.add(Thread.currentThread());
+            }
+        }, 16);
+        for(int i=0; i<3; i++) new Func("f").execute(new Scope());
+        assertThat(delivery.awaitIdle(5, TimeUnit.SECONDS), is(true));
+        assertThat(threads.size(), is(3));
+        for(Thread t : threads) assertThat(t, is(not(Thread.currentThread())));
+        assertThat(delivery.getDroppedCount(), is(0L));
+    }
+    
+    @Test
+    public void バッファが一杯になると古い通知から捨てられる() throws Exception {
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Counter counter = new Counter() {
+            @Override
+            public void functionExecuted(RosettoFunction func, ListValue args,
+                    RosettoValue evaluatedValue) {
+                entered.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.functionExecuted(func, args, evaluatedValue);
+            }
+        };
+        AsyncDelivery<?> delivery = RosettoObservatories.getAction().addAsyncObserver(counter, 2);
+        //配信用スレッドを最初の通知で止めておく
+        new Func("first").execute(new Scope());
+        assertThat(entered.await(5, TimeUnit.SECONDS), is(true));
+        for(String name : new String[]{"a", "b", "c", "d"}) new Func(name).execute(new Scope());
+        release.countDown();
+        assertThat(delivery.awaitIdle(5, TimeUnit.SECONDS), is(true));
+        assertThat(delivery.getDroppedCount(), is(2L));
+        assertThat(counter.functions.toString(), is("[first, c, d]"));
+    }
+    
+    @Test
+    public void 同じオブザーバは二重に登録されない() throws Exception {
+        Counter counter = new Counter();
+        RosettoObservatories.getAction().addObserver(counter);
+        assertThat(RosettoObservatories.getAction().addAsyncObserver(counter, 4), is(nullValue()));
+        new Func("f").execute(new Scope());
+        assertThat(counter.functions.size(), is(1));
+    }
+    
+    @SuppressWarnings("serial")
+    private static class Func extends RosettoFunction {
+        Func(String name) {
+            super(name);
+        }
+        
+        @Override
+        protected RosettoValue run(Scope scope, ListValue args) {
+            return Values.VOID;
+        }
+    }
+    
+    private static class Counter implements ActionObserver {
+        final List<String> functions = Collections.synchronizedList(new ArrayList<String>());
+        
+        @Override
+        public void functionExecuted(RosettoFunction func, ListValue args,
+                RosettoValue evaluatedValue) {
+            functions.add(func.getName());
+        }
+
+        @Override
+        public void macroExecuted(ScriptValue macro, ListValue args,
+                RosettoValue evaluatedValue) {}
+    }
 
 }
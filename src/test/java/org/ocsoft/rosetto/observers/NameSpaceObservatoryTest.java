@@ -17,6 +17,7 @@ public class NameSpaceObservatoryTest {
         Rosetto.dispose();
         Rosetto.initialize();
         RosettoObservatories.getVariable().clear();
+        RosettoObservatories.getNameSpace().clear();
     }
     
     @Test
@@ -42,4 +43,62 @@ public class NameSpaceObservatoryTest {
         assertThat(sb.toString(), is("hoge.characters.hoge.name:fuga"));
     }
 
+    @Test
+    public void 名前空間は階層単位で比較される() throws Exception {
+        final StringBuilder sb = new StringBuilder();
+        RosettoObservatories.getNameSpace().addObserver("actor", new Recorder(sb, "actor"));
+        RosettoObservatories.getNameSpace().addObserver("actor.alice", new Recorder(sb, "alice"));
+        
+        Rosetto.define("actor.alice.hp", 10);
+        assertThat(sb.toString(), is("actor;alice;"));
+        
+        sb.delete(0, sb.length());
+        Rosetto.define("actor.bob.hp", 10);
+        assertThat(sb.toString(), is("actor;"));
+        
+        //階層の途中までしか一致しない名前空間には反応しない
+        sb.delete(0, sb.length());
+        Rosetto.define("actors.hp", 10);
+        assertThat(sb.toString(), is(""));
+    }
+    
+    @Test
+    public void 空の名前空間のオブザーバは全ての変更に反応する() throws Exception {
+        final StringBuilder sb = new StringBuilder();
+        RosettoObservatories.getNameSpace().addObserver("", new Recorder(sb, "all"));
+        Rosetto.define("foo", 1);
+        Rosetto.define("a.b.c", 1);
+        assertThat(sb.toString(), is("all;all;"));
+    }
+    
+    @Test
+    public void 取り除いたオブザーバには通知されない() throws Exception {
+        final StringBuilder sb = new StringBuilder();
+        NameSpaceObservatory sut = RosettoObservatories.getNameSpace();
+        VariableObserver o = new Recorder(sb, "o");
+        sut.addObserver("a.b", o);
+        assertThat(sut.getObjectObservers().keySet().toString(), is("[a.b]"));
+        
+        sut.removeObserver("a.b", o);
+        assertThat(sut.getObjectObservers().isEmpty(), is(true));
+        Rosetto.define("a.b.c", 1);
+        assertThat(sb.toString(), is(""));
+    }
+    
+    private static class Recorder implements VariableObserver {
+        private final StringBuilder sb;
+        private final String name;
+        
+        Recorder(StringBuilder sb, String name) {
+            this.sb = sb;
+            this.name = name;
+        }
+        
+        @Override
+        public void valueChanged(String nameSpace, String variableName,
+                RosettoValue newValue) {
+            sb.append(name).append(";");
+        }
+    }
+
 }
@@ -0,0 +1,173 @@
+package org.ocsoft.rosetto.parsers;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.ocsoft.rosetto.contexts.base.Rosetto;
+import org.ocsoft.rosetto.models.base.scenario.Label;
+import org.ocsoft.rosetto.models.base.scenario.Scenario;
+import org.ocsoft.rosetto.models.base.scenario.Unit;
+import org.ocsoft.rosetto.parsers.rosetto.RosettoParser;
+
+public class IncrementalParserTest {
+    private IncrementalParser sut;
+    
+    @Before
+    public void setUp() {
+        Rosetto.dispose();
+        Rosetto.initialize();
+        this.sut = new IncrementalParser();
+    }
+    
+    @Test(expected=IllegalArgumentException.class)
+    public void nullのパーサーで初期化するとエラー() throws Exception {
+        new IncrementalParser(null);
+    }
+    
+    @Test
+    public void 最初のパースは全体のパースと同じ結果になる() throws Exception {
+        String script = "テスト。[br]二行目。\n\n\n[label a]三行目\n[p]\n[p]\n[def x\n1]\n";
+        assertThat(dump(sut.parseScript(script)), is(dump(new RosettoParser().parseScript(script))));
+    }
+    
+    @Test
+    public void 一行の編集では前後のユニットが共有される() throws Exception {
+        List<String> lines = createLines(200);
+        Scenario before = sut.parseScript(lines);
+        lines.set(100, "編集した行");
+        Scenario after = sut.parseScript(lines);
+        assertThat(dump(after), is(dump(new RosettoParser().parseScript(lines))));
+        assertThat(after.getUnitAt(0), is(sameInstance(before.getUnitAt(0))));
+        int last = after.getLength() - 1;
+        assertThat(after.getUnitAt(last), is(sameInstance(before.getUnitAt(before.getLength() - 1))));
+        assertThat(sut.getReparsedLineCount() < 10, is(true));
+        assertThat(sut.getReusedUnitCount() > before.getLength() - 10, is(true));
+    }
+    
+    @Test
+    public void 行を挿入すると後ろのラベルの位置がずれる() throws Exception {
+        List<String> lines = new ArrayList<String>(Arrays.asList("a", "[label x]", "b", "[label y]", "c"));
+        Scenario before = sut.parseScript(lines);
+        lines.add(1, "[wait]");
+        Scenario after = sut.parseScript(lines);
+        assertThat(after.getLabels().get("x").getIndex(), is(before.getLabels().get("x").getIndex() + 1));
+        assertThat(after.getLabels().get("y").getIndex(), is(before.getLabels().get("y").getIndex() + 1));
+        assertThat(dump(after), is(dump(new RosettoParser().parseScript(lines))));
+    }
+    
+    @Test
+    public void 複数行にまたがるタグの途中を編集できる() throws Exception {
+        List<String> lines = new ArrayList<String>(Arrays.asList(
+                "a", "[if exp=\"(eq? 1 1)\"", "  ]shown[end]", "b", "[def x", "1]", "c"));
+        sut.parseScript(lines);
+        lines.set(1, "[if exp=\"(eq? 1 2)\"");
+        assertThat(dump(sut.parseScript(lines)), is(dump(new RosettoParser().parseScript(lines))));
+        lines.set(5, "2 3]");
+        assertThat(dump(sut.parseScript(lines)), is(dump(new RosettoParser().parseScript(lines))));
+        lines.remove(5);
+        lines.set(4, "[def x 4]");
+        assertThat(dump(sut.parseScript(lines)), is(dump(new RosettoParser().parseScript(lines))));
+    }
+    
+    @Test
+    public void 連続したページングの一方を消しても全体のパースと同じになる() throws Exception {
+        List<String> lines = new ArrayList<String>(Arrays.asList("a", "[p]", "x", "[p]", "b", "[p]"));
+        sut.parseScript(lines);
+        lines.remove(2);
+        assertThat(dump(sut.parseScript(lines)), is(dump(new RosettoParser().parseScript(lines))));
+        lines.add(2, "y");
+        assertThat(dump(sut.parseScript(lines)), is(dump(new RosettoParser().parseScript(lines))));
+    }
+    
+    @Test
+    public void 同じ内容なら前回のシナリオを返す() throws Exception {
+        List<String> lines = createLines(20);
+        Scenario before = sut.parseScript(lines);
+        assertThat(sut.parseScript(new ArrayList<String>(lines)), is(sameInstance(before)));
+        assertThat(sut.getReparsedLineCount(), is(0));
+    }
+    
+    @Test
+    public void パースに失敗しても前回の結果を保持する() throws Exception {
+        List<String> lines = new ArrayList<String>(Arrays.asList("a", "b[wait]", "c"));
+        Scenario before = sut.parseScript(lines);
+        lines.set(1, "b[wait [a]");
+        try {
+            sut.parseScript(lines);
+            fail();
+        } catch(IllegalArgumentException e) {
+            assertThat(sut.getScenario(), is(sameInstance(before)));
+        }
+        lines.set(1, "b[wait 2]");
+        assertThat(dump(sut.parseScript(lines)), is(dump(new RosettoParser().parseScript(lines))));
+    }
+    
+    @Test
+    public void ランダムな編集を繰り返しても全体のパースと同じになる() throws Exception {
+        String[] pool = {"text", "", "[p]", "[label r]", "[def x", "1]", "[wait]", "plain[lf]", "  ;comment"};
+        Random rand = new Random(0);
+        for(int round=0; round<20; round++) {
+            sut.reset();
+            List<String> lines = new ArrayList<String>();
+            for(int step=0; step<30; step++) {
+                int pos = rand.nextInt(lines.size() + 1);
+                switch(rand.nextInt(3)) {
+                case 0: lines.add(pos, pool[rand.nextInt(pool.length)]); break;
+                case 1: if(pos < lines.size()) lines.remove(pos); break;
+                default: if(pos < lines.size()) lines.set(pos, pool[rand.nextInt(pool.length)]); break;
+                }
+                String expected;
+                try {
+                    expected = dump(new RosettoParser().parseScript(lines));
+                } catch(IllegalArgumentException e) {
+                    expected = "error";
+                }
+                String actual;
+                try {
+                    actual = dump(sut.parseScript(lines));
+                } catch(IllegalArgumentException e) {
+                    actual = "error";
+                }
+                assertThat(lines.toString(), actual, is(expected));
+            }
+        }
+    }
+    
+    /**
+     * 地の文、タグのみの行、ラベル、ページングを含む行のリストを生成する.
+     */
+    private static List<String> createLines(int count) {
+        List<String> lines = new ArrayList<String>();
+        for(int i=0; i<count; i++) {
+            switch(i % 5) {
+            case 0: lines.add("[label l" + i + "]"); break;
+            case 1: lines.add("text" + i + "[wait]続き"); break;
+            case 2: lines.add("text" + i); break;
+            case 3: lines.add("[p]"); break;
+            default: lines.add(""); break;
+            }
+        }
+        return lines;
+    }
+    
+    /**
+     * シナリオのユニットとラベルを比較用の文字列にする.
+     */
+    private static String dump(Scenario s) {
+        StringBuilder sb = new StringBuilder();
+        for(Unit u : s.getUnits()) {
+            sb.append(u.getText()).append(u.getAction()).append('\n');
+        }
+        TreeMap<String, Integer> labels = new TreeMap<String, Integer>();
+        for(Label l : s.getLabels().values()) labels.put(l.getName(), l.getIndex());
+        return sb.append(labels).toString();
+    }
+}
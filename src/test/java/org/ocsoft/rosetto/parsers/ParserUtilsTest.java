@@ -3,7 +3,9 @@ package org.ocsoft.rosetto.parsers;
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
 
+import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -65,6 +67,13 @@ public class ParserUtilsTest {
     
     
 
+    @Test
+    public void asLinesで改行ごとに分割し末尾の空白のみの行は除く() throws Exception {
+        assertThat(ParseUtils.asLines("a\r\nb\rc\n\n d \n \n\t"), is(Arrays.asList("a", "b", "c", "", " d ")));
+        assertThat(ParseUtils.asLines(" \n ").size(), is(0));
+        assertThat(ParseUtils.asLines(""), is(Arrays.<String>asList()));
+    }
+    
     @Test
     public void removeTabsでタブを取り除ける() {
         String s1 = ParseUtils.removeTabs("ここからタブ	ここまでタブ");
@@ -164,5 +173,68 @@ public class ParserUtilsTest {
         //文中の角括弧はそのまま
         assertThat(ParseUtils.removeSBracket("h[]o[]g[]e"), is("h[]o[]g[]e"));
     }
+    
+    @Test
+    public void 長い行でもスタックを使い切らない() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for(int i=0; i<100000; i++) sb.append("a[b \"c\"]");
+        String line = sb.toString();
+        assertThat(ParseUtils.isTagOnlyLine(line), is(false));
+        assertThat(ParseUtils.hasUnClosedBracket(line + "["), is(true));
+    }
+    
+    @Test
+    public void 以前の実装と同じ結果になる() throws Exception {
+        Random random = new Random(54321);
+        char[] chars = {'a', 'b', ' ', '[', ']', '[', ']', '"', '"'};
+        for(int n=0; n<20000; n++) {
+            StringBuilder sb = new StringBuilder();
+            int len = random.nextInt(16);
+            for(int i=0; i<len; i++) sb.append(chars[random.nextInt(chars.length)]);
+            String src = sb.toString();
+            String expected;
+            try {
+                expected = removeAllTagsReference(src);
+            } catch(StringIndexOutOfBoundsException e) {
+                //以前の実装はクオートの除去で左括弧が全て消えると例外になっていた
+                continue;
+            }
+            assertThat(src, ParseUtils.removeAllTags(src), is(expected));
+            assertThat(src, ParseUtils.removeAllDoubleQuotedStrings(src), 
+                    is(removeAllDoubleQuotedStringsReference(src)));
+            assertThat(src, ParseUtils.isTagOnlyLine(src), is(expected.length() == 0));
+            assertThat(src, ParseUtils.hasUnClosedBracket(src), 
+                    is(expected.indexOf('[') >= 0 && expected.indexOf(']') == -1));
+        }
+    }
+    
+    /**
+     * 再帰による以前の実装.
+     */
+    private static String removeAllTagsReference(String line) {
+        int obIndex = line.indexOf("[");
+        int cbIndex = line.indexOf("]");
+        if(obIndex == -1 || cbIndex == -1) return line;
+        line = removeAllDoubleQuotedStringsReference(line);
+        obIndex = line.indexOf("[");
+        int cb = line.substring(obIndex).indexOf(']');
+        if(cb == -1) return line;
+        cbIndex = cb + obIndex;
+        String striped = line.substring(0, obIndex) + line.substring(cbIndex+1);
+        return removeAllTagsReference(striped);
+    }
+    
+    /**
+     * 再帰による以前の実装.
+     */
+    private static String removeAllDoubleQuotedStringsReference(String line) {
+        int firstIndex = line.indexOf('"');
+        if(firstIndex == -1 || firstIndex == line.length() - 1) return line;
+        int secondIndex = line.substring(firstIndex + 1).indexOf('"');
+        if(secondIndex == -1) return line;
+        secondIndex = secondIndex + firstIndex;
+        return removeAllDoubleQuotedStringsReference(
+                line.substring(0, firstIndex) + line.substring(secondIndex+1));
+    }
 
 }
@@ -0,0 +1,86 @@
+package org.ocsoft.rosetto.parsers;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.ocsoft.rosetto.contexts.base.Rosetto;
+import org.ocsoft.rosetto.models.base.elements.values.ScriptValue;
+import org.ocsoft.rosetto.models.base.scenario.Scenario;
+import org.ocsoft.rosetto.models.system.Parser;
+import org.ocsoft.rosetto.parsers.rosetto.RosettoParser;
+
+public class ScenarioCacheTest {
+    
+    private Parser parser;
+    
+    @Before
+    public void setUp() {
+        Rosetto.dispose();
+        Rosetto.initialize();
+        parser = Rosetto.getParser();
+    }
+    
+    @Test
+    public void 同じスクリプトは一度だけパースされる() throws Exception {
+        ScenarioCache sut = new ScenarioCache();
+        Scenario s1 = sut.get(new ScriptValue("foo[p]bar"), parser);
+        Scenario s2 = sut.get(new ScriptValue("foo[p]bar"), parser);
+        assertThat(s2, is(sameInstance(s1)));
+        assertThat(s1.getLength(), is(2));
+        assertThat(sut.getHitCount(), is(1L));
+        assertThat(sut.getMissCount(), is(1L));
+        assertThat(sut.size(), is(1));
+        assertThat(sut.getChars(), is(9L));
+    }
+    
+    @Test
+    public void エントリ数の上限を超えると古いものから破棄される() throws Exception {
+        ScenarioCache sut = new ScenarioCache(2, 1000);
+        Scenario a = sut.get(new ScriptValue("a"), parser);
+        sut.get(new ScriptValue("b"), parser);
+        //aを参照してbを最古にする
+        assertThat(sut.get(new ScriptValue("a"), parser), is(sameInstance(a)));
+        sut.get(new ScriptValue("c"), parser);
+        assertThat(sut.size(), is(2));
+        assertThat(sut.getEvictionCount(), is(1L));
+        assertThat(sut.get(new ScriptValue("a"), parser), is(sameInstance(a)));
+        assertThat(sut.getMissCount(), is(3L));
+        sut.get(new ScriptValue("b"), parser);
+        assertThat(sut.getMissCount(), is(4L));
+    }
+    
+    @Test
+    public void 文字数の上限を超えると古いものから破棄される() throws Exception {
+        ScenarioCache sut = new ScenarioCache(100, 10);
+        sut.get(new ScriptValue("12345"), parser);
+        sut.get(new ScriptValue("67890"), parser);
+        assertThat(sut.size(), is(2));
+        sut.get(new ScriptValue("abc"), parser);
+        assertThat(sut.size(), is(2));
+        assertThat(sut.getChars(), is(8L));
+        //上限を単独で超えるものは保持しない
+        sut.get(new ScriptValue("abcdefghijklmn"), parser);
+        assertThat(sut.size(), is(2));
+    }
+    
+    @Test
+    public void パーサーが変わると破棄される() throws Exception {
+        ScenarioCache sut = new ScenarioCache();
+        Scenario s1 = sut.get(new ScriptValue("foo"), parser);
+        Scenario s2 = sut.get(new ScriptValue("foo"), new RosettoParser());
+        assertThat(s2, is(not(sameInstance(s1))));
+        assertThat(sut.size(), is(1));
+    }
+    
+    @Test
+    public void setParserでRosettoのキャッシュが破棄される() throws Exception {
+        Rosetto.getScenarioCache().get(new ScriptValue("foo"), parser);
+        assertThat(Rosetto.getScenarioCache().size(), is(1));
+        Rosetto.setParser(new RosettoParser());
+        assertThat(Rosetto.getScenarioCache().size(), is(0));
+    }
+}
@@ -3,16 +3,31 @@ package org.ocsoft.rosetto.parsers;
 import static org.hamcrest.CoreMatchers.*;
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.frows.lilex.token.Token;
 import org.junit.Before;
 import org.junit.Test;
 import org.ocsoft.rosetto.contexts.base.Rosetto;
+import org.ocsoft.rosetto.contexts.base.RosettoRuntime;
 import org.ocsoft.rosetto.models.base.elements.values.ActionCall;
+import org.ocsoft.rosetto.models.base.scenario.Label;
 import org.ocsoft.rosetto.models.base.scenario.Scenario;
+import org.ocsoft.rosetto.models.base.scenario.ScenarioToken;
 import org.ocsoft.rosetto.models.base.scenario.Unit;
+import org.ocsoft.rosetto.models.system.Parser;
 import org.ocsoft.rosetto.parsers.ScenarioParser;
 import org.ocsoft.rosetto.parsers.rosetto.RosettoNormalizer;
 
@@ -72,6 +87,150 @@ public class ScenarioParserTest {
         List<? extends Token> result = sut.tokenize(list);
         assertThat(result.size(), is(4));
     }
-
+    
+    @Test
+    public void streamScriptはparseScriptと同じトークンを返す() throws Exception {
+        String script = "foo\n\n@bar\nbaz[p]\n[p]\n  \nqux [label a]\n[if exp=\"1==1\"\n]hoge[end]\n\n\nlast\n \n";
+        Scenario expected = sut.parseScript(script);
+        List<ScenarioToken> tokens = new ArrayList<ScenarioToken>();
+        Iterator<ScenarioToken> it = sut.streamScript(new StringReader(script));
+        while(it.hasNext()) tokens.add(it.next());
+        Scenario actual = new Scenario(tokens);
+        assertThat(actual.getLength(), is(expected.getLength()));
+        for(int i=0; i<expected.getLength(); i++) {
+            assertThat(actual.getUnitAt(i).getText(), is(expected.getUnitAt(i).getText()));
+            assertThat(actual.getUnitAt(i).getAction().toString(), 
+                    is(expected.getUnitAt(i).getAction().toString()));
+        }
+        assertThat(actual.getLabels().keySet(), is(expected.getLabels().keySet()));
+        assertThat(actual.getLabels().get("a").getIndex(), is(expected.getLabels().get("a").getIndex()));
+    }
+    
+    @Test
+    public void streamScriptはラベルをユニットの直後に返す() throws Exception {
+        Iterator<ScenarioToken> it = sut.streamScript(new StringReader("foo[br]bar[br][label a]baz"));
+        it.next();
+        it.next();
+        assertThat(it.next(), is(instanceOf(Unit.class)));
+        ScenarioToken label = it.next();
+        assertThat(label, is(instanceOf(Label.class)));
+        assertThat(((Label)label).getIndex(), is(3));
+    }
+    
+    @Test
+    public void streamScriptは必要な分だけ読み出す() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for(int i=0; i<10000; i++) sb.append("line").append(i).append("\n");
+        final int[] read = new int[1];
+        Reader reader = new StringReader(sb.toString()) {
+            @Override
+            public int read(char[] cbuf, int off, int len) throws java.io.IOException {
+                int n = super.read(cbuf, off, len);
+                if(n > 0) read[0] += n;
+                return n;
+            }
+        };
+        Iterator<ScenarioToken> it = sut.streamScript(reader);
+        Unit first = (Unit)it.next();
+        assertThat(first.getText(), is("line0"));
+        assertThat(read[0] < sb.length(), is(true));
+    }
+    
+    @Test
+    public void チャネルからシナリオを読み込める() throws Exception {
+        byte[] bytes = "テスト。[br]二行目。\n\n\n三行目\n\n\n".getBytes(StandardCharsets.UTF_8);
+        Iterator<ScenarioToken> it = sut.streamScript(
+                Channels.newChannel(new ByteArrayInputStream(bytes)), StandardCharsets.UTF_8);
+        List<ScenarioToken> tokens = new ArrayList<ScenarioToken>();
+        while(it.hasNext()) tokens.add(it.next());
+        assertThat(new Scenario(tokens).getLength(), is(3));
+        assertThat(((Unit)tokens.get(0)).getText(), is("テスト。"));
+    }
+    
+    @Test(expected=IllegalArgumentException.class)
+    public void streamScriptで閉じられていない括弧はエラー() throws Exception {
+        Iterator<ScenarioToken> it = sut.streamScript(new StringReader("foo[br]\n[a [b]"));
+        while(it.hasNext()) it.next();
+    }
+    
+    @Test
+    public void 共有したパーサーで並列にパースしても逐次と同じ結果になる() throws Exception {
+        final Parser parser = Rosetto.getParser();
+        final List<String> scripts = new ArrayList<String>();
+        for(int i=0; i<64; i++) scripts.add(createScript(i));
+        List<String> expected = new ArrayList<String>();
+        for(String script : scripts) expected.add(dump(parser.parseScript(script)));
+        
+        final RosettoRuntime runtime = RosettoRuntime.current();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            for(int round=0; round<4; round++) {
+                List<Future<String>> futures = new ArrayList<Future<String>>();
+                for(final String script : scripts) {
+                    futures.add(executor.submit(new Callable<String>() {
+                        @Override
+                        public String call() throws Exception {
+                            return runtime.call(new Callable<String>() {
+                                @Override
+                                public String call() throws Exception {
+                                    return dump(parser.parseScript(script));
+                                }
+                            });
+                        }
+                    }));
+                }
+                for(int i=0; i<scripts.size(); i++) {
+                    assertThat(futures.get(i).get(), is(expected.get(i)));
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+    
+    @Test
+    public void 同じスレッドで交互に逐次パースしても結果が混ざらない() throws Exception {
+        String a = createScript(1);
+        String b = createScript(2);
+        Iterator<ScenarioToken> ia = sut.streamScript(new StringReader(a));
+        Iterator<ScenarioToken> ib = sut.streamScript(new StringReader(b));
+        List<ScenarioToken> ta = new ArrayList<ScenarioToken>();
+        List<ScenarioToken> tb = new ArrayList<ScenarioToken>();
+        while(ia.hasNext() || ib.hasNext()) {
+            if(ia.hasNext()) ta.add(ia.next());
+            if(ib.hasNext()) tb.add(ib.next());
+        }
+        assertThat(dump(new Scenario(ta)), is(dump(sut.parseScript(a))));
+        assertThat(dump(new Scenario(tb)), is(dump(sut.parseScript(b))));
+    }
+    
+    /**
+     * 複数行にまたがるタグと連続したページングを含むスクリプトを生成する.
+     */
+    private static String createScript(int seed) {
+        StringBuilder sb = new StringBuilder();
+        for(int i=0; i<50; i++) {
+            int n = seed * 31 + i;
+            sb.append("text").append(n).append("\n");
+            if(n % 3 == 0) sb.append("[label l").append(i).append("]\n");
+            if(n % 4 == 0) sb.append("[def x\n").append(n).append("]\n");
+            if(n % 5 == 0) sb.append("[p]\n[p]\n");
+        }
+        return sb.toString();
+    }
+    
+    /**
+     * シナリオのユニットとラベルを比較用の文字列にする.
+     */
+    private static String dump(Scenario s) {
+        StringBuilder sb = new StringBuilder();
+        for(Unit u : s.getUnits()) {
+            sb.append(u.getText()).append(u.getAction()).append('\n');
+        }
+        for(Label l : s.getLabels().values()) {
+            sb.append(l.getName()).append(':').append(l.getIndex()).append('\n');
+        }
+        return sb.toString();
+    }
 
 }
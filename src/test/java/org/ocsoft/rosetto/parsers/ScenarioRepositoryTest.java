@@ -0,0 +1,185 @@
+package org.ocsoft.rosetto.parsers;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.ocsoft.rosetto.contexts.base.Rosetto;
+import org.ocsoft.rosetto.models.base.scenario.Scenario;
+import org.ocsoft.rosetto.models.system.Scope;
+import org.ocsoft.rosetto.parsers.rosetto.RosettoParser;
+
+public class ScenarioRepositoryTest {
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    private File dir;
+    
+    private final AtomicInteger parsers = new AtomicInteger();
+    
+    @Before
+    public void setUp() throws Exception {
+        Rosetto.dispose();
+        Rosetto.initialize();
+        dir = folder.newFolder("scenarios");
+        parsers.set(0);
+    }
+    
+    private void write(String path, String script) throws Exception {
+        File f = new File(dir, path);
+        f.getParentFile().mkdirs();
+        Files.write(f.toPath(), script.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    private ScenarioRepository create(int maxLoaded) throws Exception {
+        return new ScenarioRepository(dir, ".rosetto", maxLoaded, () -> {
+            parsers.incrementAndGet();
+            return new RosettoParser();
+        });
+    }
+    
+    @Test
+    public void 名前でシナリオを取得できる() throws Exception {
+        write("intro.rosetto", "foo[+ 1 2]");
+        write("chapter1/scene1.rosetto", "[label a]bar");
+        write("notes.txt", "ignored");
+        ScenarioRepository sut = create(10);
+        assertThat(sut.getNames().toString(), is("[chapter1/scene1, intro]"));
+        assertThat(sut.isLoaded("intro"), is(false));
+        
+        Scenario intro = sut.get("intro");
+        assertThat(intro.getUnitAt(0).getAction().evaluate(new Scope()).asInt(), is(3));
+        assertThat(sut.isLoaded("intro"), is(true));
+        assertThat(sut.get("intro"), is(sameInstance(intro)));
+        assertThat(sut.getHitCount(), is(1L));
+        assertThat(sut.getMissCount(), is(1L));
+        assertThat(sut.get("chapter1/scene1").getLabels().containsKey("a"), is(true));
+        assertThat(sut.get("notes"), is(nullValue()));
+        assertThat(parsers.get(), is(2));
+    }
+    
+    @Test
+    public void 全てのシナリオを並列に読み込む() throws Exception {
+        for(int i=0; i<20; i++) write("s" + i + ".rosetto", "text" + i + "[+ " + i + " 1]");
+        ScenarioRepository sut = create(100);
+        sut.loadAll();
+        assertThat(sut.getLoadedCount(), is(20));
+        assertThat(parsers.get(), is(20));
+        assertThat(sut.getParseTimes().size(), is(20));
+        for(int i=0; i<20; i++) {
+            assertThat(sut.isLoaded("s" + i), is(true));
+            assertThat(sut.getParseNanos("s" + i) >= 0, is(true));
+            assertThat(sut.get("s" + i).getUnitAt(0).getAction().evaluate(new Scope()).asInt(), is(i + 1));
+        }
+        //読み込み済みのものは読み込みなおさない
+        sut.loadAll();
+        assertThat(parsers.get(), is(20));
+    }
+    
+    @Test
+    public void 同じ内容のシナリオは共有される() throws Exception {
+        write("a.rosetto", "same[p]text");
+        write("b.rosetto", "same[p]text");
+        write("c.rosetto", "other");
+        ScenarioRepository sut = create(10);
+        Scenario a = sut.get("a");
+        assertThat(sut.get("b"), is(sameInstance(a)));
+        assertThat(sut.get("c"), is(not(sameInstance(a))));
+        assertThat(parsers.get(), is(2));
+        assertThat(sut.getParseNanos("b"), is(-1L));
+    }
+    
+    @Test
+    public void 破棄された後に共有されたシナリオはパース時間を持たない() throws Exception {
+        write("a.rosetto", "same");
+        write("b.rosetto", "same");
+        write("c.rosetto", "other");
+        ScenarioRepository sut = create(2);
+        sut.get("a");
+        assertThat(sut.getParseNanos("a") >= 0, is(true));
+        sut.get("b");
+        //aが破棄されてもbが同じ内容を持っている
+        sut.get("c");
+        sut.get("b");
+        assertThat(sut.isLoaded("a"), is(false));
+        assertThat(sut.get("a"), is(sameInstance(sut.get("b"))));
+        assertThat(parsers.get(), is(2));
+        assertThat(sut.getParseNanos("a"), is(-1L));
+    }
+    
+    @Test
+    public void 上限を超えると古いものから破棄される() throws Exception {
+        write("a.rosetto", "a");
+        write("b.rosetto", "b");
+        write("c.rosetto", "c");
+        ScenarioRepository sut = create(2);
+        Scenario a = sut.get("a");
+        sut.get("b");
+        sut.get("a");
+        sut.get("c");
+        assertThat(sut.getLoadedCount(), is(2));
+        assertThat(sut.getEvictionCount(), is(1L));
+        assertThat(sut.isLoaded("a"), is(true));
+        assertThat(sut.isLoaded("b"), is(false));
+        assertThat(sut.get("a"), is(sameInstance(a)));
+        
+        //破棄されたものは次の参照で読み込みなおす
+        assertThat(sut.get("b").getUnitAt(0).getText(), is("b"));
+        assertThat(parsers.get(), is(4));
+    }
+    
+    @Test
+    public void 同時に参照しても一度だけパースされる() throws Exception {
+        write("a.rosetto", "foo[+ 1 2]bar");
+        final ScenarioRepository sut = create(10);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Scenario>> results = new ArrayList<Future<Scenario>>();
+            for(int i=0; i<32; i++) {
+                results.add(executor.submit(new Callable<Scenario>() {
+                    @Override
+                    public Scenario call() throws Exception {
+                        return sut.get("a");
+                    }
+                }));
+            }
+            Scenario first = results.get(0).get();
+            for(Future<Scenario> f : results) assertThat(f.get(), is(sameInstance(first)));
+        } finally {
+            executor.shutdown();
+        }
+        assertThat(parsers.get(), is(1));
+    }
+    
+    @Test
+    public void ディレクトリを探しなおす() throws Exception {
+        write("a.rosetto", "a");
+        ScenarioRepository sut = create(10);
+        sut.get("a");
+        write("b.rosetto", "b");
+        new File(dir, "a.rosetto").delete();
+        sut.refresh();
+        assertThat(sut.getNames().toString(), is("[b]"));
+        assertThat(sut.get("a"), is(nullValue()));
+        assertThat(sut.get("b").getUnitAt(0).getText(), is("b"));
+        assertThat(sut.getLoadedCount(), is(1));
+    }
+}
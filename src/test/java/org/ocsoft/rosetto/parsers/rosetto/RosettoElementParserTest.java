@@ -1,9 +1,14 @@
 package org.ocsoft.rosetto.parsers.rosetto;
 
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -13,6 +18,7 @@ import org.ocsoft.rosetto.models.base.elements.ValueType;
 import org.ocsoft.rosetto.models.base.elements.values.ActionCall;
 import org.ocsoft.rosetto.models.base.elements.values.ListValue;
 import org.ocsoft.rosetto.parsers.rosetto.RosettoElementParser;
+import org.ocsoft.rosetto.utils.base.TextUtils;
 import org.ocsoft.rosetto.utils.base.Values;
 
 public class RosettoElementParserTest {
@@ -95,5 +101,92 @@ public class RosettoElementParserTest {
         assertThat(sut2.size(), is(2));
         assertThat(sut2.get(1), is("[bar baz]"));
     }
+    
+    @Test
+    public void 連続したスペースを含む引数のsplit() throws Exception {
+        List<String> sut1 = parser.splitElements("  foo   [bar   baz]  \"a  b\" ");
+        assertThat(sut1.size(), is(3));
+        assertThat(sut1.get(0), is("foo"));
+        assertThat(sut1.get(1), is("[bar baz]"));
+        assertThat(sut1.get(2), is("\"a b\""));
+    }
+    
+    @Test
+    public void 閉じられていない括弧はエラー() throws Exception {
+        try {
+            parser.splitElements("foo [bar (baz)");
+            fail();
+        } catch(IllegalArgumentException e) {
+            assertThat(e.getMessage(), is("bracket not closed"));
+        }
+        //閉じられていないクオートの残りは捨てられる
+        List<String> sut1 = parser.splitElements("foo \"bar baz");
+        assertThat(sut1.size(), is(1));
+    }
+    
+    @Test
+    public void 以前の実装と同じ結果になる() throws Exception {
+        Random random = new Random(12345);
+        char[] chars = {'a', 'b', ' ', ' ', '[', ']', '(', ')', '{', '}', '"', '='};
+        for(int n=0; n<5000; n++) {
+            StringBuilder sb = new StringBuilder();
+            int len = random.nextInt(20);
+            for(int i=0; i<len; i++) sb.append(chars[random.nextInt(chars.length)]);
+            String src = sb.toString();
+            List<String> expected = null;
+            List<String> actual = null;
+            try {
+                expected = splitElementsReference(src);
+            } catch(IllegalArgumentException e) {}
+            try {
+                actual = parser.splitElements(src);
+            } catch(IllegalArgumentException e) {}
+            assertThat(src, actual, is(expected));
+        }
+    }
+    
+    /**
+     * String.splitとcontainsCountによる以前の実装.
+     */
+    private static List<String> splitElementsReference(String elements) {
+        ArrayList<String> result = new ArrayList<String>();
+        String param = "";
+        int sbCount = 0;
+        int rbCount = 0;
+        int mbCount = 0;
+        for(String str : elements.split(" ")) {
+            if(str.length() == 0) continue;
+            param += str;
+            sbCount += TextUtils.containsCount(str, '[') - TextUtils.containsCount(str, ']');
+            rbCount += TextUtils.containsCount(str, '(') - TextUtils.containsCount(str, ')');
+            mbCount += TextUtils.containsCount(str, '{') - TextUtils.containsCount(str, '}');
+            if(sbCount < 0) sbCount = 0;
+            if(rbCount < 0) rbCount = 0;
+            if(mbCount < 0) mbCount = 0;
+            if(TextUtils.containsCount(param, '\"') % 2 != 0) {
+                param = param + " ";
+                continue;
+            }
+            if(sbCount > 0 || rbCount > 0 || mbCount > 0) {
+                param = param + " ";
+                continue;
+            }
+            result.add(param);
+            param = "";
+        }
+        if(sbCount > 0 || rbCount > 0 || mbCount > 0)
+            throw new IllegalArgumentException("bracket not closed");
+        return result;
+    }
+
+    @Test
+    public void 文字列のリテラルを共有できる() throws Exception {
+        RosettoElementParser sut = new RosettoElementParser(true);
+        assertThat(sut.parseElement("hoge"), is(sameInstance(sut.parseElement("\"hoge\""))));
+        assertThat(parser.parseElement("hoge"), is(not(sameInstance(parser.parseElement("hoge")))));
+        //数値はどちらのパーサーでもキャッシュされる
+        assertThat(parser.parseElement("12"), is(sameInstance(parser.parseElement("12"))));
+        assertThat(parser.parseElement("1.0"), is(sameInstance(parser.parseElement("1.0"))));
+    }
 
 }
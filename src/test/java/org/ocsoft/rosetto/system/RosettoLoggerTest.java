@@ -0,0 +1,121 @@
+package org.ocsoft.rosetto.system;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.ocsoft.rosetto.contexts.base.Rosetto;
+import org.ocsoft.rosetto.functions.base.ArithmeticFunctions;
+import org.ocsoft.rosetto.system.messages.SystemMessage;
+
+public class RosettoLoggerTest {
+    private final List<String> records = new ArrayList<String>();
+    
+    private final Handler recorder = new Handler() {
+        @Override
+        public void publish(LogRecord record) {
+            records.add(record.getMessage());
+        }
+        @Override
+        public void flush() {}
+        @Override
+        public void close() {}
+    };
+    
+    @Before
+    public void setUp() {
+        Rosetto.dispose();
+        Rosetto.initialize();
+        recorder.setLevel(Level.ALL);
+        Logger.getLogger("org.rosetto").addHandler(recorder);
+    }
+    
+    @After
+    public void tearDown() {
+        Logger.getLogger("org.rosetto").removeHandler(recorder);
+        RosettoLogger.resetLevel();
+    }
+    
+    @Test
+    public void 出力されないレベルでは引数を文字列化しない() throws Exception {
+        final int[] called = new int[1];
+        Object arg = new Object() {
+            @Override
+            public String toString() {
+                called[0]++;
+                return "arg";
+            }
+        };
+        RosettoLogger.finer(SystemMessage.S11000_FUNCTION_EXECUTED, arg);
+        assertThat(called[0], is(0));
+        assertThat(records.size(), is(0));
+        
+        RosettoLogger.setLevel(Level.FINER);
+        RosettoLogger.finer(SystemMessage.S11000_FUNCTION_EXECUTED, arg);
+        assertThat(called[0], is(1));
+        assertThat(records.size(), is(1));
+        assertThat(records.get(0).endsWith(" : arg"), is(true));
+    }
+    
+    @Test
+    public void 出力されないレベルでは関数を呼び出さない() throws Exception {
+        final int[] called = new int[1];
+        Supplier<String> body = new Supplier<String>() {
+            @Override
+            public String get() {
+                called[0]++;
+                return "body";
+            }
+        };
+        RosettoLogger.fine(body);
+        RosettoLogger.finer(SystemMessage.S11100_MACRO_EXECUTED, body);
+        assertThat(called[0], is(0));
+        
+        RosettoLogger.setLevel(Level.ALL);
+        RosettoLogger.fine(body);
+        RosettoLogger.finer(SystemMessage.S11100_MACRO_EXECUTED, body);
+        assertThat(called[0], is(2));
+        assertThat(records.get(0), is("body"));
+        assertThat(records.get(1).endsWith(" : body"), is(true));
+    }
+    
+    @Test
+    public void 複数の引数はカンマで結合される() throws Exception {
+        RosettoLogger.info(SystemMessage.E1000_GLOBAL_VAR_NOT_FOUND, "a", "b");
+        RosettoLogger.info(SystemMessage.E1000_GLOBAL_VAR_NOT_FOUND, "c");
+        assertThat(records.get(0).endsWith(" : a,b"), is(true));
+        assertThat(records.get(1).endsWith(" : c"), is(true));
+    }
+    
+    @Test
+    public void 出力されないレベルの関数実行ログはメモリを確保しない() throws Exception {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        long id = Thread.currentThread().getId();
+        Object function = ArithmeticFunctions.plus;
+        //ログ出力経路を一度通しておく
+        for(int i=0; i<1000; i++) RosettoLogger.finer(SystemMessage.S11000_FUNCTION_EXECUTED, function);
+        long before = threads.getThreadAllocatedBytes(id);
+        for(int i=0; i<100000; i++) {
+            RosettoLogger.finer(SystemMessage.S11000_FUNCTION_EXECUTED, function);
+        }
+        long allocated = threads.getThreadAllocatedBytes(id) - before;
+        //計測呼び出し自体の確保分のみ許容する
+        assertThat("allocated " + allocated + " bytes", allocated < 1024, is(true));
+    }
+}
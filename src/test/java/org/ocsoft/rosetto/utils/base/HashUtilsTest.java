@@ -0,0 +1,24 @@
+package org.ocsoft.rosetto.utils.base;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class HashUtilsTest {
+    
+    @Test
+    public void sha256Test() {
+        assertThat(HashUtils.sha256("abc".getBytes(StandardCharsets.UTF_8)),
+                is("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad"));
+        assertThat(HashUtils.sha256(new byte[0]),
+                is("e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855"));
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void nullは受け付けない() {
+        HashUtils.sha256(null);
+    }
+}